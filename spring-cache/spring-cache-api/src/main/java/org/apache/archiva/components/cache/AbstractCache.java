@@ -18,6 +18,10 @@ package org.apache.archiva.components.cache;
  * under the License.
  */
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
 /**
  * @author Olivier Lamy
  * @since 2.1
@@ -33,6 +37,105 @@ public abstract class AbstractCache<V, T>
 
     private int maxElementsOnDisk = 0;
 
+    private int negativeTimeToLiveSeconds = 0;
+
+    private final LoadCoalescer<V, T> loadCoalescer = new LoadCoalescer<>( );
+
+    public T getOrLoad( V key, Function<? super V, ? extends T> loader )
+    {
+        if ( isCachedAbsent( key ) )
+        {
+            return null;
+        }
+        T value = loadCoalescer.getOrLoad( this::get, this::peek, ( k, v ) -> registerLoaded( k, v, loader ), key,
+            recordLoads( loader ) );
+        if ( value == null )
+        {
+            registerAbsent( key );
+        }
+        return value;
+    }
+
+    public CompletableFuture<T> getOrLoadAsync( V key, Function<? super V, ? extends T> loader, Executor executor )
+    {
+        if ( isCachedAbsent( key ) )
+        {
+            return CompletableFuture.completedFuture( null );
+        }
+        CompletableFuture<T> load = loadCoalescer.getOrLoadAsync( this::get, this::peek,
+            ( k, v ) -> registerLoaded( k, v, loader ), key, recordLoads( loader ), executor );
+        if ( getNegativeTimeToLiveSeconds( ) <= 0 )
+        {
+            return load;
+        }
+        return load.thenApply( value -> {
+            if ( value == null )
+            {
+                registerAbsent( key );
+            }
+            return value;
+        } );
+    }
+
+    /**
+     * @return true if negative caching is enabled and the absence of the key is cached, counted as a negative hit
+     */
+    private boolean isCachedAbsent( V key )
+    {
+        if ( getNegativeTimeToLiveSeconds( ) <= 0 || !isAbsent( key ) )
+        {
+            return false;
+        }
+        CacheStatistics statistics = getStatistics( );
+        if ( statistics instanceof AbstractCacheStatistics )
+        {
+            ( (AbstractCacheStatistics) statistics ).negativeHit( );
+        }
+        return true;
+    }
+
+    /**
+     * @return the loader recording its loads in the statistics, if they extend {@link AbstractCacheStatistics}
+     * @since 3.0
+     */
+    protected Function<? super V, ? extends T> recordLoads( Function<? super V, ? extends T> loader )
+    {
+        CacheStatistics statistics = getStatistics( );
+        if ( statistics instanceof AbstractCacheStatistics )
+        {
+            return ( (AbstractCacheStatistics) statistics ).recordLoads( loader );
+        }
+        return loader;
+    }
+
+    /**
+     * Looks a key up again before {@link #getOrLoad(Object, Function)} calls the loader, a concurrent load may have
+     * stored the value since the first lookup. Unlike {@link #get(Object)} it records no hit, miss or latency, the
+     * first lookup already counted the miss. The default implementation calls {@link #get(Object)}, providers
+     * recording statistics override it.
+     *
+     * @param key the key to look up
+     * @return the cached value, or null
+     * @since 3.0
+     */
+    protected T peek( V key )
+    {
+        return get( key );
+    }
+
+    /**
+     * Stores a value loaded by {@link #getOrLoad(Object, Function)}. The default implementation calls
+     * {@link #register(Object, Object)}, providers may override it to keep the loader with the entry.
+     *
+     * @param key    the loaded key
+     * @param value  the loaded value, never null
+     * @param loader the loader which computed the value
+     */
+    protected void registerLoaded( V key, T value, Function<? super V, ? extends T> loader )
+    {
+        register( key, value );
+    }
+
     public int getTimeToIdleSeconds( )
     {
         return timeToIdleSeconds;
@@ -72,4 +175,22 @@ public abstract class AbstractCache<V, T>
     {
         this.maxElementsOnDisk = maxElementsOnDisk;
     }
+
+    /**
+     * @since 3.0
+     */
+    public int getNegativeTimeToLiveSeconds( )
+    {
+        return negativeTimeToLiveSeconds;
+    }
+
+    /**
+     * Only effective, if the cache implements {@link #registerAbsent(Object)}.
+     *
+     * @since 3.0
+     */
+    public void setNegativeTimeToLiveSeconds( int negativeTimeToLiveSeconds )
+    {
+        this.negativeTimeToLiveSeconds = negativeTimeToLiveSeconds;
+    }
 }
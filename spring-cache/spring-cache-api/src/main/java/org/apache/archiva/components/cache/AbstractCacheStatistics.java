@@ -19,54 +19,179 @@ package org.apache.archiva.components.cache;
  * under the License.
  */
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
 /**
+ * Statistics backed by {@link LongAdder}s, so that the counters can be updated by concurrent threads
+ * without a lock and without contending on a single memory location.
+ * <p>
+ * The latency of the gets is only measured for a random sample of 1 of {@link #GET_SAMPLE_RATE} calls,
+ * to keep the cost of the clock off the hot path.
+ * </p>
+ *
  * @author Olivier Lamy
  */
 public abstract class AbstractCacheStatistics
     implements CacheStatistics
 {
+    /**
+     * @since 3.0
+     */
+    public static final int GET_SAMPLE_RATE = 8;
+
+    private final LongAdder cacheHits = new LongAdder( );
+
+    private final LongAdder cacheMiss = new LongAdder( );
+
+    private final LongAdder evictions = new LongAdder( );
+
+    private final LongAdder negativeHits = new LongAdder( );
+
+    private final LongAdder collected = new LongAdder( );
 
-    private long cacheHits;
+    private final LongAdder loadSuccess = new LongAdder( );
 
-    private long cacheMiss;
+    private final LongAdder loadFailure = new LongAdder( );
+
+    private final LatencyHistogram loadTime = new LatencyHistogram( );
+
+    private final LatencyHistogram getLatency = new LatencyHistogram( );
 
     public AbstractCacheStatistics( )
     {
-        this.cacheHits = 0;
-        this.cacheMiss = 0;
+        // noop
     }
 
     public long getCacheHits( )
     {
-        return this.cacheHits;
+        return this.cacheHits.sum( );
     }
 
     public long getCacheMiss( )
     {
-        return this.cacheMiss;
+        return this.cacheMiss.sum( );
     }
 
     public double getCacheHitRate( )
     {
-        return cacheHits == 0 && cacheMiss == 0 ? 0 : (double) cacheHits / (double) ( cacheHits + cacheMiss );
+        long hits = getCacheHits( );
+        long miss = getCacheMiss( );
+        return hits == 0 && miss == 0 ? 0 : (double) hits / (double) ( hits + miss );
     }
 
     public abstract long getSize( );
 
     public void hit( )
     {
-        this.cacheHits++;
+        this.cacheHits.increment( );
     }
 
     public void miss( )
     {
-        this.cacheMiss++;
+        this.cacheMiss.increment( );
+    }
+
+    /**
+     * @since 3.0
+     */
+    public void negativeHit( )
+    {
+        this.negativeHits.increment( );
+    }
+
+    /**
+     * @since 3.0
+     */
+    public void evicted( long count )
+    {
+        this.evictions.add( count );
+    }
+
+    /**
+     * @since 3.0
+     */
+    public void collected( long count )
+    {
+        this.collected.add( count );
+    }
+
+    /**
+     * @since 3.0
+     */
+    public void loadSucceeded( long nanos )
+    {
+        this.loadSuccess.increment( );
+        this.loadTime.record( nanos );
+    }
+
+    /**
+     * @since 3.0
+     */
+    public void loadFailed( long nanos )
+    {
+        this.loadFailure.increment( );
+        this.loadTime.record( nanos );
+    }
+
+    /**
+     * @return the start time of a sampled get to pass to {@link #getCompleted(long)}, or 0 if the get is not sampled
+     * @since 3.0
+     */
+    public long getStarted( )
+    {
+        return ( ThreadLocalRandom.current( ).nextInt( GET_SAMPLE_RATE ) == 0 ) ? System.nanoTime( ) : 0L;
+    }
+
+    /**
+     * @param start the value returned by {@link #getStarted()}
+     * @since 3.0
+     */
+    public void getCompleted( long start )
+    {
+        if ( start != 0L )
+        {
+            this.getLatency.record( System.nanoTime( ) - start );
+        }
+    }
+
+    /**
+     * Wraps a loader to record the load statistics.
+     *
+     * @since 3.0
+     */
+    public <V, T> Function<V, T> recordLoads( Function<V, T> loader )
+    {
+        return key -> {
+            long start = System.nanoTime( );
+            T value;
+            try
+            {
+                value = loader.apply( key );
+            }
+            catch ( RuntimeException | Error e )
+            {
+                loadFailed( System.nanoTime( ) - start );
+                throw e;
+            }
+            // a loader returning null found no value, it did not fail
+            loadSucceeded( System.nanoTime( ) - start );
+            return value;
+        };
     }
 
     public void clear( )
     {
-        this.cacheHits = 0;
-        this.cacheMiss = 0;
+        this.cacheHits.reset( );
+        this.cacheMiss.reset( );
+        this.evictions.reset( );
+        this.negativeHits.reset( );
+        this.collected.reset( );
+        this.loadSuccess.reset( );
+        this.loadFailure.reset( );
+        this.loadTime.reset( );
+        this.getLatency.reset( );
     }
 
     /**
@@ -76,4 +201,46 @@ public abstract class AbstractCacheStatistics
     {
         return 0;
     }
+
+    @Override
+    public long getEvictionCount( )
+    {
+        return this.evictions.sum( );
+    }
+
+    @Override
+    public long getNegativeHitCount( )
+    {
+        return this.negativeHits.sum( );
+    }
+
+    @Override
+    public long getCollectedCount( )
+    {
+        return this.collected.sum( );
+    }
+
+    @Override
+    public long getLoadSuccessCount( )
+    {
+        return this.loadSuccess.sum( );
+    }
+
+    @Override
+    public long getLoadFailureCount( )
+    {
+        return this.loadFailure.sum( );
+    }
+
+    @Override
+    public LatencyHistogram getLoadTimeHistogram( )
+    {
+        return this.loadTime;
+    }
+
+    @Override
+    public LatencyHistogram getGetLatencyHistogram( )
+    {
+        return this.getLatency;
+    }
 }
@@ -19,6 +19,18 @@ package org.apache.archiva.components.cache;
  * under the License.
  */
 
+import org.apache.archiva.components.cache.event.CacheEventListener;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
 /**
  * Cache interface.
  *
@@ -47,6 +59,65 @@ public interface Cache<V, T>
      */
     T get( V key );
 
+    /**
+     * Get the value of the specified key, loading it with the provided loader if it is not in the cache.
+     * <p/>
+     * Only one load per key is running at a time: concurrent callers missing the same key wait for
+     * the running load and get its result. A <code>null</code> value returned by the loader is not cached,
+     * unless negative caching is enabled: the absence of the key is cached then, see {@link #registerAbsent(Object)},
+     * and the following calls return <code>null</code> without calling the loader.
+     * <p/>
+     * The default implementation, for the caches written before 3.0, does not coalesce the loads: concurrent callers
+     * missing the same key each call the loader.
+     *
+     * @param key    the key to fetch the contents of.
+     * @param loader computes the value of a missing key, exceptions thrown by the loader are propagated
+     *               to all callers waiting for this load.
+     * @return the cached or loaded value of the key.
+     * @since 3.0
+     */
+    default T getOrLoad( V key, Function<? super V, ? extends T> loader )
+    {
+        T value = get( key );
+        if ( value == null )
+        {
+            value = loader.apply( key );
+            if ( value != null )
+            {
+                register( key, value );
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Asynchronous variant of {@link #getOrLoad(Object, Function)}, the loader runs on the provided executor.
+     *
+     * @param key      the key to fetch the contents of.
+     * @param loader   computes the value of a missing key.
+     * @param executor the executor running the loader.
+     * @return a future completed with the cached or loaded value, or completed exceptionally if the load failed.
+     * @since 3.0
+     */
+    default CompletableFuture<T> getOrLoadAsync( V key, Function<? super V, ? extends T> loader, Executor executor )
+    {
+        return CompletableFuture.supplyAsync( ( ) -> getOrLoad( key, loader ), executor );
+    }
+
+    /**
+     * Asynchronous variant of {@link #getOrLoad(Object, Function)}, the loader runs on the
+     * {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+     *
+     * @param key    the key to fetch the contents of.
+     * @param loader computes the value of a missing key.
+     * @return a future completed with the cached or loaded value, or completed exceptionally if the load failed.
+     * @since 3.0
+     */
+    default CompletableFuture<T> getOrLoadAsync( V key, Function<? super V, ? extends T> loader )
+    {
+        return getOrLoadAsync( key, loader, ForkJoinPool.commonPool( ) );
+    }
+
 
     /**
      * Put the specified value into the cache under the provided key.
@@ -69,6 +140,116 @@ public interface Cache<V, T>
      */
     void register( V key, T value );
 
+    /**
+     * Put the specified value into the cache, if the key contains no value yet.
+     * <p/>
+     * The check and the put are one atomic operation, except in the default implementation for the caches written
+     * before 3.0, which reads the key before writing it.
+     *
+     * @param key   the key to put the value into
+     * @param value the object to place into the cache.
+     * @return the value already contained for the key, or null if the value has been put into the cache.
+     * @since 3.0
+     */
+    default T putIfAbsent( V key, T value )
+    {
+        T existing = get( key );
+        if ( existing != null )
+        {
+            return existing;
+        }
+        register( key, value );
+        return null;
+    }
+
+    /**
+     * Replace the value of the specified key, if the key contains a value.
+     * <p/>
+     * The check and the put are one atomic operation, except in the default implementation for the caches written
+     * before 3.0, which reads the key before writing it.
+     *
+     * @param key   the key to replace the value of
+     * @param value the new object of the key.
+     * @return the replaced value, or null if the key contained no value and nothing was put into the cache.
+     * @since 3.0
+     */
+    default T replace( V key, T value )
+    {
+        if ( get( key ) == null )
+        {
+            return null;
+        }
+        return put( key, value );
+    }
+
+    /**
+     * Remove the specified key from the cache.
+     * <p/>
+     * This method is the optimized version of the {@link #remove(Object)} method, like {@link #register(Object, Object)}
+     * for {@link #put(Object, Object)}: it does not return the removed value, so it does not need to read it.
+     *
+     * @param key the key to the value to remove.
+     * @since 3.0
+     */
+    default void invalidate( V key )
+    {
+        remove( key );
+    }
+
+    /**
+     * Get the values of the specified keys, as one batch operation if supported by the underlying cache. The default
+     * implementation gets the keys one by one.
+     *
+     * @param keys the keys to fetch the contents of.
+     * @return the keys found in the cache mapped to their value, keys not found are not contained.
+     * @since 3.0
+     */
+    default Map<V, T> getAll( Collection<? extends V> keys )
+    {
+        Map<V, T> values = new HashMap<>( );
+        for ( V key : keys )
+        {
+            T value = get( key );
+            if ( value != null )
+            {
+                values.put( key, value );
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Put all the provided entries into the cache, as one batch operation if supported by the underlying cache. The
+     * default implementation registers the entries one by one.
+     * <p/>
+     * Like {@link #register(Object, Object)}, the previous values are not returned.
+     *
+     * @param entries the keys and values to put into the cache.
+     * @since 3.0
+     */
+    default void putAll( Map<? extends V, ? extends T> entries )
+    {
+        for ( Map.Entry<? extends V, ? extends T> entry : entries.entrySet( ) )
+        {
+            register( entry.getKey( ), entry.getValue( ) );
+        }
+    }
+
+    /**
+     * Remove the specified keys from the cache, as one batch operation if supported by the underlying cache. The
+     * default implementation invalidates the keys one by one.
+     *
+     * @param keys the keys to remove.
+     * @since 3.0
+     */
+    default void removeAll( Collection<? extends V> keys )
+    {
+        for ( V key : keys )
+        {
+            invalidate( key );
+        }
+    }
+
     /**
      * Remove the specified key and value from the cache.
      *
@@ -105,4 +286,85 @@ public interface Cache<V, T>
 
     void setMaxElementsOnDisk( int maxElementsOnDisk );
 
+    /**
+     * Caches the absence of a value for the key, e.g. after a lookup of the source found nothing. The absence is kept
+     * for {@link #getNegativeTimeToLiveSeconds()}, or until a value is stored for the key or the key is invalidated.
+     * {@link #get(Object)} returns <code>null</code> for an absent key and counts a negative hit instead of a miss.
+     * A cached value is not replaced by the absence. Does nothing if negative caching is disabled, which is the
+     * default implementation.
+     *
+     * @param key the key without value
+     * @since 3.0
+     */
+    default void registerAbsent( V key )
+    {
+        // noop
+    }
+
+    /**
+     * @param key the key to test
+     * @return true if the absence of a value is cached for the key
+     * @since 3.0
+     */
+    default boolean isAbsent( V key )
+    {
+        return false;
+    }
+
+    /**
+     * @return the time the absence of a value is cached, 0 if negative caching is disabled
+     * @since 3.0
+     */
+    default int getNegativeTimeToLiveSeconds( )
+    {
+        return 0;
+    }
+
+    /**
+     * Enables negative caching, if supported by the cache. The time should be shorter than the time to live of the
+     * values, as an absent key added to the source is only seen after the absence expired.
+     *
+     * @param negativeTimeToLiveSeconds the time the absence of a value is cached, 0 to disable negative caching
+     * @since 3.0
+     */
+    default void setNegativeTimeToLiveSeconds( int negativeTimeToLiveSeconds )
+    {
+        // noop
+    }
+
+    /**
+     * Lists the keys worth reloading after a restart, see {@link CacheSnapshot}. The order depends on the eviction
+     * policy of the cache, by recent access frequency or by recency. The default implementation returns no keys.
+     *
+     * @param limit the maximum number of keys
+     * @return the keys of the cached values, the hottest first
+     * @since 3.0
+     */
+    default List<V> getHottestKeys( int limit )
+    {
+        return Collections.emptyList( );
+    }
+
+    /**
+     * Registers a listener notified of the entries leaving the cache: removed, replaced, expired, evicted or
+     * collected. The default implementation ignores the listener, for the caches which don't report their
+     * removals: the hashmap and ehcache providers and the caches decorating them do.
+     *
+     * @param listener the listener
+     * @param async    true to notify the listener in a background thread, false in the thread removing the entry
+     * @since 3.0
+     */
+    default void registerEventListener( CacheEventListener<V, T> listener, boolean async )
+    {
+        // noop
+    }
+
+    /**
+     * @param listener a listener registered with {@link #registerEventListener(CacheEventListener, boolean)}
+     * @since 3.0
+     */
+    default void unregisterEventListener( CacheEventListener<V, T> listener )
+    {
+        // noop
+    }
 }
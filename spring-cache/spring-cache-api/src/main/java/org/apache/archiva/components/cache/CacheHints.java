@@ -19,6 +19,7 @@ package org.apache.archiva.components.cache;
  * under the License.
  */
 
+import org.apache.archiva.components.cache.serializer.Serializer;
 import org.apache.commons.lang3.CharSet;
 
 import java.io.File;
@@ -68,6 +69,20 @@ public class CacheHints
      */
     private int idleExpirationSeconds = 600;
 
+    /**
+     * The serializer of the keys stored outside of the java heap, the default one of the provider if null.
+     *
+     * @since 3.0
+     */
+    private Serializer<?> keySerializer;
+
+    /**
+     * The serializer of the values stored outside of the java heap, the default one of the provider if null.
+     *
+     * @since 3.0
+     */
+    private Serializer<?> valueSerializer;
+
     public CacheHints( )
     {
         super( );
@@ -141,4 +156,24 @@ public class CacheHints
     {
         this.overflowToDisk = overflowToDisk;
     }
+
+    public Serializer<?> getKeySerializer( )
+    {
+        return keySerializer;
+    }
+
+    public void setKeySerializer( Serializer<?> keySerializer )
+    {
+        this.keySerializer = keySerializer;
+    }
+
+    public Serializer<?> getValueSerializer( )
+    {
+        return valueSerializer;
+    }
+
+    public void setValueSerializer( Serializer<?> valueSerializer )
+    {
+        this.valueSerializer = valueSerializer;
+    }
 }
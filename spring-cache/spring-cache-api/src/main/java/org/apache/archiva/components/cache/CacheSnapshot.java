@@ -0,0 +1,218 @@
+package org.apache.archiva.components.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.serializer.JavaSerializer;
+import org.apache.archiva.components.cache.serializer.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * CacheSnapshot - keeps the hottest keys of a cache in a file, so that the cache can be warmed up after a restart
+ * by loading them again, instead of starting empty.
+ * <p>
+ * Only the keys are written, the values are reloaded from their source with a loader, as they may have changed
+ * meanwhile. The keys are serialized with the <code>keySerializer</code> and compressed. The file is replaced
+ * atomically, a missing or unreadable file restores no keys.
+ * </p>
+ * <pre>
+ * CacheSnapshot&lt;String&gt; snapshot = new CacheSnapshot&lt;&gt;( new File( dataDir, "artifacts.keys" ) );
+ * snapshot.write( cache.getHottestKeys( 1000 ) );
+ * // after the restart
+ * snapshot.warmUp( cache, artifactLoader, executor );
+ * </pre>
+ *
+ * @since 3.0
+ */
+public class CacheSnapshot<V>
+{
+    private static final Logger log = LoggerFactory.getLogger( CacheSnapshot.class );
+
+    private static final int MAGIC = 0x41435331;
+
+    private static final int VERSION = 1;
+
+    private final File file;
+
+    private final Serializer<V> keySerializer;
+
+    public CacheSnapshot( File file )
+    {
+        this( file, new JavaSerializer<>( ) );
+    }
+
+    public CacheSnapshot( File file, Serializer<V> keySerializer )
+    {
+        this.file = file;
+        this.keySerializer = keySerializer;
+    }
+
+    /**
+     * Replaces the snapshot with the given keys. Each write goes to its own temporary file in the directory of the
+     * snapshot, and the writes of this snapshot are serialized, the last one wins.
+     *
+     * @param keys the keys, the hottest first
+     * @throws IOException if the file could not be written, the previous snapshot is kept
+     */
+    public synchronized void write( Collection<? extends V> keys )
+        throws IOException
+    {
+        File directory = file.getAbsoluteFile( ).getParentFile( );
+        if ( directory != null && !directory.isDirectory( ) && !directory.mkdirs( ) )
+        {
+            throw new IOException( "Could not create the snapshot directory " + directory );
+        }
+        Path temp = Files.createTempFile( directory != null ? directory.toPath( ) : Paths.get( "" ),
+                                          file.getName( ), ".tmp" );
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(
+                new DeflaterOutputStream( new BufferedOutputStream( Files.newOutputStream( temp ) ) ) ))
+            {
+                out.writeInt( MAGIC );
+                out.writeByte( VERSION );
+                out.writeInt( keys.size( ) );
+                for ( V key : keys )
+                {
+                    byte[] bytes = keySerializer.serialize( key );
+                    out.writeInt( bytes.length );
+                    out.write( bytes );
+                }
+            }
+            try
+            {
+                Files.move( temp, file.toPath( ), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch ( AtomicMoveNotSupportedException e )
+            {
+                Files.move( temp, file.toPath( ), StandardCopyOption.REPLACE_EXISTING );
+            }
+        }
+        finally
+        {
+            // nothing left once moved
+            Files.deleteIfExists( temp );
+        }
+    }
+
+    /**
+     * @return the keys of the snapshot, the hottest first, or no keys if there is no snapshot
+     * @throws IOException if the snapshot could not be read
+     */
+    public List<V> read( )
+        throws IOException
+    {
+        if ( !file.isFile( ) )
+        {
+            return new ArrayList<>( );
+        }
+        try (DataInputStream in = new DataInputStream(
+            new InflaterInputStream( new BufferedInputStream( new FileInputStream( file ) ) ) ))
+        {
+            if ( in.readInt( ) != MAGIC || in.readByte( ) != VERSION )
+            {
+                throw new IOException( "Unknown snapshot format in " + file );
+            }
+            int count = in.readInt( );
+            List<V> keys = new ArrayList<>( Math.min( count, 10000 ) );
+            for ( int i = 0; i < count; i++ )
+            {
+                byte[] bytes = new byte[in.readInt( )];
+                in.readFully( bytes );
+                keys.add( keySerializer.deserialize( bytes ) );
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Loads the keys of the snapshot into the cache in parallel, with
+     * {@link Cache#getOrLoadAsync(Object, Function, Executor)}. Failed loads and an unreadable snapshot are logged,
+     * they don't fail the warm up.
+     *
+     * @param cache    the cache to warm up
+     * @param loader   loads the values of the keys
+     * @param executor runs the loads, its parallelism bounds the parallelism of the warm up
+     * @return completed with the number of values loaded, when all loads completed
+     */
+    public <T> CompletableFuture<Integer> warmUp( Cache<V, T> cache, Function<? super V, ? extends T> loader,
+                                                  Executor executor )
+    {
+        List<V> keys;
+        try
+        {
+            keys = read( );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            log.warn( "Could not read the cache snapshot {}, the cache is not warmed up: {}", file, e.getMessage( ) );
+            return CompletableFuture.completedFuture( 0 );
+        }
+        AtomicInteger loaded = new AtomicInteger( );
+        CompletableFuture<?>[] loads = new CompletableFuture<?>[keys.size( )];
+        for ( int i = 0; i < loads.length; i++ )
+        {
+            V key = keys.get( i );
+            loads[i] = cache.getOrLoadAsync( key, loader, executor ).handle( ( value, failure ) -> {
+                if ( failure != null )
+                {
+                    log.debug( "Could not warm up {}: {}", key, failure.getMessage( ) );
+                }
+                else if ( value != null )
+                {
+                    loaded.incrementAndGet( );
+                }
+                return null;
+            } );
+        }
+        return CompletableFuture.allOf( loads ).thenApply( done -> {
+            log.debug( "Warmed up {} of {} keys from {}", loaded.get( ), keys.size( ), file );
+            return loaded.get( );
+        } );
+    }
+
+    public File getFile( )
+    {
+        return file;
+    }
+}
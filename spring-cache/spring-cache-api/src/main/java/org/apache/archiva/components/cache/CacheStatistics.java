@@ -66,4 +66,95 @@ public interface CacheStatistics
      * @since 2.0
      */
     long getInMemorySize( );
+
+    /**
+     * Return the number of entries removed by the cache itself, because the cache was full or the entries
+     * expired.
+     *
+     * @return the number of evicted entries
+     * @since 3.0
+     */
+    default long getEvictionCount( )
+    {
+        return 0;
+    }
+
+    /**
+     * Return the number of lookups of keys whose absence is cached, see {@link Cache#registerAbsent(Object)}. They
+     * are neither counted as hits nor as misses.
+     *
+     * @return the number of negative hits
+     * @since 3.0
+     */
+    default long getNegativeHitCount( )
+    {
+        return 0;
+    }
+
+    /**
+     * Return the number of entries removed because the garbage collector reclaimed their key or value, by caches
+     * referencing them weakly or softly.
+     *
+     * @return the number of collected entries
+     * @since 3.0
+     */
+    default long getCollectedCount( )
+    {
+        return 0;
+    }
+
+    /**
+     * Return the number of entries the cache is sized for: its maximum size, or the size adapted to the workload by
+     * caches sizing themselves dynamically.
+     *
+     * @return the target number of entries, 0 if the cache is not bounded by a number of entries
+     * @since 3.0
+     */
+    default long getTargetSize( )
+    {
+        return 0;
+    }
+
+    /**
+     * Return the number of values loaded by {@link Cache#getOrLoad(Object, java.util.function.Function)}
+     * and {@link Cache#getOrLoadAsync(Object, java.util.function.Function)}.
+     *
+     * @return the number of loads that completed without an exception, including the loads returning null
+     * @since 3.0
+     */
+    default long getLoadSuccessCount( )
+    {
+        return 0;
+    }
+
+    /**
+     * @return the number of loads throwing an exception
+     * @since 3.0
+     */
+    default long getLoadFailureCount( )
+    {
+        return 0;
+    }
+
+    /**
+     * <b>can be not implemented by some caches implementation</b>, the histogram is empty then.
+     *
+     * @return the histogram of the durations of the loads, successful or not
+     * @since 3.0
+     */
+    default LatencyHistogram getLoadTimeHistogram( )
+    {
+        return LatencyHistogram.EMPTY;
+    }
+
+    /**
+     * <b>can be not implemented by some caches implementation</b>, the histogram is empty then.
+     *
+     * @return the histogram of the durations of {@link Cache#get(Object)}, may only contain a sample of the calls
+     * @since 3.0
+     */
+    default LatencyHistogram getGetLatencyHistogram( )
+    {
+        return LatencyHistogram.EMPTY;
+    }
 }
@@ -33,6 +33,13 @@ public class CacheableWrapper<T>
 
     private long storedTime;
 
+    /**
+     * Set while the value is reloaded in the background, the stale value is still served meanwhile.
+     *
+     * @since 3.0
+     */
+    private transient volatile boolean refreshing;
+
     public CacheableWrapper( T value, long storedTime )
     {
         this.value = value;
@@ -58,4 +65,35 @@ public class CacheableWrapper<T>
     {
         this.storedTime = storedTime;
     }
+
+    public boolean isRefreshing( )
+    {
+        return refreshing;
+    }
+
+    /**
+     * Marks the value as being refreshed.
+     *
+     * @return true, if the caller has to refresh the value, false if a refresh is already running.
+     * @since 3.0
+     */
+    public synchronized boolean startRefresh( )
+    {
+        if ( refreshing )
+        {
+            return false;
+        }
+        refreshing = true;
+        return true;
+    }
+
+    /**
+     * Resets the refresh state, e.g. after a failed refresh, so that the next access may retry it.
+     *
+     * @since 3.0
+     */
+    public synchronized void refreshFailed( )
+    {
+        refreshing = false;
+    }
 }
@@ -0,0 +1,100 @@
+package org.apache.archiva.components.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Expiry - computes the expiration of each entry of a cache, instead of a time to live and a time to idle shared by
+ * all the entries, e.g. to keep the metadata of releases longer than the metadata of snapshots.
+ * <p>
+ * The durations are relative to the creation, update or access of the entry. {@link #ETERNAL} keeps the entry until
+ * it is evicted, {@link Duration#ZERO} expires it right away. For the update and the access, <code>null</code>
+ * keeps the current expiration time. The methods are called on each write and read, they must be fast and must not
+ * access the cache.
+ * </p>
+ *
+ * @since 3.0
+ */
+public interface Expiry<V, T>
+{
+    /**
+     * The duration of the entries that never expire.
+     */
+    Duration ETERNAL = ChronoUnit.FOREVER.getDuration( );
+
+    /**
+     * @param key   the key of the new entry
+     * @param value the stored value
+     * @return the time the entry is kept, null or {@link #ETERNAL} for no expiration
+     */
+    Duration expireAfterCreate( V key, T value );
+
+    /**
+     * The default implementation handles the update like the creation of the entry.
+     *
+     * @param key      the key of the entry
+     * @param oldValue the replaced value
+     * @param newValue the stored value
+     * @return the time the entry is kept from now on, or null to keep its current expiration time
+     */
+    default Duration expireAfterUpdate( V key, T oldValue, T newValue )
+    {
+        return expireAfterCreate( key, newValue );
+    }
+
+    /**
+     * The default implementation keeps the expiration time on access.
+     *
+     * @param key   the key of the entry
+     * @param value the value read
+     * @return the time the entry is kept from now on, or null to keep its current expiration time
+     */
+    default Duration expireAfterAccess( V key, T value )
+    {
+        return null;
+    }
+
+    /**
+     * @param duration a duration returned by an expiry
+     * @return the duration in milliseconds, {@link Long#MAX_VALUE} for {@link #ETERNAL} or durations too long for
+     * a long, 0 for negative durations
+     */
+    static long toMillis( Duration duration )
+    {
+        if ( duration == null || ETERNAL.equals( duration ) )
+        {
+            return Long.MAX_VALUE;
+        }
+        if ( duration.isNegative( ) )
+        {
+            return 0;
+        }
+        try
+        {
+            return duration.toMillis( );
+        }
+        catch ( ArithmeticException e )
+        {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.apache.archiva.components.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram - histogram of durations in nanoseconds with a relative precision of 1/8.
+ * <p>
+ * Like a HdrHistogram, the durations are counted in buckets of exponentially growing size: each power of two
+ * is divided into 8 linear sub buckets, from 1 ns up to about 68 s; longer durations are counted in the last
+ * bucket. Each bucket is a {@link LongAdder}, so recording a duration does not allocate and scales with
+ * the number of recording threads.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_EXPONENT = 36;
+
+    private static final int BUCKETS = ( MAX_EXPONENT - SUB_BUCKET_BITS + 2 ) * SUB_BUCKETS;
+
+    /**
+     * The histogram of the caches not measuring the durations, it stays empty.
+     */
+    static final LatencyHistogram EMPTY = new LatencyHistogram( )
+    {
+        @Override
+        public void record( long nanos )
+        {
+            // noop
+        }
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    private final LongAdder count = new LongAdder( );
+
+    private final LongAdder total = new LongAdder( );
+
+    private final LongAccumulator max = new LongAccumulator( Math::max, 0 );
+
+    public LatencyHistogram( )
+    {
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            buckets[i] = new LongAdder( );
+        }
+    }
+
+    /**
+     * @param nanos the duration to record, negative durations are recorded as 0
+     */
+    public void record( long nanos )
+    {
+        long value = Math.max( nanos, 0 );
+        buckets[bucketIndex( value )].increment( );
+        count.increment( );
+        total.add( value );
+        max.accumulate( value );
+    }
+
+    /**
+     * @return the number of recorded durations
+     */
+    public long getCount( )
+    {
+        return count.sum( );
+    }
+
+    /**
+     * @return the mean of the recorded durations in nanoseconds, 0 if nothing is recorded
+     */
+    public double getMean( )
+    {
+        long n = count.sum( );
+        return n == 0 ? 0 : (double) total.sum( ) / n;
+    }
+
+    /**
+     * @return the longest recorded duration in nanoseconds
+     */
+    public long getMax( )
+    {
+        return max.get( );
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 100, e.g. 99.9
+     * @return the upper bound of the bucket containing the percentile in nanoseconds, 0 if nothing is recorded
+     */
+    public long getValueAtPercentile( double percentile )
+    {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            counts[i] = buckets[i].sum( );
+            n += counts[i];
+        }
+        if ( n == 0 )
+        {
+            return 0;
+        }
+        long rank = Math.max( 1, (long) Math.ceil( Math.min( percentile, 100.0 ) / 100.0 * n ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            seen += counts[i];
+            if ( seen >= rank )
+            {
+                return Math.min( upperBound( i ), getMax( ) );
+            }
+        }
+        return getMax( );
+    }
+
+    public void reset( )
+    {
+        for ( LongAdder bucket : buckets )
+        {
+            bucket.reset( );
+        }
+        count.reset( );
+        total.reset( );
+        max.reset( );
+    }
+
+    static int bucketIndex( long value )
+    {
+        if ( value < SUB_BUCKETS )
+        {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        if ( exponent > MAX_EXPONENT )
+        {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+        return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound( int index )
+    {
+        if ( index < SUB_BUCKETS )
+        {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return ( ( SUB_BUCKETS + subBucket + 1 ) << ( exponent - SUB_BUCKET_BITS ) ) - 1;
+    }
+}
@@ -0,0 +1,178 @@
+package org.apache.archiva.components.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * LoadCoalescer - implementation of {@link Cache#getOrLoad(Object, Function)} and
+ * {@link Cache#getOrLoadAsync(Object, Function, Executor)} for the cache providers.
+ * <p>
+ * There is at most one load in flight per key: callers missing the same key while it is loaded
+ * wait for the running load and share its result, instead of calling the loader themselves. The cache is
+ * peeked again before the loader is called, a load may have completed since the first lookup. The peek must not
+ * record statistics, the first lookup already counted the miss.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class LoadCoalescer<V, T>
+{
+    private final ConcurrentHashMap<V, CompletableFuture<T>> loads = new ConcurrentHashMap<>( );
+
+    /**
+     * @param lookup returns the cached value of a key, or null, counted as hit or miss
+     * @param peek   returns the cached value of a key, or null, without recording statistics
+     * @param store  stores a loaded value into the cache, not called for null values
+     */
+    public T getOrLoad( Function<V, T> lookup, Function<V, T> peek, BiConsumer<V, T> store, V key,
+                        Function<? super V, ? extends T> loader )
+    {
+        T value = lookup.apply( key );
+        if ( value != null )
+        {
+            return value;
+        }
+
+        CompletableFuture<T> load = new CompletableFuture<>( );
+        CompletableFuture<T> running = loads.putIfAbsent( key, load );
+        if ( running != null )
+        {
+            return join( running );
+        }
+
+        try
+        {
+            // a load which completed between the lookup and putIfAbsent already stored its value
+            value = peek.apply( key );
+            if ( value == null )
+            {
+                value = loader.apply( key );
+                if ( value != null )
+                {
+                    store.accept( key, value );
+                }
+            }
+            load.complete( value );
+            return value;
+        }
+        catch ( RuntimeException | Error e )
+        {
+            load.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            loads.remove( key, load );
+        }
+    }
+
+    /**
+     * @param lookup returns the cached value of a key, or null, counted as hit or miss
+     * @param peek   returns the cached value of a key, or null, without recording statistics
+     * @param store  stores a loaded value into the cache, not called for null values
+     */
+    public CompletableFuture<T> getOrLoadAsync( Function<V, T> lookup, Function<V, T> peek, BiConsumer<V, T> store,
+                                                V key, Function<? super V, ? extends T> loader, Executor executor )
+    {
+        T value = lookup.apply( key );
+        if ( value != null )
+        {
+            return CompletableFuture.completedFuture( value );
+        }
+
+        CompletableFuture<T> load = new CompletableFuture<>( );
+        CompletableFuture<T> running = loads.putIfAbsent( key, load );
+        if ( running != null )
+        {
+            return dependent( running );
+        }
+
+        try
+        {
+            executor.execute( ( ) -> {
+                try
+                {
+                    // a load which completed between the lookup and putIfAbsent already stored its value
+                    T loaded = peek.apply( key );
+                    if ( loaded == null )
+                    {
+                        loaded = loader.apply( key );
+                        if ( loaded != null )
+                        {
+                            store.accept( key, loaded );
+                        }
+                    }
+                    load.complete( loaded );
+                }
+                catch ( Throwable e )
+                {
+                    load.completeExceptionally( e );
+                }
+                finally
+                {
+                    loads.remove( key, load );
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            loads.remove( key, load );
+            load.completeExceptionally( e );
+        }
+        return dependent( load );
+    }
+
+    /**
+     * @return a future completed with the load, so a caller completing or cancelling its future doesn't
+     * affect the other callers waiting for the same load
+     */
+    private static <T> CompletableFuture<T> dependent( CompletableFuture<T> load )
+    {
+        return load.thenApply( Function.identity( ) );
+    }
+
+    private T join( CompletableFuture<T> load )
+    {
+        try
+        {
+            return load.join( );
+        }
+        catch ( CompletionException e )
+        {
+            // rethrow the loader failure as the loading caller saw it
+            if ( e.getCause( ) instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause( );
+            }
+            if ( e.getCause( ) instanceof Error )
+            {
+                throw (Error) e.getCause( );
+            }
+            throw e;
+        }
+    }
+}
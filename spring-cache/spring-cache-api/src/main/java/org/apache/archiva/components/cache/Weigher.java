@@ -0,0 +1,49 @@
+package org.apache.archiva.components.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Weigher - estimates the memory used by a cached entry, for the caches bounded by a maximum weight
+ * instead of a maximum number of entries.
+ * <p>
+ * The weight is computed once when the entry is stored, it must not change while the entry is cached.
+ * The unit of the weight is up to the application, usually bytes.
+ * </p>
+ *
+ * @since 3.0
+ */
+@FunctionalInterface
+public interface Weigher<V, T>
+{
+    /**
+     * @param key   the key of the entry
+     * @param value the cached value
+     * @return the weight of the entry, must not be negative
+     */
+    int weigh( V key, T value );
+
+    /**
+     * @return a weigher giving each entry the weight 1, so that the weight of the cache is its number of entries
+     */
+    static <V, T> Weigher<V, T> singleton( )
+    {
+        return ( key, value ) -> 1;
+    }
+}
@@ -0,0 +1,65 @@
+package org.apache.archiva.components.cache.event;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * An entry that left the cache.
+ *
+ * @since 3.0
+ */
+public final class CacheEvent<V, T>
+{
+    private final V key;
+
+    private final T value;
+
+    private final RemovalCause cause;
+
+    public CacheEvent( V key, T value, RemovalCause cause )
+    {
+        this.key = key;
+        this.value = value;
+        this.cause = cause;
+    }
+
+    public V getKey( )
+    {
+        return key;
+    }
+
+    /**
+     * @return the value removed from the cache, the old value if it was replaced, or null if it was collected
+     */
+    public T getValue( )
+    {
+        return value;
+    }
+
+    public RemovalCause getCause( )
+    {
+        return cause;
+    }
+
+    @Override
+    public String toString( )
+    {
+        return "CacheEvent{key=" + key + ", cause=" + cause + '}';
+    }
+}
@@ -0,0 +1,336 @@
+package org.apache.archiva.components.cache.event;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers the {@link CacheEvent}s of a cache to its listeners, used by the cache providers.
+ * <p>
+ * Synchronous listeners are called in the thread publishing the event. Asynchronous listeners are called by a
+ * single background thread, in the order of the events, through a queue bounded by <code>queueSize</code>. When
+ * the queue is full the publishing thread waits for room, which slows down the cache instead of losing or
+ * reordering the event. An <code>executor</code> can be set instead of the background thread, the order of the
+ * events is then up to the executor and the events it rejects are delivered in the publishing thread.
+ * </p>
+ * <p>
+ * A cache holding a lock while it removes entries records the events with {@link #publishLater(Object, Object,
+ * RemovalCause)} and calls {@link #publishPending()} once the lock is released, so the listeners never run with
+ * the lock of the cache and the events keep the order of the operations.
+ * </p>
+ * Exceptions thrown by the listeners are logged and do not reach the cache operation.
+ *
+ * @since 3.0
+ */
+public class CacheEventDispatcher<V, T>
+{
+    private static final Logger log = LoggerFactory.getLogger( CacheEventDispatcher.class );
+
+    private static final class Registration<V, T>
+    {
+        final CacheEventListener<V, T> listener;
+
+        final boolean async;
+
+        Registration( CacheEventListener<V, T> listener, boolean async )
+        {
+            this.listener = listener;
+            this.async = async;
+        }
+    }
+
+    private final List<Registration<V, T>> listeners = new CopyOnWriteArrayList<>( );
+
+    private int queueSize = 1000;
+
+    private Executor executor;
+
+    private ThreadPoolExecutor defaultExecutor;
+
+    /**
+     * the free places of the queue of the default executor, the publishing threads wait for one
+     */
+    private Semaphore room;
+
+    /**
+     * the thread of the default executor, it never waits for room in its own queue, its events may exceed the
+     * <code>queueSize</code>
+     */
+    private volatile Thread eventThread;
+
+    /**
+     * the events recorded by {@link #publishLater(Object, Object, RemovalCause)}, in the order of the operations
+     */
+    private final ConcurrentLinkedQueue<CacheEvent<V, T>> pending = new ConcurrentLinkedQueue<>( );
+
+    /**
+     * held while the pending events are published, so they reach the listeners in their order
+     */
+    private final ReentrantLock publishLock = new ReentrantLock( );
+
+    private final LongAdder published = new LongAdder( );
+
+    private final LongAdder failures = new LongAdder( );
+
+    public void register( CacheEventListener<V, T> listener, boolean async )
+    {
+        listeners.add( new Registration<>( listener, async ) );
+    }
+
+    /**
+     * @return true if the listener was registered
+     */
+    public boolean unregister( CacheEventListener<V, T> listener )
+    {
+        return listeners.removeIf( registration -> registration.listener == listener );
+    }
+
+    /**
+     * @return true if an event would reach a listener, so the caches can skip building events nobody receives
+     */
+    public boolean hasListeners( )
+    {
+        return !listeners.isEmpty( );
+    }
+
+    /**
+     * @param key   the key of the entry that left the cache
+     * @param value the removed value, the old value if it was replaced
+     * @param cause the reason of the removal
+     */
+    public void publish( V key, T value, RemovalCause cause )
+    {
+        if ( listeners.isEmpty( ) )
+        {
+            return;
+        }
+        publish( new CacheEvent<>( key, value, cause ) );
+    }
+
+    /**
+     * Records an event to publish with {@link #publishPending()}, to be called while the cache holds the lock of
+     * the operation removing the entry.
+     *
+     * @param key   the key of the entry that left the cache
+     * @param value the removed value, the old value if it was replaced
+     * @param cause the reason of the removal
+     */
+    public void publishLater( V key, T value, RemovalCause cause )
+    {
+        if ( listeners.isEmpty( ) )
+        {
+            return;
+        }
+        pending.offer( new CacheEvent<>( key, value, cause ) );
+    }
+
+    /**
+     * Publishes the events recorded by {@link #publishLater(Object, Object, RemovalCause)}, in their order. Must be
+     * called without the lock held while recording the events. The events recorded by other threads may be
+     * published too.
+     */
+    public void publishPending( )
+    {
+        while ( !pending.isEmpty( ) )
+        {
+            if ( Thread.currentThread( ) == eventThread )
+            {
+                // the publishing thread may wait for room in the queue of this thread, the events are left to it
+                if ( !publishLock.tryLock( ) )
+                {
+                    return;
+                }
+            }
+            else
+            {
+                publishLock.lock( );
+            }
+            try
+            {
+                CacheEvent<V, T> event;
+                while ( ( event = pending.poll( ) ) != null )
+                {
+                    publish( event );
+                }
+            }
+            finally
+            {
+                publishLock.unlock( );
+            }
+        }
+    }
+
+    private void publish( CacheEvent<V, T> event )
+    {
+        published.increment( );
+        for ( Registration<V, T> registration : listeners )
+        {
+            if ( registration.async )
+            {
+                deliverAsync( registration.listener, event );
+            }
+            else
+            {
+                deliver( registration.listener, event );
+            }
+        }
+    }
+
+    private void deliverAsync( CacheEventListener<V, T> listener, CacheEvent<V, T> event )
+    {
+        Executor asyncExecutor = asyncExecutor( );
+        // the background thread publishing the events of its listeners doesn't wait for itself
+        boolean queued = asyncExecutor != executor && Thread.currentThread( ) != eventThread;
+        if ( queued )
+        {
+            room.acquireUninterruptibly( );
+        }
+        try
+        {
+            asyncExecutor.execute( ( ) -> {
+                try
+                {
+                    deliver( listener, event );
+                }
+                finally
+                {
+                    if ( queued )
+                    {
+                        room.release( );
+                    }
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            if ( queued )
+            {
+                room.release( );
+            }
+            // the executor is shut down or rejects the event
+            deliver( listener, event );
+        }
+    }
+
+    private void deliver( CacheEventListener<V, T> listener, CacheEvent<V, T> event )
+    {
+        try
+        {
+            listener.onEvent( event );
+        }
+        catch ( RuntimeException e )
+        {
+            failures.increment( );
+            log.warn( "The listener {} failed on {}: {}", listener, event, e.getMessage( ), e );
+        }
+    }
+
+    private synchronized Executor asyncExecutor( )
+    {
+        if ( executor != null )
+        {
+            return executor;
+        }
+        if ( defaultExecutor == null )
+        {
+            if ( room == null )
+            {
+                room = new Semaphore( queueSize );
+            }
+            defaultExecutor =
+                new ThreadPoolExecutor( 1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>( ), r -> {
+                    Thread thread = new Thread( r, "archiva-cache-events" );
+                    thread.setDaemon( true );
+                    eventThread = thread;
+                    return thread;
+                } );
+            // the thread of an idle cache stops
+            defaultExecutor.allowCoreThreadTimeOut( true );
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Stops the background thread once the queued events are delivered. Later events start it again.
+     */
+    public synchronized void close( )
+    {
+        if ( defaultExecutor != null )
+        {
+            defaultExecutor.shutdown( );
+            defaultExecutor = null;
+        }
+    }
+
+    /**
+     * @return the number of events published to at least one listener
+     */
+    public long getPublishedCount( )
+    {
+        return published.sum( );
+    }
+
+    /**
+     * @return the number of exceptions thrown by the listeners
+     */
+    public long getFailureCount( )
+    {
+        return failures.sum( );
+    }
+
+    public int getQueueSize( )
+    {
+        return queueSize;
+    }
+
+    /**
+     * @param queueSize the maximum number of events waiting for the background thread
+     */
+    public void setQueueSize( int queueSize )
+    {
+        this.queueSize = queueSize;
+    }
+
+    public Executor getExecutor( )
+    {
+        return executor;
+    }
+
+    /**
+     * @param executor delivers the events of the asynchronous listeners instead of the background thread
+     */
+    public void setExecutor( Executor executor )
+    {
+        this.executor = executor;
+    }
+}
@@ -0,0 +1,38 @@
+package org.apache.archiva.components.cache.event;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Notified of the entries leaving a cache, to release the resources associated with them or to watch the eviction
+ * rate. Registered with {@link org.apache.archiva.components.cache.Cache#registerEventListener(CacheEventListener,
+ * boolean)}.
+ *
+ * @since 3.0
+ */
+public interface CacheEventListener<V, T>
+{
+    /**
+     * A synchronous listener is called in the thread removing the entry, possibly while the cache is locked: it
+     * must be fast and must not access the cache.
+     *
+     * @param event the entry that left the cache
+     */
+    void onEvent( CacheEvent<V, T> event );
+}
@@ -0,0 +1,61 @@
+package org.apache.archiva.components.cache.event;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * The reason an entry left the cache, reported by a {@link CacheEvent}.
+ *
+ * @since 3.0
+ */
+public enum RemovalCause
+{
+    /**
+     * The entry was removed or invalidated, or the cache was cleared.
+     */
+    EXPLICIT,
+
+    /**
+     * The value was replaced by a new value for the same key.
+     */
+    REPLACED,
+
+    /**
+     * The entry reached its expiration time.
+     */
+    EXPIRED,
+
+    /**
+     * The entry was evicted to keep the cache within its size or weight limit.
+     */
+    SIZE,
+
+    /**
+     * The value was reclaimed by the garbage collector.
+     */
+    COLLECTED;
+
+    /**
+     * @return true if the cache removed the entry by itself, false if it was removed or replaced by the application
+     */
+    public boolean wasEvicted( )
+    {
+        return this != EXPLICIT && this != REPLACED;
+    }
+}
@@ -39,4 +39,16 @@ public interface CacheCreator<K,V>
      * @throws CacheException if there was a cache creation error.
      */
     public Cache<K,V> createCache( CacheHints hints, Class<K> keyType, Class<V> valueType ) throws CacheException;
+
+    /**
+     * Releases the resources of a cache created by this creator, called when the {@link CacheFactory} destroys it.
+     * The default implementation does nothing.
+     *
+     * @param cache the cache to dispose
+     * @since 3.0
+     */
+    default void disposeCache( Cache<K,V> cache )
+    {
+        // noop
+    }
 }
@@ -22,19 +22,40 @@ package org.apache.archiva.components.cache.factory;
 import org.apache.archiva.components.cache.Cache;
 import org.apache.archiva.components.cache.CacheException;
 import org.apache.archiva.components.cache.CacheHints;
+import org.apache.archiva.components.cache.CacheStatistics;
 import org.apache.archiva.components.cache.impl.NoCacheCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * CacheFactory - dynamic cache creation (and tracking) facility for non-plexus objects to use.
+ * <p>
+ * The factory holds one cache per id: concurrent calls of {@link #getCache(String, Class, Class, CacheHints)} for the
+ * same id create the cache once and return the same instance, the lookup of existing caches doesn't lock. The caches
+ * are disposed by {@link #destroyCache(String)}, and by {@link #shutdown()}, which the application calls when it
+ * stops, e.g. as the destroy method of a Spring bean:
+ * </p>
+ * <pre>
+ * &lt;bean class="org.apache.archiva.components.cache.factory.CacheFactory" factory-method="getInstance"
+ *       destroy-method="shutdown"/&gt;
+ * </pre>
  *
  * @author <a href="mailto:joakim@erdfelt.com">Joakim Erdfelt</a>
  */
@@ -47,16 +68,31 @@ public class CacheFactory
         static CacheFactory instance = new CacheFactory( );
     }
 
-    private static Map caches;
+    private final ConcurrentHashMap<String, Cache<?, ?>> caches = new ConcurrentHashMap<>( );
+
+    /**
+     * the caches being created by id, the callers asking for a cache being created wait for it
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Cache<?, ?>>> creations = new ConcurrentHashMap<>( );
+
+    /**
+     * the ids of the caches the current thread is creating, a creator asking for its own cache would wait forever
+     */
+    private final ThreadLocal<Set<String>> creating = ThreadLocal.withInitial( HashSet::new );
 
     private static CacheCreator creator;
 
+    /**
+     * the listeners and the caches they were notified about, guarded by the listeners
+     */
+    private final List<CacheFactoryListener> listeners = new ArrayList<>( );
+
+    private final Map<String, Cache<?, ?>> announced = new HashMap<>( );
+
     private Logger logger = LoggerFactory.getLogger( getClass( ) );
 
     private CacheFactory( )
     {
-        caches = new HashMap( );
-
         try
         {
             ClassLoader classLoader = this.getClass( ).getClassLoader( );
@@ -114,29 +150,240 @@ public class CacheFactory
         CacheFactory.creator = creator;
     }
 
+    /**
+     * Adds a listener, which is notified about the caches created and destroyed by this factory. The listener is
+     * called for the already existing caches right away.
+     *
+     * @param listener the listener
+     * @since 3.0
+     */
+    public void addCacheFactoryListener( CacheFactoryListener listener )
+    {
+        synchronized ( listeners )
+        {
+            listeners.add( listener );
+            for ( Map.Entry<String, Cache<?, ?>> entry : announced.entrySet( ) )
+            {
+                listener.cacheCreated( entry.getKey( ), entry.getValue( ) );
+            }
+        }
+    }
+
+    /**
+     * @param listener the listener to remove
+     * @since 3.0
+     */
+    public void removeCacheFactoryListener( CacheFactoryListener listener )
+    {
+        synchronized ( listeners )
+        {
+            listeners.remove( listener );
+        }
+    }
+
+    /**
+     * Returns the cache with the given id, creating it if it doesn't exist yet.
+     *
+     * @param hints the settings of the cache to create, the defaults if null; ignored if the cache exists
+     * @throws CacheException if the cache could not be created, or if the creator of the cache asks for the cache
+     *                        it is creating
+     */
     public <K,V> Cache<K,V> getCache( String id, Class<K> keyType, Class<V> valueType, CacheHints hints )
         throws CacheException
     {
-        if ( creator == null )
+        CacheCreator cacheCreator = creator;
+        if ( cacheCreator == null )
         {
             return new NoCacheCache( );
         }
 
-        if ( caches.containsKey( id ) )
+        Cache<K,V> cache = (Cache<K,V>) caches.get( id );
+        if ( cache != null )
         {
-            return (Cache<K,V>) caches.get( id );
+            return cache;
         }
 
-        if ( hints == null )
+        CacheHints cacheHints = hints;
+        if ( cacheHints == null )
         {
             // Setup some defaults.
-            hints = new CacheHints( );
-            hints.setName( id );
+            cacheHints = new CacheHints( );
+            cacheHints.setName( id );
+        }
+
+        Set<String> creatingIds = creating.get( );
+        if ( creatingIds.contains( id ) )
+        {
+            throw new CacheException( "The creator of the cache " + id + " asked for the cache it is creating" );
+        }
+
+        CompletableFuture<Cache<?, ?>> creation = new CompletableFuture<>( );
+        CompletableFuture<Cache<?, ?>> running = creations.putIfAbsent( id, creation );
+        if ( running != null )
+        {
+            return (Cache<K,V>) join( running );
+        }
+
+        creatingIds.add( id );
+        try
+        {
+            // created by a creation which completed between the lookup and putIfAbsent
+            cache = (Cache<K,V>) caches.get( id );
+            if ( cache == null )
+            {
+                cache = cacheCreator.createCache( cacheHints, keyType, valueType );
+                caches.put( id, cache );
+                announce( id, cache );
+            }
+            creation.complete( cache );
+            return cache;
+        }
+        catch ( CacheException | RuntimeException | Error e )
+        {
+            creation.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            creatingIds.remove( id );
+            if ( creatingIds.isEmpty( ) )
+            {
+                creating.remove( );
+            }
+            creations.remove( id, creation );
+        }
+    }
+
+    private void announce( String id, Cache<?, ?> cache )
+    {
+        synchronized ( listeners )
+        {
+            // unless it was destroyed already
+            if ( caches.get( id ) == cache )
+            {
+                announced.put( id, cache );
+                for ( CacheFactoryListener listener : listeners )
+                {
+                    listener.cacheCreated( id, cache );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the cache created by another caller, the failure of its creation is rethrown
+     */
+    private Cache<?, ?> join( CompletableFuture<Cache<?, ?>> creation )
+        throws CacheException
+    {
+        try
+        {
+            return creation.join( );
+        }
+        catch ( CompletionException e )
+        {
+            Throwable cause = e.getCause( );
+            if ( cause instanceof CacheException )
+            {
+                throw (CacheException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Removes a cache from the factory and disposes it. A later call of
+     * {@link #getCache(String, Class, Class, CacheHints)} creates a new cache.
+     *
+     * @param id the id of the cache
+     * @return true if the cache existed
+     * @since 3.0
+     */
+    public boolean destroyCache( String id )
+    {
+        Cache<?, ?> cache = caches.remove( id );
+        if ( cache == null )
+        {
+            return false;
+        }
+
+        synchronized ( listeners )
+        {
+            if ( announced.remove( id, cache ) )
+            {
+                for ( CacheFactoryListener listener : listeners )
+                {
+                    listener.cacheDestroyed( id, cache );
+                }
+            }
+        }
+
+        CacheCreator cacheCreator = creator;
+        if ( cacheCreator != null )
+        {
+            try
+            {
+                cacheCreator.disposeCache( cache );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to dispose the cache {}: {}", id, e.getMessage( ), e );
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Destroys all caches of the factory, to be called when the application stops.
+     *
+     * @since 3.0
+     */
+    @PreDestroy
+    public void shutdown( )
+    {
+        for ( String id : new ArrayList<>( caches.keySet( ) ) )
+        {
+            destroyCache( id );
         }
+    }
 
-        Cache<K,V> cache = CacheFactory.creator.createCache( hints, keyType, valueType );
+    /**
+     * @return the ids of the existing caches
+     * @since 3.0
+     */
+    public Set<String> getCacheIds( )
+    {
+        return Collections.unmodifiableSet( caches.keySet( ) );
+    }
 
-        caches.put( id, cache );
-        return cache;
+    /**
+     * @return the existing caches by id
+     * @since 3.0
+     */
+    public Map<String, Cache<?, ?>> getCaches( )
+    {
+        return Collections.unmodifiableMap( caches );
+    }
+
+    /**
+     * @return the statistics of the existing caches by id
+     * @since 3.0
+     */
+    public Map<String, CacheStatistics> getStatistics( )
+    {
+        Map<String, CacheStatistics> statistics = new LinkedHashMap<>( );
+        for ( Map.Entry<String, Cache<?, ?>> entry : caches.entrySet( ) )
+        {
+            statistics.put( entry.getKey( ), entry.getValue( ).getStatistics( ) );
+        }
+        return statistics;
     }
 }
@@ -0,0 +1,51 @@
+package org.apache.archiva.components.cache.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.Cache;
+
+/**
+ * Notified by the {@link CacheFactory} about the caches it creates and destroys.
+ *
+ * @since 3.0
+ */
+public interface CacheFactoryListener
+{
+    /**
+     * Called after the factory created a cache, and for every already existing cache when the
+     * listener is added.
+     *
+     * @param id    the id of the cache
+     * @param cache the cache
+     */
+    void cacheCreated( String id, Cache<?, ?> cache );
+
+    /**
+     * Called after the factory removed a cache, before the cache is disposed. The default implementation does
+     * nothing.
+     *
+     * @param id    the id of the cache
+     * @param cache the cache
+     */
+    default void cacheDestroyed( String id, Cache<?, ?> cache )
+    {
+        // noop
+    }
+}
@@ -0,0 +1,768 @@
+package org.apache.archiva.components.cache.impl;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.AbstractCache;
+import org.apache.archiva.components.cache.AbstractCacheStatistics;
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheStatistics;
+import org.apache.archiva.components.cache.event.CacheEvent;
+import org.apache.archiva.components.cache.event.CacheEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * NearCache - a two level cache: a small, bounded, concurrent on-heap near cache (L1) in front of another
+ * cache provider (L2), the backing cache.
+ * <p>
+ * The near cache holds the values as returned by the backing cache, so hits don't pay the cost of the tiers
+ * of the backing cache, like the deserialization of values stored on disk or off-heap. Misses of the near
+ * cache are read from the backing cache and kept in the near cache. Writes invalidate the near cache, go through
+ * to the backing cache and then update the near cache, unless other writes ran concurrently. Values are never
+ * cached in the near cache only.
+ * </p>
+ * <p>
+ * The near cache is bounded to <code>nearCacheMaxSize</code> entries, the entries to evict are chosen with
+ * the CLOCK algorithm (second chance FIFO), which doesn't need a lock on reads. The near cache listens to the
+ * events of the backing cache (see {@link Cache#registerEventListener(CacheEventListener, boolean)}): the entries
+ * expired, evicted, removed or replaced in the backing cache are dropped from the near cache. For the backing caches
+ * which don't report their events, <code>nearCacheTimeToLiveSeconds</code> bounds the time a value is served from
+ * the near cache. It defaults to the time to live or idle of the backing cache.
+ * </p>
+ * <p>
+ * {@link #getStatistics()} counts the hits of both levels, {@link #getNearCacheStatistics()} the hits of the near
+ * cache and the backing cache keeps its own statistics.
+ * </p>
+ * <pre>
+ * &lt;bean name="cache#near" class="org.apache.archiva.components.cache.impl.NearCache"&gt;
+ *   &lt;property name="backingCache" ref="cache#ehcache"/&gt;
+ *   &lt;property name="nearCacheMaxSize" value="1000"/&gt;
+ *   &lt;property name="nearCacheTimeToLiveSeconds" value="60"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @since 3.0
+ */
+public class NearCache<V, T>
+    extends AbstractCache<V, T>
+{
+    private static final class NearEntry<V, T>
+    {
+        final V key;
+
+        final T value;
+
+        final long expirationTime;
+
+        /**
+         * the CLOCK reference bit, set by the hits
+         */
+        volatile boolean referenced;
+
+        NearEntry( V key, T value, long expirationTime )
+        {
+            this.key = key;
+            this.value = value;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    class NearStats
+        extends AbstractCacheStatistics
+    {
+        @Override
+        public long getSize( )
+        {
+            return nearEntries.size( );
+        }
+
+        @Override
+        public long getInMemorySize( )
+        {
+            return nearEntries.size( );
+        }
+    }
+
+    class Stats
+        extends AbstractCacheStatistics
+    {
+        @Override
+        public long getSize( )
+        {
+            return backingCache.getStatistics( ).getSize( );
+        }
+
+        @Override
+        public long getInMemorySize( )
+        {
+            return backingCache.getStatistics( ).getInMemorySize( );
+        }
+
+        @Override
+        public long getEvictionCount( )
+        {
+            return backingCache.getStatistics( ).getEvictionCount( );
+        }
+
+        @Override
+        public void clear( )
+        {
+            super.clear( );
+            nearStats.clear( );
+            backingCache.getStatistics( ).clear( );
+        }
+    }
+
+    private Cache<V, T> backingCache;
+
+    private int nearCacheMaxSize = 1000;
+
+    private int nearCacheTimeToLiveSeconds = 0;
+
+    private final ConcurrentHashMap<V, NearEntry<V, T>> nearEntries = new ConcurrentHashMap<>( );
+
+    /**
+     * the CLOCK of the near cache entries, may contain entries which were already replaced or removed
+     */
+    private final ConcurrentLinkedQueue<NearEntry<V, T>> clock = new ConcurrentLinkedQueue<>( );
+
+    private final AtomicInteger clockSize = new AtomicInteger( );
+
+    private final ReentrantLock evictionLock = new ReentrantLock( );
+
+    /**
+     * incremented at the start and at the end of every write, a value read from the backing cache is only kept in
+     * the near cache, if no write happened meanwhile, it could be stale otherwise
+     */
+    private final AtomicLong writes = new AtomicLong( );
+
+    /**
+     * the number of writes to the backing cache in progress, the order in which concurrent writes reach the
+     * backing cache is unknown
+     */
+    private final AtomicInteger activeWrites = new AtomicInteger( );
+
+    private final NearStats nearStats = new NearStats( );
+
+    private final Stats stats = new Stats( );
+
+    /**
+     * drops the entries leaving the backing cache from the near cache, notified synchronously so the near cache
+     * doesn't serve them afterwards
+     */
+    private final CacheEventListener<V, T> backingListener = this::onBackingEvent;
+
+    public NearCache( )
+    {
+        // noop
+    }
+
+    public NearCache( Cache<V, T> backingCache )
+    {
+        setBackingCache( backingCache );
+    }
+
+    public boolean hasKey( V key )
+    {
+        return getNear( key ) != null || backingCache.hasKey( key );
+    }
+
+    public T get( V key )
+    {
+        long start = stats.getStarted( );
+        try
+        {
+            NearEntry<V, T> entry = getNear( key );
+            if ( entry != null )
+            {
+                entry.referenced = true;
+                nearStats.hit( );
+                stats.hit( );
+                return entry.value;
+            }
+            nearStats.miss( );
+
+            long generation = writes.get( );
+            T value = backingCache.get( key );
+            if ( value == null )
+            {
+                stats.miss( );
+                return null;
+            }
+            stats.hit( );
+            fillNear( key, value, generation );
+            return value;
+        }
+        finally
+        {
+            stats.getCompleted( start );
+        }
+    }
+
+    /**
+     * The statistics of this cache record nothing, the backing cache counts the lookup in its own statistics.
+     */
+    @Override
+    protected T peek( V key )
+    {
+        NearEntry<V, T> entry = getNear( key );
+        return entry != null ? entry.value : backingCache.get( key );
+    }
+
+    @Override
+    public Map<V, T> getAll( Collection<? extends V> keys )
+    {
+        Map<V, T> values = new HashMap<>( );
+        List<V> missing = new ArrayList<>( );
+        for ( V key : keys )
+        {
+            NearEntry<V, T> entry = getNear( key );
+            if ( entry != null )
+            {
+                entry.referenced = true;
+                nearStats.hit( );
+                stats.hit( );
+                values.put( key, entry.value );
+            }
+            else
+            {
+                nearStats.miss( );
+                missing.add( key );
+            }
+        }
+        if ( !missing.isEmpty( ) )
+        {
+            long generation = writes.get( );
+            Map<V, T> loaded = backingCache.getAll( missing );
+            for ( Map.Entry<V, T> entry : loaded.entrySet( ) )
+            {
+                stats.hit( );
+                fillNear( entry.getKey( ), entry.getValue( ), generation );
+            }
+            for ( int i = loaded.size( ); i < missing.size( ); i++ )
+            {
+                stats.miss( );
+            }
+            values.putAll( loaded );
+        }
+        return values;
+    }
+
+    public T put( V key, T value )
+    {
+        long generation = beginWrite( Collections.singleton( key ) );
+        T written = null;
+        try
+        {
+            T previous = backingCache.put( key, value );
+            written = value;
+            return previous;
+        }
+        finally
+        {
+            endWrite( key, written, generation );
+        }
+    }
+
+    public void register( V key, T value )
+    {
+        long generation = beginWrite( Collections.singleton( key ) );
+        T written = null;
+        try
+        {
+            backingCache.register( key, value );
+            written = value;
+        }
+        finally
+        {
+            endWrite( key, written, generation );
+        }
+    }
+
+    public T putIfAbsent( V key, T value )
+    {
+        long generation = beginWrite( Collections.singleton( key ) );
+        T written = null;
+        try
+        {
+            T previous = backingCache.putIfAbsent( key, value );
+            if ( previous == null )
+            {
+                written = value;
+            }
+            return previous;
+        }
+        finally
+        {
+            endWrite( key, written, generation );
+        }
+    }
+
+    public T replace( V key, T value )
+    {
+        long generation = beginWrite( Collections.singleton( key ) );
+        T written = null;
+        try
+        {
+            T previous = backingCache.replace( key, value );
+            if ( previous != null )
+            {
+                written = value;
+            }
+            return previous;
+        }
+        finally
+        {
+            endWrite( key, written, generation );
+        }
+    }
+
+    @Override
+    public void putAll( Map<? extends V, ? extends T> entries )
+    {
+        long generation = beginWrite( entries.keySet( ) );
+        Map<? extends V, ? extends T> written = Collections.emptyMap( );
+        try
+        {
+            backingCache.putAll( entries );
+            written = entries;
+        }
+        finally
+        {
+            endWrites( written, generation );
+        }
+    }
+
+    public T remove( V key )
+    {
+        long generation = beginWrite( Collections.singleton( key ) );
+        try
+        {
+            return backingCache.remove( key );
+        }
+        finally
+        {
+            endWrite( key, null, generation );
+        }
+    }
+
+    public void invalidate( V key )
+    {
+        long generation = beginWrite( Collections.singleton( key ) );
+        try
+        {
+            backingCache.invalidate( key );
+        }
+        finally
+        {
+            endWrite( key, null, generation );
+        }
+    }
+
+    @Override
+    public void removeAll( Collection<? extends V> keys )
+    {
+        long generation = beginWrite( keys );
+        try
+        {
+            backingCache.removeAll( keys );
+        }
+        finally
+        {
+            endWrites( Collections.emptyMap( ), generation );
+        }
+    }
+
+    public void clear( )
+    {
+        backingCache.clear( );
+        clearNearCache( );
+    }
+
+    /**
+     * Removes all entries from the near cache, the backing cache is left unchanged.
+     */
+    public void clearNearCache( )
+    {
+        writes.incrementAndGet( );
+        nearEntries.clear( );
+    }
+
+    public CacheStatistics getStatistics( )
+    {
+        return stats;
+    }
+
+    /**
+     * @return the statistics of the near cache (L1), the statistics of the backing cache (L2) are the ones
+     * of {@link #getBackingCache()}
+     */
+    public CacheStatistics getNearCacheStatistics( )
+    {
+        return nearStats;
+    }
+
+    /**
+     * @return the entry of the near cache, null if it's absent or expired
+     */
+    private NearEntry<V, T> getNear( V key )
+    {
+        NearEntry<V, T> entry = nearEntries.get( key );
+        if ( entry != null && entry.expirationTime <= System.currentTimeMillis( ) )
+        {
+            nearEntries.remove( key, entry );
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Keeps a value read from the backing cache, unless a write started or ended since the read started, or is
+     * still in progress.
+     *
+     * @param generation the number of writes before the read
+     */
+    private void fillNear( V key, T value, long generation )
+    {
+        if ( activeWrites.get( ) != 0 )
+        {
+            return;
+        }
+        NearEntry<V, T> entry = newEntry( key, value );
+        if ( nearEntries.putIfAbsent( key, entry ) == null )
+        {
+            if ( writes.get( ) != generation || activeWrites.get( ) != 0 )
+            {
+                // a write may have happened between the read of the backing cache and now
+                nearEntries.remove( key, entry );
+                return;
+            }
+            enqueue( entry );
+        }
+    }
+
+    /**
+     * Starts a write to the backing cache: the near entries of the keys are invalidated before the backing cache
+     * is written, so they can't outlive a concurrent write.
+     *
+     * @return the generation of the write, to pass to {@link #endWrites(Map, long)}
+     */
+    private long beginWrite( Collection<? extends V> keys )
+    {
+        activeWrites.incrementAndGet( );
+        long generation = writes.incrementAndGet( );
+        for ( V key : keys )
+        {
+            nearEntries.remove( key );
+        }
+        return generation;
+    }
+
+    private void endWrite( V key, T value, long generation )
+    {
+        endWrites( value == null ? Collections.emptyMap( ) : Collections.singletonMap( key, value ), generation );
+    }
+
+    /**
+     * Ends a write to the backing cache and keeps the written values in the near cache, unless another write
+     * started or ended during the write, or is still in progress: the order in which they reached the backing
+     * cache is unknown then.
+     *
+     * @param values the values written to the backing cache, empty if the write did not store the values
+     */
+    private void endWrites( Map<? extends V, ? extends T> values, long generation )
+    {
+        try
+        {
+            long end = writes.incrementAndGet( );
+            if ( values.isEmpty( ) || end != generation + 1 || activeWrites.get( ) != 1 )
+            {
+                return;
+            }
+            List<NearEntry<V, T>> entries = new ArrayList<>( values.size( ) );
+            for ( Map.Entry<? extends V, ? extends T> value : values.entrySet( ) )
+            {
+                NearEntry<V, T> entry = newEntry( value.getKey( ), value.getValue( ) );
+                nearEntries.put( entry.key, entry );
+                entries.add( entry );
+            }
+            for ( NearEntry<V, T> entry : entries )
+            {
+                if ( writes.get( ) != end )
+                {
+                    // a write started meanwhile
+                    nearEntries.remove( entry.key, entry );
+                }
+                else
+                {
+                    enqueue( entry );
+                }
+            }
+        }
+        finally
+        {
+            activeWrites.decrementAndGet( );
+        }
+    }
+
+    private void onBackingEvent( CacheEvent<V, T> event )
+    {
+        V key = event.getKey( );
+        if ( key != null )
+        {
+            nearEntries.remove( key );
+        }
+    }
+
+    private NearEntry<V, T> newEntry( V key, T value )
+    {
+        int timeToLive = getEffectiveTimeToLiveSeconds( );
+        long expirationTime = timeToLive > 0
+            ? System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( timeToLive )
+            : Long.MAX_VALUE;
+        return new NearEntry<>( key, value, expirationTime );
+    }
+
+    /**
+     * @return the <code>nearCacheTimeToLiveSeconds</code>, or if not set the shorter of the time to live and the
+     * time to idle of the backing cache, 0 for no limit
+     */
+    private int getEffectiveTimeToLiveSeconds( )
+    {
+        if ( nearCacheTimeToLiveSeconds > 0 )
+        {
+            return nearCacheTimeToLiveSeconds;
+        }
+        int timeToLive = backingCache.getTimeToLiveSeconds( );
+        int timeToIdle = backingCache.getTimeToIdleSeconds( );
+        if ( timeToLive > 0 && timeToIdle > 0 )
+        {
+            return Math.min( timeToLive, timeToIdle );
+        }
+        return Math.max( timeToLive, timeToIdle );
+    }
+
+    private void enqueue( NearEntry<V, T> entry )
+    {
+        clock.offer( entry );
+        clockSize.incrementAndGet( );
+        if ( nearEntries.size( ) > nearCacheMaxSize || clockSize.get( ) > 2 * nearCacheMaxSize )
+        {
+            evict( );
+        }
+    }
+
+    /**
+     * Evicts entries until the near cache fits its maximum size, and drops the replaced or removed entries
+     * from the clock. Skipped if another thread is evicting already.
+     */
+    private void evict( )
+    {
+        if ( !evictionLock.tryLock( ) )
+        {
+            return;
+        }
+        try
+        {
+            // two rounds at most: the first one may only clear the reference bits
+            int remaining = 2 * clockSize.get( ) + 1;
+            while ( remaining-- > 0
+                && ( nearEntries.size( ) > nearCacheMaxSize || clockSize.get( ) > nearCacheMaxSize ) )
+            {
+                NearEntry<V, T> entry = clock.poll( );
+                if ( entry == null )
+                {
+                    break;
+                }
+                clockSize.decrementAndGet( );
+                if ( nearEntries.get( entry.key ) != entry )
+                {
+                    // replaced or removed already
+                    continue;
+                }
+                if ( nearEntries.size( ) > nearCacheMaxSize && !entry.referenced )
+                {
+                    if ( nearEntries.remove( entry.key, entry ) )
+                    {
+                        nearStats.evicted( 1 );
+                    }
+                    continue;
+                }
+                entry.referenced = false;
+                clock.offer( entry );
+                clockSize.incrementAndGet( );
+            }
+        }
+        finally
+        {
+            evictionLock.unlock( );
+        }
+    }
+
+    // the expiration, size and negative caching settings are the ones of the backing cache
+
+    @Override
+    public int getTimeToIdleSeconds( )
+    {
+        return backingCache.getTimeToIdleSeconds( );
+    }
+
+    @Override
+    public void setTimeToIdleSeconds( int timeToIdleSeconds )
+    {
+        backingCache.setTimeToIdleSeconds( timeToIdleSeconds );
+    }
+
+    @Override
+    public int getTimeToLiveSeconds( )
+    {
+        return backingCache.getTimeToLiveSeconds( );
+    }
+
+    @Override
+    public void setTimeToLiveSeconds( int timeToLiveSeconds )
+    {
+        backingCache.setTimeToLiveSeconds( timeToLiveSeconds );
+    }
+
+    @Override
+    public int getMaxElementsInMemory( )
+    {
+        return backingCache.getMaxElementsInMemory( );
+    }
+
+    @Override
+    public void setMaxElementsInMemory( int maxElementsInMemory )
+    {
+        backingCache.setMaxElementsInMemory( maxElementsInMemory );
+    }
+
+    @Override
+    public int getMaxElementsOnDisk( )
+    {
+        return backingCache.getMaxElementsOnDisk( );
+    }
+
+    @Override
+    public void setMaxElementsOnDisk( int maxElementsOnDisk )
+    {
+        backingCache.setMaxElementsOnDisk( maxElementsOnDisk );
+    }
+
+    @Override
+    public int getNegativeTimeToLiveSeconds( )
+    {
+        return backingCache.getNegativeTimeToLiveSeconds( );
+    }
+
+    @Override
+    public void setNegativeTimeToLiveSeconds( int negativeTimeToLiveSeconds )
+    {
+        backingCache.setNegativeTimeToLiveSeconds( negativeTimeToLiveSeconds );
+    }
+
+    @Override
+    public void registerAbsent( V key )
+    {
+        backingCache.registerAbsent( key );
+    }
+
+    @Override
+    public boolean isAbsent( V key )
+    {
+        return backingCache.isAbsent( key );
+    }
+
+    @Override
+    public List<V> getHottestKeys( int limit )
+    {
+        return backingCache.getHottestKeys( limit );
+    }
+
+    @Override
+    public void registerEventListener( CacheEventListener<V, T> listener, boolean async )
+    {
+        backingCache.registerEventListener( listener, async );
+    }
+
+    @Override
+    public void unregisterEventListener( CacheEventListener<V, T> listener )
+    {
+        backingCache.unregisterEventListener( listener );
+    }
+
+    public Cache<V, T> getBackingCache( )
+    {
+        return backingCache;
+    }
+
+    public void setBackingCache( Cache<V, T> backingCache )
+    {
+        if ( this.backingCache != null )
+        {
+            this.backingCache.unregisterEventListener( backingListener );
+        }
+        this.backingCache = backingCache;
+        nearEntries.clear( );
+        if ( backingCache != null )
+        {
+            backingCache.registerEventListener( backingListener, false );
+        }
+    }
+
+    public int getNearCacheMaxSize( )
+    {
+        return nearCacheMaxSize;
+    }
+
+    /**
+     * @param nearCacheMaxSize the maximum number of entries of the near cache
+     */
+    public void setNearCacheMaxSize( int nearCacheMaxSize )
+    {
+        this.nearCacheMaxSize = nearCacheMaxSize;
+    }
+
+    public int getNearCacheTimeToLiveSeconds( )
+    {
+        return nearCacheTimeToLiveSeconds;
+    }
+
+    /**
+     * @param nearCacheTimeToLiveSeconds the maximum time a value is served from the near cache, 0 to use the
+     *                                   expiration settings of the backing cache. Needed for the backing caches
+     *                                   which don't report their expirations and evictions
+     */
+    public void setNearCacheTimeToLiveSeconds( int nearCacheTimeToLiveSeconds )
+    {
+        this.nearCacheTimeToLiveSeconds = nearCacheTimeToLiveSeconds;
+    }
+}
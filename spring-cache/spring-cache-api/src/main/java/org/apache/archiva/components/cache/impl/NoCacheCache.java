@@ -107,4 +107,19 @@ public class NoCacheCache<V, T>
     {
         return null;
     }
+
+    public T putIfAbsent( V key, T value )
+    {
+        return null;
+    }
+
+    public T replace( V key, T value )
+    {
+        return null;
+    }
+
+    public void invalidate( V key )
+    {
+        /* do nothing */
+    }
 }
@@ -0,0 +1,312 @@
+package org.apache.archiva.components.cache.invalidation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Base class of the {@link InvalidationBus} implementations, batching the published invalidations.
+ * <p>
+ * The invalidations are collected per cache and sent when <code>batchSize</code> keys are pending, or at the
+ * latest <code>batchDelayMillis</code> after the first pending invalidation. Duplicate keys are sent once, and
+ * clearing a cache drops its pending keys. With a <code>batchDelayMillis</code> of 0 each invalidation is sent
+ * right away, as well as before {@link #start()} is called.
+ * </p>
+ * Implementations send the batches in {@link #send(Collection)}, and pass the received batches to
+ * {@link #deliver(Collection)}.
+ *
+ * @since 3.0
+ */
+public abstract class AbstractInvalidationBus
+    implements InvalidationBus
+{
+    protected final Logger log = LoggerFactory.getLogger( getClass( ) );
+
+    private final Map<String, List<InvalidationListener>> listeners = new ConcurrentHashMap<>( );
+
+    private final Object lock = new Object( );
+
+    private Map<String, Invalidation> pending = new LinkedHashMap<>( );
+
+    private int pendingKeys;
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    private ScheduledExecutorService flusher;
+
+    private int batchSize = 100;
+
+    private long batchDelayMillis = 10;
+
+    private final LongAdder published = new LongAdder( );
+
+    private final LongAdder sentBatches = new LongAdder( );
+
+    private final LongAdder receivedBatches = new LongAdder( );
+
+    @PostConstruct
+    public void start( )
+    {
+        synchronized ( lock )
+        {
+            if ( flusher == null && batchDelayMillis > 0 )
+            {
+                flusher = Executors.newSingleThreadScheduledExecutor( r -> {
+                    Thread thread = new Thread( r, "archiva-cache-invalidation-flusher" );
+                    thread.setDaemon( true );
+                    return thread;
+                } );
+            }
+        }
+    }
+
+    /**
+     * Sends the pending invalidations and stops the bus.
+     */
+    @PreDestroy
+    public void close( )
+    {
+        flush( );
+        synchronized ( lock )
+        {
+            if ( flusher != null )
+            {
+                flusher.shutdownNow( );
+                flusher = null;
+            }
+        }
+    }
+
+    public void publish( String cacheName, Object key )
+    {
+        published.increment( );
+        Collection<Invalidation> batch = null;
+        synchronized ( lock )
+        {
+            if ( pending.computeIfAbsent( cacheName, Invalidation::new ).addKey( key ) )
+            {
+                pendingKeys++;
+            }
+            if ( pendingKeys >= batchSize || !scheduleFlush( ) )
+            {
+                batch = drain( );
+            }
+        }
+        sendBatch( batch );
+    }
+
+    public void publishClear( String cacheName )
+    {
+        published.increment( );
+        Collection<Invalidation> batch = null;
+        synchronized ( lock )
+        {
+            pendingKeys -= pending.computeIfAbsent( cacheName, Invalidation::new ).setClear( );
+            if ( !scheduleFlush( ) )
+            {
+                batch = drain( );
+            }
+        }
+        sendBatch( batch );
+    }
+
+    public void flush( )
+    {
+        Collection<Invalidation> batch;
+        synchronized ( lock )
+        {
+            batch = drain( );
+        }
+        sendBatch( batch );
+    }
+
+    public void subscribe( String cacheName, InvalidationListener listener )
+    {
+        listeners.computeIfAbsent( cacheName, name -> new CopyOnWriteArrayList<>( ) ).add( listener );
+    }
+
+    public void unsubscribe( String cacheName, InvalidationListener listener )
+    {
+        List<InvalidationListener> cacheListeners = listeners.get( cacheName );
+        if ( cacheListeners != null )
+        {
+            cacheListeners.remove( listener );
+        }
+    }
+
+    /**
+     * Sends a batch of invalidations to the other nodes.
+     *
+     * @param batch the invalidations, at most one per cache
+     */
+    protected abstract void send( Collection<Invalidation> batch );
+
+    /**
+     * Passes a batch of invalidations received from another node to the listeners of the caches.
+     */
+    protected void deliver( Collection<Invalidation> batch )
+    {
+        receivedBatches.increment( );
+        for ( Invalidation invalidation : batch )
+        {
+            List<InvalidationListener> cacheListeners = listeners.get( invalidation.getCacheName( ) );
+            if ( cacheListeners == null )
+            {
+                continue;
+            }
+            for ( InvalidationListener listener : cacheListeners )
+            {
+                try
+                {
+                    if ( invalidation.isClear( ) )
+                    {
+                        listener.cleared( );
+                    }
+                    else
+                    {
+                        listener.invalidated( invalidation.getKeys( ) );
+                    }
+                }
+                catch ( RuntimeException e )
+                {
+                    log.warn( "Failed to apply {}: {}", invalidation, e.getMessage( ), e );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the invalidations must be sent right away
+     */
+    private boolean scheduleFlush( )
+    {
+        if ( flusher == null )
+        {
+            return false;
+        }
+        if ( scheduledFlush == null )
+        {
+            scheduledFlush = flusher.schedule( this::flush, batchDelayMillis, TimeUnit.MILLISECONDS );
+        }
+        return true;
+    }
+
+    private Collection<Invalidation> drain( )
+    {
+        if ( scheduledFlush != null )
+        {
+            scheduledFlush.cancel( false );
+            scheduledFlush = null;
+        }
+        if ( pending.isEmpty( ) )
+        {
+            return null;
+        }
+        Collection<Invalidation> batch = new ArrayList<>( pending.values( ) );
+        pending = new LinkedHashMap<>( );
+        pendingKeys = 0;
+        return batch;
+    }
+
+    private void sendBatch( Collection<Invalidation> batch )
+    {
+        if ( batch == null )
+        {
+            return;
+        }
+        sentBatches.increment( );
+        try
+        {
+            send( batch );
+        }
+        catch ( RuntimeException e )
+        {
+            // the other nodes keep their entries until they expire
+            log.warn( "Failed to send the invalidations {}: {}", batch, e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * @return the number of invalidations published by this node
+     */
+    public long getPublishedCount( )
+    {
+        return published.sum( );
+    }
+
+    /**
+     * @return the number of batches sent by this node
+     */
+    public long getSentBatchCount( )
+    {
+        return sentBatches.sum( );
+    }
+
+    /**
+     * @return the number of batches received from the other nodes
+     */
+    public long getReceivedBatchCount( )
+    {
+        return receivedBatches.sum( );
+    }
+
+    public int getBatchSize( )
+    {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the number of pending keys sending a batch right away
+     */
+    public void setBatchSize( int batchSize )
+    {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchDelayMillis( )
+    {
+        return batchDelayMillis;
+    }
+
+    /**
+     * @param batchDelayMillis the maximum time an invalidation waits for more invalidations to send them in one batch,
+     *                         0 to send each invalidation right away
+     */
+    public void setBatchDelayMillis( long batchDelayMillis )
+    {
+        this.batchDelayMillis = batchDelayMillis;
+    }
+}
@@ -0,0 +1,353 @@
+package org.apache.archiva.components.cache.invalidation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.AbstractCache;
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheStatistics;
+import org.apache.archiva.components.cache.event.CacheEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * InvalidatingCache - keeps the local caches of the nodes of a cluster consistent: the writes, removals and clears
+ * of the backing cache are published on an {@link InvalidationBus}, and the invalidations published by the other
+ * nodes are removed from the backing cache.
+ * <p>
+ * Values loaded by {@link #getOrLoad(Object, Function)} are not published, as they are read from the shared source.
+ * All nodes must use the same <code>cacheName</code> for the cache. Put in front of a
+ * {@link org.apache.archiva.components.cache.impl.NearCache}, the invalidations remove the entries of both levels.
+ * </p>
+ * <pre>
+ * &lt;bean name="cache#clustered" class="org.apache.archiva.components.cache.invalidation.InvalidatingCache"&gt;
+ *   &lt;property name="backingCache" ref="cache#ehcache"/&gt;
+ *   &lt;property name="invalidationBus" ref="invalidationBus#multicast"/&gt;
+ *   &lt;property name="cacheName" value="repositories"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @since 3.0
+ */
+public class InvalidatingCache<V, T>
+    extends AbstractCache<V, T>
+{
+    private Cache<V, T> backingCache;
+
+    private InvalidationBus invalidationBus;
+
+    private String cacheName;
+
+    private final LongAdder remoteInvalidations = new LongAdder( );
+
+    private final InvalidationListener listener = new InvalidationListener( )
+    {
+        @SuppressWarnings( "unchecked" )
+        @Override
+        public void invalidated( Collection<?> keys )
+        {
+            for ( Object key : keys )
+            {
+                remoteInvalidations.increment( );
+                backingCache.invalidate( (V) key );
+            }
+        }
+
+        @Override
+        public void cleared( )
+        {
+            remoteInvalidations.increment( );
+            backingCache.clear( );
+        }
+    };
+
+    public InvalidatingCache( )
+    {
+        // noop
+    }
+
+    public InvalidatingCache( Cache<V, T> backingCache, InvalidationBus invalidationBus, String cacheName )
+    {
+        this.backingCache = backingCache;
+        this.invalidationBus = invalidationBus;
+        this.cacheName = cacheName;
+    }
+
+    @PostConstruct
+    public void initialize( )
+    {
+        if ( backingCache == null || invalidationBus == null || cacheName == null )
+        {
+            throw new IllegalStateException( "backingCache, invalidationBus and cacheName are required" );
+        }
+        invalidationBus.subscribe( cacheName, listener );
+    }
+
+    @PreDestroy
+    public void dispose( )
+    {
+        invalidationBus.unsubscribe( cacheName, listener );
+    }
+
+    public boolean hasKey( V key )
+    {
+        return backingCache.hasKey( key );
+    }
+
+    public T get( V key )
+    {
+        return backingCache.get( key );
+    }
+
+    @Override
+    public T getOrLoad( V key, Function<? super V, ? extends T> loader )
+    {
+        return backingCache.getOrLoad( key, loader );
+    }
+
+    @Override
+    public CompletableFuture<T> getOrLoadAsync( V key, Function<? super V, ? extends T> loader, Executor executor )
+    {
+        return backingCache.getOrLoadAsync( key, loader, executor );
+    }
+
+    @Override
+    public Map<V, T> getAll( Collection<? extends V> keys )
+    {
+        return backingCache.getAll( keys );
+    }
+
+    public T put( V key, T value )
+    {
+        T previous = backingCache.put( key, value );
+        invalidationBus.publish( cacheName, key );
+        return previous;
+    }
+
+    public void register( V key, T value )
+    {
+        backingCache.register( key, value );
+        invalidationBus.publish( cacheName, key );
+    }
+
+    public T putIfAbsent( V key, T value )
+    {
+        T previous = backingCache.putIfAbsent( key, value );
+        if ( previous == null )
+        {
+            invalidationBus.publish( cacheName, key );
+        }
+        return previous;
+    }
+
+    public T replace( V key, T value )
+    {
+        T previous = backingCache.replace( key, value );
+        if ( previous != null )
+        {
+            invalidationBus.publish( cacheName, key );
+        }
+        return previous;
+    }
+
+    @Override
+    public void putAll( Map<? extends V, ? extends T> entries )
+    {
+        backingCache.putAll( entries );
+        for ( V key : entries.keySet( ) )
+        {
+            invalidationBus.publish( cacheName, key );
+        }
+    }
+
+    public T remove( V key )
+    {
+        T previous = backingCache.remove( key );
+        invalidationBus.publish( cacheName, key );
+        return previous;
+    }
+
+    public void invalidate( V key )
+    {
+        backingCache.invalidate( key );
+        invalidationBus.publish( cacheName, key );
+    }
+
+    @Override
+    public void removeAll( Collection<? extends V> keys )
+    {
+        backingCache.removeAll( keys );
+        for ( V key : keys )
+        {
+            invalidationBus.publish( cacheName, key );
+        }
+    }
+
+    public void clear( )
+    {
+        backingCache.clear( );
+        invalidationBus.publishClear( cacheName );
+    }
+
+    public CacheStatistics getStatistics( )
+    {
+        return backingCache.getStatistics( );
+    }
+
+    /**
+     * @return the number of keys and clears received from the other nodes
+     */
+    public long getRemoteInvalidationCount( )
+    {
+        return remoteInvalidations.sum( );
+    }
+
+    // the expiration, size and negative caching settings are the ones of the backing cache
+
+    @Override
+    public int getTimeToIdleSeconds( )
+    {
+        return backingCache.getTimeToIdleSeconds( );
+    }
+
+    @Override
+    public void setTimeToIdleSeconds( int timeToIdleSeconds )
+    {
+        backingCache.setTimeToIdleSeconds( timeToIdleSeconds );
+    }
+
+    @Override
+    public int getTimeToLiveSeconds( )
+    {
+        return backingCache.getTimeToLiveSeconds( );
+    }
+
+    @Override
+    public void setTimeToLiveSeconds( int timeToLiveSeconds )
+    {
+        backingCache.setTimeToLiveSeconds( timeToLiveSeconds );
+    }
+
+    @Override
+    public int getMaxElementsInMemory( )
+    {
+        return backingCache.getMaxElementsInMemory( );
+    }
+
+    @Override
+    public void setMaxElementsInMemory( int maxElementsInMemory )
+    {
+        backingCache.setMaxElementsInMemory( maxElementsInMemory );
+    }
+
+    @Override
+    public int getMaxElementsOnDisk( )
+    {
+        return backingCache.getMaxElementsOnDisk( );
+    }
+
+    @Override
+    public void setMaxElementsOnDisk( int maxElementsOnDisk )
+    {
+        backingCache.setMaxElementsOnDisk( maxElementsOnDisk );
+    }
+
+    @Override
+    public int getNegativeTimeToLiveSeconds( )
+    {
+        return backingCache.getNegativeTimeToLiveSeconds( );
+    }
+
+    @Override
+    public void setNegativeTimeToLiveSeconds( int negativeTimeToLiveSeconds )
+    {
+        backingCache.setNegativeTimeToLiveSeconds( negativeTimeToLiveSeconds );
+    }
+
+    @Override
+    public void registerAbsent( V key )
+    {
+        backingCache.registerAbsent( key );
+    }
+
+    @Override
+    public boolean isAbsent( V key )
+    {
+        return backingCache.isAbsent( key );
+    }
+
+    @Override
+    public List<V> getHottestKeys( int limit )
+    {
+        return backingCache.getHottestKeys( limit );
+    }
+
+    @Override
+    public void registerEventListener( CacheEventListener<V, T> listener, boolean async )
+    {
+        backingCache.registerEventListener( listener, async );
+    }
+
+    @Override
+    public void unregisterEventListener( CacheEventListener<V, T> listener )
+    {
+        backingCache.unregisterEventListener( listener );
+    }
+
+    public Cache<V, T> getBackingCache( )
+    {
+        return backingCache;
+    }
+
+    public void setBackingCache( Cache<V, T> backingCache )
+    {
+        this.backingCache = backingCache;
+    }
+
+    public InvalidationBus getInvalidationBus( )
+    {
+        return invalidationBus;
+    }
+
+    public void setInvalidationBus( InvalidationBus invalidationBus )
+    {
+        this.invalidationBus = invalidationBus;
+    }
+
+    public String getCacheName( )
+    {
+        return cacheName;
+    }
+
+    /**
+     * @param cacheName the name of the cache on the bus, the same on all nodes
+     */
+    public void setCacheName( String cacheName )
+    {
+        this.cacheName = cacheName;
+    }
+}
@@ -0,0 +1,87 @@
+package org.apache.archiva.components.cache.invalidation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The invalidations of one cache sent in a batch: either the cache was cleared, or some of its keys were invalidated.
+ *
+ * @since 3.0
+ */
+public final class Invalidation
+{
+    private final String cacheName;
+
+    private final Set<Object> keys = new LinkedHashSet<>( );
+
+    private boolean clear;
+
+    public Invalidation( String cacheName )
+    {
+        this.cacheName = cacheName;
+    }
+
+    /**
+     * @return true if the key was not contained yet
+     */
+    public boolean addKey( Object key )
+    {
+        // a clear covers all keys
+        return !clear && keys.add( key );
+    }
+
+    /**
+     * Marks the cache as cleared, which makes the invalidated keys obsolete.
+     *
+     * @return the number of dropped keys
+     */
+    public int setClear( )
+    {
+        int dropped = keys.size( );
+        keys.clear( );
+        clear = true;
+        return dropped;
+    }
+
+    public String getCacheName( )
+    {
+        return cacheName;
+    }
+
+    public Collection<Object> getKeys( )
+    {
+        return Collections.unmodifiableSet( keys );
+    }
+
+    public boolean isClear( )
+    {
+        return clear;
+    }
+
+    @Override
+    public String toString( )
+    {
+        return "Invalidation{cacheName='" + cacheName + "', clear=" + clear + ", keys=" + keys.size( ) + '}';
+    }
+}
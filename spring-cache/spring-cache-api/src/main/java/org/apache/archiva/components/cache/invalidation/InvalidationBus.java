@@ -0,0 +1,66 @@
+package org.apache.archiva.components.cache.invalidation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * InvalidationBus - broadcasts the invalidations of cache keys to the other nodes of a cluster, so the local caches
+ * of the nodes don't serve stale values after an update.
+ * <p>
+ * Only invalidations are sent, never values: a node receiving an invalidation removes the key from its local cache
+ * and reads the current value from the source on the next access. The caches are identified by their name, which
+ * must be the same on all nodes. Implementations may batch the invalidations, a node doesn't receive its own
+ * invalidations.
+ * </p>
+ *
+ * @see InvalidatingCache
+ * @since 3.0
+ */
+public interface InvalidationBus
+{
+    /**
+     * Broadcasts the invalidation of a key.
+     *
+     * @param cacheName the name of the cache
+     * @param key       the invalidated key, must be serializable by the transports sending the keys over the network
+     */
+    void publish( String cacheName, Object key );
+
+    /**
+     * Broadcasts the clearing of a cache.
+     *
+     * @param cacheName the name of the cache
+     */
+    void publishClear( String cacheName );
+
+    /**
+     * Registers a listener for the invalidations of a cache published by the other nodes.
+     *
+     * @param cacheName the name of the cache
+     * @param listener  the listener
+     */
+    void subscribe( String cacheName, InvalidationListener listener );
+
+    void unsubscribe( String cacheName, InvalidationListener listener );
+
+    /**
+     * Sends the pending invalidations right away.
+     */
+    void flush( );
+}
@@ -0,0 +1,40 @@
+package org.apache.archiva.components.cache.invalidation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collection;
+
+/**
+ * Receives the invalidations of a cache published by other nodes on an {@link InvalidationBus}.
+ *
+ * @since 3.0
+ */
+public interface InvalidationListener
+{
+    /**
+     * @param keys the keys to remove from the local cache
+     */
+    void invalidated( Collection<?> keys );
+
+    /**
+     * Called when another node cleared the cache.
+     */
+    void cleared( );
+}
@@ -0,0 +1,98 @@
+package org.apache.archiva.components.cache.invalidation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * LoopbackInvalidationBus - delivers the invalidations to the other buses of the same channel in the JVM, for tests
+ * and for nodes sharing a JVM. The invalidations are delivered by the publishing thread.
+ *
+ * @since 3.0
+ */
+public class LoopbackInvalidationBus
+    extends AbstractInvalidationBus
+{
+    private static final Map<String, Set<LoopbackInvalidationBus>> CHANNELS = new ConcurrentHashMap<>( );
+
+    private String channel = "default";
+
+    public LoopbackInvalidationBus( )
+    {
+        // noop
+    }
+
+    public LoopbackInvalidationBus( String channel )
+    {
+        this.channel = channel;
+    }
+
+    @Override
+    public void start( )
+    {
+        super.start( );
+        CHANNELS.computeIfAbsent( channel, name -> new CopyOnWriteArraySet<>( ) ).add( this );
+    }
+
+    @Override
+    public void close( )
+    {
+        super.close( );
+        Set<LoopbackInvalidationBus> buses = CHANNELS.get( channel );
+        if ( buses != null )
+        {
+            buses.remove( this );
+        }
+    }
+
+    @Override
+    protected void send( Collection<Invalidation> batch )
+    {
+        Set<LoopbackInvalidationBus> buses = CHANNELS.get( channel );
+        if ( buses == null )
+        {
+            return;
+        }
+        for ( LoopbackInvalidationBus bus : buses )
+        {
+            if ( bus != this )
+            {
+                bus.deliver( batch );
+            }
+        }
+    }
+
+    public String getChannel( )
+    {
+        return channel;
+    }
+
+    /**
+     * @param channel the name of the channel, the buses of a channel receive the invalidations of each other
+     */
+    public void setChannel( String channel )
+    {
+        this.channel = channel;
+    }
+}
@@ -0,0 +1,456 @@
+package org.apache.archiva.components.cache.invalidation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.serializer.BinarySerializer;
+import org.apache.archiva.components.cache.serializer.Serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * MulticastInvalidationBus - sends the invalidations as UDP multicast datagrams to the nodes of the local network
+ * which joined the same multicast group.
+ * <p>
+ * A batch is sent in as few datagrams as possible, each datagram holds the id of the sending node, so a node ignores
+ * its own invalidations, followed by records made of the cache name and either a key or the clear marker. The keys are
+ * converted with the <code>keySerializer</code>, by default a {@link BinarySerializer} of strings and boxed primitives
+ * without the java serialization. A cache key which can't be serialized, doesn't fit into one datagram, or can't be
+ * read by the receiving node, clears the cache on the receiving node instead.
+ * </p>
+ * <p>
+ * The datagrams are not authenticated: any host reaching the multicast group can invalidate the caches of the nodes,
+ * the group must only be reachable by trusted hosts. A key serializer using the java serialization would moreover let
+ * these hosts instantiate any serializable class on the nodes.
+ * </p>
+ * <p>
+ * UDP doesn't guarantee the delivery: caches invalidated over this bus should have a time to live bounding the time
+ * a lost invalidation leaves a stale value behind.
+ * </p>
+ * <pre>
+ * &lt;bean name="invalidationBus#multicast" class="org.apache.archiva.components.cache.invalidation.MulticastInvalidationBus"&gt;
+ *   &lt;property name="group" value="239.255.27.1"/&gt;
+ *   &lt;property name="port" value="45566"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @since 3.0
+ */
+public class MulticastInvalidationBus
+    extends AbstractInvalidationBus
+{
+    private static final int MAGIC = 0x41434931;
+
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 8;
+
+    private static final byte KEY = 0;
+
+    private static final byte CLEAR = 1;
+
+    private final UUID nodeId = UUID.randomUUID( );
+
+    private String group = "239.255.27.1";
+
+    private int port = 45566;
+
+    private int timeToLive = 1;
+
+    private String networkInterface;
+
+    private int maxDatagramSize = 8192;
+
+    private Serializer<Object> keySerializer = BinarySerializer.withoutJavaSerialization( );
+
+    private InetAddress groupAddress;
+
+    /**
+     * The interface receiving the datagrams of the group, <code>null</code> for the default interface.
+     */
+    private NetworkInterface groupInterface;
+
+    private MulticastSocket socket;
+
+    private Thread receiver;
+
+    @Override
+    public synchronized void start( )
+    {
+        if ( socket != null )
+        {
+            return;
+        }
+        super.start( );
+        try
+        {
+            groupAddress = InetAddress.getByName( group );
+            groupInterface = null;
+            if ( networkInterface != null && !networkInterface.isEmpty( ) )
+            {
+                groupInterface = NetworkInterface.getByName( networkInterface );
+                if ( groupInterface == null )
+                {
+                    throw new IOException( "Unknown network interface " + networkInterface );
+                }
+            }
+            socket = new MulticastSocket( port );
+            socket.setTimeToLive( timeToLive );
+            if ( groupInterface != null )
+            {
+                socket.setNetworkInterface( groupInterface );
+            }
+            socket.joinGroup( new InetSocketAddress( groupAddress, port ), groupInterface );
+        }
+        catch ( IOException e )
+        {
+            if ( socket != null )
+            {
+                socket.close( );
+                socket = null;
+            }
+            throw new UncheckedIOException( "Failed to join the multicast group " + group + ":" + port, e );
+        }
+        receiver = new Thread( this::receive, "archiva-cache-invalidation-receiver" );
+        receiver.setDaemon( true );
+        receiver.start( );
+        log.info( "Cache invalidations sent to {}:{} by node {}", group, port, nodeId );
+    }
+
+    @Override
+    public synchronized void close( )
+    {
+        super.close( );
+        if ( socket == null )
+        {
+            return;
+        }
+        try
+        {
+            socket.leaveGroup( new InetSocketAddress( groupAddress, port ), groupInterface );
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Failed to leave the multicast group {}: {}", group, e.getMessage( ) );
+        }
+        socket.close( );
+        socket = null;
+        try
+        {
+            receiver.join( 1000 );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+        receiver = null;
+    }
+
+    @Override
+    protected void send( Collection<Invalidation> batch )
+    {
+        MulticastSocket current = socket;
+        if ( current == null )
+        {
+            log.debug( "Bus not started, invalidations not sent: {}", batch );
+            return;
+        }
+        try
+        {
+            for ( byte[] datagram : encode( batch ) )
+            {
+                current.send( new DatagramPacket( datagram, datagram.length, groupAddress, port ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * Converts a batch to datagrams of at most <code>maxDatagramSize</code> bytes, splitting it between records.
+     */
+    List<byte[]> encode( Collection<Invalidation> batch )
+        throws IOException
+    {
+        List<byte[]> datagrams = new ArrayList<>( );
+        ByteArrayOutputStream datagram = newDatagram( );
+        for ( Invalidation invalidation : batch )
+        {
+            List<byte[]> records = new ArrayList<>( );
+            if ( !invalidation.isClear( ) )
+            {
+                for ( Object key : invalidation.getKeys( ) )
+                {
+                    byte[] serialized;
+                    try
+                    {
+                        serialized = keySerializer.serialize( key );
+                    }
+                    catch ( IOException e )
+                    {
+                        log.debug( "Failed to write a key of cache {}, clearing the cache instead: {}",
+                            invalidation.getCacheName( ), e.getMessage( ) );
+                        records.clear( );
+                        break;
+                    }
+                    byte[] record = record( invalidation.getCacheName( ), KEY, serialized );
+                    if ( HEADER_SIZE + record.length > maxDatagramSize )
+                    {
+                        log.debug( "Key of cache {} too large for a datagram, clearing the cache instead",
+                            invalidation.getCacheName( ) );
+                        records.clear( );
+                        break;
+                    }
+                    records.add( record );
+                }
+            }
+            if ( records.isEmpty( ) )
+            {
+                records.add( record( invalidation.getCacheName( ), CLEAR, null ) );
+            }
+            for ( byte[] record : records )
+            {
+                if ( datagram.size( ) + record.length > maxDatagramSize )
+                {
+                    datagrams.add( datagram.toByteArray( ) );
+                    datagram = newDatagram( );
+                }
+                datagram.write( record );
+            }
+        }
+        if ( datagram.size( ) > HEADER_SIZE )
+        {
+            datagrams.add( datagram.toByteArray( ) );
+        }
+        return datagrams;
+    }
+
+    /**
+     * @return the invalidations of a datagram, null if it's not an invalidation datagram or was sent by this node
+     * @throws IOException if the datagram is truncated or corrupt
+     */
+    Collection<Invalidation> decode( byte[] data, int length )
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream( data, 0, length ) );
+        if ( length < HEADER_SIZE || in.readInt( ) != MAGIC || in.readByte( ) != VERSION )
+        {
+            return null;
+        }
+        UUID sender = new UUID( in.readLong( ), in.readLong( ) );
+        if ( sender.equals( nodeId ) )
+        {
+            return null;
+        }
+
+        Map<String, Invalidation> invalidations = new LinkedHashMap<>( );
+        while ( in.available( ) > 0 )
+        {
+            String cacheName = in.readUTF( );
+            Invalidation invalidation = invalidations.computeIfAbsent( cacheName, Invalidation::new );
+            if ( in.readByte( ) == CLEAR )
+            {
+                invalidation.setClear( );
+                continue;
+            }
+            int keyLength = in.readInt( );
+            if ( keyLength < 0 || keyLength > in.available( ) )
+            {
+                throw new IOException( "Invalid key length " + keyLength + " in cache " + cacheName );
+            }
+            byte[] key = new byte[keyLength];
+            in.readFully( key );
+            try
+            {
+                invalidation.addKey( keySerializer.deserialize( key ) );
+            }
+            catch ( IOException e )
+            {
+                log.debug( "Failed to read a key of cache {}, clearing the cache instead: {}", cacheName,
+                    e.getMessage( ) );
+                invalidation.setClear( );
+            }
+        }
+        return invalidations.values( );
+    }
+
+    private ByteArrayOutputStream newDatagram( )
+        throws IOException
+    {
+        ByteArrayOutputStream datagram = new ByteArrayOutputStream( maxDatagramSize );
+        DataOutputStream out = new DataOutputStream( datagram );
+        out.writeInt( MAGIC );
+        out.writeByte( VERSION );
+        out.writeLong( nodeId.getMostSignificantBits( ) );
+        out.writeLong( nodeId.getLeastSignificantBits( ) );
+        out.flush( );
+        return datagram;
+    }
+
+    private static byte[] record( String cacheName, byte type, byte[] key )
+        throws IOException
+    {
+        ByteArrayOutputStream record = new ByteArrayOutputStream( );
+        DataOutputStream out = new DataOutputStream( record );
+        out.writeUTF( cacheName );
+        out.writeByte( type );
+        if ( key != null )
+        {
+            out.writeInt( key.length );
+            out.write( key );
+        }
+        out.flush( );
+        return record.toByteArray( );
+    }
+
+    private void receive( )
+    {
+        MulticastSocket current = socket;
+        byte[] buffer = new byte[maxDatagramSize];
+        while ( !current.isClosed( ) )
+        {
+            DatagramPacket packet = new DatagramPacket( buffer, buffer.length );
+            try
+            {
+                current.receive( packet );
+                Collection<Invalidation> batch = decode( packet.getData( ), packet.getLength( ) );
+                if ( batch != null )
+                {
+                    deliver( batch );
+                }
+            }
+            catch ( IOException e )
+            {
+                if ( !current.isClosed( ) )
+                {
+                    log.warn( "Failed to receive the invalidations from {}: {}", packet.getSocketAddress( ),
+                        e.getMessage( ) );
+                }
+            }
+            catch ( RuntimeException e )
+            {
+                // a failing datagram or listener must not stop the invalidations of this node
+                log.warn( "Failed to process the invalidations from {}: {}", packet.getSocketAddress( ),
+                    e.getMessage( ), e );
+            }
+        }
+    }
+
+    /**
+     * @return the id of this node in the datagrams
+     */
+    public UUID getNodeId( )
+    {
+        return nodeId;
+    }
+
+    public String getGroup( )
+    {
+        return group;
+    }
+
+    /**
+     * @param group the multicast group address, the nodes of a cluster must use the same group and port
+     */
+    public void setGroup( String group )
+    {
+        this.group = group;
+    }
+
+    public int getPort( )
+    {
+        return port;
+    }
+
+    public void setPort( int port )
+    {
+        this.port = port;
+    }
+
+    public int getTimeToLive( )
+    {
+        return timeToLive;
+    }
+
+    /**
+     * @param timeToLive the time to live of the datagrams, 1 to stay in the local subnet
+     */
+    public void setTimeToLive( int timeToLive )
+    {
+        this.timeToLive = timeToLive;
+    }
+
+    public String getNetworkInterface( )
+    {
+        return networkInterface;
+    }
+
+    /**
+     * @param networkInterface the name of the network interface sending the datagrams, the default one if not set
+     */
+    public void setNetworkInterface( String networkInterface )
+    {
+        this.networkInterface = networkInterface;
+    }
+
+    public int getMaxDatagramSize( )
+    {
+        return maxDatagramSize;
+    }
+
+    /**
+     * @param maxDatagramSize the maximum size of a datagram, at most 65507 bytes
+     */
+    public void setMaxDatagramSize( int maxDatagramSize )
+    {
+        this.maxDatagramSize = maxDatagramSize;
+    }
+
+    public Serializer<Object> getKeySerializer( )
+    {
+        return keySerializer;
+    }
+
+    /**
+     * @param keySerializer the serializer of the invalidated keys, it reads the datagrams of any host reaching the
+     *                      group and should not use the java serialization
+     */
+    public void setKeySerializer( Serializer<Object> keySerializer )
+    {
+        this.keySerializer = keySerializer;
+    }
+}
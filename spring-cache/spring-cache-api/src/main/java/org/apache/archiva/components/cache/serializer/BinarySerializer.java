@@ -0,0 +1,168 @@
+package org.apache.archiva.components.cache.serializer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * BinarySerializer - compact {@link Serializer} writing the common key and value types, {@link String}, the boxed
+ * primitives and <code>byte[]</code>, as a type tag followed by their binary form. The java serialization writes
+ * a class descriptor with each value and is several times slower for these types. Other values are written with
+ * the java serialization and must implement {@link java.io.Serializable}.
+ *
+ * @since 3.0
+ */
+public class BinarySerializer<T>
+    implements Serializer<T>
+{
+    private static final byte JAVA = 0;
+
+    private static final byte STRING = 1;
+
+    private static final byte INTEGER = 2;
+
+    private static final byte LONG = 3;
+
+    private static final byte DOUBLE = 4;
+
+    private static final byte BOOLEAN = 5;
+
+    private static final byte BYTES = 6;
+
+    private final JavaSerializer<Object> javaSerializer;
+
+    public BinarySerializer( )
+    {
+        this( (ClassLoader) null );
+    }
+
+    /**
+     * @param classLoader the class loader resolving the classes of the values written with the java serialization,
+     *                    null for the default one
+     */
+    public BinarySerializer( ClassLoader classLoader )
+    {
+        this.javaSerializer = new JavaSerializer<>( classLoader );
+    }
+
+    private BinarySerializer( JavaSerializer<Object> javaSerializer )
+    {
+        this.javaSerializer = javaSerializer;
+    }
+
+    /**
+     * The java serialization instantiates any serializable class found in the data: data from an untrusted source,
+     * e.g. the network, must not be read with it.
+     *
+     * @return a serializer of {@link String}, the boxed primitives and <code>byte[]</code> only, failing with an
+     *         {@link IOException} on other values and on data written with the java serialization
+     */
+    public static <T> BinarySerializer<T> withoutJavaSerialization( )
+    {
+        return new BinarySerializer<>( (JavaSerializer<Object>) null );
+    }
+
+    public byte[] serialize( T value )
+        throws IOException
+    {
+        if ( value instanceof String )
+        {
+            return tagged( STRING, ( (String) value ).getBytes( StandardCharsets.UTF_8 ) );
+        }
+        if ( value instanceof Integer )
+        {
+            return ByteBuffer.allocate( 5 ).put( INTEGER ).putInt( (Integer) value ).array( );
+        }
+        if ( value instanceof Long )
+        {
+            return ByteBuffer.allocate( 9 ).put( LONG ).putLong( (Long) value ).array( );
+        }
+        if ( value instanceof Double )
+        {
+            return ByteBuffer.allocate( 9 ).put( DOUBLE ).putDouble( (Double) value ).array( );
+        }
+        if ( value instanceof Boolean )
+        {
+            return new byte[]{ BOOLEAN, (byte) ( (Boolean) value ? 1 : 0 ) };
+        }
+        if ( value instanceof byte[] )
+        {
+            return tagged( BYTES, (byte[]) value );
+        }
+        if ( javaSerializer == null )
+        {
+            throw new IOException( "Values of " + value.getClass( ).getName( ) + " are not supported" );
+        }
+        return tagged( JAVA, javaSerializer.serialize( value ) );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public T deserialize( byte[] data )
+        throws IOException
+    {
+        if ( data.length == 0 )
+        {
+            throw new IOException( "Empty data" );
+        }
+        ByteBuffer buffer = ByteBuffer.wrap( data, 1, data.length - 1 );
+        try
+        {
+            switch ( data[0] )
+            {
+                case STRING:
+                    return (T) new String( data, 1, data.length - 1, StandardCharsets.UTF_8 );
+                case INTEGER:
+                    return (T) Integer.valueOf( buffer.getInt( ) );
+                case LONG:
+                    return (T) Long.valueOf( buffer.getLong( ) );
+                case DOUBLE:
+                    return (T) Double.valueOf( buffer.getDouble( ) );
+                case BOOLEAN:
+                    return (T) Boolean.valueOf( buffer.get( ) != 0 );
+                case BYTES:
+                    return (T) Arrays.copyOfRange( data, 1, data.length );
+                case JAVA:
+                    if ( javaSerializer == null )
+                    {
+                        throw new IOException( "The java serialization is not supported" );
+                    }
+                    return (T) javaSerializer.deserialize( Arrays.copyOfRange( data, 1, data.length ) );
+                default:
+                    throw new IOException( "Unknown type " + data[0] );
+            }
+        }
+        catch ( BufferUnderflowException e )
+        {
+            throw new IOException( "Truncated data of type " + data[0], e );
+        }
+    }
+
+    private static byte[] tagged( byte type, byte[] bytes )
+    {
+        byte[] data = new byte[bytes.length + 1];
+        data[0] = type;
+        System.arraycopy( bytes, 0, data, 1, bytes.length );
+        return data;
+    }
+}
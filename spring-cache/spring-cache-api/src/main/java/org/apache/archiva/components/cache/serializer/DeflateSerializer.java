@@ -0,0 +1,175 @@
+package org.apache.archiva.components.cache.serializer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * DeflateSerializer - compresses the bytes of another {@link Serializer} with the deflate algorithm of
+ * {@link java.util.zip}, for values stored on disk or off-heap. Values smaller than <code>minimumSize</code>
+ * bytes are stored uncompressed, as well as values that don't get smaller.
+ *
+ * @since 3.0
+ */
+public class DeflateSerializer<T>
+    implements Serializer<T>
+{
+    private static final byte STORED = 0;
+
+    private static final byte DEFLATED = 1;
+
+    private final Serializer<T> serializer;
+
+    private final int level;
+
+    private final int minimumSize;
+
+    /**
+     * Compresses the values of at least 256 bytes with {@link Deflater#BEST_SPEED}.
+     */
+    public DeflateSerializer( Serializer<T> serializer )
+    {
+        this( serializer, Deflater.BEST_SPEED, 256 );
+    }
+
+    /**
+     * @param serializer  the serializer of the values
+     * @param level       the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     * @param minimumSize the size from which the values are compressed
+     */
+    public DeflateSerializer( Serializer<T> serializer, int level, int minimumSize )
+    {
+        this.serializer = serializer;
+        this.level = level;
+        this.minimumSize = minimumSize;
+    }
+
+    public byte[] serialize( T value )
+        throws IOException
+    {
+        byte[] bytes = serializer.serialize( value );
+        if ( bytes.length >= minimumSize )
+        {
+            byte[] compressed = deflate( bytes );
+            if ( compressed != null )
+            {
+                return compressed;
+            }
+        }
+        byte[] data = new byte[bytes.length + 1];
+        data[0] = STORED;
+        System.arraycopy( bytes, 0, data, 1, bytes.length );
+        return data;
+    }
+
+    public T deserialize( byte[] data )
+        throws IOException
+    {
+        if ( data.length == 0 )
+        {
+            throw new IOException( "Empty data" );
+        }
+        if ( data[0] == STORED )
+        {
+            byte[] bytes = new byte[data.length - 1];
+            System.arraycopy( data, 1, bytes, 0, bytes.length );
+            return serializer.deserialize( bytes );
+        }
+        if ( data[0] != DEFLATED || data.length < 5 )
+        {
+            throw new IOException( "Unknown format " + data[0] );
+        }
+        return serializer.deserialize( inflate( data ) );
+    }
+
+    /**
+     * @return the compressed data, or null if it's not smaller than the bytes
+     */
+    private byte[] deflate( byte[] bytes )
+    {
+        Deflater deflater = new Deflater( level );
+        try
+        {
+            deflater.setInput( bytes );
+            deflater.finish( );
+            ByteArrayOutputStream out = new ByteArrayOutputStream( bytes.length / 2 + 16 );
+            out.write( DEFLATED );
+            // the length of the uncompressed bytes, to allocate the buffer when inflating
+            out.write( bytes.length >>> 24 );
+            out.write( bytes.length >>> 16 );
+            out.write( bytes.length >>> 8 );
+            out.write( bytes.length );
+            byte[] buffer = new byte[Math.min( bytes.length, 8192 )];
+            while ( !deflater.finished( ) )
+            {
+                out.write( buffer, 0, deflater.deflate( buffer ) );
+                if ( out.size( ) >= bytes.length )
+                {
+                    return null;
+                }
+            }
+            return out.toByteArray( );
+        }
+        finally
+        {
+            deflater.end( );
+        }
+    }
+
+    private static byte[] inflate( byte[] data )
+        throws IOException
+    {
+        int length = ( ( data[1] & 0xff ) << 24 ) | ( ( data[2] & 0xff ) << 16 ) | ( ( data[3] & 0xff ) << 8 )
+            | ( data[4] & 0xff );
+        Inflater inflater = new Inflater( );
+        try
+        {
+            inflater.setInput( data, 5, data.length - 5 );
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while ( offset < length && !inflater.finished( ) )
+            {
+                int inflated = inflater.inflate( bytes, offset, length - offset );
+                if ( inflated == 0 && ( inflater.needsInput( ) || inflater.needsDictionary( ) ) )
+                {
+                    break;
+                }
+                offset += inflated;
+            }
+            if ( offset != length )
+            {
+                throw new IOException( "Truncated data, inflated " + offset + " of " + length + " bytes" );
+            }
+            return bytes;
+        }
+        catch ( DataFormatException e )
+        {
+            throw new IOException( "Corrupt data: " + e.getMessage( ), e );
+        }
+        finally
+        {
+            inflater.end( );
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.apache.archiva.components.cache.serializer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * JavaSerializer - default {@link Serializer} using the java serialization, the values must implement
+ * {@link java.io.Serializable}.
+ *
+ * @since 3.0
+ */
+public class JavaSerializer<T>
+    implements Serializer<T>
+{
+    private final ClassLoader classLoader;
+
+    public JavaSerializer( )
+    {
+        this( null );
+    }
+
+    /**
+     * @param classLoader the class loader resolving the classes of the deserialized values, null for the default one
+     */
+    public JavaSerializer( ClassLoader classLoader )
+    {
+        this.classLoader = classLoader;
+    }
+
+    public byte[] serialize( T value )
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( );
+        try (ObjectOutputStream out = new ObjectOutputStream( bytes ))
+        {
+            out.writeObject( value );
+        }
+        return bytes.toByteArray( );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public T deserialize( byte[] data )
+        throws IOException
+    {
+        try (ObjectInputStream in = new ClassLoaderObjectInputStream( new ByteArrayInputStream( data ) ))
+        {
+            return (T) in.readObject( );
+        }
+        catch ( ClassNotFoundException e )
+        {
+            throw new IOException( "Could not deserialize the value: " + e.getMessage( ), e );
+        }
+    }
+
+    private class ClassLoaderObjectInputStream
+        extends ObjectInputStream
+    {
+        ClassLoaderObjectInputStream( ByteArrayInputStream in )
+            throws IOException
+        {
+            super( in );
+        }
+
+        @Override
+        protected Class<?> resolveClass( ObjectStreamClass desc )
+            throws IOException, ClassNotFoundException
+        {
+            if ( classLoader == null )
+            {
+                return super.resolveClass( desc );
+            }
+            try
+            {
+                return Class.forName( desc.getName( ), false, classLoader );
+            }
+            catch ( ClassNotFoundException e )
+            {
+                return super.resolveClass( desc );
+            }
+        }
+    }
+}
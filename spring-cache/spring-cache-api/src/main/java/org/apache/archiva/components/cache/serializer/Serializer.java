@@ -0,0 +1,50 @@
+package org.apache.archiva.components.cache.serializer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * Serializer - converts the cached values to bytes, for the caches storing their values outside of the
+ * java heap, e.g. in direct memory or on disk.
+ * <p>
+ * Implementations must be thread safe.
+ * </p>
+ *
+ * @since 3.0
+ */
+public interface Serializer<T>
+{
+    /**
+     * @param value the value to serialize, never null
+     * @return the serialized form of the value
+     * @throws IOException if the value can't be serialized
+     */
+    byte[] serialize( T value )
+        throws IOException;
+
+    /**
+     * @param data the bytes returned by {@link #serialize(Object)}
+     * @return the value
+     * @throws IOException if the bytes can't be read back
+     */
+    T deserialize( byte[] data )
+        throws IOException;
+}
@@ -0,0 +1,80 @@
+package org.apache.archiva.components.cache.writer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * CacheWriter - writes the updates of a cache to the backing store, e.g. a database, see {@link WritingCache}.
+ * <p>
+ * Implementations must be thread safe. The batch methods write the entries one by one by default, stores
+ * supporting batch updates should override them.
+ * </p>
+ *
+ * @since 3.0
+ */
+public interface CacheWriter<V, T>
+{
+    /**
+     * Writes a value to the store.
+     *
+     * @param key   the key
+     * @param value the value, never null
+     * @throws Exception if the value could not be written
+     */
+    void write( V key, T value )
+        throws Exception;
+
+    /**
+     * Deletes a key from the store.
+     *
+     * @param key the key
+     * @throws Exception if the key could not be deleted
+     */
+    void delete( V key )
+        throws Exception;
+
+    /**
+     * @param entries the values to write, mapped by their key
+     * @throws Exception if the values could not be written, some of them may have been written
+     */
+    default void writeAll( Map<? extends V, ? extends T> entries )
+        throws Exception
+    {
+        for ( Map.Entry<? extends V, ? extends T> entry : entries.entrySet( ) )
+        {
+            write( entry.getKey( ), entry.getValue( ) );
+        }
+    }
+
+    /**
+     * @param keys the keys to delete
+     * @throws Exception if the keys could not be deleted, some of them may have been deleted
+     */
+    default void deleteAll( Collection<? extends V> keys )
+        throws Exception
+    {
+        for ( V key : keys )
+        {
+            delete( key );
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.apache.archiva.components.cache.writer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * CacheWriterException - thrown by the updates of a {@link WritingCache} writing through, when the
+ * {@link CacheWriter} failed. The cache is left unchanged.
+ *
+ * @since 3.0
+ */
+public class CacheWriterException
+    extends RuntimeException
+{
+    private static final long serialVersionUID = -6849339800066561482L;
+
+    public CacheWriterException( String message, Throwable cause )
+    {
+        super( message, cause );
+    }
+}
@@ -0,0 +1,946 @@
+package org.apache.archiva.components.cache.writer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.AbstractCache;
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheStatistics;
+import org.apache.archiva.components.cache.event.CacheEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * WritingCache - writes the updates of the backing cache to a store with a {@link CacheWriter}, so the services
+ * update the cache only, instead of writing to the store and putting into the cache themselves.
+ * <p>
+ * Writing through (default), each put and remove calls the writer first and updates the backing cache only if the
+ * writer succeeded, otherwise a {@link CacheWriterException} is thrown.
+ * </p>
+ * <p>
+ * The updates of a key are serialized by a striped lock, so that the store, the backing cache and the queued writes
+ * end with the value of the last update, and a failed write rolls the backing cache back before the next update of
+ * the key. The backing cache must not be updated besides this cache.
+ * </p>
+ * <p>
+ * With <code>writeBehind</code> the backing cache is updated right away and the writes are queued. The queued
+ * writes are coalesced by key, only the last value of a key is written, and handed to the writer in batches of
+ * <code>batchSize</code> by a dedicated flush thread: once <code>batchSize</code> keys are pending, or at the
+ * latest <code>maxWriteDelayMillis</code> after the first pending write. When <code>maxPendingWrites</code> keys
+ * are pending, the updating thread writes the batch itself. The batches are written in order. A failed batch is
+ * logged and counted, it is not retried. Until they are written, the pending values are returned by the lookups
+ * missing the backing cache, instead of calling the loader. Before {@link #initialize()} and after
+ * {@link #dispose()} the writes are not queued.
+ * </p>
+ * <p>
+ * {@link #invalidate(Object)} and {@link #clear()} only drop the cached values, the store is not changed. The values
+ * loaded by {@link #getOrLoad(Object, Function)} are not written, as they are read from the store.
+ * </p>
+ * <pre>
+ * &lt;bean name="cache#downloads" class="org.apache.archiva.components.cache.writer.WritingCache"&gt;
+ *   &lt;property name="backingCache" ref="cache#hashmap"/&gt;
+ *   &lt;property name="cacheWriter" ref="downloadCountWriter"/&gt;
+ *   &lt;property name="writeBehind" value="true"/&gt;
+ *   &lt;property name="maxWriteDelayMillis" value="5000"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @since 3.0
+ */
+public class WritingCache<V, T>
+    extends AbstractCache<V, T>
+{
+    private static final Logger log = LoggerFactory.getLogger( WritingCache.class );
+
+    /**
+     * Marks a pending delete.
+     */
+    private static final Object DELETED = new Object( );
+
+    private static final int KEY_LOCKS = 64;
+
+    private Cache<V, T> backingCache;
+
+    private CacheWriter<V, T> cacheWriter;
+
+    private boolean writeBehind = false;
+
+    private int batchSize = 100;
+
+    private long maxWriteDelayMillis = 1000;
+
+    private int maxPendingWrites = 10000;
+
+    private final Object lock = new Object( );
+
+    /**
+     * Serializes the updates of the keys, a key is guarded by the lock of its stripe.
+     */
+    private final ReentrantLock[] keyLocks = new ReentrantLock[KEY_LOCKS];
+
+    /**
+     * Serializes the batches, so that they are written in order.
+     */
+    private final Object writeLock = new Object( );
+
+    /**
+     * The values, or {@link #DELETED}, waiting to be written, guarded by the lock.
+     */
+    private Map<V, Object> pending = new LinkedHashMap<>( );
+
+    /**
+     * The batch being written, guarded by the lock.
+     */
+    private Map<V, Object> inFlight = Collections.emptyMap( );
+
+    private ScheduledExecutorService flusher;
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    private boolean flushRequested;
+
+    private final LongAdder writes = new LongAdder( );
+
+    private final LongAdder coalescedWrites = new LongAdder( );
+
+    private final LongAdder writeBatches = new LongAdder( );
+
+    private final LongAdder writeFailures = new LongAdder( );
+
+    public WritingCache( )
+    {
+        for ( int i = 0; i < KEY_LOCKS; i++ )
+        {
+            keyLocks[i] = new ReentrantLock( );
+        }
+    }
+
+    public WritingCache( Cache<V, T> backingCache, CacheWriter<V, T> cacheWriter )
+    {
+        this( );
+        this.backingCache = backingCache;
+        this.cacheWriter = cacheWriter;
+    }
+
+    @PostConstruct
+    public void initialize( )
+    {
+        if ( backingCache == null || cacheWriter == null )
+        {
+            throw new IllegalStateException( "backingCache and cacheWriter are required" );
+        }
+        synchronized ( lock )
+        {
+            if ( writeBehind && flusher == null )
+            {
+                flusher = Executors.newSingleThreadScheduledExecutor( r -> {
+                    Thread thread = new Thread( r, "archiva-cache-write-behind" );
+                    thread.setDaemon( true );
+                    return thread;
+                } );
+            }
+        }
+    }
+
+    /**
+     * Writes the pending updates and stops the flush thread.
+     */
+    @PreDestroy
+    public void dispose( )
+    {
+        ScheduledExecutorService stopped;
+        synchronized ( lock )
+        {
+            stopped = flusher;
+            flusher = null;
+        }
+        flush( );
+        if ( stopped != null )
+        {
+            stopped.shutdown( );
+        }
+    }
+
+    public boolean hasKey( V key )
+    {
+        if ( backingCache.hasKey( key ) )
+        {
+            return true;
+        }
+        Object write = pendingWrite( key );
+        return write != null && write != DELETED;
+    }
+
+    public T get( V key )
+    {
+        T value = backingCache.get( key );
+        return value != null ? value : pendingValue( key );
+    }
+
+    @Override
+    public T getOrLoad( V key, Function<? super V, ? extends T> loader )
+    {
+        return backingCache.getOrLoad( key, pendingFirst( loader ) );
+    }
+
+    @Override
+    public CompletableFuture<T> getOrLoadAsync( V key, Function<? super V, ? extends T> loader, Executor executor )
+    {
+        return backingCache.getOrLoadAsync( key, pendingFirst( loader ), executor );
+    }
+
+    @Override
+    public Map<V, T> getAll( Collection<? extends V> keys )
+    {
+        Map<V, T> values = backingCache.getAll( keys );
+        if ( writeBehind && values.size( ) < keys.size( ) )
+        {
+            for ( V key : keys )
+            {
+                if ( !values.containsKey( key ) )
+                {
+                    T value = pendingValue( key );
+                    if ( value != null )
+                    {
+                        values.put( key, value );
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    public T put( V key, T value )
+    {
+        ReentrantLock keyLock = keyLock( key );
+        keyLock.lock( );
+        try
+        {
+            if ( !writeBehind )
+            {
+                writeThrough( key, value );
+                return backingCache.put( key, value );
+            }
+            T previous = backingCache.put( key, value );
+            enqueue( key, value );
+            return previous;
+        }
+        finally
+        {
+            keyLock.unlock( );
+        }
+    }
+
+    public void register( V key, T value )
+    {
+        put( key, value );
+    }
+
+    public T putIfAbsent( V key, T value )
+    {
+        ReentrantLock keyLock = keyLock( key );
+        keyLock.lock( );
+        try
+        {
+            T previous = backingCache.putIfAbsent( key, value );
+            if ( previous == null )
+            {
+                try
+                {
+                    write( key, value );
+                }
+                catch ( CacheWriterException e )
+                {
+                    // the key lock is held, no other update of the key replaced the value
+                    backingCache.invalidate( key );
+                    throw e;
+                }
+            }
+            return previous;
+        }
+        finally
+        {
+            keyLock.unlock( );
+        }
+    }
+
+    public T replace( V key, T value )
+    {
+        ReentrantLock keyLock = keyLock( key );
+        keyLock.lock( );
+        try
+        {
+            T previous = backingCache.replace( key, value );
+            if ( previous != null )
+            {
+                try
+                {
+                    write( key, value );
+                }
+                catch ( CacheWriterException e )
+                {
+                    // the key lock is held, no other update of the key replaced the value
+                    backingCache.replace( key, previous );
+                    throw e;
+                }
+            }
+            return previous;
+        }
+        finally
+        {
+            keyLock.unlock( );
+        }
+    }
+
+    @Override
+    public void putAll( Map<? extends V, ? extends T> entries )
+    {
+        List<ReentrantLock> locks = lockKeys( entries.keySet( ) );
+        try
+        {
+            if ( !writeBehind )
+            {
+                try
+                {
+                    cacheWriter.writeAll( entries );
+                    writes.add( entries.size( ) );
+                }
+                catch ( Exception e )
+                {
+                    writeFailures.add( entries.size( ) );
+                    throw new CacheWriterException( "Could not write " + entries.keySet( ), e );
+                }
+                backingCache.putAll( entries );
+                return;
+            }
+            backingCache.putAll( entries );
+            for ( Map.Entry<? extends V, ? extends T> entry : entries.entrySet( ) )
+            {
+                enqueue( entry.getKey( ), entry.getValue( ) );
+            }
+        }
+        finally
+        {
+            unlock( locks );
+        }
+    }
+
+    public T remove( V key )
+    {
+        ReentrantLock keyLock = keyLock( key );
+        keyLock.lock( );
+        try
+        {
+            if ( !writeBehind )
+            {
+                deleteThrough( key );
+                return backingCache.remove( key );
+            }
+            T previous = backingCache.remove( key );
+            enqueue( key, DELETED );
+            return previous;
+        }
+        finally
+        {
+            keyLock.unlock( );
+        }
+    }
+
+    @Override
+    public void removeAll( Collection<? extends V> keys )
+    {
+        List<ReentrantLock> locks = lockKeys( keys );
+        try
+        {
+            if ( !writeBehind )
+            {
+                try
+                {
+                    cacheWriter.deleteAll( keys );
+                    writes.add( keys.size( ) );
+                }
+                catch ( Exception e )
+                {
+                    writeFailures.add( keys.size( ) );
+                    throw new CacheWriterException( "Could not delete " + keys, e );
+                }
+                backingCache.removeAll( keys );
+                return;
+            }
+            backingCache.removeAll( keys );
+            for ( V key : keys )
+            {
+                enqueue( key, DELETED );
+            }
+        }
+        finally
+        {
+            unlock( locks );
+        }
+    }
+
+    /**
+     * Drops the cached value only, the store is not changed.
+     */
+    public void invalidate( V key )
+    {
+        backingCache.invalidate( key );
+    }
+
+    /**
+     * Drops the cached values only, the store is not changed and the pending writes are still written.
+     */
+    public void clear( )
+    {
+        backingCache.clear( );
+    }
+
+    public CacheStatistics getStatistics( )
+    {
+        return backingCache.getStatistics( );
+    }
+
+    /**
+     * Writes the pending updates right away, on the calling thread.
+     */
+    public void flush( )
+    {
+        synchronized ( writeLock )
+        {
+            Map<V, Object> batch;
+            synchronized ( lock )
+            {
+                if ( scheduledFlush != null )
+                {
+                    scheduledFlush.cancel( false );
+                    scheduledFlush = null;
+                }
+                flushRequested = false;
+                if ( pending.isEmpty( ) )
+                {
+                    return;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>( );
+                inFlight = batch;
+            }
+            try
+            {
+                writeBatches( batch );
+            }
+            finally
+            {
+                synchronized ( lock )
+                {
+                    inFlight = Collections.emptyMap( );
+                }
+            }
+        }
+    }
+
+    private ReentrantLock keyLock( V key )
+    {
+        int hash = key.hashCode( );
+        return keyLocks[( hash ^ ( hash >>> 16 ) ) & ( KEY_LOCKS - 1 )];
+    }
+
+    /**
+     * Locks the stripes of the keys in the order of the stripes, so that two threads updating several keys don't
+     * deadlock.
+     *
+     * @return the acquired locks, to pass to {@link #unlock(List)}
+     */
+    private List<ReentrantLock> lockKeys( Collection<? extends V> keys )
+    {
+        boolean[] stripes = new boolean[KEY_LOCKS];
+        for ( V key : keys )
+        {
+            int hash = key.hashCode( );
+            stripes[( hash ^ ( hash >>> 16 ) ) & ( KEY_LOCKS - 1 )] = true;
+        }
+        List<ReentrantLock> locks = new ArrayList<>( );
+        try
+        {
+            for ( int i = 0; i < KEY_LOCKS; i++ )
+            {
+                if ( stripes[i] )
+                {
+                    keyLocks[i].lock( );
+                    locks.add( keyLocks[i] );
+                }
+            }
+        }
+        catch ( RuntimeException | Error e )
+        {
+            unlock( locks );
+            throw e;
+        }
+        return locks;
+    }
+
+    private static void unlock( List<ReentrantLock> locks )
+    {
+        for ( int i = locks.size( ) - 1; i >= 0; i-- )
+        {
+            locks.get( i ).unlock( );
+        }
+    }
+
+    private void write( V key, T value )
+    {
+        if ( writeBehind )
+        {
+            enqueue( key, value );
+        }
+        else
+        {
+            writeThrough( key, value );
+        }
+    }
+
+    private void writeThrough( V key, T value )
+    {
+        try
+        {
+            cacheWriter.write( key, value );
+            writes.increment( );
+        }
+        catch ( Exception e )
+        {
+            writeFailures.increment( );
+            throw new CacheWriterException( "Could not write " + key, e );
+        }
+    }
+
+    private void deleteThrough( V key )
+    {
+        try
+        {
+            cacheWriter.delete( key );
+            writes.increment( );
+        }
+        catch ( Exception e )
+        {
+            writeFailures.increment( );
+            throw new CacheWriterException( "Could not delete " + key, e );
+        }
+    }
+
+    /**
+     * Queues a write, or a delete with {@link #DELETED}, replacing the pending write of the key.
+     */
+    private void enqueue( V key, Object write )
+    {
+        boolean flushNow = false;
+        synchronized ( lock )
+        {
+            if ( pending.put( key, write ) != null )
+            {
+                coalescedWrites.increment( );
+            }
+            if ( pending.size( ) >= maxPendingWrites || flusher == null )
+            {
+                // the store can't keep up, or the flush thread is not running
+                flushNow = true;
+            }
+            else if ( pending.size( ) >= batchSize )
+            {
+                if ( !flushRequested )
+                {
+                    flushNow = !submitFlush( );
+                }
+            }
+            else if ( scheduledFlush == null )
+            {
+                try
+                {
+                    scheduledFlush = flusher.schedule( this::flush, maxWriteDelayMillis, TimeUnit.MILLISECONDS );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    flushNow = true;
+                }
+            }
+        }
+        if ( flushNow )
+        {
+            flush( );
+        }
+    }
+
+    /**
+     * Must be called with the lock.
+     *
+     * @return false if the flush thread is stopped
+     */
+    private boolean submitFlush( )
+    {
+        try
+        {
+            flusher.execute( this::flush );
+            flushRequested = true;
+            return true;
+        }
+        catch ( RejectedExecutionException e )
+        {
+            return false;
+        }
+    }
+
+    private void writeBatches( Map<V, Object> batch )
+    {
+        Map<V, T> values = new LinkedHashMap<>( );
+        List<V> deleted = new ArrayList<>( );
+        for ( Map.Entry<V, Object> write : batch.entrySet( ) )
+        {
+            if ( write.getValue( ) == DELETED )
+            {
+                deleted.add( write.getKey( ) );
+            }
+            else
+            {
+                values.put( write.getKey( ), value( write.getValue( ) ) );
+            }
+            if ( values.size( ) >= batchSize )
+            {
+                writeBatch( values );
+                values = new LinkedHashMap<>( );
+            }
+            if ( deleted.size( ) >= batchSize )
+            {
+                deleteBatch( deleted );
+                deleted = new ArrayList<>( );
+            }
+        }
+        if ( !values.isEmpty( ) )
+        {
+            writeBatch( values );
+        }
+        if ( !deleted.isEmpty( ) )
+        {
+            deleteBatch( deleted );
+        }
+    }
+
+    private void writeBatch( Map<V, T> values )
+    {
+        writeBatches.increment( );
+        try
+        {
+            cacheWriter.writeAll( values );
+            writes.add( values.size( ) );
+        }
+        catch ( Exception e )
+        {
+            writeFailures.add( values.size( ) );
+            log.warn( "Failed to write {}: {}", values.keySet( ), e.getMessage( ), e );
+        }
+    }
+
+    private void deleteBatch( List<V> keys )
+    {
+        writeBatches.increment( );
+        try
+        {
+            cacheWriter.deleteAll( keys );
+            writes.add( keys.size( ) );
+        }
+        catch ( Exception e )
+        {
+            writeFailures.add( keys.size( ) );
+            log.warn( "Failed to delete {}: {}", keys, e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * @return the pending value, or {@link #DELETED} for a pending delete, or null if the key has no pending write
+     */
+    private Object pendingWrite( V key )
+    {
+        if ( !writeBehind )
+        {
+            return null;
+        }
+        synchronized ( lock )
+        {
+            Object write = pending.get( key );
+            return write != null ? write : inFlight.get( key );
+        }
+    }
+
+    private T pendingValue( V key )
+    {
+        Object write = pendingWrite( key );
+        return write == null || write == DELETED ? null : value( write );
+    }
+
+    /**
+     * @return the loader returning the pending value of the key, if there is one
+     */
+    private Function<? super V, ? extends T> pendingFirst( Function<? super V, ? extends T> loader )
+    {
+        if ( !writeBehind )
+        {
+            return loader;
+        }
+        return key -> {
+            Object write = pendingWrite( key );
+            if ( write == null )
+            {
+                return loader.apply( key );
+            }
+            return write == DELETED ? null : value( write );
+        };
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private T value( Object write )
+    {
+        return (T) write;
+    }
+
+    /**
+     * @return the number of keys written or deleted by the writer
+     */
+    public long getWriteCount( )
+    {
+        return writes.sum( );
+    }
+
+    /**
+     * @return the number of writes replaced by a later write of the same key before they were written
+     */
+    public long getCoalescedWriteCount( )
+    {
+        return coalescedWrites.sum( );
+    }
+
+    /**
+     * @return the number of batches handed to the writer behind
+     */
+    public long getWriteBatchCount( )
+    {
+        return writeBatches.sum( );
+    }
+
+    /**
+     * @return the number of keys the writer failed to write or delete
+     */
+    public long getWriteFailureCount( )
+    {
+        return writeFailures.sum( );
+    }
+
+    /**
+     * @return the number of keys waiting to be written behind
+     */
+    public int getPendingWriteCount( )
+    {
+        synchronized ( lock )
+        {
+            return pending.size( ) + inFlight.size( );
+        }
+    }
+
+    // the expiration, size and negative caching settings are the ones of the backing cache
+
+    @Override
+    public int getTimeToIdleSeconds( )
+    {
+        return backingCache.getTimeToIdleSeconds( );
+    }
+
+    @Override
+    public void setTimeToIdleSeconds( int timeToIdleSeconds )
+    {
+        backingCache.setTimeToIdleSeconds( timeToIdleSeconds );
+    }
+
+    @Override
+    public int getTimeToLiveSeconds( )
+    {
+        return backingCache.getTimeToLiveSeconds( );
+    }
+
+    @Override
+    public void setTimeToLiveSeconds( int timeToLiveSeconds )
+    {
+        backingCache.setTimeToLiveSeconds( timeToLiveSeconds );
+    }
+
+    @Override
+    public int getMaxElementsInMemory( )
+    {
+        return backingCache.getMaxElementsInMemory( );
+    }
+
+    @Override
+    public void setMaxElementsInMemory( int maxElementsInMemory )
+    {
+        backingCache.setMaxElementsInMemory( maxElementsInMemory );
+    }
+
+    @Override
+    public int getMaxElementsOnDisk( )
+    {
+        return backingCache.getMaxElementsOnDisk( );
+    }
+
+    @Override
+    public void setMaxElementsOnDisk( int maxElementsOnDisk )
+    {
+        backingCache.setMaxElementsOnDisk( maxElementsOnDisk );
+    }
+
+    @Override
+    public int getNegativeTimeToLiveSeconds( )
+    {
+        return backingCache.getNegativeTimeToLiveSeconds( );
+    }
+
+    @Override
+    public void setNegativeTimeToLiveSeconds( int negativeTimeToLiveSeconds )
+    {
+        backingCache.setNegativeTimeToLiveSeconds( negativeTimeToLiveSeconds );
+    }
+
+    @Override
+    public void registerAbsent( V key )
+    {
+        backingCache.registerAbsent( key );
+    }
+
+    @Override
+    public boolean isAbsent( V key )
+    {
+        return backingCache.isAbsent( key );
+    }
+
+    @Override
+    public List<V> getHottestKeys( int limit )
+    {
+        return backingCache.getHottestKeys( limit );
+    }
+
+    @Override
+    public void registerEventListener( CacheEventListener<V, T> listener, boolean async )
+    {
+        backingCache.registerEventListener( listener, async );
+    }
+
+    @Override
+    public void unregisterEventListener( CacheEventListener<V, T> listener )
+    {
+        backingCache.unregisterEventListener( listener );
+    }
+
+    public Cache<V, T> getBackingCache( )
+    {
+        return backingCache;
+    }
+
+    public void setBackingCache( Cache<V, T> backingCache )
+    {
+        this.backingCache = backingCache;
+    }
+
+    public CacheWriter<V, T> getCacheWriter( )
+    {
+        return cacheWriter;
+    }
+
+    public void setCacheWriter( CacheWriter<V, T> cacheWriter )
+    {
+        this.cacheWriter = cacheWriter;
+    }
+
+    public boolean isWriteBehind( )
+    {
+        return writeBehind;
+    }
+
+    /**
+     * @param writeBehind true to queue the writes and write them in batches on a flush thread, false to write
+     *                    through
+     */
+    public void setWriteBehind( boolean writeBehind )
+    {
+        this.writeBehind = writeBehind;
+    }
+
+    public int getBatchSize( )
+    {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the maximum number of keys handed to the writer at once, and the number of pending keys
+     *                  flushing right away
+     */
+    public void setBatchSize( int batchSize )
+    {
+        this.batchSize = batchSize;
+    }
+
+    public long getMaxWriteDelayMillis( )
+    {
+        return maxWriteDelayMillis;
+    }
+
+    /**
+     * @param maxWriteDelayMillis the maximum time a write waits behind
+     */
+    public void setMaxWriteDelayMillis( long maxWriteDelayMillis )
+    {
+        this.maxWriteDelayMillis = maxWriteDelayMillis;
+    }
+
+    public int getMaxPendingWrites( )
+    {
+        return maxPendingWrites;
+    }
+
+    /**
+     * @param maxPendingWrites the number of pending keys from which the updating threads write the batches
+     *                         themselves
+     */
+    public void setMaxPendingWrites( int maxPendingWrites )
+    {
+        this.maxPendingWrites = maxPendingWrites;
+    }
+}
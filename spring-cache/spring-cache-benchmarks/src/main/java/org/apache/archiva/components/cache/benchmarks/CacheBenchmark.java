@@ -0,0 +1,160 @@
+package org.apache.archiva.components.cache.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.Cache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Get, put and mixed workloads on a cache of {@link #MAXIMUM_SIZE} entries, accessing the keys of a four
+ * times larger key space. The throughput mode measures the operations per microsecond, the sample time
+ * mode the latency distribution (p50 to p99.99) of the operations.
+ * <p>
+ * The keys each thread accesses are drawn in advance, the benchmarks measure the cache operations only.
+ * Run them with {@link CacheBenchmarkRunner}.
+ * </p>
+ *
+ * @since 3.0
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class CacheBenchmark
+{
+    static final int MAXIMUM_SIZE = 1 << 14;
+
+    static final int KEY_SPACE = MAXIMUM_SIZE << 2;
+
+    /**
+     * the number of keys drawn per thread, a power of two
+     */
+    static final int SAMPLES = 1 << 20;
+
+    @Param
+    CacheProvider provider;
+
+    @Param
+    KeyDistribution distribution;
+
+    @Param( { "64", "4096" } )
+    int valueSize;
+
+    Cache<Integer, byte[]> cache;
+
+    /**
+     * the boxed keys, to not measure the boxing
+     */
+    Integer[] keys;
+
+    byte[] value;
+
+    @Setup( Level.Trial )
+    public void setUp( )
+    {
+        cache = provider.create( MAXIMUM_SIZE, valueSize );
+        keys = new Integer[KEY_SPACE];
+        for ( int i = 0; i < KEY_SPACE; i++ )
+        {
+            keys[i] = i;
+        }
+        value = new byte[valueSize];
+        new Random( 42 ).nextBytes( value );
+
+        // start with a full cache, holding the keys accessed the most by the distribution
+        int[] warm = distribution.sample( MAXIMUM_SIZE * 4, KEY_SPACE, new Random( 42 ) );
+        for ( int key : warm )
+        {
+            cache.register( keys[key], value );
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown( )
+    {
+        provider.dispose( cache );
+    }
+
+    @State( Scope.Thread )
+    public static class AccessPattern
+    {
+        private int[] sample;
+
+        private int position;
+
+        @Setup( Level.Trial )
+        public void setUp( CacheBenchmark benchmark, ThreadParams threads )
+        {
+            sample = benchmark.distribution.sample( SAMPLES, KEY_SPACE, new Random( threads.getThreadIndex( ) ) );
+        }
+
+        int next( )
+        {
+            return sample[position++ & ( SAMPLES - 1 )];
+        }
+    }
+
+    @Benchmark
+    public byte[] get( AccessPattern pattern )
+    {
+        return cache.get( keys[pattern.next( )] );
+    }
+
+    @Benchmark
+    public void put( AccessPattern pattern )
+    {
+        cache.register( keys[pattern.next( )], value );
+    }
+
+    /**
+     * The cache aside pattern: gets a key and puts it on a miss, the share of puts depends on the hit rate of the
+     * provider for the distribution.
+     */
+    @Benchmark
+    public byte[] mixed( AccessPattern pattern )
+    {
+        Integer key = keys[pattern.next( )];
+        byte[] cached = cache.get( key );
+        if ( cached == null )
+        {
+            cache.register( key, value );
+            return value;
+        }
+        return cached;
+    }
+}
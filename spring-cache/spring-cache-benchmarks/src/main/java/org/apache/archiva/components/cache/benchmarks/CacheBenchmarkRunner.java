@@ -0,0 +1,63 @@
+package org.apache.archiva.components.cache.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the {@link CacheBenchmark} with 1, 4 and 16 threads and the GC profiler, which reports the allocation
+ * rate. The results are written to <code>target/jmh-result-&lt;threads&gt;.json</code>.
+ * <p>
+ * The arguments are JMH command line options, e.g. <code>-p provider=HASHMAP,EHCACHE -p distribution=ZIPFIAN</code>
+ * to restrict the parameters, or <code>-t 8</code> to run with 8 threads only. From Maven:
+ * <code>mvn -Pbenchmark verify -Dbenchmark.args="-p provider=HASHMAP"</code>.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class CacheBenchmarkRunner
+{
+    private static final int[] THREADS = { 1, 4, 16 };
+
+    public static void main( String[] args )
+        throws RunnerException, CommandLineOptionException
+    {
+        CommandLineOptions commandLine = new CommandLineOptions( args );
+        int[] threads = commandLine.getThreads( ).hasValue( ) ? new int[]{ commandLine.getThreads( ).get( ) } : THREADS;
+        for ( int count : threads )
+        {
+            ChainedOptionsBuilder options = new OptionsBuilder( )
+                .parent( commandLine )
+                .include( CacheBenchmark.class.getName( ) )
+                .threads( count )
+                .addProfiler( GCProfiler.class )
+                .resultFormat( ResultFormatType.JSON )
+                .result( "target/jmh-result-" + count + ".json" );
+            new Runner( options.build( ) ).run( );
+        }
+    }
+}
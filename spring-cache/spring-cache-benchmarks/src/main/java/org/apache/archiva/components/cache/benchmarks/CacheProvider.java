@@ -0,0 +1,146 @@
+package org.apache.archiva.components.cache.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.ehcache.EhcacheCache;
+import org.apache.archiva.components.cache.hashmap.ConcurrentHashMapCache;
+import org.apache.archiva.components.cache.hashmap.HashMapCache;
+import org.apache.archiva.components.cache.impl.NoCacheCache;
+import org.apache.archiva.components.cache.offheap.OffHeapCache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+/**
+ * The benchmarked cache providers, configured with the same maximum number of entries.
+ *
+ * @since 3.0
+ */
+public enum CacheProvider
+{
+    HASHMAP
+        {
+            @Override
+            Cache<Integer, byte[]> create( int maximumSize, int valueSize )
+            {
+                HashMapCache<Integer, byte[]> cache = new HashMapCache<>( );
+                cache.setCacheMaxSize( maximumSize );
+                cache.initialize( );
+                return cache;
+            }
+        },
+    HASHMAP_TINYLFU
+        {
+            @Override
+            Cache<Integer, byte[]> create( int maximumSize, int valueSize )
+            {
+                HashMapCache<Integer, byte[]> cache = new HashMapCache<>( );
+                cache.setCacheMaxSize( maximumSize );
+                cache.setMemoryEvictionPolicy( HashMapCache.TINY_LFU );
+                cache.initialize( );
+                return cache;
+            }
+        },
+    CONCURRENT_HASHMAP
+        {
+            @Override
+            Cache<Integer, byte[]> create( int maximumSize, int valueSize )
+            {
+                ConcurrentHashMapCache<Integer, byte[]> cache = new ConcurrentHashMapCache<>( );
+                cache.setCacheMaxSize( maximumSize );
+                cache.initialize( );
+                return cache;
+            }
+        },
+    EHCACHE
+        {
+            @Override
+            Cache<Integer, byte[]> create( int maximumSize, int valueSize )
+            {
+                EhcacheCache<Integer, byte[]> cache = new EhcacheCache<>( Integer.class, byte[].class );
+                try
+                {
+                    cache.setDiskStorePath( Files.createTempDirectory( "archiva-cache-benchmark" ) );
+                }
+                catch ( IOException e )
+                {
+                    throw new UncheckedIOException( e );
+                }
+                cache.setName( "benchmark" );
+                cache.setMaxElementsInMemory( maximumSize );
+                cache.setEternal( true );
+                cache.initialize( );
+                return cache;
+            }
+        },
+    OFFHEAP
+        {
+            @Override
+            Cache<Integer, byte[]> create( int maximumSize, int valueSize )
+            {
+                OffHeapCache<Integer, byte[]> cache = new OffHeapCache<>( );
+                cache.setCacheMaxSize( maximumSize );
+                // room for all entries, the block overhead included
+                cache.setMaxBytes( 2L * maximumSize * ( valueSize + 128 ) );
+                cache.initialize( );
+                return cache;
+            }
+        },
+    NOCACHE
+        {
+            @Override
+            Cache<Integer, byte[]> create( int maximumSize, int valueSize )
+            {
+                return new NoCacheCache<>( );
+            }
+        };
+
+    /**
+     * @param maximumSize the maximum number of entries
+     * @param valueSize   the size of the cached values in bytes
+     * @return a new, initialized cache
+     */
+    abstract Cache<Integer, byte[]> create( int maximumSize, int valueSize );
+
+    /**
+     * Releases the resources of a cache created by {@link #create(int, int)}.
+     */
+    void dispose( Cache<Integer, byte[]> cache )
+    {
+        if ( cache instanceof HashMapCache )
+        {
+            ( (HashMapCache<Integer, byte[]>) cache ).dispose( );
+        }
+        else if ( cache instanceof EhcacheCache )
+        {
+            ( (EhcacheCache<Integer, byte[]>) cache ).dispose( );
+        }
+        else if ( cache instanceof OffHeapCache )
+        {
+            ( (OffHeapCache<Integer, byte[]>) cache ).dispose( );
+        }
+        else
+        {
+            cache.clear( );
+        }
+    }
+}
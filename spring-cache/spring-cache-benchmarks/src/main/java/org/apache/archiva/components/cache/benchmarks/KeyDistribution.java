@@ -0,0 +1,160 @@
+package org.apache.archiva.components.cache.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Random;
+
+/**
+ * The distributions of the accessed keys, the keys are the integers of <code>[0, keySpace)</code>.
+ *
+ * @since 3.0
+ */
+public enum KeyDistribution
+{
+    /**
+     * Every key is accessed with the same probability.
+     */
+    UNIFORM
+        {
+            @Override
+            int[] sample( int count, int keySpace, Random random )
+            {
+                int[] keys = new int[count];
+                for ( int i = 0; i < count; i++ )
+                {
+                    keys[i] = random.nextInt( keySpace );
+                }
+                return keys;
+            }
+        },
+    /**
+     * Few hot keys take most of the accesses, like the popular artifacts of a repository. The ranks of
+     * the Zipfian distribution (exponent 0.99) are mapped to randomly permuted keys, so the hot keys
+     * are spread over the key space.
+     */
+    ZIPFIAN
+        {
+            @Override
+            int[] sample( int count, int keySpace, Random random )
+            {
+                int[] permutation = new int[keySpace];
+                for ( int i = 0; i < keySpace; i++ )
+                {
+                    permutation[i] = i;
+                }
+                Random shuffle = new Random( keySpace );
+                for ( int i = keySpace - 1; i > 0; i-- )
+                {
+                    int j = shuffle.nextInt( i + 1 );
+                    int swap = permutation[i];
+                    permutation[i] = permutation[j];
+                    permutation[j] = swap;
+                }
+
+                ZipfianGenerator generator = new ZipfianGenerator( keySpace, 0.99 );
+                int[] keys = new int[count];
+                for ( int i = 0; i < count; i++ )
+                {
+                    keys[i] = permutation[generator.next( random )];
+                }
+                return keys;
+            }
+        },
+    /**
+     * The keys are accessed in sequence, starting at a random key, like a full scan of the data.
+     * Each key is accessed once per pass over the key space, defeating recency based eviction.
+     */
+    SCAN
+        {
+            @Override
+            int[] sample( int count, int keySpace, Random random )
+            {
+                int start = random.nextInt( keySpace );
+                int[] keys = new int[count];
+                for ( int i = 0; i < count; i++ )
+                {
+                    keys[i] = ( start + i ) % keySpace;
+                }
+                return keys;
+            }
+        };
+
+    /**
+     * @param count    the number of keys to draw
+     * @param keySpace the number of distinct keys
+     * @param random   the source of randomness
+     * @return the drawn keys
+     */
+    abstract int[] sample( int count, int keySpace, Random random );
+
+    /**
+     * Draws the ranks of a Zipfian distribution, the algorithm of Gray et al., "Quickly Generating
+     * Billion-Record Synthetic Databases", as used by YCSB.
+     */
+    static final class ZipfianGenerator
+    {
+        private final int items;
+
+        private final double theta;
+
+        private final double alpha;
+
+        private final double zetan;
+
+        private final double eta;
+
+        ZipfianGenerator( int items, double theta )
+        {
+            this.items = items;
+            this.theta = theta;
+            this.alpha = 1.0 / ( 1.0 - theta );
+            this.zetan = zeta( items, theta );
+            this.eta = ( 1 - Math.pow( 2.0 / items, 1 - theta ) ) / ( 1 - zeta( 2, theta ) / zetan );
+        }
+
+        private static double zeta( int n, double theta )
+        {
+            double sum = 0;
+            for ( int i = 1; i <= n; i++ )
+            {
+                sum += 1 / Math.pow( i, theta );
+            }
+            return sum;
+        }
+
+        /**
+         * @return a rank of <code>[0, items)</code>, 0 is the most frequent one
+         */
+        int next( Random random )
+        {
+            double u = random.nextDouble( );
+            double uz = u * zetan;
+            if ( uz < 1.0 )
+            {
+                return 0;
+            }
+            if ( uz < 1.0 + Math.pow( 0.5, theta ) )
+            {
+                return 1;
+            }
+            return Math.min( items - 1, (int) ( items * Math.pow( eta * u - eta + 1, alpha ) ) );
+        }
+    }
+}
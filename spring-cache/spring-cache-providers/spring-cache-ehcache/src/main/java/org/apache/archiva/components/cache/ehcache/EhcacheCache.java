@@ -19,7 +19,13 @@ package org.apache.archiva.components.cache.ehcache;
  * under the License.
  */
 
+import org.apache.archiva.components.cache.AbstractCacheStatistics;
 import org.apache.archiva.components.cache.CacheStatistics;
+import org.apache.archiva.components.cache.Expiry;
+import org.apache.archiva.components.cache.LoadCoalescer;
+import org.apache.archiva.components.cache.event.CacheEventDispatcher;
+import org.apache.archiva.components.cache.event.RemovalCause;
+import org.apache.archiva.components.cache.serializer.Serializer;
 import org.ehcache.Cache;
 import org.ehcache.PersistentCacheManager;
 import org.ehcache.StateTransitionException;
@@ -30,7 +36,13 @@ import org.ehcache.config.builders.ExpiryPolicyBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.ehcache.config.units.MemoryUnit;
 import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+import org.ehcache.event.EventFiring;
+import org.ehcache.event.EventOrdering;
+import org.ehcache.event.EventType;
 import org.ehcache.expiry.ExpiryPolicy;
+import org.ehcache.impl.internal.TimeSourceConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,15 +54,33 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 /**
  * EhcacheCache
  * configuration document available <a href="http://www.ehcache.org/documentation/configuration/index">EhcacheUserGuide</a>
  * <p>
  * You can use the system property <code>org.apache.archiva.ehcache.diskStore</code> to set the default disk store path.
+ * <p>
+ * With a <code>negativeTimeToLiveSeconds</code> &gt; 0 the absent keys are kept in a second, heap only ehcache named
+ * after this cache with the suffix <code>-absent</code>, expiring after that time.
+ * <p>
+ * The keys and values stored in the disk and off-heap tiers are written with the java serialization of ehcache,
+ * unless a <code>keySerializer</code> or <code>valueSerializer</code> is set, e.g. a
+ * {@link org.apache.archiva.components.cache.serializer.BinarySerializer} wrapped by a
+ * {@link org.apache.archiva.components.cache.serializer.DeflateSerializer} to compress the values.
  *
  * @author <a href="mailto:joakim@erdfelt.com">Joakim Erdfelt</a>
  */
@@ -72,11 +102,13 @@ public class EhcacheCache<V, T>
     }
 
     static class Stats
+        extends AbstractCacheStatistics
         implements CacheStatistics
     {
         private boolean useBaseLine = false;
         private long hitCountBL = 0;
         private long missCountBL = 0;
+        private long evictionCountBL = 0;
         private long sizeBL = 0;
         private long localHeapSizeInBytesBL = 0;
         private final String cacheName;
@@ -92,10 +124,13 @@ public class EhcacheCache<V, T>
         @Override
         public void clear( )
         {
+            // resets the load and latency statistics recorded by this class
+            super.clear( );
             useBaseLine = true;
             org.ehcache.core.statistics.CacheStatistics cStats = getStats( );
             hitCountBL = cStats.getCacheHits( );
             missCountBL = cStats.getCacheMisses( );
+            evictionCountBL = cStats.getCacheEvictions( ) + cStats.getCacheExpirations( );
             sizeBL = cStats.getTierStatistics( ).size( );
             localHeapSizeInBytesBL = cStats.getTierStatistics( ).get( "OnHeap" ).getAllocatedByteSize( );
         }
@@ -133,6 +168,17 @@ public class EhcacheCache<V, T>
             return useBaseLine ? misses - missCountBL : misses;
         }
 
+        /**
+         * @return the entries evicted or expired by ehcache
+         */
+        @Override
+        public long getEvictionCount( )
+        {
+            org.ehcache.core.statistics.CacheStatistics cStats = getStats( );
+            long evictions = cStats.getCacheEvictions( ) + cStats.getCacheExpirations( );
+            return useBaseLine ? evictions - evictionCountBL : evictions;
+        }
+
         @Override
         public long getSize( )
         {
@@ -232,8 +278,45 @@ public class EhcacheCache<V, T>
 
     private Cache<V, T> ehcache;
 
+    /**
+     * @since 3.0
+     */
+    private int negativeTimeToLiveSeconds = 0;
+
+    private Cache<V, Boolean> absentCache;
+
+    /**
+     * @since 3.0
+     */
+    private Serializer<V> keySerializer;
+
+    /**
+     * @since 3.0
+     */
+    private Serializer<T> valueSerializer;
+
+    /**
+     * @since 3.0
+     */
+    private Expiry<? super V, ? super T> expiry;
+
+    /**
+     * The time source of the cache manager in milliseconds, null for the system clock.
+     */
+    private LongSupplier ticker;
+
+    private String absentCacheName;
+
+    private final CacheEventDispatcher<V, T> events = new CacheEventDispatcher<>( );
+
+    private final CacheEventListener<V, T> nativeListener = this::onNativeEvent;
+
+    private boolean nativeListenerRegistered;
+
     private Stats stats;
 
+    private final LoadCoalescer<V, T> loadCoalescer = new LoadCoalescer<>( );
+
     private static final ConcurrentHashMap<Path, ManagerData> cacheManagerRefs = new ConcurrentHashMap<>( );
 
 
@@ -244,6 +327,10 @@ public class EhcacheCache<V, T>
         {
             ehcache.clear( );
         }
+        if ( absentCache != null )
+        {
+            absentCache.clear( );
+        }
         if ( stats != null )
         {
             stats.clear( );
@@ -295,16 +382,92 @@ public class EhcacheCache<V, T>
                 rpBuilder.offheap( getMaxBytesLocalOffHeap( ), MemoryUnit.B );
             }
             log.info( "Creating cache {}", registeredName );
-            this.ehcache = cacheManager.createCache( this.registeredName, CacheConfigurationBuilder.newCacheConfigurationBuilder( keyType, valueType, rpBuilder )
-                .withExpiry( getExpiry( ) )
-                .build( ) );
+            CacheConfigurationBuilder<V, T> configuration = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder( keyType, valueType, rpBuilder )
+                .withExpiry( getExpiryPolicy( ) );
+            if ( keySerializer != null )
+            {
+                configuration = configuration.withKeySerializer( new EhcacheSerializer<>( keySerializer ) );
+            }
+            if ( valueSerializer != null )
+            {
+                configuration = configuration.withValueSerializer( new EhcacheSerializer<>( valueSerializer ) );
+            }
+            this.ehcache = cacheManager.createCache( this.registeredName, configuration.build( ) );
 
             md.cacheNames.add( this.registeredName );
         }
+        registerNativeListener( );
+
+        if ( negativeTimeToLiveSeconds > 0 )
+        {
+            initAbsentCache( md );
+        }
+    }
+
+    /**
+     * Forwards the events of ehcache to the listeners, once the first listener is registered. The native listener is
+     * synchronous, the {@link CacheEventDispatcher} delivers the events to the asynchronous listeners.
+     */
+    private synchronized void registerNativeListener( )
+    {
+        if ( ehcache != null && !nativeListenerRegistered && events.hasListeners( ) )
+        {
+            ehcache.getRuntimeConfiguration( ).registerCacheEventListener( nativeListener, EventOrdering.ORDERED,
+                                                                          EventFiring.SYNCHRONOUS,
+                                                                          EnumSet.of( EventType.UPDATED,
+                                                                                      EventType.REMOVED,
+                                                                                      EventType.EXPIRED,
+                                                                                      EventType.EVICTED ) );
+            nativeListenerRegistered = true;
+        }
     }
 
-    ExpiryPolicy getExpiry( )
+    private void onNativeEvent( CacheEvent<? extends V, ? extends T> event )
     {
+        RemovalCause cause;
+        switch ( event.getType( ) )
+        {
+            case UPDATED:
+                cause = RemovalCause.REPLACED;
+                break;
+            case REMOVED:
+                cause = RemovalCause.EXPLICIT;
+                break;
+            case EXPIRED:
+                cause = RemovalCause.EXPIRED;
+                break;
+            case EVICTED:
+                cause = RemovalCause.SIZE;
+                break;
+            default:
+                return;
+        }
+        events.publish( event.getKey( ), event.getOldValue( ), cause );
+    }
+
+    private void initAbsentCache( ManagerData md )
+    {
+        this.absentCacheName = this.registeredName + "-absent";
+        Cache<V, Boolean> cache = md.cacheManager.getCache( absentCacheName, keyType, Boolean.class );
+        if ( cache == null )
+        {
+            int elements = getMaxElementsInMemory( ) > 0 ? getMaxElementsInMemory( ) : 1000;
+            cache = md.cacheManager.createCache( absentCacheName, CacheConfigurationBuilder
+                .newCacheConfigurationBuilder( keyType, Boolean.class, ResourcePoolsBuilder.heap( elements ) )
+                .withExpiry( ExpiryPolicyBuilder.timeToLiveExpiration( Duration.ofSeconds( negativeTimeToLiveSeconds ) ) )
+                .build( ) );
+            md.cacheNames.add( absentCacheName );
+        }
+        this.absentCache = cache;
+    }
+
+    ExpiryPolicy getExpiryPolicy( )
+    {
+        if ( expiry != null )
+        {
+            return new EhcacheExpiry<V, T>( expiry );
+        }
         int ttl = getTimeToLiveSeconds( );
         int tti = getTimeToIdleSeconds( );
         if ( ttl <= 0 && tti <= 0 )
@@ -350,6 +513,10 @@ public class EhcacheCache<V, T>
             {
                 builder = builder.using( svc );
             }
+            if ( ticker != null )
+            {
+                builder = builder.using( new TimeSourceConfiguration( ticker::getAsLong ) );
+            }
             return builder.build( true );
         } catch ( StateTransitionException ex ) {
             // One try to use fallback path, if the cache exists already
@@ -368,6 +535,10 @@ public class EhcacheCache<V, T>
             {
                 builder = builder.using( svc );
             }
+            if ( ticker != null )
+            {
+                builder = builder.using( new TimeSourceConfiguration( ticker::getAsLong ) );
+            }
             return builder.build( true );
         }
     }
@@ -395,7 +566,28 @@ public class EhcacheCache<V, T>
                 finally
                 {
                     names.remove( this.registeredName );
-                    this.ehcache = null;
+                    synchronized ( this )
+                    {
+                        // the native listener goes with the destroyed cache
+                        this.ehcache = null;
+                        nativeListenerRegistered = false;
+                    }
+                }
+            }
+            if ( this.absentCache != null )
+            {
+                try
+                {
+                    cacheManager.destroyCache( this.absentCacheName );
+                }
+                catch ( Throwable e )
+                {
+                    log.error( "Cache removal failed: {}", e.getMessage( ), e );
+                }
+                finally
+                {
+                    names.remove( this.absentCacheName );
+                    this.absentCache = null;
                 }
             }
             if ( names.size( ) == 0 )
@@ -419,6 +611,7 @@ public class EhcacheCache<V, T>
         {
             log.debug( "Not disposing cache, because cacheManager is not alive: {}", ehcache );
         }
+        events.close( );
     }
 
     @Override
@@ -429,7 +622,113 @@ public class EhcacheCache<V, T>
             return null;
         }
 
-        return ehcache.get( key );
+        if ( isCachedAbsent( key ) )
+        {
+            return null;
+        }
+        long start = stats.getStarted( );
+        T value = ehcache.get( key );
+        stats.getCompleted( start );
+        return value;
+    }
+
+    /**
+     * Looks a key up again before the loader is called. Ehcache counts every get, the key is only read if it is
+     * contained: a value stored by a concurrent load counts a hit after the miss of the first lookup.
+     */
+    private T peek( V key )
+    {
+        return ehcache.containsKey( key ) ? ehcache.get( key ) : null;
+    }
+
+    @Override
+    public T getOrLoad( V key, Function<? super V, ? extends T> loader )
+    {
+        if ( isCachedAbsent( key ) )
+        {
+            return null;
+        }
+        T value = loadCoalescer.getOrLoad( this::get, this::peek, this::register, key, stats.recordLoads( loader ) );
+        if ( value == null )
+        {
+            registerAbsent( key );
+        }
+        return value;
+    }
+
+    @Override
+    public CompletableFuture<T> getOrLoadAsync( V key, Function<? super V, ? extends T> loader, Executor executor )
+    {
+        if ( isCachedAbsent( key ) )
+        {
+            return CompletableFuture.completedFuture( null );
+        }
+        CompletableFuture<T> load = loadCoalescer.getOrLoadAsync( this::get, this::peek, this::register, key,
+            stats.recordLoads( loader ), executor );
+        if ( absentCache == null )
+        {
+            return load;
+        }
+        return load.thenApply( value -> {
+            if ( value == null )
+            {
+                registerAbsent( key );
+            }
+            return value;
+        } );
+    }
+
+    /**
+     * The absence is only cached, if ehcache holds no value for the key.
+     */
+    @Override
+    public void registerAbsent( V key )
+    {
+        if ( absentCache != null && !ehcache.containsKey( key ) )
+        {
+            absentCache.put( key, Boolean.TRUE );
+            // a value stored since the check may have dropped the absence before it was put, it would hide the value
+            if ( ehcache.containsKey( key ) )
+            {
+                absentCache.remove( key, Boolean.TRUE );
+            }
+        }
+    }
+
+    @Override
+    public boolean isAbsent( V key )
+    {
+        return absentCache != null && absentCache.containsKey( key );
+    }
+
+    /**
+     * @return true if the absence of the key is cached, counted as a negative hit
+     */
+    private boolean isCachedAbsent( V key )
+    {
+        if ( !isAbsent( key ) )
+        {
+            return false;
+        }
+        stats.negativeHit( );
+        return true;
+    }
+
+    /**
+     * Drops the cached absence of a key, after a value was stored or the key was removed.
+     */
+    private void forgetAbsent( V key )
+    {
+        if ( absentCache != null )
+        {
+            absentCache.remove( key );
+        }
+    }
+
+    @Override
+    public CompletableFuture<T> getOrLoadAsync( V key, Function<? super V, ? extends T> loader )
+    {
+        return getOrLoadAsync( key, loader, ForkJoinPool.commonPool( ) );
     }
 
     public long getDiskExpiryThreadIntervalSeconds( )
@@ -511,26 +810,105 @@ public class EhcacheCache<V, T>
     public void register( V key, T value )
     {
         ehcache.put( key, value );
+        forgetAbsent( key );
     }
 
+    /**
+     * Ehcache has no atomic put returning the previous value, so the put is made of a putIfAbsent and a replace of
+     * the value it returned, repeated if another write happened in between. Use {@link #register(Object, Object)},
+     * {@link #putIfAbsent(Object, Object)} or {@link #replace(Object, Object)}, which are single atomic operations.
+     */
     @Override
     public T put( V key, T value )
     {
-        // Multiple steps done to satisfy Cache API requirement for Previous object return.
         T previous;
-        previous = ehcache.get( key );
-        ehcache.put( key, value );
+        do
+        {
+            previous = ehcache.putIfAbsent( key, value );
+        }
+        while ( previous != null && !ehcache.replace( key, previous, value ) );
+        forgetAbsent( key );
         return previous;
     }
 
+    @Override
+    public T putIfAbsent( V key, T value )
+    {
+        T previous = ehcache.putIfAbsent( key, value );
+        if ( previous == null )
+        {
+            forgetAbsent( key );
+        }
+        return previous;
+    }
+
+    @Override
+    public T replace( V key, T value )
+    {
+        return ehcache.replace( key, value );
+    }
+
+    /**
+     * Ehcache has no atomic remove returning the removed value, so the value read is removed only if it is still
+     * mapped, repeated if another write happened in between. Use {@link #invalidate(Object)}, if the value is not
+     * needed.
+     */
     @Override
     public T remove( V key )
     {
-        T previous = ehcache.get( key );
-        ehcache.remove( key );
+        T previous;
+        do
+        {
+            previous = ehcache.get( key );
+        }
+        while ( previous != null && !ehcache.remove( key, previous ) );
+        forgetAbsent( key );
         return previous;
     }
 
+    @Override
+    public void invalidate( V key )
+    {
+        ehcache.remove( key );
+        forgetAbsent( key );
+    }
+
+    @Override
+    public Map<V, T> getAll( Collection<? extends V> keys )
+    {
+        Map<V, T> values = new HashMap<>( );
+        // ehcache maps the keys not found to null
+        for ( Map.Entry<V, T> entry : ehcache.getAll( new HashSet<>( keys ) ).entrySet( ) )
+        {
+            if ( entry.getValue( ) != null )
+            {
+                values.put( entry.getKey( ), entry.getValue( ) );
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void putAll( Map<? extends V, ? extends T> entries )
+    {
+        ehcache.putAll( entries );
+        if ( absentCache != null )
+        {
+            absentCache.removeAll( entries.keySet( ) );
+        }
+    }
+
+    @Override
+    public void removeAll( Collection<? extends V> keys )
+    {
+        Set<V> keySet = new HashSet<>( keys );
+        ehcache.removeAll( keySet );
+        if ( absentCache != null )
+        {
+            absentCache.removeAll( keySet );
+        }
+    }
+
     public void setDiskExpiryThreadIntervalSeconds( long diskExpiryThreadIntervalSeconds )
     {
         this.diskExpiryThreadIntervalSeconds = diskExpiryThreadIntervalSeconds;
@@ -634,6 +1012,106 @@ public class EhcacheCache<V, T>
         this.maxBytesLocalOffHeap = maxBytesLocalOffHeap;
     }
 
+    public Serializer<V> getKeySerializer( )
+    {
+        return keySerializer;
+    }
+
+    /**
+     * @param keySerializer the serializer of the keys in the disk and off-heap tiers, must be set before
+     *                      {@link #initialize()}
+     */
+    public void setKeySerializer( Serializer<V> keySerializer )
+    {
+        this.keySerializer = keySerializer;
+    }
+
+    public Serializer<T> getValueSerializer( )
+    {
+        return valueSerializer;
+    }
+
+    /**
+     * @param valueSerializer the serializer of the values in the disk and off-heap tiers, must be set before
+     *                        {@link #initialize()}
+     */
+    public void setValueSerializer( Serializer<T> valueSerializer )
+    {
+        this.valueSerializer = valueSerializer;
+    }
+
+    /**
+     * The listeners are notified of the entries removed, replaced, expired or evicted by ehcache, clearing the
+     * cache is not reported. Can be called before or after {@link #initialize()}.
+     */
+    @Override
+    public void registerEventListener( org.apache.archiva.components.cache.event.CacheEventListener<V, T> listener,
+                                       boolean async )
+    {
+        events.register( listener, async );
+        registerNativeListener( );
+    }
+
+    @Override
+    public void unregisterEventListener(
+        org.apache.archiva.components.cache.event.CacheEventListener<V, T> listener )
+    {
+        events.unregister( listener );
+    }
+
+    /**
+     * @return the dispatcher of the events, to configure the delivery to the asynchronous listeners
+     */
+    public CacheEventDispatcher<V, T> getEventDispatcher( )
+    {
+        return events;
+    }
+
+    public Expiry<? super V, ? super T> getExpiry( )
+    {
+        return expiry;
+    }
+
+    /**
+     * @param expiry computes the expiration of each entry instead of the time to live and idle, must be set before
+     *               {@link #initialize()}
+     */
+    public void setExpiry( Expiry<? super V, ? super T> expiry )
+    {
+        this.expiry = expiry;
+    }
+
+    public LongSupplier getTicker( )
+    {
+        return ticker;
+    }
+
+    /**
+     * @param ticker returns the current time in milliseconds, the system clock if not set; tests set a ticker they
+     *               advance themselves, to expire entries without waiting. Must be set before {@link #initialize()},
+     *               it is the time source of the cache manager of the disk store path, which is created by the first
+     *               cache using the path
+     */
+    public void setTicker( LongSupplier ticker )
+    {
+        this.ticker = ticker;
+    }
+
+    @Override
+    public int getNegativeTimeToLiveSeconds( )
+    {
+        return negativeTimeToLiveSeconds;
+    }
+
+    /**
+     * Must be set before {@link #initialize()}.
+     */
+    @Override
+    public void setNegativeTimeToLiveSeconds( int negativeTimeToLiveSeconds )
+    {
+        this.negativeTimeToLiveSeconds = negativeTimeToLiveSeconds;
+    }
+
     @Override
     public int getMaxElementsOnDisk( )
     {
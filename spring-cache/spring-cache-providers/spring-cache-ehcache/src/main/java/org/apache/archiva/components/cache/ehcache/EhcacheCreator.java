@@ -23,6 +23,7 @@ import org.apache.archiva.components.cache.Cache;
 import org.apache.archiva.components.cache.CacheException;
 import org.apache.archiva.components.cache.CacheHints;
 import org.apache.archiva.components.cache.factory.CacheCreator;
+import org.apache.archiva.components.cache.serializer.Serializer;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -70,6 +71,14 @@ public class EhcacheCreator<K,V>
             cache.setDiskStorePath( overflowPath );
         }
 
+        if ( hints.getKeySerializer( ) != null )
+        {
+            cache.setKeySerializer( (Serializer<K>) hints.getKeySerializer( ) );
+        }
+        if ( hints.getValueSerializer( ) != null )
+        {
+            cache.setValueSerializer( (Serializer<V>) hints.getValueSerializer( ) );
+        }
         cache.setMaxElementsInMemory( hints.getMaxElements( ) );
         cache.setTimeToLiveSeconds( hints.getMaxSecondsInCache( ) );
         cache.setTimeToIdleSeconds( hints.getIdleExpirationSeconds( ) );
@@ -78,4 +87,13 @@ public class EhcacheCreator<K,V>
 
         return cache;
     }
+
+    @Override
+    public void disposeCache( Cache<K,V> cache )
+    {
+        if ( cache instanceof EhcacheCache )
+        {
+            ( (EhcacheCache<K,V>) cache ).dispose( );
+        }
+    }
 }
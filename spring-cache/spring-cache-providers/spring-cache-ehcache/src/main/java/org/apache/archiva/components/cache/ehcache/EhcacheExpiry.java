@@ -0,0 +1,71 @@
+package org.apache.archiva.components.cache.ehcache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.Expiry;
+import org.ehcache.expiry.ExpiryPolicy;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Adapts an {@link Expiry} of the cache API to the expiry policy of ehcache.
+ *
+ * @since 3.0
+ */
+final class EhcacheExpiry<V, T>
+    implements ExpiryPolicy<V, T>
+{
+    private final Expiry<? super V, ? super T> expiry;
+
+    EhcacheExpiry( Expiry<? super V, ? super T> expiry )
+    {
+        this.expiry = expiry;
+    }
+
+    @Override
+    public Duration getExpiryForCreation( V key, T value )
+    {
+        Duration duration = expiry.expireAfterCreate( key, value );
+        return duration == null ? INFINITE : toEhcache( duration );
+    }
+
+    @Override
+    public Duration getExpiryForAccess( V key, Supplier<? extends T> value )
+    {
+        // null keeps the current expiration, as in ehcache
+        return toEhcache( expiry.expireAfterAccess( key, value.get( ) ) );
+    }
+
+    @Override
+    public Duration getExpiryForUpdate( V key, Supplier<? extends T> oldValue, T newValue )
+    {
+        return toEhcache( expiry.expireAfterUpdate( key, oldValue.get( ), newValue ) );
+    }
+
+    /**
+     * @return {@link #INFINITE} for {@link Expiry#ETERNAL}, which would overflow the arithmetic of ehcache in
+     * milliseconds, the duration otherwise, null kept
+     */
+    private static Duration toEhcache( Duration duration )
+    {
+        return duration != null && duration.compareTo( Expiry.ETERNAL ) >= 0 ? INFINITE : duration;
+    }
+}
@@ -0,0 +1,79 @@
+package org.apache.archiva.components.cache.ehcache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.serializer.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Adapts a {@link Serializer} of the cache API to the serializer SPI of ehcache, used for the off-heap and disk tiers.
+ *
+ * @since 3.0
+ */
+final class EhcacheSerializer<T>
+    implements org.ehcache.spi.serialization.Serializer<T>
+{
+    private final Serializer<T> serializer;
+
+    EhcacheSerializer( Serializer<T> serializer )
+    {
+        this.serializer = serializer;
+    }
+
+    @Override
+    public ByteBuffer serialize( T object )
+        throws SerializerException
+    {
+        try
+        {
+            return ByteBuffer.wrap( serializer.serialize( object ) );
+        }
+        catch ( IOException e )
+        {
+            throw new SerializerException( "Could not serialize " + object.getClass( ).getName( ), e );
+        }
+    }
+
+    @Override
+    public T read( ByteBuffer binary )
+        throws SerializerException
+    {
+        byte[] data = new byte[binary.remaining( )];
+        binary.get( data );
+        try
+        {
+            return serializer.deserialize( data );
+        }
+        catch ( IOException e )
+        {
+            throw new SerializerException( "Could not deserialize: " + e.getMessage( ), e );
+        }
+    }
+
+    @Override
+    public boolean equals( T object, ByteBuffer binary )
+        throws SerializerException
+    {
+        return object.equals( read( binary ) );
+    }
+}
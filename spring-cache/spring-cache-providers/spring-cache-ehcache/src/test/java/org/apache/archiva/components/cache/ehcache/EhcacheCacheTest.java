@@ -17,12 +17,22 @@ package org.apache.archiva.components.cache.ehcache;
  */
 
 import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.Expiry;
 import org.apache.archiva.components.cache.test.AbstractCacheTestCase;
 import org.apache.archiva.components.cache.test.examples.wine.Wine;
+import org.junit.Test;
 import org.springframework.test.annotation.DirtiesContext;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * EhcacheCacheTest
@@ -88,4 +98,96 @@ public class EhcacheCacheTest
     {
         return EhcacheCache.class;
     }
+
+    @Test
+    public void testNegativeCachingSkipsTheLoader( )
+    {
+        EhcacheCache<String, Integer> negative = new EhcacheCache<>( String.class, Integer.class );
+        negative.setName( "negative" );
+        negative.setDiskPersistent( false );
+        negative.setDiskStorePath( Paths.get( System.getProperty( "basedir", "." ), "target/ehcache-negative" ) );
+        negative.setNegativeTimeToLiveSeconds( 60 );
+        negative.initialize( );
+        try
+        {
+            final AtomicInteger lookups = new AtomicInteger( );
+            Function<String, Integer> repository = key -> {
+                lookups.incrementAndGet( );
+                return null;
+            };
+
+            assertNull( negative.getOrLoad( "missing", repository ) );
+            assertNull( negative.getOrLoad( "missing", repository ) );
+            assertNull( negative.get( "missing" ) );
+            assertEquals( 1, lookups.get( ) );
+            assertTrue( negative.isAbsent( "missing" ) );
+            assertEquals( 2, negative.getStatistics( ).getNegativeHitCount( ) );
+
+            negative.put( "missing", 1 );
+            assertFalse( negative.isAbsent( "missing" ) );
+            assertEquals( Integer.valueOf( 1 ), negative.getOrLoad( "missing", repository ) );
+
+            negative.registerAbsent( "removed" );
+            negative.invalidate( "removed" );
+            assertFalse( negative.isAbsent( "removed" ) );
+        }
+        finally
+        {
+            negative.dispose( );
+        }
+    }
+
+    @Test
+    public void testExpiryComputesTheExpirationOfEachEntry( )
+        throws Exception
+    {
+        AtomicLong now = new AtomicLong( System.currentTimeMillis( ) );
+        EhcacheCache<String, String> versions = new EhcacheCache<>( String.class, String.class );
+        versions.setName( "versions" );
+        versions.setTicker( now::get );
+        versions.setDiskPersistent( false );
+        versions.setDiskStorePath( Paths.get( System.getProperty( "basedir", "." ), "target/ehcache-versions" ) );
+        // snapshots expire quickly, releases never
+        versions.setExpiry( ( key, value ) -> value.endsWith( "-SNAPSHOT" ) ? Duration.ofSeconds( 1 ) : Expiry.ETERNAL );
+        versions.initialize( );
+        try
+        {
+            versions.put( "archiva", "3.0-SNAPSHOT" );
+            versions.put( "redback", "2.6" );
+            assertEquals( "3.0-SNAPSHOT", versions.get( "archiva" ) );
+
+            now.addAndGet( 1500 );
+            assertNull( versions.get( "archiva" ) );
+            assertEquals( "2.6", versions.get( "redback" ) );
+        }
+        finally
+        {
+            versions.dispose( );
+        }
+    }
+
+    @Test
+    public void testEventListenersReportTheRemovalCause( )
+    {
+        EhcacheCache<String, Integer> observed = new EhcacheCache<>( String.class, Integer.class );
+        observed.setName( "observed" );
+        observed.setDiskPersistent( false );
+        observed.setDiskStorePath( Paths.get( System.getProperty( "basedir", "." ), "target/ehcache-observed" ) );
+        List<String> events = new CopyOnWriteArrayList<>( );
+        observed.registerEventListener(
+            event -> events.add( event.getKey( ) + "=" + event.getValue( ) + ":" + event.getCause( ) ), false );
+        observed.initialize( );
+        try
+        {
+            observed.put( "a", 1 );
+            observed.put( "a", 2 );
+            observed.remove( "a" );
+
+            assertEquals( Arrays.asList( "a=1:REPLACED", "a=2:EXPLICIT" ), events );
+        }
+        finally
+        {
+            observed.dispose( );
+        }
+    }
 }
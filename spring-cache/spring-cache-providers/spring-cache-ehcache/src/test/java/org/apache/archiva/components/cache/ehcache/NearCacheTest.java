@@ -0,0 +1,156 @@
+package org.apache.archiva.components.cache.ehcache;
+
+/*
+ * Copyright 2001-2007 The Codehaus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheStatistics;
+import org.apache.archiva.components.cache.impl.NearCache;
+import org.apache.archiva.components.cache.test.AbstractCacheTestCase;
+import org.apache.archiva.components.cache.test.examples.wine.Wine;
+import org.junit.Test;
+import org.springframework.test.annotation.DirtiesContext;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * The {@link NearCache} in front of ehcache caches.
+ *
+ * @since 3.0
+ */
+@DirtiesContext( classMode = DirtiesContext.ClassMode.AFTER_CLASS )
+public class NearCacheTest
+    extends AbstractCacheTestCase
+{
+    @Inject
+    @Named( value = "cache#near" )
+    Cache<String, Integer> cache;
+
+    @Inject
+    @Named( value = "cache#near-alwaysrefresh" )
+    Cache<String, Wine> cachealwaysrefresh;
+
+    @Inject
+    @Named( value = "cache#near-onesecondrefresh" )
+    Cache<String, Wine> cacheonesecondrefresh;
+
+    @Inject
+    @Named( value = "cache#near-twosecondrefresh" )
+    Cache<String, Wine> cachetwosecondrefresh;
+
+    @Inject
+    @Named( value = "cache#near-neverrefresh" )
+    Cache<String, Wine> cacheneversecondrefresh;
+
+    @Override
+    public Cache<String, Integer> getCache( )
+    {
+        return cache;
+    }
+
+    public Cache<String, Wine> getAlwaysRefresCache( )
+        throws Exception
+    {
+        return cachealwaysrefresh;
+    }
+
+    public Cache<String, Wine> getNeverRefresCache( )
+        throws Exception
+    {
+        return cacheneversecondrefresh;
+    }
+
+    public Cache<String, Wine> getOneSecondRefresCache( )
+        throws Exception
+    {
+        return cacheonesecondrefresh;
+    }
+
+    public Cache<String, Wine> getTwoSecondRefresCache( )
+        throws Exception
+    {
+        return cachetwosecondrefresh;
+    }
+
+    public Class getCacheClass( )
+    {
+        // the cache factory creates the caches of the provider
+        return EhcacheCache.class;
+    }
+
+    @Test
+    public void testNearCacheStatistics( )
+    {
+        NearCache<String, Integer> nearCache = (NearCache<String, Integer>) cache;
+        CacheStatistics nearStats = nearCache.getNearCacheStatistics( );
+        CacheStatistics backingStats = nearCache.getBackingCache( ).getStatistics( );
+        nearStats.clear( );
+        long backingHits = backingStats.getCacheHits( );
+
+        // written through to both levels, served by the near cache
+        nearCache.put( "near-stats", 1 );
+        assertEquals( Integer.valueOf( 1 ), nearCache.get( "near-stats" ) );
+        assertEquals( 1, nearStats.getCacheHits( ) );
+        assertEquals( backingHits, backingStats.getCacheHits( ) );
+        assertEquals( Integer.valueOf( 1 ), nearCache.getBackingCache( ).get( "near-stats" ) );
+        backingHits++;
+
+        // a near cache miss is read from the backing cache and kept
+        nearCache.clearNearCache( );
+        assertEquals( Integer.valueOf( 1 ), nearCache.get( "near-stats" ) );
+        assertEquals( 1, nearStats.getCacheMiss( ) );
+        assertEquals( backingHits + 1, backingStats.getCacheHits( ) );
+        assertEquals( Integer.valueOf( 1 ), nearCache.get( "near-stats" ) );
+        assertEquals( 2, nearStats.getCacheHits( ) );
+
+        // removals invalidate the near cache
+        nearCache.remove( "near-stats" );
+        assertNull( nearCache.get( "near-stats" ) );
+        assertNull( nearCache.getBackingCache( ).get( "near-stats" ) );
+    }
+
+    @Test
+    public void testBackingCacheRemovalsInvalidateTheNearCache( )
+    {
+        NearCache<String, Integer> nearCache = (NearCache<String, Integer>) cache;
+        nearCache.put( "near-events", 1 );
+        assertEquals( Integer.valueOf( 1 ), nearCache.get( "near-events" ) );
+
+        // removed behind the back of the near cache, reported by the event of the backing cache
+        nearCache.getBackingCache( ).remove( "near-events" );
+        assertNull( nearCache.get( "near-events" ) );
+
+        nearCache.put( "near-events", 2 );
+        nearCache.getBackingCache( ).put( "near-events", 3 );
+        assertEquals( Integer.valueOf( 3 ), nearCache.get( "near-events" ) );
+    }
+
+    @Test
+    public void testNearCacheIsBounded( )
+    {
+        NearCache<String, Integer> nearCache = (NearCache<String, Integer>) cache;
+        nearCache.clearNearCache( );
+        for ( int i = 0; i < 500; i++ )
+        {
+            nearCache.put( "bounded-" + i, i );
+        }
+        assertTrue( nearCache.getNearCacheStatistics( ).getSize( ) <= nearCache.getNearCacheMaxSize( ) );
+        assertTrue( nearCache.getNearCacheStatistics( ).getEvictionCount( ) > 0 );
+        // evicted from the near cache only
+        assertEquals( Integer.valueOf( 0 ), nearCache.get( "bounded-0" ) );
+    }
+}
@@ -0,0 +1,158 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Controller adapting the number of entries of a {@link HashMapCache} to reach a target hit ratio.
+ * <p>
+ * The cumulative hit and miss counts of the statistics are sampled once per period, the hit rate is computed over
+ * a sliding window of the last periods, so that it follows the current workload. Once the window only holds
+ * samples taken since the last adjustment, the target size is adjusted in proportion to the distance from the
+ * target hit ratio, by at most {@link #MAX_STEP} of the size: it grows, if the hit rate is too low and the cache
+ * is full, so that the misses are due to the size, and it shrinks, at half that pace, if the hit rate is higher
+ * than needed. The hit rate within {@link #TOLERANCE} of the target is kept. When the cache reaches its memory
+ * budget, the target is limited to the current number of entries.
+ * </p>
+ * The samples are taken by a single thread, the target size is read by any thread.
+ *
+ * @since 3.0
+ */
+final class AdaptiveSizer
+{
+    static final double TOLERANCE = 0.01;
+
+    static final double MAX_STEP = 0.1;
+
+    /**
+     * The minimum number of lookups in the window to adjust the size.
+     */
+    static final int MIN_LOOKUPS = 100;
+
+    private final double targetHitRatio;
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private final long[] hits;
+
+    private final long[] misses;
+
+    private int index;
+
+    private int samplesSinceAdjustment;
+
+    private long lastHits;
+
+    private long lastMisses;
+
+    private volatile int targetSize;
+
+    /**
+     * @param targetHitRatio the hit ratio to reach
+     * @param minSize        the minimum target size
+     * @param maxSize        the maximum target size
+     * @param initialSize    the initial target size
+     * @param windowPeriods  the number of periods of the sliding window
+     */
+    AdaptiveSizer( double targetHitRatio, int minSize, int maxSize, int initialSize, int windowPeriods )
+    {
+        this.targetHitRatio = targetHitRatio;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetSize = clamp( initialSize );
+        this.hits = new long[windowPeriods];
+        this.misses = new long[windowPeriods];
+    }
+
+    /**
+     * Records the lookups of the last period and adjusts the target size.
+     *
+     * @param totalHits   the cumulative number of hits
+     * @param totalMisses the cumulative number of misses
+     * @param size        the current number of entries
+     * @param overBudget  true if the cache reached its memory budget
+     */
+    void sample( long totalHits, long totalMisses, int size, boolean overBudget )
+    {
+        long periodHits = totalHits - lastHits;
+        long periodMisses = totalMisses - lastMisses;
+        if ( periodHits < 0 || periodMisses < 0 )
+        {
+            // the statistics have been cleared
+            periodHits = totalHits;
+            periodMisses = totalMisses;
+        }
+        lastHits = totalHits;
+        lastMisses = totalMisses;
+        hits[index] = periodHits;
+        misses[index] = periodMisses;
+        index = ( index + 1 ) % hits.length;
+
+        long target = targetSize;
+        if ( overBudget )
+        {
+            targetSize = clamp( Math.min( target, size ) );
+            return;
+        }
+        if ( ++samplesSinceAdjustment < hits.length )
+        {
+            // the window still holds samples of the previous size
+            return;
+        }
+        long windowHits = 0;
+        long lookups = 0;
+        for ( int i = 0; i < hits.length; i++ )
+        {
+            windowHits += hits[i];
+            lookups += hits[i] + misses[i];
+        }
+        if ( lookups < MIN_LOOKUPS )
+        {
+            return;
+        }
+        double hitRate = (double) windowHits / lookups;
+        double error = targetHitRatio - hitRate;
+        if ( error > TOLERANCE && size >= target - Math.max( 1, target / 20 ) )
+        {
+            target += Math.max( 1, (int) ( target * Math.min( MAX_STEP, error ) ) );
+        }
+        else if ( error < -TOLERANCE )
+        {
+            target -= Math.max( 1, (int) ( target * Math.min( MAX_STEP, -error ) / 2 ) );
+        }
+        else
+        {
+            return;
+        }
+        targetSize = clamp( target );
+        samplesSinceAdjustment = 0;
+    }
+
+    int getTargetSize( )
+    {
+        return targetSize;
+    }
+
+    private int clamp( long size )
+    {
+        return (int) Math.max( minSize, Math.min( maxSize, size ) );
+    }
+}
@@ -0,0 +1,221 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.CacheableWrapper;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.function.Function;
+
+/**
+ * Entry of the {@link HashMapCache}, linked into the {@link TimerWheel} while it has an expiration time.
+ * <p>
+ * The expiration time and the links are only accessed with the cache lock.
+ * </p>
+ * <p>
+ * The key can be referenced weakly and the value softly, the references are then enqueued with the entry once
+ * the garbage collector cleared them, see {@link #weakenKey(ReferenceQueue)} and
+ * {@link #softenValue(ReferenceQueue)}.
+ * </p>
+ *
+ * @since 3.0
+ */
+final class CacheEntry<V, T>
+    extends CacheableWrapper<T>
+{
+    private static final long serialVersionUID = -693621161191658939L;
+
+    /**
+     * The key, <code>null</code> once it is referenced by the {@link #weakKey}.
+     */
+    private transient V key;
+
+    private transient WeakKey<V, T> weakKey;
+
+    private transient SoftValue<V, T> softValue;
+
+    /**
+     * The loader of an entry stored by {@link HashMapCache#getOrLoad(Object, Function)}, kept for the refresh ahead.
+     */
+    final transient Function<? super V, ? extends T> loader;
+
+    /**
+     * Absolute expiration time in milliseconds, {@link Long#MAX_VALUE} if the entry never expires.
+     */
+    transient long expirationTime = Long.MAX_VALUE;
+
+    /**
+     * Marks the cached absence of a value, see {@link HashMapCache#registerAbsent(Object)}. The value is null.
+     */
+    transient boolean absent;
+
+    /**
+     * The weight computed by the {@link org.apache.archiva.components.cache.Weigher} of the cache.
+     */
+    transient int weight;
+
+    transient CacheEntry<V, T> previousInWheel;
+
+    transient CacheEntry<V, T> nextInWheel;
+
+    CacheEntry( V key, T value, long storedTime, Function<? super V, ? extends T> loader )
+    {
+        super( value, storedTime );
+        this.key = key;
+        this.loader = loader;
+    }
+
+    boolean isExpired( long now )
+    {
+        return expirationTime <= now;
+    }
+
+    /**
+     * @return the key, <code>null</code> if the weakly referenced key was collected
+     */
+    V getKey( )
+    {
+        WeakKey<V, T> reference = weakKey;
+        return reference != null ? reference.get( ) : key;
+    }
+
+    WeakKey<V, T> getWeakKey( )
+    {
+        return weakKey;
+    }
+
+    SoftValue<V, T> getSoftValue( )
+    {
+        return softValue;
+    }
+
+    /**
+     * @return the value, <code>null</code> if the softly referenced value was collected
+     */
+    @Override
+    public T getValue( )
+    {
+        SoftValue<V, T> reference = softValue;
+        return reference != null ? reference.get( ) : super.getValue( );
+    }
+
+    /**
+     * @return true if the garbage collector cleared the reference to the key or to the value
+     */
+    boolean isCollected( )
+    {
+        return ( weakKey != null && weakKey.get( ) == null ) || ( softValue != null && softValue.get( ) == null );
+    }
+
+    /**
+     * References the key weakly, the entry is enqueued once the key is collected. The key is then compared by
+     * identity.
+     */
+    void weakenKey( ReferenceQueue<Object> queue )
+    {
+        weakKey = new WeakKey<>( key, this, queue );
+        key = null;
+    }
+
+    /**
+     * References the value softly, the entry is enqueued once the value is collected.
+     */
+    void softenValue( ReferenceQueue<Object> queue )
+    {
+        T value = super.getValue( );
+        if ( value != null )
+        {
+            softValue = new SoftValue<>( value, this, queue );
+            setValue( null );
+        }
+    }
+
+    /**
+     * A reference of the key or of the value of an entry, enqueued when it is cleared.
+     */
+    interface EntryReference<V, T>
+    {
+        CacheEntry<V, T> getEntry( );
+    }
+
+    /**
+     * A weak reference to a key, equal to the references to the same key instance.
+     */
+    static final class WeakKey<V, T>
+        extends WeakReference<V>
+        implements EntryReference<V, T>
+    {
+        private final int hash;
+
+        private final CacheEntry<V, T> entry;
+
+        WeakKey( V key, CacheEntry<V, T> entry, ReferenceQueue<Object> queue )
+        {
+            super( key, queue );
+            this.hash = System.identityHashCode( key );
+            this.entry = entry;
+        }
+
+        @Override
+        public CacheEntry<V, T> getEntry( )
+        {
+            return entry;
+        }
+
+        @Override
+        public int hashCode( )
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            // a cleared reference is only equal to itself
+            Object referent = get( );
+            return referent != null && o instanceof WeakKey && ( (WeakKey<?, ?>) o ).get( ) == referent;
+        }
+    }
+
+    static final class SoftValue<V, T>
+        extends SoftReference<T>
+        implements EntryReference<V, T>
+    {
+        private final CacheEntry<V, T> entry;
+
+        SoftValue( T value, CacheEntry<V, T> entry, ReferenceQueue<Object> queue )
+        {
+            super( value, queue );
+            this.entry = entry;
+        }
+
+        @Override
+        public CacheEntry<V, T> getEntry( )
+        {
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the periodic maintenance of the caches, like the expiration, the adaptive sizing and the snapshots, on a
+ * daemon thread shared by the caches, apart from the thread of the {@link CoarseClock}. The thread is started
+ * with the first task and stopped once the last task is cancelled.
+ *
+ * @since 3.0
+ */
+final class CacheMaintenance
+{
+    private static ScheduledThreadPoolExecutor scheduler;
+
+    private static int tasks;
+
+    private CacheMaintenance( )
+    {
+        // no instances
+    }
+
+    /**
+     * Runs the given task periodically, until it is cancelled with {@link #cancel(ScheduledFuture)}. The task
+     * must be short, it delays the tasks of the other caches.
+     */
+    static synchronized ScheduledFuture<?> schedule( Runnable task, long periodMillis )
+    {
+        if ( scheduler == null )
+        {
+            scheduler = new ScheduledThreadPoolExecutor( 1, r -> {
+                Thread thread = new Thread( r, "archiva-cache-maintenance" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+            scheduler.setRemoveOnCancelPolicy( true );
+        }
+        tasks++;
+        return scheduler.scheduleWithFixedDelay( task, periodMillis, periodMillis, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Cancels a task, the thread is stopped with the last task. Cancelling a task twice has no effect.
+     */
+    static synchronized void cancel( ScheduledFuture<?> future )
+    {
+        if ( future.isCancelled( ) )
+        {
+            return;
+        }
+        future.cancel( false );
+        if ( --tasks == 0 )
+        {
+            scheduler.shutdown( );
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock with a resolution of {@link #RESOLUTION_MILLIS}, so that the read path of the caches does not
+ * call {@link System#currentTimeMillis()} on each lookup. The clock is updated by a single daemon
+ * thread, which only ticks. It runs while at least one cache is started, without it the clock reads the
+ * system clock. The caches are registered weakly: a cache garbage collected without being stopped releases its
+ * registration on the next tick, so it doesn't keep the thread running.
+ *
+ * @since 3.0
+ */
+final class CoarseClock
+{
+    static final long RESOLUTION_MILLIS = 10;
+
+    /**
+     * The registration of a cache, cleared when the cache stops the clock or enqueued when it is collected.
+     */
+    static final class Registration
+        extends WeakReference<Object>
+    {
+        private Registration( Object owner )
+        {
+            super( owner, collected );
+        }
+    }
+
+    private static final ReferenceQueue<Object> collected = new ReferenceQueue<>( );
+
+    /**
+     * the registrations of the running caches, strongly reachable until they are stopped or collected
+     */
+    private static final Set<Registration> registrations = new HashSet<>( );
+
+    private static ScheduledExecutorService ticker;
+
+    /**
+     * the time of the last tick, negative while the clock is stopped
+     */
+    private static volatile long now = -1;
+
+    private CoarseClock( )
+    {
+        // no instances
+    }
+
+    /**
+     * @return the current time in milliseconds, at most {@link #RESOLUTION_MILLIS} behind the system clock
+     */
+    static long currentTimeMillis( )
+    {
+        long time = now;
+        return time >= 0 ? time : System.currentTimeMillis( );
+    }
+
+    /**
+     * Starts the clock thread for a cache, unless another cache started it already.
+     *
+     * @param owner the cache, the clock doesn't keep it from being garbage collected
+     * @return the registration to pass to {@link #stop(Registration)}
+     */
+    static synchronized Registration start( Object owner )
+    {
+        Registration registration = new Registration( owner );
+        registrations.add( registration );
+        if ( ticker != null )
+        {
+            return registration;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread thread = new Thread( r, "archiva-cache-clock" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        now = System.currentTimeMillis( );
+        ticker.scheduleAtFixedRate( CoarseClock::tick, RESOLUTION_MILLIS, RESOLUTION_MILLIS, TimeUnit.MILLISECONDS );
+        return registration;
+    }
+
+    /**
+     * Synchronized, so a tick running while the clock is stopped doesn't leave a time which is not updated anymore.
+     */
+    static synchronized void tick( )
+    {
+        if ( ticker == null )
+        {
+            return;
+        }
+        for ( Reference<?> registration = collected.poll( ); registration != null; registration = collected.poll( ) )
+        {
+            registrations.remove( registration );
+        }
+        if ( registrations.isEmpty( ) )
+        {
+            // the last caches were collected without being stopped
+            shutdown( );
+            return;
+        }
+        now = System.currentTimeMillis( );
+    }
+
+    /**
+     * Stops the clock thread once the last cache which started it is stopped or collected. Stopping a registration
+     * twice has no effect.
+     */
+    static synchronized void stop( Registration registration )
+    {
+        registration.clear( );
+        if ( registrations.remove( registration ) && registrations.isEmpty( ) )
+        {
+            shutdown( );
+        }
+    }
+
+    /**
+     * @return true until the registration is stopped, or released after its cache was collected
+     */
+    static synchronized boolean isRegistered( Registration registration )
+    {
+        return registrations.contains( registration );
+    }
+
+    private static void shutdown( )
+    {
+        ticker.shutdownNow( );
+        ticker = null;
+        now = -1;
+    }
+}
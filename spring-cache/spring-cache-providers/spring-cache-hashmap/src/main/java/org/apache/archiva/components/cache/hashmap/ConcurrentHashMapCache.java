@@ -0,0 +1,601 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.AbstractCache;
+import org.apache.archiva.components.cache.AbstractCacheStatistics;
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheStatistics;
+import org.apache.archiva.components.cache.CacheableWrapper;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * ConcurrentHashMapCache - a {@link HashMapCache} variant for highly concurrent access.
+ * </p>
+ * <p>
+ * Entries are stored in a {@link ConcurrentHashMap}, so reads never block. The access order used
+ * for the LRU eviction is kept in a separate list that is only modified under a lock: reads record
+ * their access in a lock-free {@link ReadBuffer} that is replayed on the list when it fills up or
+ * when the next write happens. The stored times are read from a {@link CoarseClock}, not from the system clock.
+ * </p>
+ * <p>
+ * The configuration is the same as for {@link HashMapCache}: <code>cacheMaxSize</code> bounds the number
+ * of entries (0 means unbounded) and <code>refreshTime</code> is the ttl in seconds of an entry
+ * (&lt; 0 means no cache, 0 means infinite life).
+ * </p>
+ *
+ * @since 3.0
+ */
+@Service( "cache#concurrent-hashmap" )
+public class ConcurrentHashMapCache<V, T>
+    extends AbstractCache<V, T>
+    implements Cache<V, T>
+{
+
+    class Stats
+        extends AbstractCacheStatistics
+        implements CacheStatistics
+    {
+        public Stats( )
+        {
+            super( );
+        }
+
+        public long getSize( )
+        {
+            return data.size( );
+        }
+
+    }
+
+    /**
+     * Cache entry, also a member of the access ordered list.
+     * The list pointers are guarded by the eviction lock.
+     */
+    static final class Node<V, T>
+        extends CacheableWrapper<T>
+    {
+        private static final long serialVersionUID = -7864578245385048140L;
+
+        final V key;
+
+        Node<V, T> prev;
+
+        Node<V, T> next;
+
+        Node( V key, T value, long storedTime )
+        {
+            super( value, storedTime );
+            this.key = key;
+        }
+
+        boolean isLinked( )
+        {
+            return prev != null;
+        }
+    }
+
+    private ConcurrentHashMap<V, Node<V, T>> data;
+
+    /**
+     * Sentinel of the access ordered list: head.next is the least recently used entry.
+     */
+    private final Node<V, T> head = new Node<>( null, null, 0 );
+
+    private final ReentrantLock evictionLock = new ReentrantLock( );
+
+    private final ReadBuffer<Node<V, T>> readBuffer = new ReadBuffer<>( );
+
+    /**
+     *
+     */
+    private int cacheMaxSize = 0;
+
+    /**
+     *
+     */
+    private int refreshTime;
+
+    private Stats stats;
+
+    /**
+     * set from the initialization to the disposal, while the cache keeps the {@link CoarseClock} running
+     */
+    private CoarseClock.Registration clockRegistration;
+
+    public ConcurrentHashMapCache( )
+    {
+        // noop
+    }
+
+    @PostConstruct
+    public void initialize( )
+    {
+        stats = new Stats( );
+        data = new ConcurrentHashMap<>( cacheMaxSize > 0 ? cacheMaxSize : 16 );
+        head.prev = head;
+        head.next = head;
+        if ( clockRegistration == null )
+        {
+            clockRegistration = CoarseClock.start( this );
+        }
+    }
+
+    /**
+     * Releases the {@link CoarseClock}, the entries are kept.
+     */
+    @PreDestroy
+    public void dispose( )
+    {
+        if ( clockRegistration != null )
+        {
+            CoarseClock.stop( clockRegistration );
+            clockRegistration = null;
+        }
+    }
+
+    /**
+     * Empty the cache and reset the cache hit rate
+     */
+    public void clear( )
+    {
+        evictionLock.lock( );
+        try
+        {
+            data.clear( );
+            readBuffer.drainTo( node -> {
+                // discard
+            } );
+            // unlink each node, so a node offered by a concurrent read is not linked again by the next drain
+            Node<V, T> node = head.next;
+            while ( node != head )
+            {
+                Node<V, T> next = node.next;
+                node.prev = null;
+                node.next = null;
+                node = next;
+            }
+            head.prev = head;
+            head.next = head;
+            stats.clear( );
+        }
+        finally
+        {
+            evictionLock.unlock( );
+        }
+    }
+
+    /**
+     * Check for a cached object and return it if it exists. Returns null when the keyed object is not found
+     *
+     * @param key the key used to map the cached object
+     * @return the object mapped to the given key, or null if no cache object is mapped to the given key
+     */
+    public T get( V key )
+    {
+        // prevent search
+        if ( !this.isCacheAvailable( ) )
+        {
+            return null;
+        }
+        long start = stats.getStarted( );
+        Node<V, T> node = data.get( key );
+        if ( node == null )
+        {
+            stats.miss( );
+            stats.getCompleted( start );
+            return null;
+        }
+        if ( needRefresh( node ) )
+        {
+            if ( data.remove( key, node ) )
+            {
+                afterRemove( node );
+                stats.evicted( 1 );
+            }
+            stats.miss( );
+            stats.getCompleted( start );
+            return null;
+        }
+        if ( readBuffer.offer( node ) )
+        {
+            tryDrainReadBuffer( );
+        }
+        stats.hit( );
+        stats.getCompleted( start );
+        return node.getValue( );
+    }
+
+    @Override
+    protected T peek( V key )
+    {
+        Node<V, T> node = data.get( key );
+        return node == null || needRefresh( node ) ? null : node.getValue( );
+    }
+
+    protected boolean needRefresh( CacheableWrapper<T> cacheableWrapper )
+    {
+        if ( cacheableWrapper == null )
+        {
+            return true;
+        }
+        if ( this.getRefreshTime( ) == 0 )
+        {
+            return false;
+        }
+        return ( CoarseClock.currentTimeMillis( ) - cacheableWrapper.getStoredTime( ) )
+            > ( this.getRefreshTime( ) * 1000L );
+    }
+
+    public CacheStatistics getStatistics( )
+    {
+        return stats;
+    }
+
+    /**
+     * Check if the specified key is already mapped to an object.
+     *
+     * @param key the key used to map the cached object
+     * @return true if the cache contains an object associated with the given key
+     */
+    public boolean hasKey( V key )
+    {
+        // prevent search
+        if ( !this.isCacheAvailable( ) )
+        {
+            return false;
+        }
+        boolean contains = data.containsKey( key );
+        if ( contains )
+        {
+            stats.hit( );
+        }
+        else
+        {
+            stats.miss( );
+        }
+        return contains;
+    }
+
+    /**
+     * Cache the given value and map it using the given key
+     *
+     * @param key   the object to map the valued object
+     * @param value the object to cache
+     */
+    public T put( V key, T value )
+    {
+        Node<V, T> node = new Node<>( key, value, CoarseClock.currentTimeMillis( ) );
+        Node<V, T> previous = data.put( key, node );
+        afterWrite( node, previous );
+        return previous == null ? null : previous.getValue( );
+    }
+
+    /**
+     * Cache the given value and map it using the given key
+     *
+     * @param key   the object to map the valued object
+     * @param value the object to cache
+     */
+    public void register( V key, T value )
+    {
+        put( key, value );
+    }
+
+    /**
+     * Cache the given value, if the key is not mapped to an up to date object yet.
+     *
+     * @param key   the object to map the valued object
+     * @param value the object to cache
+     * @return the object already mapped to the key, or null if the given value has been cached
+     */
+    public T putIfAbsent( V key, T value )
+    {
+        Node<V, T> node = new Node<>( key, value, CoarseClock.currentTimeMillis( ) );
+        while ( true )
+        {
+            Node<V, T> existing = data.putIfAbsent( key, node );
+            if ( existing == null )
+            {
+                afterWrite( node, null );
+                return null;
+            }
+            if ( !needRefresh( existing ) )
+            {
+                return existing.getValue( );
+            }
+            // the existing entry is expired, replace it unless another thread did it meanwhile
+            if ( data.replace( key, existing, node ) )
+            {
+                afterWrite( node, existing );
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Cache the given value, if the key is already mapped to an up to date object.
+     *
+     * @param key   the object to map the valued object
+     * @param value the object to cache
+     * @return the object replaced, or null if the key was not mapped and the given value has not been cached
+     */
+    public T replace( V key, T value )
+    {
+        Node<V, T> node = new Node<>( key, value, CoarseClock.currentTimeMillis( ) );
+        while ( true )
+        {
+            Node<V, T> existing = data.get( key );
+            if ( existing == null || needRefresh( existing ) )
+            {
+                return null;
+            }
+            if ( data.replace( key, existing, node ) )
+            {
+                afterWrite( node, existing );
+                return existing.getValue( );
+            }
+        }
+    }
+
+    /**
+     * Cache all the given values, the access order is updated with a single acquisition of the eviction lock.
+     *
+     * @param entries the objects to cache, mapped by their key
+     */
+    public void putAll( Map<? extends V, ? extends T> entries )
+    {
+        long now = CoarseClock.currentTimeMillis( );
+        List<Node<V, T>> written = new ArrayList<>( entries.size( ) );
+        List<Node<V, T>> replaced = new ArrayList<>( );
+        for ( Map.Entry<? extends V, ? extends T> entry : entries.entrySet( ) )
+        {
+            Node<V, T> node = new Node<>( entry.getKey( ), entry.getValue( ), now );
+            Node<V, T> previous = data.put( node.key, node );
+            written.add( node );
+            if ( previous != null )
+            {
+                replaced.add( previous );
+            }
+        }
+
+        evictionLock.lock( );
+        try
+        {
+            drainReadBuffer( );
+            for ( Node<V, T> previous : replaced )
+            {
+                unlink( previous );
+            }
+            for ( Node<V, T> node : written )
+            {
+                if ( data.get( node.key ) == node && !node.isLinked( ) )
+                {
+                    linkLast( node );
+                }
+            }
+            evict( );
+        }
+        finally
+        {
+            evictionLock.unlock( );
+        }
+    }
+
+    /**
+     * Remove the given keys, the access order is updated with a single acquisition of the eviction lock.
+     *
+     * @param keys the keys of the objects to remove
+     */
+    public void removeAll( Collection<? extends V> keys )
+    {
+        List<Node<V, T>> removed = new ArrayList<>( keys.size( ) );
+        for ( V key : keys )
+        {
+            Node<V, T> node = data.remove( key );
+            if ( node != null )
+            {
+                removed.add( node );
+            }
+        }
+        if ( removed.isEmpty( ) )
+        {
+            return;
+        }
+
+        evictionLock.lock( );
+        try
+        {
+            for ( Node<V, T> node : removed )
+            {
+                unlink( node );
+            }
+        }
+        finally
+        {
+            evictionLock.unlock( );
+        }
+    }
+
+    public void invalidate( V key )
+    {
+        remove( key );
+    }
+
+    public T remove( V key )
+    {
+        Node<V, T> node = data.remove( key );
+        if ( node == null )
+        {
+            return null;
+        }
+        afterRemove( node );
+        return node.getValue( );
+    }
+
+    private void afterWrite( Node<V, T> node, Node<V, T> previous )
+    {
+        evictionLock.lock( );
+        try
+        {
+            drainReadBuffer( );
+            if ( previous != null )
+            {
+                unlink( previous );
+            }
+            // a concurrent write or remove on the same key may already have replaced the node
+            if ( data.get( node.key ) == node )
+            {
+                linkLast( node );
+            }
+            evict( );
+        }
+        finally
+        {
+            evictionLock.unlock( );
+        }
+    }
+
+    private void afterRemove( Node<V, T> node )
+    {
+        evictionLock.lock( );
+        try
+        {
+            unlink( node );
+        }
+        finally
+        {
+            evictionLock.unlock( );
+        }
+    }
+
+    private void tryDrainReadBuffer( )
+    {
+        if ( evictionLock.tryLock( ) )
+        {
+            try
+            {
+                drainReadBuffer( );
+            }
+            finally
+            {
+                evictionLock.unlock( );
+            }
+        }
+    }
+
+    private void drainReadBuffer( )
+    {
+        readBuffer.drainTo( node -> {
+            // skip the nodes removed or replaced since the read
+            if ( node.isLinked( ) && data.get( node.key ) == node )
+            {
+                unlink( node );
+                linkLast( node );
+            }
+        } );
+    }
+
+    private void evict( )
+    {
+        if ( cacheMaxSize <= 0 )
+        {
+            return;
+        }
+        while ( data.size( ) > cacheMaxSize )
+        {
+            Node<V, T> eldest = head.next;
+            if ( eldest == head )
+            {
+                // the remaining entries are still being linked by their writers
+                return;
+            }
+            unlink( eldest );
+            if ( data.remove( eldest.key, eldest ) )
+            {
+                stats.evicted( 1 );
+            }
+        }
+    }
+
+    private void linkLast( Node<V, T> node )
+    {
+        Node<V, T> last = head.prev;
+        node.prev = last;
+        node.next = head;
+        last.next = node;
+        head.prev = node;
+    }
+
+    private void unlink( Node<V, T> node )
+    {
+        if ( !node.isLinked( ) )
+        {
+            return;
+        }
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    public int getRefreshTime( )
+    {
+        return refreshTime;
+    }
+
+    public void setRefreshTime( int refreshTime )
+    {
+        this.refreshTime = refreshTime;
+    }
+
+    /**
+     * @return true, if the cache is available, otherwise false
+     */
+    protected boolean isCacheAvailable( )
+    {
+        return this.getRefreshTime( ) >= 0;
+    }
+
+    public int getCacheMaxSize( )
+    {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize( int cacheMaxSize )
+    {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public Stats getStats( )
+    {
+        return stats;
+    }
+}
@@ -0,0 +1,568 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.serializer.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Overflow tier of the {@link HashMapCache}, keeping the entries evicted from memory in a file.
+ * <p>
+ * The evicted entries are queued and written behind by a single daemon thread, so the eviction does not wait
+ * for the disk. The values are appended to the file, their position is kept in an in memory index ordered by
+ * access, the keys are not serialized. When the index exceeds the maximum number of entries the least recently
+ * used ones are dropped, the file is compacted once more than half of it is unused. Queued entries beyond the
+ * maximum size of the write queue are dropped too.
+ * </p>
+ * <p>
+ * The file is deleted on {@link #close()}, the overflow does not persist the cache. It is accessed as a
+ * {@link RandomAccessFile} rather than a file channel, which would be closed by the interruption of any reader.
+ * </p>
+ * Lock order: the io lock, then the overflow itself. The cache calls {@link #offer(CacheEntry)},
+ * {@link #discard(Object)}, {@link #contains(Object, long)}, {@link #size()} and {@link #clear()} with its lock,
+ * they only take the lock of the overflow, which is never held during disk accesses. {@link #take(Object, long)}
+ * reads the disk and must be called without the cache lock.
+ *
+ * @since 3.0
+ */
+final class DiskOverflow<V, T>
+{
+    private static final Logger log = LoggerFactory.getLogger( DiskOverflow.class );
+
+    /**
+     * The file is not compacted below this size.
+     */
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    /**
+     * Location of a value in the file.
+     */
+    private static final class Slot<V, T>
+    {
+        final long offset;
+
+        final int length;
+
+        final long storedTime;
+
+        final long expirationTime;
+
+        final Function<? super V, ? extends T> loader;
+
+        Slot( long offset, int length, CacheEntry<V, T> entry )
+        {
+            this( offset, length, entry.getStoredTime( ), entry.expirationTime, entry.loader );
+        }
+
+        Slot( long offset, int length, long storedTime, long expirationTime, Function<? super V, ? extends T> loader )
+        {
+            this.offset = offset;
+            this.length = length;
+            this.storedTime = storedTime;
+            this.expirationTime = expirationTime;
+            this.loader = loader;
+        }
+    }
+
+    private final Serializer<T> serializer;
+
+    private final int maxEntries;
+
+    private final int maxPending;
+
+    private final LongConsumer evictionListener;
+
+    private final Path file;
+
+    private final ExecutorService writer;
+
+    private final Object ioLock = new Object( );
+
+    /**
+     * The written entries, guarded by this.
+     */
+    private final LinkedHashMap<V, Slot<V, T>> index = new LinkedHashMap<>( 16, 0.75f, true );
+
+    /**
+     * The entries waiting to be written, guarded by this.
+     */
+    private final Map<V, CacheEntry<V, T>> pending = new LinkedHashMap<>( );
+
+    /**
+     * The bytes referenced by the index, guarded by this.
+     */
+    private long liveBytes;
+
+    /**
+     * Guarded by this.
+     */
+    private boolean draining;
+
+    /**
+     * Guarded by the io lock.
+     */
+    private RandomAccessFile data;
+
+    /**
+     * Guarded by the io lock.
+     */
+    private long fileSize;
+
+    /**
+     * @param directory        the directory of the file, created if needed
+     * @param serializer       the serializer of the values
+     * @param maxEntries       the maximum number of entries kept on disk
+     * @param maxPending       the maximum number of entries waiting to be written
+     * @param evictionListener notified of the number of entries dropped from the overflow
+     */
+    DiskOverflow( File directory, Serializer<T> serializer, int maxEntries, int maxPending,
+                  LongConsumer evictionListener )
+        throws IOException
+    {
+        this.serializer = serializer;
+        this.maxEntries = maxEntries;
+        this.maxPending = maxPending;
+        this.evictionListener = evictionListener;
+        Files.createDirectories( directory.toPath( ) );
+        this.file = Files.createTempFile( directory.toPath( ), "hashmap-overflow-", ".data" );
+        this.data = new RandomAccessFile( file.toFile( ), "rw" );
+        this.writer = Executors.newSingleThreadExecutor( r -> {
+            Thread thread = new Thread( r, "archiva-cache-overflow" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+    }
+
+    /**
+     * Queues an entry evicted from memory to be written. Does not wait for the disk.
+     *
+     * @return false if the write queue is full or the overflow is closed, and the entry has been dropped
+     */
+    synchronized boolean offer( CacheEntry<V, T> entry )
+    {
+        if ( pending.size( ) >= maxPending && !pending.containsKey( entry.getKey( ) ) )
+        {
+            return false;
+        }
+        removeSlot( entry.getKey( ) );
+        pending.put( entry.getKey( ), entry );
+        if ( !draining )
+        {
+            try
+            {
+                writer.execute( this::drain );
+                draining = true;
+            }
+            catch ( RejectedExecutionException e )
+            {
+                pending.remove( entry.getKey( ) );
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the entry of the key and reads its value back. Must be called without the cache lock, it waits for
+     * the disk.
+     *
+     * @return the entry, or null if the key is not in the overflow or has expired
+     */
+    CacheEntry<V, T> take( V key, long now )
+    {
+        synchronized (this)
+        {
+            // most lookups miss the overflow, they don't wait for the io lock
+            if ( !pending.containsKey( key ) && !index.containsKey( key ) )
+            {
+                return null;
+            }
+        }
+        synchronized (ioLock)
+        {
+            Slot<V, T> slot;
+            synchronized (this)
+            {
+                CacheEntry<V, T> queued = pending.remove( key );
+                if ( queued != null )
+                {
+                    return queued.isExpired( now ) ? null : queued;
+                }
+                slot = removeSlot( key );
+            }
+            if ( slot == null || slot.expirationTime <= now )
+            {
+                return null;
+            }
+            try
+            {
+                CacheEntry<V, T> entry =
+                    new CacheEntry<>( key, serializer.deserialize( read( slot ) ), slot.storedTime, slot.loader );
+                entry.expirationTime = slot.expirationTime;
+                return entry;
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Could not read the overflowed value of {}: {}", key, e.getMessage( ) );
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return true if the overflow holds an unexpired value of the key
+     */
+    synchronized boolean contains( V key, long now )
+    {
+        CacheEntry<V, T> queued = pending.get( key );
+        if ( queued != null )
+        {
+            return !queued.isExpired( now );
+        }
+        Slot<V, T> slot = index.get( key );
+        return slot != null && slot.expirationTime > now;
+    }
+
+    /**
+     * Forgets the value of the key, without reading it.
+     */
+    synchronized void discard( V key )
+    {
+        pending.remove( key );
+        removeSlot( key );
+    }
+
+    synchronized int size( )
+    {
+        return pending.size( ) + index.size( );
+    }
+
+    /**
+     * @return the size of the file in bytes, including the space not compacted yet
+     */
+    long getDiskSize( )
+    {
+        synchronized (ioLock)
+        {
+            return fileSize;
+        }
+    }
+
+    /**
+     * Drops all entries without waiting for the disk, the unused file is compacted by the writer.
+     */
+    void clear( )
+    {
+        synchronized (this)
+        {
+            pending.clear( );
+            index.clear( );
+            liveBytes = 0;
+        }
+        try
+        {
+            writer.execute( this::compactIfNeeded );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            // closed
+        }
+    }
+
+    /**
+     * Stops the writer and deletes the file, the queued entries are dropped.
+     */
+    void close( )
+    {
+        writer.shutdownNow( );
+        try
+        {
+            writer.awaitTermination( 10, TimeUnit.SECONDS );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+        synchronized (ioLock)
+        {
+            synchronized (this)
+            {
+                pending.clear( );
+                index.clear( );
+                liveBytes = 0;
+            }
+            try
+            {
+                data.close( );
+                Files.deleteIfExists( file );
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Could not delete the overflow file {}: {}", file, e.getMessage( ) );
+            }
+        }
+    }
+
+    /**
+     * Writes the queued entries, runs on the writer thread.
+     */
+    private void drain( )
+    {
+        while ( !Thread.currentThread( ).isInterrupted( ) )
+        {
+            List<CacheEntry<V, T>> batch;
+            synchronized (this)
+            {
+                if ( pending.isEmpty( ) )
+                {
+                    draining = false;
+                    return;
+                }
+                batch = new ArrayList<>( pending.values( ) );
+            }
+            for ( CacheEntry<V, T> entry : batch )
+            {
+                write( entry );
+            }
+            compactIfNeeded( );
+        }
+    }
+
+    private void write( CacheEntry<V, T> entry )
+    {
+        byte[] bytes;
+        try
+        {
+            bytes = serializer.serialize( entry.getValue( ) );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            log.warn( "Could not serialize the value of {}, it is not overflowed: {}", entry.getKey( ), e.getMessage( ) );
+            dropPending( entry );
+            return;
+        }
+        synchronized (ioLock)
+        {
+            synchronized (this)
+            {
+                // the entry may have been read back, discarded or replaced meanwhile
+                if ( pending.get( entry.getKey( ) ) != entry )
+                {
+                    return;
+                }
+            }
+            long offset = fileSize;
+            try
+            {
+                data.seek( offset );
+                data.write( bytes );
+                fileSize += bytes.length;
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Could not write the value of {} to {}: {}", entry.getKey( ), file, e.getMessage( ) );
+                dropPending( entry );
+                return;
+            }
+            long evicted = 0;
+            synchronized (this)
+            {
+                if ( pending.get( entry.getKey( ) ) != entry )
+                {
+                    return;
+                }
+                pending.remove( entry.getKey( ) );
+                index.put( entry.getKey( ), new Slot<>( offset, bytes.length, entry ) );
+                liveBytes += bytes.length;
+                Iterator<Slot<V, T>> eldest = index.values( ).iterator( );
+                while ( index.size( ) > maxEntries )
+                {
+                    liveBytes -= eldest.next( ).length;
+                    eldest.remove( );
+                    evicted++;
+                }
+            }
+            if ( evicted > 0 )
+            {
+                evictionListener.accept( evicted );
+            }
+        }
+    }
+
+    private void dropPending( CacheEntry<V, T> entry )
+    {
+        boolean dropped;
+        synchronized (this)
+        {
+            dropped = pending.remove( entry.getKey( ), entry );
+        }
+        if ( dropped )
+        {
+            evictionListener.accept( 1 );
+        }
+    }
+
+    /**
+     * Rewrites the file without the unused space, once more than half of it is unused. The index is only copied
+     * while the file is rewritten, so offering, discarding and looking up keys don't wait for the disk. The
+     * relocated slots are swapped in at the end, the reads of values wait for the io lock meanwhile.
+     */
+    private void compactIfNeeded( )
+    {
+        synchronized (ioLock)
+        {
+            List<Slot<V, T>> live;
+            synchronized (this)
+            {
+                if ( fileSize < MIN_COMPACTION_SIZE || liveBytes * 2 > fileSize )
+                {
+                    return;
+                }
+                live = new ArrayList<>( index.values( ) );
+            }
+            Path compacted = file.resolveSibling( file.getFileName( ) + ".compact" );
+            Map<Slot<V, T>, Slot<V, T>> relocated = new IdentityHashMap<>( live.size( ) );
+            long position = 0;
+            try (RandomAccessFile target = new RandomAccessFile( compacted.toFile( ), "rw" ))
+            {
+                target.setLength( 0 );
+                for ( Slot<V, T> slot : live )
+                {
+                    target.write( read( slot ) );
+                    relocated.put( slot, new Slot<>( position, slot.length, slot.storedTime, slot.expirationTime,
+                                                     slot.loader ) );
+                    position += slot.length;
+                }
+            }
+            catch ( IOException e )
+            {
+                // the current file is still intact
+                log.warn( "Could not compact the overflow file {}: {}", file, e.getMessage( ) );
+                deleteQuietly( compacted );
+                return;
+            }
+            try
+            {
+                data.close( );
+                Files.move( compacted, file, StandardCopyOption.REPLACE_EXISTING );
+                data = new RandomAccessFile( file.toFile( ), "rw" );
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Could not replace the overflow file {}, it is cleared: {}", file, e.getMessage( ) );
+                int dropped;
+                synchronized (this)
+                {
+                    dropped = index.size( );
+                    index.clear( );
+                    liveBytes = 0;
+                }
+                evictionListener.accept( dropped );
+                reopen( );
+                return;
+            }
+            synchronized (this)
+            {
+                // only writes add slots, and they wait for the io lock: the slots still mapped have all been moved
+                for ( Map.Entry<V, Slot<V, T>> entry : index.entrySet( ) )
+                {
+                    entry.setValue( relocated.get( entry.getValue( ) ) );
+                }
+            }
+            log.debug( "Compacted {} from {} to {} bytes", file, fileSize, position );
+            fileSize = position;
+        }
+    }
+
+    private void deleteQuietly( Path path )
+    {
+        try
+        {
+            Files.deleteIfExists( path );
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Could not delete {}: {}", path, e.getMessage( ) );
+        }
+    }
+
+    /**
+     * Recreates an empty file after a failure. Must be called with the io lock.
+     */
+    private void reopen( )
+    {
+        try
+        {
+            data.close( );
+            data = new RandomAccessFile( file.toFile( ), "rw" );
+            data.setLength( 0 );
+            fileSize = 0;
+        }
+        catch ( IOException e )
+        {
+            log.error( "Could not reopen the overflow file {}: {}", file, e.getMessage( ) );
+        }
+    }
+
+    /**
+     * Must be called with the lock of this.
+     */
+    private Slot<V, T> removeSlot( V key )
+    {
+        Slot<V, T> slot = index.remove( key );
+        if ( slot != null )
+        {
+            liveBytes -= slot.length;
+        }
+        return slot;
+    }
+
+    /**
+     * Must be called with the io lock.
+     */
+    private byte[] read( Slot<V, T> slot )
+        throws IOException
+    {
+        byte[] bytes = new byte[slot.length];
+        data.seek( slot.offset );
+        data.readFully( bytes );
+        return bytes;
+    }
+}
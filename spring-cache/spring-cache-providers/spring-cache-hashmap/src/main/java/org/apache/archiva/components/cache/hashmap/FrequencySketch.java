@@ -0,0 +1,152 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch estimating the access frequency of keys with 4-bit counters.
+ * <p>
+ * Each key is mapped to one counter in each of the four rows. The estimated frequency is the
+ * minimum of these counters, so it may be over estimated but never under estimated. After a
+ * sample of <code>10 * maximumSize</code> increments all counters are halved, so that the sketch
+ * follows the recent popularity of the keys instead of their lifetime popularity.
+ * </p>
+ * Not thread safe.
+ *
+ * @since 3.0
+ */
+final class FrequencySketch<E>
+{
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private int additions;
+
+    FrequencySketch( int maximumSize )
+    {
+        int size = ReadBuffer.ceilingPowerOfTwo( Math.max( maximumSize, 16 ) );
+        this.table = new long[size];
+        this.tableMask = size - 1;
+        this.sampleSize = 10 * Math.max( maximumSize, 16 );
+    }
+
+    /**
+     * @return the estimated number of occurrences of the element, at most 15
+     */
+    int frequency( E e )
+    {
+        int hash = spread( e.hashCode( ) );
+        int frequency = MAX_COUNT;
+        for ( int i = 0; i < 4; i++ )
+        {
+            frequency = Math.min( frequency, counter( hash, i ) );
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the counters of the element, unless they are already saturated.
+     */
+    void increment( E e )
+    {
+        int hash = spread( e.hashCode( ) );
+        boolean added = false;
+        for ( int i = 0; i < 4; i++ )
+        {
+            added |= incrementAt( hash, i );
+        }
+        if ( added && ++additions >= sampleSize )
+        {
+            reset( );
+        }
+    }
+
+    void clear( )
+    {
+        Arrays.fill( table, 0L );
+        additions = 0;
+    }
+
+    private int counter( int hash, int row )
+    {
+        int index = indexOf( hash, row );
+        int offset = counterOffset( hash, row );
+        return (int) ( ( table[index] >>> offset ) & 0xfL );
+    }
+
+    private boolean incrementAt( int hash, int row )
+    {
+        int index = indexOf( hash, row );
+        int offset = counterOffset( hash, row );
+        long mask = 0xfL << offset;
+        if ( ( table[index] & mask ) != mask )
+        {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halves every counter. The odd counters lose their lowest bit, which is acceptable for an estimate.
+     */
+    private void reset( )
+    {
+        for ( int i = 0; i < table.length; i++ )
+        {
+            table[i] = ( table[i] >>> 1 ) & RESET_MASK;
+        }
+        additions = additions >>> 1;
+    }
+
+    private int indexOf( int hash, int row )
+    {
+        long h = ( hash + SEEDS[row] ) * SEEDS[row];
+        h += h >>> 32;
+        return ( (int) h ) & tableMask;
+    }
+
+    /**
+     * Each long holds 16 counters, every row uses its own group of four counters.
+     */
+    private int counterOffset( int hash, int row )
+    {
+        int start = ( hash >>> ( row << 3 ) ) & 3;
+        return ( ( row << 2 ) + start ) << 2;
+    }
+
+    private static int spread( int x )
+    {
+        x = ( ( x >>> 16 ) ^ x ) * 0x45d9f3b;
+        x = ( ( x >>> 16 ) ^ x ) * 0x45d9f3b;
+        return ( x >>> 16 ) ^ x;
+    }
+}
@@ -22,16 +22,47 @@ package org.apache.archiva.components.cache.hashmap;
 import org.apache.archiva.components.cache.AbstractCache;
 import org.apache.archiva.components.cache.AbstractCacheStatistics;
 import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheSnapshot;
 import org.apache.archiva.components.cache.CacheStatistics;
 import org.apache.archiva.components.cache.CacheableWrapper;
+import org.apache.archiva.components.cache.Expiry;
+import org.apache.archiva.components.cache.Weigher;
+import org.apache.archiva.components.cache.event.CacheEventDispatcher;
+import org.apache.archiva.components.cache.event.CacheEventListener;
+import org.apache.archiva.components.cache.event.RemovalCause;
+import org.apache.archiva.components.cache.serializer.JavaSerializer;
+import org.apache.archiva.components.cache.serializer.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 /**
  * <p>
@@ -51,6 +82,74 @@ import java.util.Map;
  * <li> > 0 : after a live (stored time) of refreshTime the object will be remove from the cache
  * and a no object will be returned by the method</li>
  * </ul>
+ * The <code>timeToLiveSeconds</code> limits the life of the objects like the refreshTime, the shorter of both
+ * applies. With <code>timeToIdleSeconds</code> an object also expires, if it is not read for that time.
+ * </p>
+ * <p>
+ * An {@link Expiry} computes the expiration of each entry on its creation, update and access instead, the
+ * refreshTime, <code>timeToLiveSeconds</code> and <code>timeToIdleSeconds</code> are not used then.
+ * </p>
+ * <p>
+ * The expired objects are removed proactively: the entries are scheduled on a {@link TimerWheel} by their
+ * expiration time, which is advanced on each write and once per second by a background task. The lookups
+ * compare the expiration time with a {@link CoarseClock} instead of the system clock.
+ * </p>
+ * <p>
+ * With a <code>cacheHitRatio</code> &lt; 1 the number of entries adapts to the workload: the hit rate is measured
+ * over a sliding window of <code>adaptiveWindowSeconds</code>, and the target size grows while the hit rate is
+ * lower than the ratio and shrinks while it is higher, between <code>adaptiveMinSize</code> and the
+ * <code>cacheMaxSize</code> (see {@link AdaptiveSizer}). The target size does not grow beyond the
+ * <code>maxWeight</code>. The statistics report the current target size.
+ * </p>
+ * <p>
+ * When the cache is bounded with <code>cacheMaxSize</code>, the <code>memoryEvictionPolicy</code> selects which
+ * entry is evicted:
+ * <ul>
+ * <li> LRU (default) : the least recently used entry is evicted</li>
+ * <li> TinyLFU : the entry with the lowest recent access frequency is evicted and new entries are only admitted,
+ * if they are accessed more frequently than the entry they replace (see {@link TinyLfuPolicy})</li>
+ * </ul>
+ * </p>
+ * <p>
+ * With a <code>maxWeight</code> &gt; 0 the cache is bounded by the sum of the weights of its entries, as
+ * estimated by the {@link Weigher}, in addition to the <code>cacheMaxSize</code>. The entries are evicted in
+ * the order of the eviction policy until the weight fits. The statistics report the weight of the cache as
+ * in memory size.
+ * </p>
+ * <p>
+ * Configure the refreshAheadTime in seconds to reload the entries loaded with
+ * {@link #getOrLoad(Object, java.util.function.Function)} in the background: an entry older than
+ * refreshAheadTime (but still younger than refreshTime) is returned, while its loader runs on the
+ * <code>refreshExecutor</code> to replace it. 0 disables the refresh ahead.
+ * </p>
+ * <p>
+ * With a <code>negativeTimeToLiveSeconds</code> &gt; 0 the keys for which the loader returned null are kept as
+ * entries without value for that time, so the lookups of missing keys don't call the loader again.
+ * </p>
+ * <p>
+ * With <code>overflowToDisk</code> the entries evicted from memory by the <code>cacheMaxSize</code> or the
+ * <code>maxWeight</code> are written behind to a file in the <code>diskOverflowPath</code>, serialized with the
+ * <code>overflowSerializer</code>, instead of being dropped (see {@link DiskOverflow}). A lookup missing in memory
+ * reads the entry back and moves it into memory again. At most <code>maxElementsOnDisk</code> entries are kept on
+ * disk, the least recently used ones are evicted beyond. The overflowed entries keep their expiration time.
+ * </p>
+ * <p>
+ * With a <code>snapshotFile</code> the hottest <code>snapshotSize</code> keys are written to the file every
+ * <code>snapshotIntervalSeconds</code> and on {@link #dispose()} (see {@link CacheSnapshot}). If a
+ * <code>warmUpLoader</code> is set, {@link #initialize()} loads the keys of the snapshot in the background on the
+ * <code>warmUpExecutor</code>, so the cache does not start empty after a restart.
+ * </p>
+ * <p>
+ * With <code>weakKeys</code> the garbage collector reclaims the entries whose key is not used outside of the
+ * cache anymore, the keys are then compared by identity. With <code>softValues</code> it reclaims the values when
+ * the memory runs low, which suits large values that can be computed again. The collected entries are removed
+ * by the next operations and the background maintenance, and counted by the statistics. Neither is supported
+ * with <code>overflowToDisk</code>, and weak keys require the LRU policy.
+ * </p>
+ * <p>
+ * The listeners registered with {@link #registerEventListener(CacheEventListener, boolean)} are notified of the
+ * entries removed, replaced, expired, evicted or collected from memory. The events are recorded with the cache lock
+ * held and published once it is released, so the listeners never run with the cache lock.
  * </p>
  *
  * @author Edwin Punzalan
@@ -62,6 +161,20 @@ public class HashMapCache<V, T>
     implements Cache<V, T>
 {
 
+    public static final String LRU = "LRU";
+
+    public static final String TINY_LFU = "TinyLFU";
+
+    /**
+     * The maximum number of entries in the disk overflow, if the maxElementsOnDisk is not set.
+     */
+    public static final int DEFAULT_MAX_ELEMENTS_ON_DISK = 10000;
+
+    /**
+     * The initial size adapted to the cacheHitRatio, if the cacheMaxSize is not set.
+     */
+    public static final int DEFAULT_ADAPTIVE_INITIAL_SIZE = 1000;
+
     private Logger log = LoggerFactory.getLogger( getClass( ) );
 
     class Stats
@@ -74,23 +187,92 @@ public class HashMapCache<V, T>
             super( );
         }
 
+        /**
+         * @return the number of entries in memory and in the disk overflow
+         */
         public long getSize( )
         {
-            synchronized (cache)
+            DiskOverflow<V, T> diskOverflow = overflow;
+            return diskOverflow == null ? entryCount : entryCount + diskOverflow.size( );
+        }
+
+        /**
+         * @return the size adapted to the cacheHitRatio, or the cacheMaxSize
+         */
+        @Override
+        public long getTargetSize( )
+        {
+            AdaptiveSizer adaptiveSizer = sizer;
+            return adaptiveSizer != null ? adaptiveSizer.getTargetSize( ) : cacheMaxSize;
+        }
+
+        /**
+         * @return the sum of the weights of the entries
+         */
+        @Override
+        public long getInMemorySize( )
+        {
+            return totalWeight;
+        }
+
+    }
+
+    /**
+     * Runs a periodic task of a cache, without keeping the cache from being garbage collected.
+     */
+    private static final class MaintenanceTask
+        implements Runnable
+    {
+        private final WeakReference<HashMapCache<?, ?>> cache;
+
+        private final Consumer<HashMapCache<?, ?>> action;
+
+        private volatile ScheduledFuture<?> future;
+
+        MaintenanceTask( HashMapCache<?, ?> cache, Consumer<HashMapCache<?, ?>> action )
+        {
+            this.cache = new WeakReference<>( cache );
+            this.action = action;
+        }
+
+        public void run( )
+        {
+            HashMapCache<?, ?> hashMapCache = cache.get( );
+            if ( hashMapCache == null )
             {
-                return cache.size( );
+                cancel( );
+                return;
             }
+            action.accept( hashMapCache );
         }
 
+        void cancel( )
+        {
+            if ( future != null )
+            {
+                CacheMaintenance.cancel( future );
+            }
+        }
     }
 
-    private Map<V, CacheableWrapper<T>> cache;
+    private Map<V, CacheEntry<V, T>> cache;
 
     /**
-     *
+     * The hit ratio the size adapts to, 1 to disable the adaptive sizing.
      */
     private double cacheHitRatio = 1.0;
 
+    private int adaptiveMinSize = 16;
+
+    private int adaptiveWindowSeconds = 10;
+
+    /**
+     * Adapts the size to the cacheHitRatio, <code>null</code> if disabled.
+     */
+    private volatile AdaptiveSizer sizer;
+
+    private MaintenanceTask sizingTask;
+
     /**
      *
      */
@@ -101,6 +283,122 @@ public class HashMapCache<V, T>
      */
     private int refreshTime;
 
+    private String memoryEvictionPolicy = LRU;
+
+    /**
+     *
+     */
+    private long maxWeight = 0;
+
+    private Weigher<? super V, ? super T> weigher = Weigher.singleton( );
+
+    /**
+     * Computes the expiration of each entry, <code>null</code> to use the refreshTime and the time to live and idle.
+     */
+    private Expiry<? super V, ? super T> expiry;
+
+    /**
+     * The current time in milliseconds, for the expiration and the refresh of the entries.
+     */
+    private LongSupplier ticker = CoarseClock::currentTimeMillis;
+
+    /**
+     * The sum of the weights of the entries, only modified with the cache lock.
+     */
+    private volatile long totalWeight;
+
+    /**
+     * The number of entries, only modified with the cache lock, so that the statistics don't need it.
+     */
+    private volatile int entryCount;
+
+    /**
+     *
+     */
+    private int refreshAheadTime;
+
+    private Executor refreshExecutor = ForkJoinPool.commonPool( );
+
+    private boolean overflowToDisk = false;
+
+    /**
+     * References the keys weakly, so the garbage collector can reclaim an entry once its key is not used anymore.
+     */
+    private boolean weakKeys = false;
+
+    /**
+     * References the values softly, so the garbage collector can reclaim them when the memory runs low.
+     */
+    private boolean softValues = false;
+
+    /**
+     * The map of the entries with weak keys, <code>null</code> if the keys are referenced strongly.
+     */
+    private WeakKeyMap<V, T> weakKeyMap;
+
+    /**
+     * Receives the collected references of the weak keys and soft values, <code>null</code> without them.
+     */
+    private ReferenceQueue<Object> collectedQueue;
+
+    private File diskOverflowPath = new File( System.getProperty( "java.io.tmpdir" ), "archiva-cache" );
+
+    private Serializer<T> overflowSerializer = new JavaSerializer<>( );
+
+    /**
+     * The maximum number of evicted entries waiting to be written to disk, the entries evicted beyond are dropped.
+     */
+    private int overflowWriteQueueSize = 1000;
+
+    /**
+     * The disk tier of the entries evicted from memory, <code>null</code> without overflowToDisk.
+     */
+    private volatile DiskOverflow<V, T> overflow;
+
+    /**
+     * The frequency based policy, <code>null</code> if the cache uses the access order of the map.
+     */
+    private TinyLfuPolicy<V> tinyLfuPolicy;
+
+    /**
+     * The maximum number of collected entries removed by a lookup or a write, the maintenance removes the rest.
+     */
+    private static final int MAX_COLLECTED_PER_OPERATION = 16;
+
+    private TimerWheel<V, T> timerWheel;
+
+    private MaintenanceTask expiryTask;
+
+    /**
+     * set from the initialization to the disposal, while the cache keeps the {@link CoarseClock} running
+     */
+    private CoarseClock.Registration clockRegistration;
+
+    private File snapshotFile;
+
+    private int snapshotSize = 1000;
+
+    private int snapshotIntervalSeconds = 300;
+
+    private Serializer<V> snapshotKeySerializer = new JavaSerializer<>( );
+
+    private Function<? super V, ? extends T> warmUpLoader;
+
+    private Executor warmUpExecutor = ForkJoinPool.commonPool( );
+
+    private CacheSnapshot<V> snapshot;
+
+    /**
+     * Serializes the snapshot writes, so a late periodic write does not replace the one of {@link #dispose()}.
+     */
+    private final Object snapshotLock = new Object( );
+
+    private MaintenanceTask snapshotTask;
+
+    private CompletableFuture<Integer> warmUp = CompletableFuture.completedFuture( 0 );
+
+    private final CacheEventDispatcher<V, T> events = new CacheEventDispatcher<>( );
+
     private Stats stats;
 
     public HashMapCache( )
@@ -115,9 +413,30 @@ public class HashMapCache<V, T>
     {
         synchronized (cache)
         {
+            List<CacheEntry<V, T>> cleared =
+                events.hasListeners( ) ? new ArrayList<>( cache.values( ) ) : Collections.emptyList( );
             stats.clear( );
             cache.clear( );
+            timerWheel.clear( );
+            totalWeight = 0;
+            entryCount = 0;
+            if ( tinyLfuPolicy != null )
+            {
+                tinyLfuPolicy.clear( );
+            }
+            if ( overflow != null )
+            {
+                overflow.clear( );
+            }
+            for ( CacheEntry<V, T> entry : cleared )
+            {
+                if ( !entry.absent )
+                {
+                    events.publishLater( entry.getKey( ), entry.getValue( ), RemovalCause.EXPLICIT );
+                }
+            }
         }
+        publishEvents( );
     }
 
     /**
@@ -128,206 +447,1243 @@ public class HashMapCache<V, T>
      */
     public T get( V key )
     {
-        CacheableWrapper<T> retValue = null;
         // prevent search
+        if ( !this.isCacheAvailable( ) )
+        {
+            return null;
+        }
+        long start = stats.getStarted( );
+        DiskOverflow<V, T> diskOverflow = overflow;
+        CacheEntry<V, T> retValue;
+        boolean inMemory;
+        synchronized (cache)
+        {
+            retValue = getLocked( key, diskOverflow == null );
+            inMemory = retValue != null || cache.containsKey( key );
+        }
+        publishEvents( );
+        if ( !inMemory && diskOverflow != null )
+        {
+            retValue = getFromOverflow( diskOverflow, key );
+        }
+        if ( retValue == null )
+        {
+            stats.getCompleted( start );
+            return null;
+        }
+        refreshAheadIfNeeded( key, retValue );
+        stats.getCompleted( start );
+        return retValue.getValue( );
+    }
+
+    /**
+     * Unlike {@link #get(Object)} the disk overflow is not read, a concurrent load stores its value in memory.
+     */
+    @Override
+    protected T peek( V key )
+    {
         if ( !this.isCacheAvailable( ) )
         {
             return null;
         }
         synchronized (cache)
         {
-            if ( cache.containsKey( key ) )
+            CacheEntry<V, T> entry = cache.get( key );
+            if ( entry == null || entry.absent || entry.isExpired( ticker.getAsLong( ) ) || entry.isCollected( ) )
             {
-                // remove and put: this promotes it to the top since we use a linked hash map
-                retValue = cache.remove( key );
+                return null;
+            }
+            return entry.getValue( );
+        }
+    }
 
-                if ( needRefresh( retValue ) )
+    /**
+     * Fetch the values of the given keys with a single acquisition of the cache lock.
+     *
+     * @param keys the keys used to map the cached objects
+     * @return the objects mapped to the given keys, keys without cached object are not contained
+     */
+    public Map<V, T> getAll( Collection<? extends V> keys )
+    {
+        Map<V, T> values = new HashMap<>( );
+        if ( !this.isCacheAvailable( ) )
+        {
+            return values;
+        }
+        DiskOverflow<V, T> diskOverflow = overflow;
+        Map<V, CacheEntry<V, T>> found = new HashMap<>( );
+        List<V> overflowed = new ArrayList<>( );
+        synchronized (cache)
+        {
+            for ( V key : keys )
+            {
+                CacheEntry<V, T> retValue = getLocked( key, diskOverflow == null );
+                if ( retValue != null )
                 {
-                    stats.miss( );
-                    return null;
+                    found.put( key, retValue );
                 }
-                else
+                else if ( diskOverflow != null && !cache.containsKey( key ) )
                 {
-                    cache.put( key, retValue );
-                    stats.hit( );
+                    overflowed.add( key );
                 }
             }
-            else
-            {
-                stats.miss( );
-            }
         }
-
-        return retValue == null ? null : retValue.getValue( );
-    }
-
-
-    protected boolean needRefresh( CacheableWrapper cacheableWrapper )
-    {
-        if ( cacheableWrapper == null )
+        publishEvents( );
+        for ( V key : overflowed )
         {
-            return true;
+            CacheEntry<V, T> retValue = getFromOverflow( diskOverflow, key );
+            if ( retValue != null )
+            {
+                found.put( key, retValue );
+            }
         }
-        if ( this.getRefreshTime( ) == 0 )
+        for ( Map.Entry<V, CacheEntry<V, T>> entry : found.entrySet( ) )
         {
-            return false;
+            refreshAheadIfNeeded( entry.getKey( ), entry.getValue( ) );
+            values.put( entry.getKey( ), entry.getValue( ).getValue( ) );
         }
-        boolean result =
-            ( System.currentTimeMillis( ) - cacheableWrapper.getStoredTime( ) ) > ( this.getRefreshTime( ) * 1000 );
-
-        log.debug( "{} is uptodate {}", cacheableWrapper, result );
-
-        return result;
-    }
-
-    public CacheStatistics getStatistics( )
-    {
-        return stats;
+        return values;
     }
 
     /**
-     * Check if the specified key is already mapped to an object.
+     * Must be called with the cache lock.
      *
-     * @param key the key used to map the cached object
-     * @return true if the cache contains an object associated with the given key
+     * @param countMiss false if the caller looks the key up in the disk overflow and counts the miss itself
      */
-    public boolean hasKey( V key )
+    private CacheEntry<V, T> getLocked( V key, boolean countMiss )
     {
-        // prevent search
-        if ( !this.isCacheAvailable( ) )
+        removeCollectedLocked( MAX_COLLECTED_PER_OPERATION );
+        CacheEntry<V, T> retValue = cache.get( key );
+        if ( retValue == null )
         {
-            return false;
+            if ( tinyLfuPolicy != null )
+            {
+                tinyLfuPolicy.recordMiss( key );
+            }
+            if ( countMiss )
+            {
+                stats.miss( );
+            }
+            return null;
         }
-        boolean contains;
-        synchronized (cache)
-        {
-            contains = cache.containsKey( key );
 
-            if ( contains )
+        long now = ticker.getAsLong( );
+        if ( retValue.isExpired( now ) )
+        {
+            removeLocked( key, RemovalCause.EXPIRED );
+            stats.evicted( 1 );
+            if ( countMiss )
             {
-                stats.hit( );
+                stats.miss( );
             }
-            else
+            return null;
+        }
+
+        if ( retValue.isCollected( ) )
+        {
+            // not enqueued yet
+            collectedLocked( retValue );
+            if ( countMiss )
             {
                 stats.miss( );
             }
+            return null;
         }
 
-        return contains;
+        if ( retValue.absent )
+        {
+            stats.negativeHit( );
+            return null;
+        }
+
+        if ( tinyLfuPolicy != null )
+        {
+            tinyLfuPolicy.recordAccess( key );
+        }
+        else
+        {
+            // remove and put: this promotes it to the top since we use a linked hash map
+            cache.remove( key );
+            cache.put( key, retValue );
+        }
+        accessedLocked( retValue, now );
+        stats.hit( );
+        return retValue;
     }
 
-    @PostConstruct
-    public void initialize( )
+    /**
+     * Looks up a key missing in memory in the disk overflow, counted as hit or miss. Must be called without the
+     * cache lock.
+     */
+    private CacheEntry<V, T> getFromOverflow( DiskOverflow<V, T> diskOverflow, V key )
     {
-        stats = new Stats( );
-
-        if ( cacheMaxSize > 0 )
+        CacheEntry<V, T> entry = promote( diskOverflow, key );
+        if ( entry == null )
         {
-            cache = new LinkedHashMap<>( cacheMaxSize );
+            stats.miss( );
         }
         else
         {
-            cache = new LinkedHashMap<>( );
+            stats.hit( );
         }
+        return entry;
     }
 
     /**
-     * Cache the given value and map it using the given key
+     * Moves the entry of a key from the disk overflow back into memory, the entries it displaces overflow in turn.
+     * Must be called without the cache lock, the disk is read before it is acquired.
      *
-     * @param key   the object to map the valued object
-     * @param value the object to cache
+     * @return the entry of the key in memory, or null if the key was neither in memory nor in the overflow
      */
-    public T put( V key, T value )
+    private CacheEntry<V, T> promote( DiskOverflow<V, T> diskOverflow, V key )
     {
-        CacheableWrapper<T> ret = null;
-
-        // remove and put: this promotes it to the top since we use a linked hash map
+        assert !Thread.holdsLock( cache ) : "the disk overflow is read with the cache lock";
+        CacheEntry<V, T> entry = diskOverflow.take( key, ticker.getAsLong( ) );
+        if ( entry == null )
+        {
+            return null;
+        }
         synchronized (cache)
         {
-            if ( cache.containsKey( key ) )
+            CacheEntry<V, T> current = cache.get( key );
+            if ( current != null )
             {
-                cache.remove( key );
+                // stored while the overflow was read, the newer entry wins
+                return current.absent ? null : current;
             }
-
-            ret = cache.put( key, new CacheableWrapper<>( value, System.currentTimeMillis( ) ) );
+            long expirationTime = entry.expirationTime;
+            putLocked( entry );
+            // the entry keeps the expiration time it had in memory, the promotion is an access
+            entry.expirationTime = expirationTime;
+            timerWheel.schedule( entry );
+            accessedLocked( entry, ticker.getAsLong( ) );
         }
-
         manageCache( );
-
-        return ret == null ? null : ret.getValue( );
+        return entry;
     }
 
     /**
-     * Cache the given value and map it using the given key
-     *
-     * @param key   the object to map the valued object
-     * @param value the object to cache
+     * Updates the expiration time of an entry read. Must be called with the cache lock.
      */
-    public void register( V key, T value )
+    private void accessedLocked( CacheEntry<V, T> entry, long now )
     {
-        // remove and put: this promotes it to the top since we use a linked hash map
-        synchronized (cache)
+        if ( expiry != null )
         {
-            if ( cache.containsKey( key ) )
+            Duration duration = expiry.expireAfterAccess( entry.getKey( ), entry.getValue( ) );
+            if ( duration == null )
             {
-                cache.remove( key );
+                return;
             }
-
-            cache.put( key, new CacheableWrapper<>( value, System.currentTimeMillis( ) ) );
+            entry.expirationTime = plus( now, duration );
         }
+        else if ( getTimeToIdleSeconds( ) > 0 )
+        {
+            entry.expirationTime = expirationTime( entry.getStoredTime( ), now );
+        }
+        else
+        {
+            return;
+        }
+        timerWheel.schedule( entry );
+    }
+
+    /**
+     * @return the time the entry expires, with the expiry if set, otherwise with the refreshTime and the time to
+     * live. Must be called with the cache lock, before the entry is stored.
+     */
+    private long writeExpirationTime( CacheEntry<V, T> entry )
+    {
+        long storedTime = entry.getStoredTime( );
+        if ( entry.absent )
+        {
+            return Math.min( expirationTime( storedTime, storedTime ),
+                             storedTime + getNegativeTimeToLiveSeconds( ) * 1000L );
+        }
+        if ( expiry == null )
+        {
+            return expirationTime( storedTime, storedTime );
+        }
+        CacheEntry<V, T> existing = cache.get( entry.getKey( ) );
+        if ( existing == null || existing.absent || existing.isExpired( storedTime ) )
+        {
+            return plus( storedTime, expiry.expireAfterCreate( entry.getKey( ), entry.getValue( ) ) );
+        }
+        Duration duration = expiry.expireAfterUpdate( entry.getKey( ), existing.getValue( ), entry.getValue( ) );
+        return duration == null ? existing.expirationTime : plus( storedTime, duration );
+    }
+
+    private static long plus( long time, Duration duration )
+    {
+        long millis = Expiry.toMillis( duration );
+        return millis >= Long.MAX_VALUE - time ? Long.MAX_VALUE : time + millis;
+    }
+
+    /**
+     * @return the time the entry expires, the earlier of its time to live and its time to idle
+     */
+    private long expirationTime( long storedTime, long accessTime )
+    {
+        long expirationTime = Long.MAX_VALUE;
+        if ( this.getRefreshTime( ) > 0 )
+        {
+            expirationTime = storedTime + this.getRefreshTime( ) * 1000L;
+        }
+        if ( getTimeToLiveSeconds( ) > 0 )
+        {
+            expirationTime = Math.min( expirationTime, storedTime + getTimeToLiveSeconds( ) * 1000L );
+        }
+        if ( getTimeToIdleSeconds( ) > 0 )
+        {
+            expirationTime = Math.min( expirationTime, accessTime + getTimeToIdleSeconds( ) * 1000L );
+        }
+        return expirationTime;
+    }
+
+    /**
+     * Removes the entries expired until now and the collected entries from the cache.
+     */
+    void expireEntries( )
+    {
+        synchronized (cache)
+        {
+            expireEntriesLocked( );
+            removeCollectedLocked( Integer.MAX_VALUE );
+        }
+        publishEvents( );
+    }
+
+    /**
+     * @return the entry of the key without recording an access, <code>null</code> if there is none
+     */
+    CacheEntry<V, T> peekEntry( V key )
+    {
+        synchronized (cache)
+        {
+            return cache.get( key );
+        }
+    }
+
+    /**
+     * Removes the entries whose weak key or soft value was collected. Must be called with the cache lock.
+     *
+     * @param max the maximum number of collected references to process
+     */
+    private void removeCollectedLocked( int max )
+    {
+        if ( collectedQueue == null )
+        {
+            return;
+        }
+        Reference<?> reference;
+        for ( int i = 0; i < max && ( reference = collectedQueue.poll( ) ) != null; i++ )
+        {
+            @SuppressWarnings( "unchecked" )
+            CacheEntry<V, T> entry = ( (CacheEntry.EntryReference<V, T>) reference ).getEntry( );
+            collectedLocked( entry );
+        }
+    }
+
+    /**
+     * Removes an entry whose weak key or soft value was collected, unless it was removed or replaced before.
+     * Must be called with the cache lock.
+     */
+    private void collectedLocked( CacheEntry<V, T> entry )
+    {
+        V key = entry.getKey( );
+        boolean removed = weakKeyMap != null ? weakKeyMap.removeEntry( entry ) : cache.remove( key, entry );
+        if ( !removed )
+        {
+            return;
+        }
+        if ( tinyLfuPolicy != null )
+        {
+            tinyLfuPolicy.recordRemove( key );
+        }
+        discarded( entry );
+        stats.collected( 1 );
+        events.publishLater( key, entry.getValue( ), RemovalCause.COLLECTED );
+    }
+
+    /**
+     * Must be called with the cache lock.
+     */
+    private void expireEntriesLocked( )
+    {
+        timerWheel.advance( ticker.getAsLong( ), entry -> {
+            if ( entry.isCollected( ) )
+            {
+                collectedLocked( entry );
+            }
+            else if ( cache.get( entry.getKey( ) ) == entry )
+            {
+                removeLocked( entry.getKey( ), RemovalCause.EXPIRED );
+                stats.evicted( 1 );
+            }
+        } );
+    }
+
+    /**
+     * Starts the background reload of a loaded entry older than the refreshAheadTime.
+     * Must be called without the cache lock.
+     */
+    private void refreshAheadIfNeeded( final V key, final CacheEntry<V, T> retValue )
+    {
+        final Function<? super V, ? extends T> loader = retValue.loader;
+        if ( this.refreshAheadTime <= 0 || loader == null || retValue.isRefreshing( ) )
+        {
+            return;
+        }
+        if ( ( ticker.getAsLong( ) - retValue.getStoredTime( ) ) <= ( this.refreshAheadTime * 1000L ) )
+        {
+            return;
+        }
+        if ( !retValue.startRefresh( ) )
+        {
+            return;
+        }
+        try
+        {
+            refreshExecutor.execute( ( ) -> refresh( key, retValue, loader ) );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            log.warn( "Could not schedule the refresh of {}: {}", key, e.getMessage( ) );
+            retValue.refreshFailed( );
+        }
+    }
+
+    private void refresh( V key, CacheEntry<V, T> stale, Function<? super V, ? extends T> loader )
+    {
+        T value;
+        try
+        {
+            value = recordLoads( loader ).apply( key );
+        }
+        catch ( RuntimeException e )
+        {
+            log.warn( "Refresh of {} failed, the stale value is kept: {}", key, e.getMessage( ) );
+            stale.refreshFailed( );
+            return;
+        }
+        synchronized (cache)
+        {
+            // the entry may have been updated or removed during the reload
+            if ( cache.get( key ) != stale )
+            {
+                return;
+            }
+            if ( value == null )
+            {
+                removeLocked( key, RemovalCause.EXPLICIT );
+            }
+            else
+            {
+                putLocked( new CacheEntry<>( key, value, ticker.getAsLong( ), loader ) );
+                evictByWeight( );
+            }
+        }
+        publishEvents( );
+    }
+
+
+    protected boolean needRefresh( CacheableWrapper cacheableWrapper )
+    {
+        if ( cacheableWrapper == null )
+        {
+            return true;
+        }
+        boolean result;
+        if ( cacheableWrapper instanceof CacheEntry )
+        {
+            CacheEntry<?, ?> entry = (CacheEntry<?, ?>) cacheableWrapper;
+            result = entry.isExpired( ticker.getAsLong( ) ) || entry.isCollected( );
+        }
+        else
+        {
+            long storedTime = cacheableWrapper.getStoredTime( );
+            result = expirationTime( storedTime, storedTime ) <= ticker.getAsLong( );
+        }
+
+        log.debug( "{} is uptodate {}", cacheableWrapper, result );
+
+        return result;
+    }
+
+    public CacheStatistics getStatistics( )
+    {
+        return stats;
+    }
+
+    /**
+     * Check if the specified key is already mapped to an object.
+     *
+     * @param key the key used to map the cached object
+     * @return true if the cache contains an object associated with the given key
+     */
+    public boolean hasKey( V key )
+    {
+        // prevent search
+        if ( !this.isCacheAvailable( ) )
+        {
+            return false;
+        }
+        boolean contains;
+        synchronized (cache)
+        {
+            CacheEntry<V, T> entry = cache.get( key );
+            contains = entry != null && !entry.absent;
+            if ( entry == null && overflow != null )
+            {
+                contains = overflow.contains( key, ticker.getAsLong( ) );
+            }
+
+            if ( contains )
+            {
+                stats.hit( );
+            }
+            else
+            {
+                stats.miss( );
+            }
+        }
+
+        return contains;
+    }
+
+    @PostConstruct
+    public void initialize( )
+    {
+        stats = new Stats( );
+
+        boolean referenceKeys = weakKeys;
+        boolean referenceValues = softValues;
+        if ( ( referenceKeys || referenceValues ) && overflowToDisk )
+        {
+            log.warn( "The weakKeys and softValues are not supported with overflowToDisk, using strong references" );
+            referenceKeys = false;
+            referenceValues = false;
+        }
+        if ( referenceKeys || referenceValues )
+        {
+            collectedQueue = new ReferenceQueue<>( );
+        }
+
+        if ( referenceKeys )
+        {
+            weakKeyMap = new WeakKeyMap<>( cacheMaxSize > 0 ? cacheMaxSize : 16 );
+            cache = weakKeyMap;
+        }
+        else if ( cacheMaxSize > 0 )
+        {
+            cache = new LinkedHashMap<>( cacheMaxSize );
+        }
+        else
+        {
+            cache = new LinkedHashMap<>( );
+        }
+
+        if ( TINY_LFU.equalsIgnoreCase( memoryEvictionPolicy ) )
+        {
+            if ( referenceKeys )
+            {
+                // the policy holds the keys strongly
+                log.warn( "Eviction policy {} does not support weakKeys, falling back to {}", memoryEvictionPolicy,
+                          LRU );
+            }
+            else if ( cacheMaxSize > 0 )
+            {
+                tinyLfuPolicy = new TinyLfuPolicy<>( cacheMaxSize );
+            }
+            else
+            {
+                log.warn( "Eviction policy {} requires a cacheMaxSize, falling back to {}", memoryEvictionPolicy, LRU );
+            }
+        }
+        else if ( !LRU.equalsIgnoreCase( memoryEvictionPolicy ) )
+        {
+            log.warn( "Unknown eviction policy {}, using {}", memoryEvictionPolicy, LRU );
+        }
+
+        if ( clockRegistration == null )
+        {
+            clockRegistration = CoarseClock.start( this );
+        }
+        timerWheel = new TimerWheel<>( ticker.getAsLong( ) );
+        if ( this.getRefreshTime( ) > 0 || getTimeToLiveSeconds( ) > 0 || getTimeToIdleSeconds( ) > 0
+            || getNegativeTimeToLiveSeconds( ) > 0 || expiry != null || collectedQueue != null )
+        {
+            expiryTask = new MaintenanceTask( this, HashMapCache::expireEntries );
+            expiryTask.future = CacheMaintenance.schedule( expiryTask, TimerWheel.SPANS[0] );
+        }
+
+        if ( overflowToDisk )
+        {
+            int maxElementsOnDisk =
+                getMaxElementsOnDisk( ) > 0 ? getMaxElementsOnDisk( ) : DEFAULT_MAX_ELEMENTS_ON_DISK;
+            try
+            {
+                overflow = new DiskOverflow<>( diskOverflowPath, overflowSerializer, maxElementsOnDisk,
+                                               overflowWriteQueueSize, stats::evicted );
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( "Could not create the disk overflow in " + diskOverflowPath, e );
+            }
+        }
+
+        if ( cacheHitRatio < 1.0 )
+        {
+            sizer = new AdaptiveSizer( cacheHitRatio, adaptiveMinSize,
+                                       cacheMaxSize > 0 ? cacheMaxSize : Integer.MAX_VALUE,
+                                       cacheMaxSize > 0 ? cacheMaxSize : DEFAULT_ADAPTIVE_INITIAL_SIZE,
+                                       Math.max( 1, adaptiveWindowSeconds ) );
+            sizingTask = new MaintenanceTask( this, HashMapCache::adaptSize );
+            sizingTask.future = CacheMaintenance.schedule( sizingTask, 1000 );
+        }
+
+        if ( snapshotFile != null )
+        {
+            snapshot = new CacheSnapshot<>( snapshotFile, snapshotKeySerializer );
+            if ( warmUpLoader != null )
+            {
+                warmUp = snapshot.warmUp( this, warmUpLoader, warmUpExecutor );
+            }
+            if ( snapshotIntervalSeconds > 0 )
+            {
+                // the maintenance thread only hands the snapshot over to the executor
+                snapshotTask = new MaintenanceTask( this, HashMapCache::scheduleSnapshot );
+                snapshotTask.future = CacheMaintenance.schedule( snapshotTask, snapshotIntervalSeconds * 1000L );
+            }
+        }
+    }
+
+    /**
+     * Samples the hit rate of the last second for the adaptive sizing, the entries beyond a reduced target size
+     * are evicted by the next writes.
+     */
+    private void adaptSize( )
+    {
+        AdaptiveSizer adaptiveSizer = sizer;
+        if ( adaptiveSizer != null )
+        {
+            adaptiveSizer.sample( stats.getCacheHits( ), stats.getCacheMiss( ), entryCount,
+                                  maxWeight > 0 && totalWeight >= maxWeight );
+        }
+    }
+
+    /**
+     * Writes the hottest <code>snapshotSize</code> keys to the <code>snapshotFile</code>, to warm up the cache
+     * on the next start. Done periodically and on {@link #dispose()}.
+     */
+    public void writeSnapshot( )
+    {
+        synchronized (snapshotLock)
+        {
+            if ( snapshot == null )
+            {
+                return;
+            }
+            try
+            {
+                snapshot.write( getHottestKeys( snapshotSize ) );
+            }
+            catch ( IOException | RuntimeException e )
+            {
+                log.warn( "Could not write the cache snapshot {}: {}", snapshotFile, e.getMessage( ) );
+            }
+        }
+    }
+
+    private void scheduleSnapshot( )
+    {
+        try
+        {
+            warmUpExecutor.execute( this::writeSnapshot );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            log.warn( "Could not schedule the cache snapshot {}: {}", snapshotFile, e.getMessage( ) );
+        }
+    }
+
+    /**
+     * The keys are ordered by their estimated access frequency with the TinyLFU policy, by recency otherwise.
+     * The absent and expired entries, as well as the entries in the disk overflow, are not listed. Only the keys
+     * and their frequencies are copied under the lock, the hottest keys are selected afterwards.
+     */
+    @Override
+    public List<V> getHottestKeys( int limit )
+    {
+        if ( limit <= 0 )
+        {
+            return new ArrayList<>( );
+        }
+        List<V> candidates;
+        int[] frequencies = null;
+        synchronized (cache)
+        {
+            // the map is in access order, the most recently used last
+            candidates = new ArrayList<>( cache.size( ) );
+            long now = ticker.getAsLong( );
+            for ( CacheEntry<V, T> entry : cache.values( ) )
+            {
+                V key = entry.getKey( );
+                if ( key != null && !entry.absent && !entry.isExpired( now ) && !entry.isCollected( ) )
+                {
+                    candidates.add( key );
+                }
+            }
+            if ( tinyLfuPolicy != null )
+            {
+                frequencies = new int[candidates.size( )];
+                for ( int i = 0; i < frequencies.length; i++ )
+                {
+                    frequencies[i] = tinyLfuPolicy.frequency( candidates.get( i ) );
+                }
+            }
+        }
+        int size = Math.min( limit, candidates.size( ) );
+        List<V> keys = new ArrayList<>( size );
+        if ( frequencies == null )
+        {
+            for ( int i = candidates.size( ) - 1; keys.size( ) < size; i-- )
+            {
+                keys.add( candidates.get( i ) );
+            }
+            return keys;
+        }
+        // a min-heap of the hottest indexes so far, on equal frequencies the more recently used wins
+        int[] counts = frequencies;
+        PriorityQueue<Integer> hottest = new PriorityQueue<>( size + 1, Comparator.comparingInt(
+            ( Integer i ) -> counts[i] ).thenComparingInt( i -> i ) );
+        for ( int i = 0; i < candidates.size( ); i++ )
+        {
+            hottest.add( i );
+            if ( hottest.size( ) > size )
+            {
+                hottest.poll( );
+            }
+        }
+        while ( !hottest.isEmpty( ) )
+        {
+            keys.add( candidates.get( hottest.poll( ) ) );
+        }
+        Collections.reverse( keys );
+        return keys;
+    }
+
+    /**
+     * Stops the background expiry, the expired entries are still removed on access. The snapshot is written and
+     * the disk overflow is deleted.
+     */
+    @PreDestroy
+    public void dispose( )
+    {
+        if ( expiryTask != null )
+        {
+            expiryTask.cancel( );
+            expiryTask = null;
+        }
+        if ( snapshotTask != null )
+        {
+            snapshotTask.cancel( );
+            snapshotTask = null;
+        }
+        if ( sizingTask != null )
+        {
+            sizingTask.cancel( );
+            sizingTask = null;
+        }
+        synchronized (snapshotLock)
+        {
+            // waits for a periodic write in progress, the later ones find no snapshot
+            writeSnapshot( );
+            snapshot = null;
+        }
+        DiskOverflow<V, T> diskOverflow = overflow;
+        if ( diskOverflow != null )
+        {
+            overflow = null;
+            diskOverflow.close( );
+        }
+        events.close( );
+        if ( clockRegistration != null )
+        {
+            CoarseClock.stop( clockRegistration );
+            clockRegistration = null;
+        }
+    }
+
+    /**
+     * The listeners are notified of the entries removed from memory, the entries dropped from the disk overflow
+     * are not reported.
+     */
+    @Override
+    public void registerEventListener( CacheEventListener<V, T> listener, boolean async )
+    {
+        events.register( listener, async );
+    }
+
+    @Override
+    public void unregisterEventListener( CacheEventListener<V, T> listener )
+    {
+        events.unregister( listener );
+    }
+
+    /**
+     * @return the dispatcher of the events, to configure the delivery to the asynchronous listeners
+     */
+    public CacheEventDispatcher<V, T> getEventDispatcher( )
+    {
+        return events;
+    }
+
+    /**
+     * Cache the given value and map it using the given key
+     *
+     * @param key   the object to map the valued object
+     * @param value the object to cache
+     */
+    public T put( V key, T value )
+    {
+        CacheEntry<V, T> ret;
+
+        synchronized (cache)
+        {
+            ret = putLocked( key, value );
+        }
+
+        manageCache( );
+
+        return ret == null ? null : ret.getValue( );
+    }
+
+    /**
+     * Cache the given value and map it using the given key
+     *
+     * @param key   the object to map the valued object
+     * @param value the object to cache
+     */
+    public void register( V key, T value )
+    {
+        put( key, value );
+    }
+
+    /**
+     * Keeps the loader with the entry, for the refresh ahead.
+     */
+    @Override
+    protected void registerLoaded( V key, T value, Function<? super V, ? extends T> loader )
+    {
+        synchronized (cache)
+        {
+            putLocked( new CacheEntry<>( key, value, ticker.getAsLong( ), loader ) );
+        }
+
+        manageCache( );
+    }
+
+    /**
+     * Cache the given value, if the key is not mapped to an up to date object yet.
+     *
+     * @param key   the object to map the valued object
+     * @param value the object to cache
+     * @return the object already mapped to the key, or null if the given value has been cached
+     */
+    public T putIfAbsent( V key, T value )
+    {
+        promoteIfOverflowed( key );
+        synchronized (cache)
+        {
+            CacheEntry<V, T> existing = cache.get( key );
+            if ( existing != null && !existing.absent && !needRefresh( existing ) )
+            {
+                return existing.getValue( );
+            }
+            putLocked( key, value );
+            manageCache( );
+        }
+        publishEvents( );
+        return null;
+    }
+
+    /**
+     * Cache the given value, if the key is already mapped to an up to date object.
+     *
+     * @param key   the object to map the valued object
+     * @param value the object to cache
+     * @return the object replaced, or null if the key was not mapped and the given value has not been cached
+     */
+    public T replace( V key, T value )
+    {
+        promoteIfOverflowed( key );
+        T previous;
+        synchronized (cache)
+        {
+            CacheEntry<V, T> existing = cache.get( key );
+            if ( existing == null || existing.absent || needRefresh( existing ) )
+            {
+                return null;
+            }
+            putLocked( key, value );
+            evictByWeight( );
+            previous = existing.getValue( );
+        }
+        publishEvents( );
+        return previous;
+    }
+
+    /**
+     * Moves an overflowed entry of the key back into memory, so the conditional writes see it.
+     */
+    private void promoteIfOverflowed( V key )
+    {
+        DiskOverflow<V, T> diskOverflow = overflow;
+        if ( diskOverflow != null )
+        {
+            promote( diskOverflow, key );
+        }
+    }
+
+    /**
+     * Caches the absence of a value for the key, as an entry without value expiring after the
+     * negativeTimeToLiveSeconds. The absent entries count to the size of the cache and are evicted like the
+     * other entries.
+     *
+     * @param key the key without value
+     */
+    @Override
+    public void registerAbsent( V key )
+    {
+        if ( getNegativeTimeToLiveSeconds( ) <= 0 )
+        {
+            return;
+        }
+        synchronized (cache)
+        {
+            CacheEntry<V, T> existing = cache.get( key );
+            if ( existing != null && !existing.absent && !needRefresh( existing ) )
+            {
+                return;
+            }
+            CacheEntry<V, T> entry = new CacheEntry<>( key, null, ticker.getAsLong( ), null );
+            entry.absent = true;
+            putLocked( entry );
+        }
+
+        manageCache( );
+    }
+
+    @Override
+    public boolean isAbsent( V key )
+    {
+        synchronized (cache)
+        {
+            CacheEntry<V, T> existing = cache.get( key );
+            return existing != null && existing.absent && !existing.isExpired( ticker.getAsLong( ) );
+        }
+    }
+
+    /**
+     * Cache all the given values with a single acquisition of the cache lock.
+     *
+     * @param entries the objects to cache, mapped by their key
+     */
+    public void putAll( Map<? extends V, ? extends T> entries )
+    {
+        synchronized (cache)
+        {
+            for ( Map.Entry<? extends V, ? extends T> entry : entries.entrySet( ) )
+            {
+                putLocked( entry.getKey( ), entry.getValue( ) );
+            }
+            // evicts until the cache fits again, once for the whole batch
+            manageCache( );
+        }
+        publishEvents( );
+    }
+
+    /**
+     * Must be called with the cache lock.
+     */
+    private CacheEntry<V, T> putLocked( V key, T value )
+    {
+        return putLocked( new CacheEntry<>( key, value, ticker.getAsLong( ), null ) );
+    }
+
+    /**
+     * Must be called with the cache lock.
+     */
+    private CacheEntry<V, T> putLocked( CacheEntry<V, T> entry )
+    {
+        if ( overflow != null )
+        {
+            overflow.discard( entry.getKey( ) );
+        }
+        if ( weakKeyMap != null )
+        {
+            entry.weakenKey( collectedQueue );
+        }
+        if ( collectedQueue != null && softValues )
+        {
+            entry.softenValue( collectedQueue );
+        }
+        entry.expirationTime = writeExpirationTime( entry );
+        timerWheel.schedule( entry );
+        entry.weight = weigh( entry );
+        totalWeight += entry.weight;
+        entryCount++;
+
+        CacheEntry<V, T> ret;
+        if ( tinyLfuPolicy != null )
+        {
+            ret = putWithPolicy( entry );
+        }
+        else
+        {
+            // remove and put: this promotes it to the top since we use a linked hash map
+            ret = cache.remove( entry.getKey( ) );
+            cache.put( entry.getKey( ), entry );
+        }
+        if ( ret != null )
+        {
+            discarded( ret );
+            if ( !ret.absent )
+            {
+                events.publishLater( ret.getKey( ), ret.getValue( ), ret.isExpired( ticker.getAsLong( ) )
+                    ? RemovalCause.EXPIRED : RemovalCause.REPLACED );
+            }
+        }
+        return ret;
+    }
+
+    private int weigh( CacheEntry<V, T> entry )
+    {
+        if ( entry.absent )
+        {
+            return 0;
+        }
+        int weight = weigher.weigh( entry.getKey( ), entry.getValue( ) );
+        if ( weight < 0 )
+        {
+            throw new IllegalArgumentException( "Negative weight " + weight + " for the key " + entry.getKey( ) );
+        }
+        return weight;
+    }
+
+    /**
+     * Releases an entry removed from the map. Must be called with the cache lock.
+     */
+    private void discarded( CacheEntry<V, T> entry )
+    {
+        timerWheel.deschedule( entry );
+        totalWeight -= entry.weight;
+        entryCount--;
+    }
+
+    /**
+     * Counts and reports an entry evicted from memory by the size or weight limit, unless it overflows to disk.
+     * Must be called with the cache lock, once the entry has been removed.
+     */
+    private void evictedLocked( CacheEntry<V, T> entry )
+    {
+        if ( entry.isCollected( ) )
+        {
+            stats.collected( 1 );
+            events.publishLater( entry.getKey( ), null, RemovalCause.COLLECTED );
+            return;
+        }
+        boolean expired = entry.isExpired( ticker.getAsLong( ) );
+        if ( overflow == null || entry.absent || expired || !overflow.offer( entry ) )
+        {
+            stats.evicted( 1 );
+            if ( !entry.absent )
+            {
+                events.publishLater( entry.getKey( ), entry.getValue( ), expired ? RemovalCause.EXPIRED : RemovalCause.SIZE );
+            }
+        }
+    }
 
-        manageCache( );
+    /**
+     * Stores the entry and lets the frequency based policy evict entries. Must be called with the cache lock.
+     */
+    private CacheEntry<V, T> putWithPolicy( CacheEntry<V, T> entry )
+    {
+        CacheEntry<V, T> ret = cache.put( entry.getKey( ), entry );
+        if ( ret != null )
+        {
+            tinyLfuPolicy.recordAccess( entry.getKey( ) );
+        }
+        else
+        {
+            for ( V evicted : tinyLfuPolicy.recordInsert( entry.getKey( ) ) )
+            {
+                CacheEntry<V, T> removed = cache.remove( evicted );
+                discarded( removed );
+                evictedLocked( removed );
+            }
+        }
+        return ret;
     }
 
     public T remove( V key )
     {
+        DiskOverflow<V, T> diskOverflow = overflow;
+        boolean inMemory;
+        T previous = null;
         synchronized (cache)
         {
-            if ( cache.containsKey( key ) )
+            inMemory = diskOverflow == null || cache.containsKey( key );
+            if ( inMemory )
+            {
+                previous = removeLocked( key, RemovalCause.EXPLICIT );
+            }
+        }
+        if ( !inMemory )
+        {
+            // read without the cache lock
+            CacheEntry<V, T> overflowed = diskOverflow.take( key, ticker.getAsLong( ) );
+            if ( overflowed != null )
             {
-                return cache.remove( key ).getValue( );
+                previous = overflowed.getValue( );
+                events.publishLater( key, previous, RemovalCause.EXPLICIT );
             }
         }
+        publishEvents( );
+        return previous;
+    }
 
-        return null;
+    public void invalidate( V key )
+    {
+        synchronized (cache)
+        {
+            removeLocked( key, RemovalCause.EXPLICIT );
+        }
+        publishEvents( );
     }
 
-    private void manageCache( )
+    /**
+     * Remove the given keys with a single acquisition of the cache lock.
+     *
+     * @param keys the keys of the objects to remove
+     */
+    public void removeAll( Collection<? extends V> keys )
     {
         synchronized (cache)
         {
-            Iterator iterator = cache.entrySet( ).iterator( );
-            if ( cacheMaxSize == 0 )
+            for ( V key : keys )
             {
-                // desired HitRatio is reached, we can trim the cache to conserve memory
-                if ( cacheHitRatio <= stats.getCacheHitRate( ) )
-                {
-                    iterator.next( );
-                    iterator.remove( );
-                }
+                removeLocked( key, RemovalCause.EXPLICIT );
+            }
+        }
+        publishEvents( );
+    }
+
+    /**
+     * Must be called with the cache lock.
+     *
+     * @param cause the cause reported to the event listeners, <code>null</code> if the caller reports it
+     */
+    private T removeLocked( V key, RemovalCause cause )
+    {
+        if ( overflow != null )
+        {
+            overflow.discard( key );
+        }
+        if ( cache.containsKey( key ) )
+        {
+            if ( tinyLfuPolicy != null )
+            {
+                tinyLfuPolicy.recordRemove( key );
             }
-            else if ( cache.size( ) > cacheMaxSize )
+            CacheEntry<V, T> removed = cache.remove( key );
+            discarded( removed );
+            if ( cause != null && !removed.absent )
             {
-                // maximum cache size is reached
-                while ( cache.size( ) > cacheMaxSize )
-                {
-                    iterator.next( );
-                    iterator.remove( );
-                }
+                events.publishLater( key, removed.getValue( ), cause );
             }
-            else
+            return removed.getValue( );
+        }
+        return null;
+    }
+
+    private void manageCache( )
+    {
+        synchronized (cache)
+        {
+            expireEntriesLocked( );
+            removeCollectedLocked( MAX_COLLECTED_PER_OPERATION );
+            evictByWeight( );
+            AdaptiveSizer adaptiveSizer = sizer;
+            // the TinyLFU policy keeps the cache within cacheMaxSize on each insert
+            int maxSize = adaptiveSizer != null ? adaptiveSizer.getTargetSize( )
+                : tinyLfuPolicy != null ? 0 : cacheMaxSize;
+            while ( maxSize > 0 && cache.size( ) > maxSize && evictLocked( ) )
             {
-                // even though the max has not been reached, the desired HitRatio is already reached,
-                // so we can trim the cache to conserve memory
-                if ( cacheHitRatio <= stats.getCacheHitRate( ) )
-                {
-                    iterator.next( );
-                    iterator.remove( );
-                }
+                // evict in the order of the eviction policy
             }
         }
+        publishEvents( );
+    }
+
+    /**
+     * Publishes the events recorded with the cache lock, once the outermost operation released it.
+     */
+    private void publishEvents( )
+    {
+        if ( !Thread.holdsLock( cache ) )
+        {
+            events.publishPending( );
+        }
+    }
+
+
+    /**
+     * Evicts entries, in the order of the eviction policy, until the weight of the cache fits into maxWeight.
+     * Must be called with the cache lock.
+     */
+    private void evictByWeight( )
+    {
+        if ( maxWeight <= 0 )
+        {
+            return;
+        }
+        while ( totalWeight > maxWeight && evictLocked( ) )
+        {
+            // evict in the order of the eviction policy
+        }
     }
 
+    /**
+     * Evicts the next entry of the eviction policy. Must be called with the cache lock.
+     *
+     * @return false if there was no entry to evict
+     */
+    private boolean evictLocked( )
+    {
+        if ( tinyLfuPolicy != null )
+        {
+            V victim = tinyLfuPolicy.victim( );
+            if ( victim == null )
+            {
+                return false;
+            }
+            CacheEntry<V, T> entry = cache.get( victim );
+            removeLocked( victim, null );
+            evictedLocked( entry );
+            return true;
+        }
+        Iterator<CacheEntry<V, T>> iterator = cache.values( ).iterator( );
+        if ( !iterator.hasNext( ) )
+        {
+            return false;
+        }
+        CacheEntry<V, T> eldest = iterator.next( );
+        iterator.remove( );
+        discarded( eldest );
+        evictedLocked( eldest );
+        return true;
+    }
 
     public int getRefreshTime( )
     {
@@ -355,11 +1711,41 @@ public class HashMapCache<V, T>
         return cacheHitRatio;
     }
 
+    /**
+     * @param cacheHitRatio the hit ratio the number of entries adapts to, 1 (default) to disable the adaptive sizing
+     */
     public void setCacheHitRatio( double cacheHitRatio )
     {
         this.cacheHitRatio = cacheHitRatio;
     }
 
+    public int getAdaptiveMinSize( )
+    {
+        return adaptiveMinSize;
+    }
+
+    /**
+     * @param adaptiveMinSize the minimum number of entries of the adaptive sizing
+     */
+    public void setAdaptiveMinSize( int adaptiveMinSize )
+    {
+        this.adaptiveMinSize = adaptiveMinSize;
+    }
+
+    public int getAdaptiveWindowSeconds( )
+    {
+        return adaptiveWindowSeconds;
+    }
+
+    /**
+     * @param adaptiveWindowSeconds the length of the sliding window the hit rate is measured over, and the minimum
+     *                              time between two adjustments of the size
+     */
+    public void setAdaptiveWindowSeconds( int adaptiveWindowSeconds )
+    {
+        this.adaptiveWindowSeconds = adaptiveWindowSeconds;
+    }
+
     public int getCacheMaxSize( )
     {
         return cacheMaxSize;
@@ -370,6 +1756,258 @@ public class HashMapCache<V, T>
         this.cacheMaxSize = cacheMaxSize;
     }
 
+    public int getRefreshAheadTime( )
+    {
+        return refreshAheadTime;
+    }
+
+    /**
+     * @param refreshAheadTime age in seconds after which a loaded entry is reloaded in the background, 0 to disable
+     */
+    public void setRefreshAheadTime( int refreshAheadTime )
+    {
+        this.refreshAheadTime = refreshAheadTime;
+    }
+
+    public Executor getRefreshExecutor( )
+    {
+        return refreshExecutor;
+    }
+
+    /**
+     * @param refreshExecutor the executor running the background reloads, the common fork join pool by default
+     */
+    public void setRefreshExecutor( Executor refreshExecutor )
+    {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    public String getMemoryEvictionPolicy( )
+    {
+        return memoryEvictionPolicy;
+    }
+
+    /**
+     * @param memoryEvictionPolicy LRU or TinyLFU, TinyLFU is only used with a cacheMaxSize &gt; 0
+     */
+    public void setMemoryEvictionPolicy( String memoryEvictionPolicy )
+    {
+        this.memoryEvictionPolicy = memoryEvictionPolicy;
+    }
+
+    public long getMaxWeight( )
+    {
+        return maxWeight;
+    }
+
+    /**
+     * @param maxWeight the maximum sum of the weights of the entries, 0 for no limit
+     */
+    public void setMaxWeight( long maxWeight )
+    {
+        this.maxWeight = maxWeight;
+    }
+
+    public Expiry<? super V, ? super T> getExpiry( )
+    {
+        return expiry;
+    }
+
+    /**
+     * @param expiry computes the expiration of each entry, replacing the refreshTime and the time to live and idle
+     */
+    public void setExpiry( Expiry<? super V, ? super T> expiry )
+    {
+        this.expiry = expiry;
+    }
+
+    public LongSupplier getTicker( )
+    {
+        return ticker;
+    }
+
+    /**
+     * @param ticker returns the current time in milliseconds, the coarse clock of the caches by default; tests set
+     *               a ticker they advance themselves, to expire entries without waiting
+     */
+    public void setTicker( LongSupplier ticker )
+    {
+        this.ticker = ticker;
+    }
+
+    public Weigher<? super V, ? super T> getWeigher( )
+    {
+        return weigher;
+    }
+
+    /**
+     * @param weigher estimates the weight of the entries, each entry weighs 1 by default
+     */
+    public void setWeigher( Weigher<? super V, ? super T> weigher )
+    {
+        this.weigher = weigher;
+    }
+
+    public boolean isOverflowToDisk( )
+    {
+        return overflowToDisk;
+    }
+
+    /**
+     * @param overflowToDisk true to write the entries evicted from memory to disk instead of dropping them
+     */
+    public void setOverflowToDisk( boolean overflowToDisk )
+    {
+        this.overflowToDisk = overflowToDisk;
+    }
+
+    public boolean isWeakKeys( )
+    {
+        return weakKeys;
+    }
+
+    /**
+     * @param weakKeys true to reference the keys weakly, the keys are then compared by identity instead of equality
+     */
+    public void setWeakKeys( boolean weakKeys )
+    {
+        this.weakKeys = weakKeys;
+    }
+
+    public boolean isSoftValues( )
+    {
+        return softValues;
+    }
+
+    /**
+     * @param softValues true to reference the values softly, so they are collected when the memory runs low
+     */
+    public void setSoftValues( boolean softValues )
+    {
+        this.softValues = softValues;
+    }
+
+    public File getDiskOverflowPath( )
+    {
+        return diskOverflowPath;
+    }
+
+    /**
+     * @param diskOverflowPath the directory of the overflow file, the archiva-cache directory in java.io.tmpdir
+     *                         by default
+     */
+    public void setDiskOverflowPath( File diskOverflowPath )
+    {
+        this.diskOverflowPath = diskOverflowPath;
+    }
+
+    public Serializer<T> getOverflowSerializer( )
+    {
+        return overflowSerializer;
+    }
+
+    /**
+     * @param overflowSerializer the serializer of the overflowed values, java serialization by default
+     */
+    public void setOverflowSerializer( Serializer<T> overflowSerializer )
+    {
+        this.overflowSerializer = overflowSerializer;
+    }
+
+    public int getOverflowWriteQueueSize( )
+    {
+        return overflowWriteQueueSize;
+    }
+
+    public void setOverflowWriteQueueSize( int overflowWriteQueueSize )
+    {
+        this.overflowWriteQueueSize = overflowWriteQueueSize;
+    }
+
+    public File getSnapshotFile( )
+    {
+        return snapshotFile;
+    }
+
+    /**
+     * @param snapshotFile the file keeping the hottest keys across restarts, null to disable the snapshots
+     */
+    public void setSnapshotFile( File snapshotFile )
+    {
+        this.snapshotFile = snapshotFile;
+    }
+
+    public int getSnapshotSize( )
+    {
+        return snapshotSize;
+    }
+
+    /**
+     * @param snapshotSize the maximum number of keys written to the snapshot
+     */
+    public void setSnapshotSize( int snapshotSize )
+    {
+        this.snapshotSize = snapshotSize;
+    }
+
+    public int getSnapshotIntervalSeconds( )
+    {
+        return snapshotIntervalSeconds;
+    }
+
+    /**
+     * @param snapshotIntervalSeconds the period of the snapshots, 0 to write the snapshot on dispose only
+     */
+    public void setSnapshotIntervalSeconds( int snapshotIntervalSeconds )
+    {
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    public Serializer<V> getSnapshotKeySerializer( )
+    {
+        return snapshotKeySerializer;
+    }
+
+    public void setSnapshotKeySerializer( Serializer<V> snapshotKeySerializer )
+    {
+        this.snapshotKeySerializer = snapshotKeySerializer;
+    }
+
+    public Function<? super V, ? extends T> getWarmUpLoader( )
+    {
+        return warmUpLoader;
+    }
+
+    /**
+     * @param warmUpLoader loads the values of the snapshot keys on {@link #initialize()}, null to not warm up
+     */
+    public void setWarmUpLoader( Function<? super V, ? extends T> warmUpLoader )
+    {
+        this.warmUpLoader = warmUpLoader;
+    }
+
+    public Executor getWarmUpExecutor( )
+    {
+        return warmUpExecutor;
+    }
+
+    /**
+     * @param warmUpExecutor the executor of the warm up loads and of the snapshots, the common fork join pool by
+     *                       default
+     */
+    public void setWarmUpExecutor( Executor warmUpExecutor )
+    {
+        this.warmUpExecutor = warmUpExecutor;
+    }
+
+    /**
+     * @return completed with the number of values loaded, once the warm up started by {@link #initialize()} is done
+     */
+    public CompletableFuture<Integer> getWarmUp( )
+    {
+        return warmUp;
+    }
+
     public Stats getStats( )
     {
         return stats;
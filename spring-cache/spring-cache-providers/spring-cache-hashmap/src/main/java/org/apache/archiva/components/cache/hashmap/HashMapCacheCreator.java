@@ -23,6 +23,8 @@ import org.apache.archiva.components.cache.Cache;
 import org.apache.archiva.components.cache.CacheException;
 import org.apache.archiva.components.cache.CacheHints;
 import org.apache.archiva.components.cache.factory.CacheCreator;
+import org.apache.archiva.components.cache.serializer.JavaSerializer;
+import org.apache.archiva.components.cache.serializer.Serializer;
 
 /**
  * HashMapCacheCreator
@@ -32,15 +34,50 @@ import org.apache.archiva.components.cache.factory.CacheCreator;
 public class HashMapCacheCreator<K,V>
     implements CacheCreator<K,V>
 {
-    public Cache createCache( CacheHints cacheHint, Class<K> keyType, Class<V> valueType )
+    @Override
+    public Cache<K,V> createCache( CacheHints cacheHint, Class<K> keyType, Class<V> valueType )
         throws CacheException
     {
-        // Supports NO CacheHints.
-
         HashMapCache<K,V> cache = new HashMapCache<>( );
 
+        cache.setCacheMaxSize( cacheHint.getMaxElements( ) );
+        cache.setTimeToIdleSeconds( cacheHint.getIdleExpirationSeconds( ) );
+        cache.setTimeToLiveSeconds( cacheHint.getMaxSecondsInCache( ) );
+        cache.setOverflowToDisk( cacheHint.isOverflowToDisk( ) );
+        if ( cacheHint.getDiskOverflowPath( ) != null )
+        {
+            cache.setDiskOverflowPath( cacheHint.getDiskOverflowPath( ) );
+        }
+        Serializer<V> valueSerializer = getValueSerializer( cacheHint );
+        if ( valueSerializer != null )
+        {
+            cache.setOverflowSerializer( valueSerializer );
+        }
+        else if ( valueType != null )
+        {
+            cache.setOverflowSerializer( new JavaSerializer<>( valueType.getClassLoader( ) ) );
+        }
+
         cache.initialize( );
 
         return cache;
     }
+
+    @Override
+    public void disposeCache( Cache<K,V> cache )
+    {
+        if ( cache instanceof HashMapCache )
+        {
+            ( (HashMapCache<K,V>) cache ).dispose( );
+        }
+    }
+
+    /**
+     * The hints hold a serializer of any value type, it is the serializer of the values of the created cache.
+     */
+    @SuppressWarnings( "unchecked" )
+    private static <V> Serializer<V> getValueSerializer( CacheHints cacheHint )
+    {
+        return (Serializer<V>) cacheHint.getValueSerializer( );
+    }
 }
@@ -0,0 +1,107 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lossy, striped buffer recording read accesses without taking any lock.
+ * <p>
+ * Each reading thread is mapped to a stripe, and every stripe is a small ring whose slots are
+ * simply overwritten when the buffer is not drained fast enough. Losing some accesses only makes
+ * the access order an approximation, which is acceptable for LRU eviction.
+ * </p>
+ *
+ * @since 3.0
+ */
+final class ReadBuffer<E>
+{
+    static final int BUFFER_SIZE = 16;
+
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+    private final int stripeMask;
+
+    private final AtomicLong[] writeCounts;
+
+    private final AtomicReferenceArray<E>[] stripes;
+
+    ReadBuffer( )
+    {
+        int stripeCount = ceilingPowerOfTwo( Runtime.getRuntime( ).availableProcessors( ) );
+        this.stripeMask = stripeCount - 1;
+        this.writeCounts = new AtomicLong[stripeCount];
+        @SuppressWarnings( "unchecked" )
+        AtomicReferenceArray<E>[] stripes = (AtomicReferenceArray<E>[]) new AtomicReferenceArray<?>[stripeCount];
+        this.stripes = stripes;
+        for ( int i = 0; i < stripeCount; i++ )
+        {
+            writeCounts[i] = new AtomicLong( );
+            stripes[i] = new AtomicReferenceArray<>( BUFFER_SIZE );
+        }
+    }
+
+    /**
+     * Records an access.
+     *
+     * @param e the accessed element
+     * @return true if the stripe is full and should be drained
+     */
+    boolean offer( E e )
+    {
+        int index = stripeIndex( );
+        long count = writeCounts[index].getAndIncrement( );
+        stripes[index].lazySet( (int) ( count & BUFFER_MASK ), e );
+        return ( count & BUFFER_MASK ) == BUFFER_MASK;
+    }
+
+    /**
+     * Hands all recorded accesses to the consumer. Must be called by a single thread at a time.
+     */
+    void drainTo( Consumer<E> consumer )
+    {
+        for ( AtomicReferenceArray<E> stripe : stripes )
+        {
+            for ( int i = 0; i < BUFFER_SIZE; i++ )
+            {
+                E e = stripe.getAndSet( i, null );
+                if ( e != null )
+                {
+                    consumer.accept( e );
+                }
+            }
+        }
+    }
+
+    private int stripeIndex( )
+    {
+        long id = Thread.currentThread( ).getId( );
+        // spread the thread id, consecutive ids would otherwise share neighbouring stripes
+        int h = (int) ( id ^ ( id >>> 32 ) ) * 0x9E3779B9;
+        return ( h ^ ( h >>> 16 ) ) & stripeMask;
+    }
+
+    static int ceilingPowerOfTwo( int x )
+    {
+        return x <= 1 ? 1 : Integer.highestOneBit( x - 1 ) << 1;
+    }
+}
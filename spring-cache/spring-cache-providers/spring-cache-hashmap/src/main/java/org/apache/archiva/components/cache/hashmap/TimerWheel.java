@@ -0,0 +1,218 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timer wheel expiring the entries of a cache in amortised O(1).
+ * <p>
+ * The wheels have buckets of growing time spans (about 1 second, 1 minute, 1 hour, 1.5 days and
+ * 6 days). An entry is linked into the bucket of the finest wheel covering its expiration time.
+ * When the time advances, the buckets passed by are emptied: expired entries are handed to the
+ * evictor, the others are rescheduled and so cascade down to the finer wheels. Scheduling and
+ * rescheduling an entry are O(1), the expiry itself only visits the buckets the time went through.
+ * </p>
+ * Not thread safe, callers have to synchronize.
+ *
+ * @since 3.0
+ */
+final class TimerWheel<V, T>
+{
+    static final int[] BUCKETS = {64, 64, 32, 4, 1};
+
+    /**
+     * The time span of a bucket of each wheel in milliseconds, the span of a wheel is the bucket span
+     * of the next one.
+     */
+    static final long[] SPANS = {1L << 10, 1L << 16, 1L << 22, 1L << 27, 1L << 29, 1L << 29};
+
+    static final long[] SHIFT = {
+        Long.numberOfTrailingZeros( SPANS[0] ), Long.numberOfTrailingZeros( SPANS[1] ),
+        Long.numberOfTrailingZeros( SPANS[2] ), Long.numberOfTrailingZeros( SPANS[3] ),
+        Long.numberOfTrailingZeros( SPANS[4] )};
+
+    private final CacheEntry<V, T>[][] wheel;
+
+    private long time;
+
+    private int size;
+
+    TimerWheel( long now )
+    {
+        this.time = now;
+        @SuppressWarnings( "unchecked" )
+        CacheEntry<V, T>[][] wheel = (CacheEntry<V, T>[][]) new CacheEntry<?, ?>[BUCKETS.length][];
+        this.wheel = wheel;
+        for ( int i = 0; i < wheel.length; i++ )
+        {
+            @SuppressWarnings( "unchecked" )
+            CacheEntry<V, T>[] buckets = (CacheEntry<V, T>[]) new CacheEntry<?, ?>[BUCKETS[i]];
+            wheel[i] = buckets;
+            for ( int j = 0; j < wheel[i].length; j++ )
+            {
+                CacheEntry<V, T> sentinel = new CacheEntry<>( null, null, 0L, null );
+                sentinel.previousInWheel = sentinel;
+                sentinel.nextInWheel = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Links the entry into the bucket of its expiration time, or unlinks it, if it never expires.
+     */
+    void schedule( CacheEntry<V, T> entry )
+    {
+        if ( entry.nextInWheel != null )
+        {
+            unlink( entry );
+        }
+        if ( entry.expirationTime == Long.MAX_VALUE )
+        {
+            return;
+        }
+        link( findBucket( Math.max( entry.expirationTime, time ) ), entry );
+    }
+
+    void deschedule( CacheEntry<V, T> entry )
+    {
+        if ( entry.nextInWheel != null )
+        {
+            unlink( entry );
+        }
+    }
+
+    /**
+     * Advances the time of the wheel and hands the entries expired until now to the evictor.
+     */
+    void advance( long now, Consumer<CacheEntry<V, T>> evictor )
+    {
+        long previous = time;
+        if ( now <= previous )
+        {
+            return;
+        }
+        time = now;
+        for ( int i = 0; i < SHIFT.length; i++ )
+        {
+            long previousTicks = previous >>> SHIFT[i];
+            long currentTicks = now >>> SHIFT[i];
+            if ( currentTicks == previousTicks )
+            {
+                break;
+            }
+            expire( i, previousTicks, currentTicks - previousTicks, evictor );
+        }
+    }
+
+    void clear( )
+    {
+        for ( CacheEntry<V, T>[] buckets : wheel )
+        {
+            for ( CacheEntry<V, T> sentinel : buckets )
+            {
+                CacheEntry<V, T> entry = sentinel.nextInWheel;
+                while ( entry != sentinel )
+                {
+                    CacheEntry<V, T> next = entry.nextInWheel;
+                    entry.previousInWheel = null;
+                    entry.nextInWheel = null;
+                    entry = next;
+                }
+                sentinel.previousInWheel = sentinel;
+                sentinel.nextInWheel = sentinel;
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * @return the number of scheduled entries
+     */
+    int size( )
+    {
+        return size;
+    }
+
+    private void expire( int index, long previousTicks, long delta, Consumer<CacheEntry<V, T>> evictor )
+    {
+        CacheEntry<V, T>[] buckets = wheel[index];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min( 1 + delta, buckets.length );
+        int start = (int) ( previousTicks & mask );
+        for ( int i = 0; i < steps; i++ )
+        {
+            CacheEntry<V, T> sentinel = buckets[( start + i ) & mask];
+            CacheEntry<V, T> entry = sentinel.nextInWheel;
+            // detach the whole bucket first, the rescheduled entries may be linked into it again
+            sentinel.previousInWheel = sentinel;
+            sentinel.nextInWheel = sentinel;
+            while ( entry != sentinel )
+            {
+                CacheEntry<V, T> next = entry.nextInWheel;
+                entry.previousInWheel = null;
+                entry.nextInWheel = null;
+                size--;
+                if ( entry.isExpired( time ) )
+                {
+                    evictor.accept( entry );
+                }
+                else
+                {
+                    schedule( entry );
+                }
+                entry = next;
+            }
+        }
+    }
+
+    private CacheEntry<V, T> findBucket( long expirationTime )
+    {
+        long duration = expirationTime - time;
+        for ( int i = 0; i < BUCKETS.length - 1; i++ )
+        {
+            if ( duration < SPANS[i + 1] )
+            {
+                long ticks = expirationTime >>> SHIFT[i];
+                return wheel[i][(int) ( ticks & ( BUCKETS[i] - 1 ) )];
+            }
+        }
+        return wheel[BUCKETS.length - 1][0];
+    }
+
+    private void link( CacheEntry<V, T> sentinel, CacheEntry<V, T> entry )
+    {
+        entry.previousInWheel = sentinel.previousInWheel;
+        entry.nextInWheel = sentinel;
+        sentinel.previousInWheel.nextInWheel = entry;
+        sentinel.previousInWheel = entry;
+        size++;
+    }
+
+    private void unlink( CacheEntry<V, T> entry )
+    {
+        entry.previousInWheel.nextInWheel = entry.nextInWheel;
+        entry.nextInWheel.previousInWheel = entry.previousInWheel;
+        entry.previousInWheel = null;
+        entry.nextInWheel = null;
+        size--;
+    }
+}
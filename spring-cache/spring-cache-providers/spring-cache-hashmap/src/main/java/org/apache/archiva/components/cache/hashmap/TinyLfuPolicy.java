@@ -0,0 +1,192 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * W-TinyLFU eviction policy, tracking the keys of a cache bounded to a maximum number of entries.
+ * <p>
+ * New keys enter a small LRU admission window (1% of the capacity). Keys leaving the window are
+ * candidates for the main space, which is a segmented LRU made of a probation and a protected
+ * segment (80% of the main space). A candidate is only admitted, if its estimated access frequency
+ * is higher than the frequency of the eldest key of the probation segment; otherwise the candidate
+ * itself is evicted. Keys seen only once, like the ones of a scan, therefore can't flush the hot
+ * keys out of the cache.
+ * </p>
+ * Not thread safe, callers have to synchronize.
+ *
+ * @since 3.0
+ */
+final class TinyLfuPolicy<K>
+{
+    private final int maximumSize;
+
+    private final int maxWindow;
+
+    private final int maxProtected;
+
+    private final LinkedHashSet<K> window = new LinkedHashSet<>( );
+
+    private final LinkedHashSet<K> probation = new LinkedHashSet<>( );
+
+    private final LinkedHashSet<K> protectedSegment = new LinkedHashSet<>( );
+
+    private final FrequencySketch<K> sketch;
+
+    TinyLfuPolicy( int maximumSize )
+    {
+        this.maximumSize = maximumSize;
+        this.maxWindow = Math.max( 1, maximumSize / 100 );
+        this.maxProtected = (int) ( ( maximumSize - maxWindow ) * 0.8 );
+        this.sketch = new FrequencySketch<>( maximumSize );
+    }
+
+    /**
+     * Records a lookup of a key that is not in the cache.
+     */
+    void recordMiss( K key )
+    {
+        sketch.increment( key );
+    }
+
+    /**
+     * Records a lookup or update of a key that is in the cache.
+     */
+    void recordAccess( K key )
+    {
+        sketch.increment( key );
+        if ( window.remove( key ) )
+        {
+            window.add( key );
+        }
+        else if ( probation.remove( key ) )
+        {
+            protectedSegment.add( key );
+            if ( protectedSegment.size( ) > maxProtected )
+            {
+                // demote the eldest protected key, it gets a second chance in the probation segment
+                probation.add( removeEldest( protectedSegment ) );
+            }
+        }
+        else if ( protectedSegment.remove( key ) )
+        {
+            protectedSegment.add( key );
+        }
+    }
+
+    /**
+     * Records the insertion of a new key.
+     *
+     * @return the keys which must be evicted from the cache, may contain the inserted key
+     */
+    List<K> recordInsert( K key )
+    {
+        sketch.increment( key );
+        window.add( key );
+        if ( window.size( ) <= maxWindow )
+        {
+            return Collections.emptyList( );
+        }
+
+        K candidate = removeEldest( window );
+        if ( size( ) < maximumSize )
+        {
+            probation.add( candidate );
+            return Collections.emptyList( );
+        }
+
+        K victim = eldest( probation.isEmpty( ) ? protectedSegment : probation );
+        if ( victim == null )
+        {
+            return Collections.singletonList( candidate );
+        }
+        if ( sketch.frequency( candidate ) > sketch.frequency( victim ) )
+        {
+            probation.remove( victim );
+            protectedSegment.remove( victim );
+            probation.add( candidate );
+            return Collections.singletonList( victim );
+        }
+        return Collections.singletonList( candidate );
+    }
+
+    /**
+     * @return the key to evict first, when the cache has to shrink below its maximum size, or null if it is empty
+     */
+    K victim( )
+    {
+        K victim = eldest( probation );
+        if ( victim == null )
+        {
+            victim = eldest( window );
+        }
+        return victim != null ? victim : eldest( protectedSegment );
+    }
+
+    /**
+     * Records the removal of a key, the frequency history of the key is kept.
+     */
+    void recordRemove( K key )
+    {
+        if ( !window.remove( key ) && !probation.remove( key ) )
+        {
+            protectedSegment.remove( key );
+        }
+    }
+
+    /**
+     * @return the estimated recent access frequency of the key
+     */
+    int frequency( K key )
+    {
+        return sketch.frequency( key );
+    }
+
+    void clear( )
+    {
+        window.clear( );
+        probation.clear( );
+        protectedSegment.clear( );
+        sketch.clear( );
+    }
+
+    int size( )
+    {
+        return window.size( ) + probation.size( ) + protectedSegment.size( );
+    }
+
+    private static <K> K eldest( LinkedHashSet<K> segment )
+    {
+        Iterator<K> it = segment.iterator( );
+        return it.hasNext( ) ? it.next( ) : null;
+    }
+
+    private static <K> K removeEldest( LinkedHashSet<K> segment )
+    {
+        Iterator<K> it = segment.iterator( );
+        K key = it.next( );
+        it.remove( );
+        return key;
+    }
+}
@@ -0,0 +1,170 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The entries of a {@link HashMapCache} with weak keys, in insertion order. The entries are mapped by the
+ * {@link CacheEntry.WeakKey} of their key, the keys are compared by identity.
+ * <p>
+ * An entry whose key was collected can't be looked up anymore, it is removed with {@link #removeEntry(CacheEntry)}.
+ * </p>
+ * Not thread safe, callers have to synchronize.
+ *
+ * @since 3.0
+ */
+final class WeakKeyMap<V, T>
+    extends AbstractMap<V, CacheEntry<V, T>>
+{
+    /**
+     * Looks a key up without creating a reference, equal to the {@link CacheEntry.WeakKey} of the same instance.
+     */
+    private static final class LookupKey
+    {
+        private final Object key;
+
+        LookupKey( Object key )
+        {
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode( )
+        {
+            return System.identityHashCode( key );
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            return key != null && o instanceof CacheEntry.WeakKey && ( (CacheEntry.WeakKey<?, ?>) o ).get( ) == key;
+        }
+    }
+
+    private final LinkedHashMap<Object, CacheEntry<V, T>> map;
+
+    WeakKeyMap( int initialCapacity )
+    {
+        map = new LinkedHashMap<>( initialCapacity );
+    }
+
+    @Override
+    public CacheEntry<V, T> get( Object key )
+    {
+        return map.get( new LookupKey( key ) );
+    }
+
+    @Override
+    public boolean containsKey( Object key )
+    {
+        return map.containsKey( new LookupKey( key ) );
+    }
+
+    /**
+     * @param entry an entry with a weak key, mapped by it at the end of the insertion order
+     */
+    @Override
+    public CacheEntry<V, T> put( V key, CacheEntry<V, T> entry )
+    {
+        // the previous entry is removed, so the map keeps the reference of the new entry
+        CacheEntry<V, T> previous = map.remove( new LookupKey( key ) );
+        map.put( entry.getWeakKey( ), entry );
+        return previous;
+    }
+
+    @Override
+    public CacheEntry<V, T> remove( Object key )
+    {
+        return map.remove( new LookupKey( key ) );
+    }
+
+    /**
+     * @return true if the entry was mapped, even if its key was collected
+     */
+    boolean removeEntry( CacheEntry<V, T> entry )
+    {
+        return map.remove( entry.getWeakKey( ), entry );
+    }
+
+    @Override
+    public int size( )
+    {
+        return map.size( );
+    }
+
+    @Override
+    public void clear( )
+    {
+        map.clear( );
+    }
+
+    @Override
+    public Collection<CacheEntry<V, T>> values( )
+    {
+        return map.values( );
+    }
+
+    @Override
+    public Set<Map.Entry<V, CacheEntry<V, T>>> entrySet( )
+    {
+        return new AbstractSet<Map.Entry<V, CacheEntry<V, T>>>( )
+        {
+            @Override
+            public Iterator<Map.Entry<V, CacheEntry<V, T>>> iterator( )
+            {
+                Iterator<CacheEntry<V, T>> entries = map.values( ).iterator( );
+                return new Iterator<Map.Entry<V, CacheEntry<V, T>>>( )
+                {
+                    @Override
+                    public boolean hasNext( )
+                    {
+                        return entries.hasNext( );
+                    }
+
+                    @Override
+                    public Map.Entry<V, CacheEntry<V, T>> next( )
+                    {
+                        CacheEntry<V, T> entry = entries.next( );
+                        return new SimpleImmutableEntry<>( entry.getKey( ), entry );
+                    }
+
+                    @Override
+                    public void remove( )
+                    {
+                        entries.remove( );
+                    }
+                };
+            }
+
+            @Override
+            public int size( )
+            {
+                return map.size( );
+            }
+        };
+    }
+}
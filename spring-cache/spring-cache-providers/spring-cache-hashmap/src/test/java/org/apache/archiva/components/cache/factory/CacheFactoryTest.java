@@ -0,0 +1,227 @@
+package org.apache.archiva.components.cache.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheException;
+import org.apache.archiva.components.cache.CacheHints;
+import org.apache.archiva.components.cache.hashmap.HashMapCache;
+import org.apache.archiva.components.cache.hashmap.HashMapCacheCreator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Creates, shares and destroys the caches of the {@link CacheFactory} with a creator counting its calls.
+ *
+ * @since 3.0
+ */
+public class CacheFactoryTest
+{
+    private class CountingCreator
+        implements CacheCreator<String, Integer>
+    {
+        final AtomicInteger created = new AtomicInteger( );
+
+        final List<Cache<String, Integer>> disposed = new CopyOnWriteArrayList<>( );
+
+        /**
+         * released by the test, to keep the concurrent callers waiting for the creation
+         */
+        volatile CountDownLatch release;
+
+        /**
+         * the id the creator asks the factory for, while creating a cache
+         */
+        volatile String nested;
+
+        @Override
+        public Cache<String, Integer> createCache( CacheHints hints, Class<String> keyType, Class<Integer> valueType )
+            throws CacheException
+        {
+            created.incrementAndGet( );
+            if ( nested != null )
+            {
+                factory.getCache( nested, String.class, Integer.class, null );
+            }
+            if ( release != null )
+            {
+                try
+                {
+                    release.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread( ).interrupt( );
+                }
+            }
+            HashMapCache<String, Integer> cache = new HashMapCache<>( );
+            cache.initialize( );
+            return cache;
+        }
+
+        @Override
+        public void disposeCache( Cache<String, Integer> cache )
+        {
+            disposed.add( cache );
+            ( (HashMapCache<String, Integer>) cache ).dispose( );
+        }
+    }
+
+    private CacheFactory factory;
+
+    private CountingCreator creator;
+
+    @Before
+    public void setUp( )
+    {
+        factory = CacheFactory.getInstance( );
+        creator = new CountingCreator( );
+        factory.setCacheCreatorFactory( creator );
+    }
+
+    @After
+    public void tearDown( )
+    {
+        factory.shutdown( );
+        // the creator of this provider module, as configured in META-INF/archiva-cache.properties
+        factory.setCacheCreatorFactory( new HashMapCacheCreator<>( ) );
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneSlowCreation( )
+        throws Exception
+    {
+        creator.release = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<Cache<String, Integer>>> callers = new ArrayList<>( );
+            for ( int i = 0; i < 8; i++ )
+            {
+                callers.add( executor.submit( ( ) -> factory.getCache( "slow", String.class, Integer.class, null ) ) );
+            }
+            Thread.sleep( 100 );
+            creator.release.countDown( );
+
+            Cache<String, Integer> cache = callers.get( 0 ).get( 10, TimeUnit.SECONDS );
+            for ( Future<Cache<String, Integer>> caller : callers )
+            {
+                assertSame( cache, caller.get( 10, TimeUnit.SECONDS ) );
+            }
+            assertEquals( 1, creator.created.get( ) );
+            assertSame( cache, factory.getCaches( ).get( "slow" ) );
+        }
+        finally
+        {
+            executor.shutdownNow( );
+        }
+    }
+
+    @Test
+    public void testCreatorAskingForItsOwnCacheFailsFast( )
+        throws CacheException
+    {
+        creator.nested = "reentrant";
+        try
+        {
+            factory.getCache( "reentrant", String.class, Integer.class, null );
+            fail( "the creator asked for the cache it is creating" );
+        }
+        catch ( CacheException e )
+        {
+            assertTrue( e.getMessage( ), e.getMessage( ).contains( "reentrant" ) );
+        }
+        assertFalse( factory.getCacheIds( ).contains( "reentrant" ) );
+
+        // the failed creation doesn't block the next one
+        creator.nested = null;
+        assertTrue( factory.getCache( "reentrant", String.class, Integer.class, null ) instanceof HashMapCache );
+    }
+
+    @Test
+    public void testDestroyCacheDisposesAndForgetsTheCache( )
+        throws CacheException
+    {
+        List<String> destroyed = new CopyOnWriteArrayList<>( );
+        CacheFactoryListener listener = new CacheFactoryListener( )
+        {
+            @Override
+            public void cacheCreated( String id, Cache<?, ?> cache )
+            {
+                // noop
+            }
+
+            @Override
+            public void cacheDestroyed( String id, Cache<?, ?> cache )
+            {
+                destroyed.add( id );
+            }
+        };
+        factory.addCacheFactoryListener( listener );
+        try
+        {
+            Cache<String, Integer> cache = factory.getCache( "destroyed", String.class, Integer.class, null );
+            assertTrue( factory.destroyCache( "destroyed" ) );
+            assertFalse( factory.destroyCache( "destroyed" ) );
+            assertEquals( 1, creator.disposed.size( ) );
+            assertSame( cache, creator.disposed.get( 0 ) );
+            assertEquals( 1, destroyed.size( ) );
+            assertFalse( factory.getCacheIds( ).contains( "destroyed" ) );
+
+            assertNotSame( cache, factory.getCache( "destroyed", String.class, Integer.class, null ) );
+            assertEquals( 2, creator.created.get( ) );
+        }
+        finally
+        {
+            factory.removeCacheFactoryListener( listener );
+        }
+    }
+
+    @Test
+    public void testShutdownDestroysAllCaches( )
+        throws CacheException
+    {
+        Cache<String, Integer> first = factory.getCache( "first", String.class, Integer.class, null );
+        Cache<String, Integer> second = factory.getCache( "second", String.class, Integer.class, null );
+
+        factory.shutdown( );
+        assertTrue( factory.getCacheIds( ).isEmpty( ) );
+        assertTrue( creator.disposed.contains( first ) );
+        assertTrue( creator.disposed.contains( second ) );
+    }
+}
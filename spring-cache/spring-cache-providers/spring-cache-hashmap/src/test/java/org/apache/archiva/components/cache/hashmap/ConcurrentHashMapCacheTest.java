@@ -0,0 +1,147 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.test.AbstractCacheTestCase;
+import org.apache.archiva.components.cache.test.examples.wine.Wine;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ConcurrentHashMapCacheTest
+ */
+public class ConcurrentHashMapCacheTest
+    extends AbstractCacheTestCase
+{
+    @Inject
+    @Named( value = "cache#concurrent" )
+    Cache<String, Integer> cache;
+
+    @Inject
+    @Named( value = "cache#concurrent-alwaysrefresh" )
+    Cache<String, Wine> cachealwaysrefresh;
+
+    @Inject
+    @Named( value = "cache#concurrent-never" )
+    Cache<String, Wine> cachenever;
+
+    @Inject
+    @Named( value = "cache#concurrent-onesecondrefresh" )
+    Cache<String, Wine> cacheonesecondrefresh;
+
+    @Inject
+    @Named( value = "cache#concurrent-twosecondrefresh" )
+    Cache<String, Wine> cachetwosecondrefresh;
+
+    @Override
+    public Cache<String, Integer> getCache( )
+    {
+        return cache;
+    }
+
+    public Cache<String, Wine> getAlwaysRefresCache( )
+        throws Exception
+    {
+        return cachealwaysrefresh;
+    }
+
+    public Cache<String, Wine> getNeverRefresCache( )
+        throws Exception
+    {
+        return cachenever;
+    }
+
+    public Cache<String, Wine> getOneSecondRefresCache( )
+        throws Exception
+    {
+        return cacheonesecondrefresh;
+    }
+
+    public Cache<String, Wine> getTwoSecondRefresCache( )
+        throws Exception
+    {
+        return cachetwosecondrefresh;
+    }
+
+    public Class getCacheClass( )
+    {
+        // the CacheFactory of this provider module creates HashMapCache instances
+        return HashMapCache.class;
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted( )
+    {
+        ConcurrentHashMapCache<String, Integer> lru = new ConcurrentHashMapCache<>( );
+        lru.setCacheMaxSize( 3 );
+        lru.initialize( );
+
+        lru.put( "one", 1 );
+        lru.put( "two", 2 );
+        lru.put( "three", 3 );
+        // promote "one", so "two" becomes the eldest entry
+        assertEquals( Integer.valueOf( 1 ), lru.get( "one" ) );
+        lru.put( "four", 4 );
+
+        assertEquals( 3, lru.getStatistics( ).getSize( ) );
+        assertNull( lru.get( "two" ) );
+        assertEquals( Integer.valueOf( 1 ), lru.get( "one" ) );
+        assertEquals( Integer.valueOf( 4 ), lru.get( "four" ) );
+    }
+
+    @Test
+    public void testMaxSizeUnderContention( )
+        throws Exception
+    {
+        final ConcurrentHashMapCache<Integer, Integer> bounded = new ConcurrentHashMapCache<>( );
+        bounded.setCacheMaxSize( 100 );
+        bounded.initialize( );
+
+        List<Thread> threads = new ArrayList<>( );
+        for ( int t = 0; t < 8; t++ )
+        {
+            final int offset = t * 10000;
+            threads.add( new Thread( ( ) -> {
+                for ( int i = 0; i < 10000; i++ )
+                {
+                    bounded.put( offset + i, i );
+                    bounded.get( offset + i / 2 );
+                }
+            } ) );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start( );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join( );
+        }
+
+        assertTrue( "size should be bounded, but was " + bounded.getStatistics( ).getSize( ),
+            bounded.getStatistics( ).getSize( ) <= 100 );
+        assertEquals( 8 * 10000, bounded.getStatistics( ).getCacheHits( ) + bounded.getStatistics( ).getCacheMiss( ) );
+    }
+}
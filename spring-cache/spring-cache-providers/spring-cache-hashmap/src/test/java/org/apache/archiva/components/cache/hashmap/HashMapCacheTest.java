@@ -17,11 +17,27 @@ package org.apache.archiva.components.cache.hashmap;
  */
 
 import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.Expiry;
 import org.apache.archiva.components.cache.test.AbstractCacheTestCase;
 import org.apache.archiva.components.cache.test.examples.wine.Wine;
+import org.junit.Test;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.File;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * HashMapCacheTest
@@ -86,4 +102,500 @@ public class HashMapCacheTest
         return HashMapCache.class;
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testTinyLfuKeepsHotEntriesDuringScan( )
+    {
+        HashMapCache<String, Integer> lfu = new HashMapCache<>( );
+        lfu.setCacheMaxSize( 100 );
+        lfu.setMemoryEvictionPolicy( HashMapCache.TINY_LFU );
+        lfu.initialize( );
+
+        for ( int round = 0; round < 10; round++ )
+        {
+            for ( int i = 0; i < 50; i++ )
+            {
+                if ( lfu.get( "hot" + i ) == null )
+                {
+                    lfu.put( "hot" + i, i );
+                }
+            }
+        }
+        // one-hit-wonders, like an indexing run
+        for ( int i = 0; i < 10000; i++ )
+        {
+            lfu.put( "scan" + i, i );
+        }
+
+        int hotRetained = 0;
+        for ( int i = 0; i < 50; i++ )
+        {
+            if ( lfu.hasKey( "hot" + i ) )
+            {
+                hotRetained++;
+            }
+        }
+        assertEquals( 100, lfu.getStatistics( ).getSize( ) );
+        assertTrue( "hot entries should survive the scan, retained " + hotRetained, hotRetained >= 45 );
+
+        for ( int round = 0; round < 10; round++ )
+        {
+            for ( int i = 0; i < 3; i++ )
+            {
+                lfu.get( "hot" + i );
+            }
+        }
+        List<String> hottest = lfu.getHottestKeys( 3 );
+        assertEquals( 3, hottest.size( ) );
+        assertTrue( hottest.toString( ), hottest.containsAll( Arrays.asList( "hot0", "hot1", "hot2" ) ) );
+    }
+
+    @Test
+    public void testRefreshAheadServesStaleValueWhileReloading( )
+        throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor( );
+        AtomicLong now = new AtomicLong( System.currentTimeMillis( ) );
+        HashMapCache<String, Integer> refreshing = new HashMapCache<>( );
+        refreshing.setRefreshTime( 0 );
+        refreshing.setRefreshAheadTime( 1 );
+        refreshing.setRefreshExecutor( executor );
+        refreshing.setTicker( now::get );
+        refreshing.initialize( );
+
+        final AtomicInteger loads = new AtomicInteger( );
+        assertEquals( Integer.valueOf( 1 ), refreshing.getOrLoad( "metadata", key -> loads.incrementAndGet( ) ) );
+        assertEquals( Integer.valueOf( 1 ), refreshing.get( "metadata" ) );
+        assertEquals( 1, loads.get( ) );
+
+        now.addAndGet( 1100 );
+        // the stale value is returned immediately, the reload runs in the background
+        assertEquals( Integer.valueOf( 1 ), refreshing.get( "metadata" ) );
+
+        executor.shutdown( );
+        assertTrue( executor.awaitTermination( 10, TimeUnit.SECONDS ) );
+        assertEquals( 2, loads.get( ) );
+        assertEquals( Integer.valueOf( 2 ), refreshing.get( "metadata" ) );
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemovedWithoutAccess( )
+        throws Exception
+    {
+        AtomicLong now = new AtomicLong( System.currentTimeMillis( ) );
+        HashMapCache<String, Integer> expiring = new HashMapCache<>( );
+        expiring.setTimeToLiveSeconds( 1 );
+        expiring.setTicker( now::get );
+        expiring.initialize( );
+        try
+        {
+            for ( int i = 0; i < 100; i++ )
+            {
+                expiring.put( "key" + i, i );
+            }
+            assertEquals( 100, expiring.getStatistics( ).getSize( ) );
+
+            // the timer wheel ticks about every second, run the background expiry once the time has passed
+            now.addAndGet( 3500 );
+            expiring.expireEntries( );
+            assertEquals( 0, expiring.getStatistics( ).getSize( ) );
+        }
+        finally
+        {
+            expiring.dispose( );
+        }
+    }
+
+    @Test
+    public void testTimeToIdleKeepsReadEntries( )
+        throws Exception
+    {
+        AtomicLong now = new AtomicLong( System.currentTimeMillis( ) );
+        HashMapCache<String, Integer> idle = new HashMapCache<>( );
+        idle.setTimeToIdleSeconds( 1 );
+        idle.setTicker( now::get );
+        idle.initialize( );
+        try
+        {
+            idle.put( "read", 1 );
+            idle.put( "unread", 2 );
+            for ( int i = 0; i < 6; i++ )
+            {
+                now.addAndGet( 250 );
+                assertEquals( Integer.valueOf( 1 ), idle.get( "read" ) );
+            }
+            assertNull( idle.get( "unread" ) );
+        }
+        finally
+        {
+            idle.dispose( );
+        }
+    }
+
+    @Test
+    public void testExpiryComputesTheExpirationOfEachEntry( )
+        throws Exception
+    {
+        AtomicLong now = new AtomicLong( System.currentTimeMillis( ) );
+        HashMapCache<String, String> versions = new HashMapCache<>( );
+        versions.setTicker( now::get );
+        // snapshots expire quickly, releases never
+        versions.setExpiry( ( key, value ) -> value.endsWith( "-SNAPSHOT" ) ? Duration.ofSeconds( 1 ) : Expiry.ETERNAL );
+        versions.initialize( );
+        try
+        {
+            versions.put( "archiva", "3.0-SNAPSHOT" );
+            versions.put( "redback", "2.6" );
+            assertEquals( "3.0-SNAPSHOT", versions.get( "archiva" ) );
+
+            now.addAndGet( 1500 );
+            assertNull( versions.get( "archiva" ) );
+            assertEquals( "2.6", versions.get( "redback" ) );
+
+            // a release replacing a snapshot no longer expires
+            versions.put( "archiva", "3.0-SNAPSHOT" );
+            versions.put( "archiva", "3.0" );
+            now.addAndGet( 1500 );
+            assertEquals( "3.0", versions.get( "archiva" ) );
+        }
+        finally
+        {
+            versions.dispose( );
+        }
+    }
+
+    @Test
+    public void testEventListenersReportTheRemovalCause( )
+        throws Exception
+    {
+        HashMapCache<String, Integer> observed = new HashMapCache<>( );
+        observed.setCacheMaxSize( 2 );
+        observed.setExpiry( ( key, value ) -> key.startsWith( "expired" ) ? Duration.ZERO : Expiry.ETERNAL );
+        observed.initialize( );
+        try
+        {
+            List<String> events = new ArrayList<>( );
+            observed.registerEventListener(
+                event -> events.add( event.getKey( ) + "=" + event.getValue( ) + ":" + event.getCause( ) ), false );
+            CountDownLatch asyncEvents = new CountDownLatch( 5 );
+            observed.registerEventListener( event -> asyncEvents.countDown( ), true );
+
+            observed.put( "a", 1 );
+            observed.put( "a", 2 );
+            observed.remove( "a" );
+            observed.put( "b", 3 );
+            observed.put( "c", 4 );
+            observed.put( "d", 5 );
+            observed.invalidate( "c" );
+            observed.put( "expired", 6 );
+            assertNull( observed.get( "expired" ) );
+
+            assertEquals( Arrays.asList( "a=1:REPLACED", "a=2:EXPLICIT", "b=3:SIZE", "c=4:EXPLICIT", "expired=6:EXPIRED" ),
+                          events );
+            assertTrue( asyncEvents.await( 5, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            observed.dispose( );
+        }
+    }
+
+    @Test
+    public void testWeakKeysLetTheGarbageCollectorReclaimEntries( )
+        throws Exception
+    {
+        HashMapCache<String, Integer> weak = new HashMapCache<>( );
+        weak.setWeakKeys( true );
+        weak.initialize( );
+        try
+        {
+            String kept = new String( "kept" );
+            weak.put( kept, 1 );
+            List<String> keys = new ArrayList<>( );
+            for ( int i = 0; i < 100; i++ )
+            {
+                String key = new String( "key" + i );
+                keys.add( key );
+                weak.put( key, i );
+            }
+            // the keys are compared by identity
+            assertEquals( Integer.valueOf( 1 ), weak.get( kept ) );
+            assertNull( weak.get( new String( "kept" ) ) );
+
+            // clear the references as the garbage collector would
+            for ( String key : keys )
+            {
+                Reference<String> reference = weak.peekEntry( key ).getWeakKey( );
+                reference.clear( );
+                assertTrue( reference.enqueue( ) );
+            }
+            weak.expireEntries( );
+            assertEquals( 100, weak.getStatistics( ).getCollectedCount( ) );
+            assertEquals( 1, weak.getStatistics( ).getSize( ) );
+            assertEquals( Integer.valueOf( 1 ), weak.get( kept ) );
+        }
+        finally
+        {
+            weak.dispose( );
+        }
+    }
+
+    @Test
+    public void testSoftValuesLetTheGarbageCollectorReclaimEntries( )
+        throws Exception
+    {
+        HashMapCache<String, Integer> soft = new HashMapCache<>( );
+        soft.setSoftValues( true );
+        soft.initialize( );
+        try
+        {
+            soft.put( "kept", 1 );
+            soft.put( "collected", 2 );
+
+            // clear the reference as the garbage collector would
+            Reference<Integer> reference = soft.peekEntry( "collected" ).getSoftValue( );
+            reference.clear( );
+            assertTrue( reference.enqueue( ) );
+            assertNull( soft.get( "collected" ) );
+
+            soft.expireEntries( );
+            assertEquals( 1, soft.getStatistics( ).getCollectedCount( ) );
+            assertEquals( 1, soft.getStatistics( ).getSize( ) );
+            assertEquals( Integer.valueOf( 1 ), soft.get( "kept" ) );
+        }
+        finally
+        {
+            soft.dispose( );
+        }
+    }
+
+    @Test
+    public void testCollectedCacheReleasesTheCoarseClock( )
+    {
+        CoarseClock.Registration disposed = CoarseClock.start( new Object( ) );
+        CoarseClock.Registration collected = CoarseClock.start( new Object( ) );
+        assertTrue( CoarseClock.isRegistered( disposed ) );
+        assertTrue( CoarseClock.isRegistered( collected ) );
+
+        CoarseClock.stop( disposed );
+        assertFalse( CoarseClock.isRegistered( disposed ) );
+
+        // clear the reference as the garbage collector would, the owner was never stopped
+        collected.clear( );
+        assertTrue( collected.enqueue( ) );
+        CoarseClock.tick( );
+        assertFalse( CoarseClock.isRegistered( collected ) );
+    }
+
+    @Test
+    public void testMaxWeightEvictsByWeight( )
+    {
+        HashMapCache<String, String> weighted = new HashMapCache<>( );
+        weighted.setMaxWeight( 100 );
+        weighted.setWeigher( ( key, value ) -> value.length( ) );
+        weighted.initialize( );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            weighted.put( "small" + i, "0123456789" );
+        }
+        assertEquals( 10, weighted.getStatistics( ).getSize( ) );
+        assertEquals( 100, weighted.getStatistics( ).getInMemorySize( ) );
+
+        // a large value evicts the least recently used small ones until the weight fits again
+        weighted.put( "large", "01234567890123456789012345678901234567890123456789" );
+        assertEquals( 6, weighted.getStatistics( ).getSize( ) );
+        assertEquals( 100, weighted.getStatistics( ).getInMemorySize( ) );
+        assertNull( weighted.get( "small0" ) );
+        assertNotNull( weighted.get( "small9" ) );
+
+        weighted.remove( "large" );
+        assertEquals( 50, weighted.getStatistics( ).getInMemorySize( ) );
+        assertEquals( 5, weighted.getStatistics( ).getEvictionCount( ) );
+    }
+
+    @Test
+    public void testNegativeCachingSkipsTheLoader( )
+        throws Exception
+    {
+        AtomicLong now = new AtomicLong( System.currentTimeMillis( ) );
+        HashMapCache<String, Integer> negative = new HashMapCache<>( );
+        negative.setNegativeTimeToLiveSeconds( 1 );
+        negative.setTicker( now::get );
+        negative.initialize( );
+        try
+        {
+            final AtomicInteger lookups = new AtomicInteger( );
+            Function<String, Integer> repository = key -> {
+                lookups.incrementAndGet( );
+                return null;
+            };
+
+            assertNull( negative.getOrLoad( "missing", repository ) );
+            assertNull( negative.getOrLoad( "missing", repository ) );
+            assertNull( negative.get( "missing" ) );
+            assertEquals( 1, lookups.get( ) );
+            assertTrue( negative.isAbsent( "missing" ) );
+            assertFalse( negative.hasKey( "missing" ) );
+            assertEquals( 2, negative.getStatistics( ).getNegativeHitCount( ) );
+
+            // a stored value replaces the absence
+            negative.put( "missing", 1 );
+            assertFalse( negative.isAbsent( "missing" ) );
+            negative.registerAbsent( "missing" );
+            assertEquals( Integer.valueOf( 1 ), negative.get( "missing" ) );
+
+            negative.registerAbsent( "expiring" );
+            now.addAndGet( 1500 );
+            assertFalse( negative.isAbsent( "expiring" ) );
+            assertNull( negative.getOrLoad( "expiring", repository ) );
+            assertEquals( 2, lookups.get( ) );
+        }
+        finally
+        {
+            negative.dispose( );
+        }
+    }
+
+    @Test
+    public void testOverflowToDiskKeepsEvictedEntries( )
+        throws Exception
+    {
+        File directory = Files.createTempDirectory( "hashmap-overflow" ).toFile( );
+        HashMapCache<String, String> overflowing = new HashMapCache<>( );
+        overflowing.setCacheMaxSize( 10 );
+        overflowing.setMaxElementsOnDisk( 50 );
+        overflowing.setOverflowToDisk( true );
+        overflowing.setDiskOverflowPath( directory );
+        overflowing.initialize( );
+        try
+        {
+            for ( int i = 0; i < 30; i++ )
+            {
+                overflowing.put( "key" + i, "value" + i );
+            }
+            assertEquals( 30, overflowing.getStatistics( ).getSize( ) );
+            assertEquals( 0, overflowing.getStatistics( ).getEvictionCount( ) );
+
+            // read back from disk and moved into memory again
+            assertEquals( "value0", overflowing.get( "key0" ) );
+            assertTrue( overflowing.hasKey( "key1" ) );
+            assertEquals( "value1", overflowing.remove( "key1" ) );
+            assertNull( overflowing.get( "key1" ) );
+            assertEquals( 29, overflowing.getStatistics( ).getSize( ) );
+
+            // beyond maxElementsOnDisk the least recently used entries are evicted from the disk too
+            for ( int i = 30; i < 100; i++ )
+            {
+                overflowing.put( "key" + i, "value" + i );
+            }
+            long deadline = System.currentTimeMillis( ) + 10000;
+            while ( overflowing.getStatistics( ).getSize( ) > 60 && System.currentTimeMillis( ) < deadline )
+            {
+                Thread.sleep( 10 );
+            }
+            assertEquals( 60, overflowing.getStatistics( ).getSize( ) );
+            assertEquals( 39, overflowing.getStatistics( ).getEvictionCount( ) );
+            assertNull( overflowing.get( "key2" ) );
+            assertEquals( "value50", overflowing.get( "key50" ) );
+
+            overflowing.clear( );
+            assertEquals( 0, overflowing.getStatistics( ).getSize( ) );
+            assertNull( overflowing.get( "key60" ) );
+        }
+        finally
+        {
+            overflowing.dispose( );
+        }
+        assertEquals( 0, directory.list( ).length );
+        assertTrue( directory.delete( ) );
+    }
+
+    @Test
+    public void testSnapshotWarmsUpAfterRestart( )
+        throws Exception
+    {
+        File snapshotFile = File.createTempFile( "hashmap-snapshot", ".keys" );
+        HashMapCache<String, Integer> before = new HashMapCache<>( );
+        before.setSnapshotFile( snapshotFile );
+        before.setSnapshotSize( 2 );
+        before.initialize( );
+        for ( String key : Arrays.asList( "cold", "warm", "hot" ) )
+        {
+            before.put( key, key.length( ) );
+        }
+        before.get( "warm" );
+        before.get( "hot" );
+        assertEquals( Arrays.asList( "hot", "warm", "cold" ), before.getHottestKeys( 10 ) );
+        before.dispose( );
+
+        final AtomicInteger loads = new AtomicInteger( );
+        HashMapCache<String, Integer> after = new HashMapCache<>( );
+        after.setSnapshotFile( snapshotFile );
+        after.setWarmUpLoader( key -> {
+            loads.incrementAndGet( );
+            return key.length( );
+        } );
+        after.initialize( );
+        try
+        {
+            assertEquals( Integer.valueOf( 2 ), after.getWarmUp( ).get( 10, TimeUnit.SECONDS ) );
+            assertEquals( 2, loads.get( ) );
+            assertTrue( after.hasKey( "hot" ) );
+            assertTrue( after.hasKey( "warm" ) );
+            assertFalse( after.hasKey( "cold" ) );
+        }
+        finally
+        {
+            after.dispose( );
+            assertTrue( snapshotFile.delete( ) );
+        }
+    }
+
+    @Test
+    public void testAdaptiveSizingConvergesToTheHitRatio( )
+    {
+        AdaptiveSizer sizer = new AdaptiveSizer( 0.8, 16, Integer.MAX_VALUE, 100, 10 );
+        long hits = 0;
+        long misses = 0;
+        int keys = 1000;
+        for ( int period = 1; period <= 1000; period++ )
+        {
+            if ( period == 500 )
+            {
+                // the workload shrinks, the cache shrinks with it
+                assertEquals( 800, sizer.getTargetSize( ), 10 );
+                keys = 400;
+            }
+            // uniform accesses to the keys: the hit rate is the fraction of the keys cached
+            int target = sizer.getTargetSize( );
+            long periodHits = Math.min( 1000, 1000L * target / keys );
+            hits += periodHits;
+            misses += 1000 - periodHits;
+            sizer.sample( hits, misses, Math.min( target, keys ), false );
+        }
+        assertEquals( 320, sizer.getTargetSize( ), 8 );
+
+        // the memory budget limits the size
+        sizer.sample( hits, misses, 200, true );
+        assertEquals( 200, sizer.getTargetSize( ) );
+
+        HashMapCache<String, Integer> adaptive = new HashMapCache<>( );
+        adaptive.setCacheHitRatio( 0.8 );
+        adaptive.setCacheMaxSize( 50 );
+        adaptive.initialize( );
+        try
+        {
+            for ( int i = 0; i < 100; i++ )
+            {
+                adaptive.put( "key" + i, i );
+            }
+            assertEquals( 50, adaptive.getStatistics( ).getTargetSize( ) );
+            assertEquals( 50, adaptive.getStatistics( ).getSize( ) );
+        }
+        finally
+        {
+            adaptive.dispose( );
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.invalidation.InvalidatingCache;
+import org.apache.archiva.components.cache.invalidation.LoopbackInvalidationBus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Two nodes of an {@link InvalidatingCache} in front of hashmap caches, connected by loopback buses.
+ *
+ * @since 3.0
+ */
+public class InvalidatingCacheTest
+{
+    private LoopbackInvalidationBus busA;
+
+    private LoopbackInvalidationBus busB;
+
+    private HashMapCache<String, Integer> localA;
+
+    private HashMapCache<String, Integer> localB;
+
+    private InvalidatingCache<String, Integer> nodeA;
+
+    private InvalidatingCache<String, Integer> nodeB;
+
+    @Before
+    public void setUp( )
+    {
+        busA = new LoopbackInvalidationBus( "InvalidatingCacheTest" );
+        busB = new LoopbackInvalidationBus( "InvalidatingCacheTest" );
+        // batched until the batch is full or flushed
+        busA.setBatchDelayMillis( 60000 );
+        busA.setBatchSize( 3 );
+        busA.start( );
+        busB.start( );
+        localA = new HashMapCache<>( );
+        localB = new HashMapCache<>( );
+        localA.initialize( );
+        localB.initialize( );
+        nodeA = new InvalidatingCache<>( localA, busA, "artifacts" );
+        nodeB = new InvalidatingCache<>( localB, busB, "artifacts" );
+        nodeA.initialize( );
+        nodeB.initialize( );
+        for ( String key : Arrays.asList( "one", "two", "three", "four" ) )
+        {
+            localB.put( key, 1 );
+        }
+    }
+
+    @After
+    public void tearDown( )
+    {
+        nodeA.dispose( );
+        nodeB.dispose( );
+        busA.close( );
+        busB.close( );
+    }
+
+    @Test
+    public void testInvalidationsReachOtherNodes( )
+    {
+        nodeA.put( "one", 2 );
+        nodeA.put( "two", 2 );
+        assertEquals( Integer.valueOf( 1 ), nodeB.get( "one" ) );
+        nodeA.remove( "three" );
+        assertNull( nodeB.get( "one" ) );
+        assertNull( nodeB.get( "two" ) );
+        assertNull( nodeB.get( "three" ) );
+        assertEquals( 1, busA.getSentBatchCount( ) );
+        assertEquals( 3, nodeB.getRemoteInvalidationCount( ) );
+    }
+
+    @Test
+    public void testLoadedValuesAreNotPublished( )
+    {
+        assertEquals( Integer.valueOf( 2 ), nodeA.getOrLoad( "four", key -> 2 ) );
+        busA.flush( );
+        assertEquals( Integer.valueOf( 1 ), nodeB.get( "four" ) );
+        assertEquals( 0, busA.getSentBatchCount( ) );
+    }
+
+    @Test
+    public void testNodeDoesNotReceiveItsOwnInvalidations( )
+    {
+        nodeA.clear( );
+        busA.flush( );
+        assertEquals( 0, localB.getStatistics( ).getSize( ) );
+        assertEquals( 0, busA.getReceivedBatchCount( ) );
+    }
+}
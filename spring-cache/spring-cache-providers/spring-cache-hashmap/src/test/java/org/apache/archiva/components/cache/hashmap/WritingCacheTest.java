@@ -0,0 +1,151 @@
+package org.apache.archiva.components.cache.hashmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.writer.CacheWriter;
+import org.apache.archiva.components.cache.writer.CacheWriterException;
+import org.apache.archiva.components.cache.writer.WritingCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A {@link WritingCache} in front of a hashmap cache, writing to a map.
+ *
+ * @since 3.0
+ */
+public class WritingCacheTest
+{
+    private final Map<String, Integer> store = new ConcurrentHashMap<>( );
+
+    private final AtomicInteger batches = new AtomicInteger( );
+
+    private HashMapCache<String, Integer> counters;
+
+    private WritingCache<String, Integer> downloads;
+
+    @Before
+    public void setUp( )
+    {
+        CacheWriter<String, Integer> writer = new CacheWriter<String, Integer>( )
+        {
+            public void write( String key, Integer value )
+            {
+                store.put( key, value );
+            }
+
+            public void delete( String key )
+            {
+                store.remove( key );
+            }
+
+            @Override
+            public void writeAll( Map<? extends String, ? extends Integer> entries )
+            {
+                batches.incrementAndGet( );
+                store.putAll( entries );
+            }
+        };
+        counters = new HashMapCache<>( );
+        counters.initialize( );
+        downloads = new WritingCache<>( counters, writer );
+        downloads.setWriteBehind( true );
+        downloads.setMaxWriteDelayMillis( 60000 );
+        downloads.setBatchSize( 2 );
+        downloads.initialize( );
+    }
+
+    @After
+    public void tearDown( )
+    {
+        downloads.dispose( );
+        counters.dispose( );
+    }
+
+    @Test
+    public void testWriteBehindCoalescesWrites( )
+    {
+        for ( int i = 1; i <= 1000; i++ )
+        {
+            downloads.put( "archiva", i );
+        }
+        assertTrue( store.isEmpty( ) );
+        assertEquals( 999, downloads.getCoalescedWriteCount( ) );
+
+        // pending values are served without calling the loader, even when evicted from the cache
+        counters.clear( );
+        assertEquals( Integer.valueOf( 1000 ), downloads.getOrLoad( "archiva", key -> store.get( key ) ) );
+    }
+
+    @Test
+    public void testFlushWritesTheLastValues( )
+    {
+        downloads.put( "archiva", 1 );
+        downloads.remove( "archiva" );
+        downloads.put( "maven", 1 );
+        downloads.flush( );
+        assertEquals( Collections.singletonMap( "maven", 1 ), store );
+        assertEquals( 1, batches.get( ) );
+        assertEquals( 0, downloads.getPendingWriteCount( ) );
+    }
+
+    @Test
+    public void testFailedWriteThroughLeavesTheCacheUnchanged( )
+    {
+        WritingCache<String, Integer> failing = new WritingCache<>( counters, new CacheWriter<String, Integer>( )
+        {
+            public void write( String key, Integer value )
+                throws Exception
+            {
+                throw new Exception( "store unavailable" );
+            }
+
+            public void delete( String key )
+            {
+                // noop
+            }
+        } );
+        failing.initialize( );
+        try
+        {
+            failing.put( "gradle", 1 );
+            fail( "the write should fail" );
+        }
+        catch ( CacheWriterException e )
+        {
+            assertNull( counters.get( "gradle" ) );
+            assertEquals( 1, failing.getWriteFailureCount( ) );
+        }
+        finally
+        {
+            failing.dispose( );
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.apache.archiva.components.cache.invalidation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Encodes the invalidations of one node and decodes them on another, without joining a multicast group.
+ *
+ * @since 3.0
+ */
+public class MulticastInvalidationBusTest
+{
+    /**
+     * The magic number, the version and the node id.
+     */
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 8;
+
+    private MulticastInvalidationBus sender;
+
+    private MulticastInvalidationBus receiver;
+
+    @Before
+    public void setUp( )
+    {
+        sender = new MulticastInvalidationBus( );
+        receiver = new MulticastInvalidationBus( );
+        sender.setMaxDatagramSize( 128 );
+    }
+
+    @Test
+    public void testBatchIsSplitAtTheMaximumDatagramSize( )
+        throws IOException
+    {
+        Invalidation artifacts = new Invalidation( "artifacts" );
+        List<Object> keys = new ArrayList<>( );
+        for ( int i = 0; i < 50; i++ )
+        {
+            keys.add( "org.apache.archiva:archiva-" + i );
+            artifacts.addKey( keys.get( i ) );
+        }
+        artifacts.addKey( 42L );
+        keys.add( 42L );
+        Invalidation metadata = new Invalidation( "metadata" );
+        metadata.setClear( );
+
+        List<byte[]> datagrams = sender.encode( Arrays.asList( artifacts, metadata ) );
+        assertTrue( datagrams.size( ) > 1 );
+
+        List<Object> received = new ArrayList<>( );
+        boolean metadataCleared = false;
+        for ( byte[] datagram : datagrams )
+        {
+            assertTrue( datagram.length <= 128 );
+            for ( Invalidation invalidation : receiver.decode( datagram, datagram.length ) )
+            {
+                if ( invalidation.getCacheName( ).equals( "artifacts" ) )
+                {
+                    assertFalse( invalidation.isClear( ) );
+                    received.addAll( invalidation.getKeys( ) );
+                }
+                else
+                {
+                    assertEquals( "metadata", invalidation.getCacheName( ) );
+                    metadataCleared = invalidation.isClear( );
+                }
+            }
+        }
+        assertEquals( keys, received );
+        assertTrue( metadataCleared );
+    }
+
+    @Test
+    public void testKeysWhichCantBeSentClearTheCache( )
+        throws IOException
+    {
+        Invalidation oversized = new Invalidation( "oversized" );
+        oversized.addKey( "small" );
+        oversized.addKey( String.join( "", Collections.nCopies( 200, "x" ) ) );
+        // not written without the java serialization
+        Invalidation unsupported = new Invalidation( "unsupported" );
+        unsupported.addKey( new ArrayList<>( ) );
+
+        List<byte[]> datagrams = sender.encode( Arrays.asList( oversized, unsupported ) );
+        assertEquals( 1, datagrams.size( ) );
+        Collection<Invalidation> received = receiver.decode( datagrams.get( 0 ), datagrams.get( 0 ).length );
+        assertEquals( 2, received.size( ) );
+        for ( Invalidation invalidation : received )
+        {
+            assertTrue( invalidation.isClear( ) );
+            assertTrue( invalidation.getKeys( ).isEmpty( ) );
+        }
+    }
+
+    @Test
+    public void testTruncatedOrCorruptDatagramsAreRejected( )
+        throws IOException
+    {
+        Invalidation invalidation = new Invalidation( "a" );
+        invalidation.addKey( "key" );
+        byte[] datagram = sender.encode( Collections.singletonList( invalidation ) ).get( 0 );
+
+        assertDecodingFails( Arrays.copyOf( datagram, datagram.length - 2 ) );
+        // the key length follows the header, the name of the cache and the record type
+        int keyLength = HEADER_SIZE + 2 + 1 + 1;
+        for ( int length : new int[]{ -1, Integer.MAX_VALUE } )
+        {
+            byte[] corrupt = datagram.clone( );
+            ByteBuffer.wrap( corrupt ).putInt( keyLength, length );
+            assertDecodingFails( corrupt );
+        }
+
+        // not an invalidation datagram
+        byte[] foreign = datagram.clone( );
+        foreign[0]++;
+        assertNull( receiver.decode( foreign, foreign.length ) );
+    }
+
+    @Test
+    public void testOwnDatagramsAreIgnored( )
+        throws IOException
+    {
+        Invalidation invalidation = new Invalidation( "artifacts" );
+        invalidation.addKey( "key" );
+        byte[] datagram = sender.encode( Collections.singletonList( invalidation ) ).get( 0 );
+
+        assertNull( sender.decode( datagram, datagram.length ) );
+        assertEquals( 1, receiver.decode( datagram, datagram.length ).size( ) );
+    }
+
+    private void assertDecodingFails( byte[] datagram )
+    {
+        try
+        {
+            receiver.decode( datagram, datagram.length );
+            fail( "the datagram must be rejected" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.apache.archiva.components.cache.mmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only log file of fixed size, mapped into memory.
+ * <p>
+ * Each record consists of a header (key length, value length, stored time) followed by the serialized key
+ * and value. Removals are appended as tombstones with a value length of -1. The key length is written
+ * last, so a record interrupted by a crash is not visible: the unused part of the file is zero filled and
+ * a key length of 0 marks the end of the log.
+ * </p>
+ * Not thread safe, callers have to synchronize.
+ *
+ * @since 3.0
+ */
+final class LogSegment
+{
+    static final int HEADER_SIZE = 16;
+
+    static final int TOMBSTONE = -1;
+
+    /**
+     * Receives the records of a segment, in the order of the log.
+     */
+    interface RecordVisitor
+    {
+        void visit( LogSegment segment, int offset, byte[] key, int valueLength, long storedTime );
+    }
+
+    final int id;
+
+    private final File file;
+
+    private final MappedByteBuffer buffer;
+
+    private int position;
+
+    private LogSegment( int id, File file, MappedByteBuffer buffer )
+    {
+        this.id = id;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens or creates the segment file, the write position is at the start of the file.
+     *
+     * @param size the size of a new segment, an existing segment keeps its size
+     */
+    static LogSegment open( int id, File file, int size )
+        throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile( file, "rw" ))
+        {
+            long length = Math.max( size, raf.length( ) );
+            // the mapping stays valid after the file is closed
+            MappedByteBuffer buffer = raf.getChannel( ).map( FileChannel.MapMode.READ_WRITE, 0, length );
+            return new LogSegment( id, file, buffer );
+        }
+    }
+
+    /**
+     * @return the offset of the record, or -1 if the segment has no room left for it
+     */
+    int append( byte[] key, byte[] value, long storedTime )
+    {
+        int length = HEADER_SIZE + key.length + ( value == null ? 0 : value.length );
+        if ( position + length > buffer.capacity( ) )
+        {
+            return -1;
+        }
+        int offset = position;
+        ByteBuffer record = buffer.duplicate( );
+        record.position( offset + 4 );
+        record.putInt( value == null ? TOMBSTONE : value.length );
+        record.putLong( storedTime );
+        record.put( key );
+        if ( value != null )
+        {
+            record.put( value );
+        }
+        // publish the record
+        buffer.putInt( offset, key.length );
+        position += length;
+        return offset;
+    }
+
+    byte[] readKey( int offset )
+    {
+        byte[] key = new byte[buffer.getInt( offset )];
+        ByteBuffer record = buffer.duplicate( );
+        record.position( offset + HEADER_SIZE );
+        record.get( key );
+        return key;
+    }
+
+    byte[] readValue( int offset )
+    {
+        int keyLength = buffer.getInt( offset );
+        byte[] value = new byte[buffer.getInt( offset + 4 )];
+        ByteBuffer record = buffer.duplicate( );
+        record.position( offset + HEADER_SIZE + keyLength );
+        record.get( value );
+        return value;
+    }
+
+    long storedTime( int offset )
+    {
+        return buffer.getLong( offset + 8 );
+    }
+
+    /**
+     * Reads all records from the start of the segment and moves the write position behind the last one.
+     */
+    void scan( RecordVisitor visitor )
+    {
+        int offset = 0;
+        while ( offset + HEADER_SIZE <= buffer.capacity( ) )
+        {
+            int keyLength = buffer.getInt( offset );
+            int valueLength = buffer.getInt( offset + 4 );
+            long length = (long) HEADER_SIZE + keyLength + Math.max( valueLength, 0 );
+            if ( keyLength <= 0 || valueLength < TOMBSTONE || offset + length > buffer.capacity( ) )
+            {
+                break;
+            }
+            visitor.visit( this, offset, readKey( offset ), valueLength, storedTime( offset ) );
+            offset += (int) length;
+        }
+        position = offset;
+    }
+
+    int getPosition( )
+    {
+        return position;
+    }
+
+    void setPosition( int position )
+    {
+        this.position = position;
+    }
+
+    int getCapacity( )
+    {
+        return buffer.capacity( );
+    }
+
+    /**
+     * Writes the modified pages to the disk.
+     */
+    void force( )
+    {
+        buffer.force( );
+    }
+
+    /**
+     * Deletes the file, the mapping is released when the buffer is garbage collected.
+     */
+    void delete( )
+    {
+        if ( !file.delete( ) && file.exists( ) )
+        {
+            file.deleteOnExit( );
+        }
+    }
+}
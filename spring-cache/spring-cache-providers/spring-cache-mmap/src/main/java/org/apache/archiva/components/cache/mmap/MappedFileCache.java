@@ -0,0 +1,809 @@
+package org.apache.archiva.components.cache.mmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.AbstractCache;
+import org.apache.archiva.components.cache.AbstractCacheStatistics;
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheStatistics;
+import org.apache.archiva.components.cache.serializer.JavaSerializer;
+import org.apache.archiva.components.cache.serializer.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * MappedFileCache - persistent cache storing the serialized entries in memory mapped log files, so that
+ * the cache is still warm after a restart.
+ * <p>
+ * The entries are appended to log segments of <code>segmentSize</code> bytes in the <code>directory</code>,
+ * named after the cache <code>name</code>. An index of the keys to their position in the log is kept on the
+ * heap. On {@link #dispose()} the index is written to an index file, which is read back by
+ * {@link #initialize()}: the restart only reads the keys, the values stay in the mapped files until they
+ * are requested. After a crash there is no index file and the index is rebuilt by reading the log.
+ * </p>
+ * <p>
+ * When the log grows beyond <code>maxBytes</code>, the oldest segment is dropped with all entries it still
+ * holds (first in, first out). Updated and removed entries occupy the log until their segment is dropped.
+ * </p>
+ * <p>
+ * Configure the refreshTime in seconds value configure a ttl of object life in cache, like for the hashmap
+ * cache: &lt; 0 disables the cache, 0 is an infinite life. <code>timeToLiveSeconds</code> is honoured as
+ * well, <code>timeToIdleSeconds</code> only applies while the cache is running.
+ * </p>
+ *
+ * @since 3.0
+ */
+@Service( "cache#mmap" )
+public class MappedFileCache<V, T>
+    extends AbstractCache<V, T>
+    implements Cache<V, T>
+{
+    private static final int INDEX_MAGIC = 0x414d4349;
+
+    private static final int INDEX_VERSION = 1;
+
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private Logger log = LoggerFactory.getLogger( getClass( ) );
+
+    class Stats
+        extends AbstractCacheStatistics
+        implements CacheStatistics
+    {
+
+        public Stats( )
+        {
+            super( );
+        }
+
+        public long getSize( )
+        {
+            synchronized (index)
+            {
+                return index.size( );
+            }
+        }
+
+        /**
+         * @return the bytes of the mapped log segments
+         */
+        @Override
+        public long getInMemorySize( )
+        {
+            synchronized (index)
+            {
+                return (long) segments.size( ) * segmentSize;
+            }
+        }
+    }
+
+    /**
+     * Position of the record of an entry in the log.
+     */
+    static final class Position
+    {
+        final LogSegment segment;
+
+        final int offset;
+
+        final long storedTime;
+
+        long accessTime;
+
+        Position( LogSegment segment, int offset, long storedTime )
+        {
+            this.segment = segment;
+            this.offset = offset;
+            this.storedTime = storedTime;
+            this.accessTime = System.currentTimeMillis( );
+        }
+    }
+
+    private final Map<V, Position> index = new HashMap<>( );
+
+    /**
+     * The log segments ordered by their id, the last one is written.
+     */
+    private final TreeMap<Integer, LogSegment> segments = new TreeMap<>( );
+
+    /**
+     *
+     */
+    private File directory = new File( System.getProperty( "java.io.tmpdir" ), "archiva-cache" );
+
+    /**
+     *
+     */
+    private String name = "default";
+
+    /**
+     *
+     */
+    private long maxBytes = 256L * 1024 * 1024;
+
+    /**
+     *
+     */
+    private int segmentSize = 16 * 1024 * 1024;
+
+    /**
+     *
+     */
+    private int refreshTime;
+
+    private Serializer<V> keySerializer = new JavaSerializer<>( );
+
+    private Serializer<T> serializer = new JavaSerializer<>( );
+
+    private Stats stats;
+
+    public MappedFileCache( )
+    {
+        // noop
+    }
+
+    /**
+     * Opens the log segments of the cache and reads the index file, or rebuilds the index from the log.
+     */
+    @PostConstruct
+    public void initialize( )
+    {
+        stats = new Stats( );
+        synchronized (index)
+        {
+            try
+            {
+                if ( !directory.isDirectory( ) && !directory.mkdirs( ) )
+                {
+                    throw new IOException( "Could not create the cache directory " + directory );
+                }
+                openSegments( );
+                if ( !readIndex( ) )
+                {
+                    rebuildIndex( );
+                }
+                // the index file is only valid for the log written until now
+                getIndexFile( ).delete( );
+                if ( segments.isEmpty( ) )
+                {
+                    addSegment( 0 );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( "Could not open the cache " + name + " in " + directory, e );
+            }
+            log.debug( "Opened the cache {} with {} entries in {} segments", name, index.size( ), segments.size( ) );
+        }
+    }
+
+    /**
+     * Writes the mapped segments and the index file to the disk, so that the next {@link #initialize()}
+     * starts with the current entries.
+     */
+    @PreDestroy
+    public void dispose( )
+    {
+        synchronized (index)
+        {
+            if ( segments.isEmpty( ) )
+            {
+                return;
+            }
+            for ( LogSegment segment : segments.values( ) )
+            {
+                segment.force( );
+            }
+            try
+            {
+                writeIndex( );
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Could not write the index of the cache {}, it is rebuilt on the next start: {}", name,
+                          e.getMessage( ) );
+            }
+            segments.clear( );
+            index.clear( );
+        }
+    }
+
+    public boolean hasKey( V key )
+    {
+        if ( !isCacheAvailable( ) )
+        {
+            return false;
+        }
+        synchronized (index)
+        {
+            Position position = index.get( key );
+            if ( position == null || isExpired( position, System.currentTimeMillis( ) ) )
+            {
+                stats.miss( );
+                return false;
+            }
+            stats.hit( );
+            return true;
+        }
+    }
+
+    public T get( V key )
+    {
+        if ( !isCacheAvailable( ) )
+        {
+            return null;
+        }
+        long start = stats.getStarted( );
+        byte[] data;
+        synchronized (index)
+        {
+            Position position = index.get( key );
+            long now = System.currentTimeMillis( );
+            if ( position == null || isExpired( position, now ) )
+            {
+                if ( position != null )
+                {
+                    index.remove( key );
+                    stats.evicted( 1 );
+                }
+                stats.miss( );
+                stats.getCompleted( start );
+                return null;
+            }
+            position.accessTime = now;
+            stats.hit( );
+            data = position.segment.readValue( position.offset );
+        }
+        T value = deserialize( key, data );
+        stats.getCompleted( start );
+        return value;
+    }
+
+    @Override
+    protected T peek( V key )
+    {
+        byte[] data;
+        synchronized (index)
+        {
+            data = readPrevious( key );
+        }
+        return data == null ? null : deserialize( key, data );
+    }
+
+    public T put( V key, T value )
+    {
+        byte[] keyData = serializeKey( key );
+        byte[] data = serialize( key, value );
+        byte[] previous;
+        synchronized (index)
+        {
+            previous = readPrevious( key );
+            appendLocked( key, keyData, data );
+        }
+        return previous == null ? null : deserialize( key, previous );
+    }
+
+    /**
+     * Unlike {@link #put(Object, Object)} the previous value is not read.
+     */
+    public void register( V key, T value )
+    {
+        byte[] keyData = serializeKey( key );
+        byte[] data = serialize( key, value );
+        synchronized (index)
+        {
+            appendLocked( key, keyData, data );
+        }
+    }
+
+    public T putIfAbsent( V key, T value )
+    {
+        byte[] keyData = serializeKey( key );
+        byte[] data = serialize( key, value );
+        byte[] existing;
+        synchronized (index)
+        {
+            existing = readPrevious( key );
+            if ( existing == null )
+            {
+                appendLocked( key, keyData, data );
+                return null;
+            }
+        }
+        return deserialize( key, existing );
+    }
+
+    public T replace( V key, T value )
+    {
+        byte[] keyData = serializeKey( key );
+        byte[] data = serialize( key, value );
+        byte[] previous;
+        synchronized (index)
+        {
+            previous = readPrevious( key );
+            if ( previous == null )
+            {
+                return null;
+            }
+            appendLocked( key, keyData, data );
+        }
+        return deserialize( key, previous );
+    }
+
+    public T remove( V key )
+    {
+        byte[] previous;
+        synchronized (index)
+        {
+            previous = readPrevious( key );
+            removeLocked( key );
+        }
+        return previous == null ? null : deserialize( key, previous );
+    }
+
+    public void invalidate( V key )
+    {
+        synchronized (index)
+        {
+            removeLocked( key );
+        }
+    }
+
+    /**
+     * Deletes all log segments.
+     */
+    public void clear( )
+    {
+        synchronized (index)
+        {
+            stats.clear( );
+            index.clear( );
+            int next = segments.isEmpty( ) ? 0 : segments.lastKey( ) + 1;
+            for ( LogSegment segment : segments.values( ) )
+            {
+                segment.delete( );
+            }
+            segments.clear( );
+            try
+            {
+                addSegment( next );
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( "Could not create a log segment of the cache " + name, e );
+            }
+        }
+    }
+
+    public CacheStatistics getStatistics( )
+    {
+        return stats;
+    }
+
+    /**
+     * @return the up to date serialized value of the key without recording an access, or null.
+     * Must be called with the index lock.
+     */
+    private byte[] readPrevious( V key )
+    {
+        Position position = index.get( key );
+        if ( position == null || isExpired( position, System.currentTimeMillis( ) ) )
+        {
+            return null;
+        }
+        return position.segment.readValue( position.offset );
+    }
+
+    /**
+     * Must be called with the index lock.
+     */
+    private void appendLocked( V key, byte[] keyData, byte[] data )
+    {
+        if ( LogSegment.HEADER_SIZE + keyData.length + data.length > segmentSize )
+        {
+            log.debug( "The value of {} with {} bytes is too large for the cache", key, data.length );
+            removeLocked( key );
+            return;
+        }
+        long now = System.currentTimeMillis( );
+        int offset = append( keyData, data, now );
+        index.put( key, new Position( segments.lastEntry( ).getValue( ), offset, now ) );
+    }
+
+    /**
+     * Must be called with the index lock.
+     */
+    private void removeLocked( V key )
+    {
+        if ( index.remove( key ) != null )
+        {
+            // the tombstone keeps the key removed, when the index is rebuilt from the log
+            append( serializeKey( key ), null, System.currentTimeMillis( ) );
+        }
+    }
+
+    /**
+     * Appends the record to the last segment, rolls over to a new segment if it is full.
+     *
+     * @return the offset of the record in the last segment
+     */
+    private int append( byte[] keyData, byte[] data, long storedTime )
+    {
+        LogSegment last = segments.lastEntry( ).getValue( );
+        int offset = last.append( keyData, data, storedTime );
+        if ( offset >= 0 )
+        {
+            return offset;
+        }
+        try
+        {
+            last.force( );
+            last = addSegment( last.id + 1 );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( "Could not create a log segment of the cache " + name, e );
+        }
+        dropOldSegments( );
+        return last.append( keyData, data, storedTime );
+    }
+
+    private LogSegment addSegment( int id )
+        throws IOException
+    {
+        LogSegment segment = LogSegment.open( id, getSegmentFile( id ), segmentSize );
+        segments.put( id, segment );
+        return segment;
+    }
+
+    /**
+     * Drops the oldest segments with their entries, while the log is larger than maxBytes.
+     */
+    private void dropOldSegments( )
+    {
+        while ( segments.size( ) > 1 && (long) segments.size( ) * segmentSize > maxBytes )
+        {
+            LogSegment oldest = segments.pollFirstEntry( ).getValue( );
+            Iterator<Position> positions = index.values( ).iterator( );
+            while ( positions.hasNext( ) )
+            {
+                if ( positions.next( ).segment == oldest )
+                {
+                    positions.remove( );
+                    stats.evicted( 1 );
+                }
+            }
+            oldest.delete( );
+        }
+    }
+
+    private void openSegments( )
+        throws IOException
+    {
+        Pattern pattern = Pattern.compile( Pattern.quote( name ) + "-(\\d+)\\.log" );
+        File[] files = directory.listFiles( );
+        if ( files == null )
+        {
+            return;
+        }
+        for ( File file : files )
+        {
+            Matcher matcher = pattern.matcher( file.getName( ) );
+            if ( matcher.matches( ) )
+            {
+                int id = Integer.parseInt( matcher.group( 1 ) );
+                segments.put( id, LogSegment.open( id, file, segmentSize ) );
+            }
+        }
+    }
+
+    /**
+     * Reads the index written by the last {@link #dispose()}.
+     *
+     * @return false, if there is no valid index file for the segments
+     */
+    private boolean readIndex( )
+    {
+        File indexFile = getIndexFile( );
+        if ( !indexFile.exists( ) )
+        {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream( new FileInputStream( indexFile ) ) ))
+        {
+            if ( in.readInt( ) != INDEX_MAGIC || in.readInt( ) != INDEX_VERSION )
+            {
+                return false;
+            }
+            int segmentCount = in.readInt( );
+            if ( segmentCount != segments.size( ) )
+            {
+                return false;
+            }
+            for ( int i = 0; i < segmentCount; i++ )
+            {
+                LogSegment segment = segments.get( in.readInt( ) );
+                if ( segment == null )
+                {
+                    return false;
+                }
+                segment.setPosition( in.readInt( ) );
+            }
+            long now = System.currentTimeMillis( );
+            int entryCount = in.readInt( );
+            for ( int i = 0; i < entryCount; i++ )
+            {
+                LogSegment segment = segments.get( in.readInt( ) );
+                int offset = in.readInt( );
+                Position position = new Position( segment, offset, segment.storedTime( offset ) );
+                if ( !isExpired( position, now ) )
+                {
+                    index.put( keySerializer.deserialize( segment.readKey( offset ) ), position );
+                }
+            }
+            return true;
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            log.warn( "Could not read the index of the cache {}, rebuilding it: {}", name, e.getMessage( ) );
+            index.clear( );
+            return false;
+        }
+    }
+
+    /**
+     * Rebuilds the index by reading the records of all segments, in the order they were written.
+     */
+    private void rebuildIndex( )
+    {
+        index.clear( );
+        final long now = System.currentTimeMillis( );
+        final List<String> failures = new ArrayList<>( );
+        for ( LogSegment segment : segments.values( ) )
+        {
+            segment.scan( ( seg, offset, keyData, valueLength, storedTime ) -> {
+                V key;
+                try
+                {
+                    key = keySerializer.deserialize( keyData );
+                }
+                catch ( IOException e )
+                {
+                    failures.add( e.getMessage( ) );
+                    return;
+                }
+                Position position = new Position( seg, offset, storedTime );
+                if ( valueLength == LogSegment.TOMBSTONE || isExpired( position, now ) )
+                {
+                    index.remove( key );
+                }
+                else
+                {
+                    index.put( key, position );
+                }
+            } );
+        }
+        if ( !failures.isEmpty( ) )
+        {
+            log.warn( "Skipped {} unreadable keys of the cache {}: {}", failures.size( ), name, failures.get( 0 ) );
+        }
+    }
+
+    private void writeIndex( )
+        throws IOException
+    {
+        File tmp = new File( directory, name + INDEX_SUFFIX + ".tmp" );
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream( new FileOutputStream( tmp ) ) ))
+        {
+            out.writeInt( INDEX_MAGIC );
+            out.writeInt( INDEX_VERSION );
+            out.writeInt( segments.size( ) );
+            for ( LogSegment segment : segments.values( ) )
+            {
+                out.writeInt( segment.id );
+                out.writeInt( segment.getPosition( ) );
+            }
+            out.writeInt( index.size( ) );
+            for ( Position position : index.values( ) )
+            {
+                out.writeInt( position.segment.id );
+                out.writeInt( position.offset );
+            }
+        }
+        File indexFile = getIndexFile( );
+        if ( indexFile.exists( ) && !indexFile.delete( ) || !tmp.renameTo( indexFile ) )
+        {
+            throw new IOException( "Could not move the index file to " + indexFile );
+        }
+    }
+
+    private File getSegmentFile( int id )
+    {
+        return new File( directory, String.format( "%s-%08d.log", name, id ) );
+    }
+
+    private File getIndexFile( )
+    {
+        return new File( directory, name + INDEX_SUFFIX );
+    }
+
+    private boolean isExpired( Position position, long now )
+    {
+        if ( refreshTime > 0 && now - position.storedTime > refreshTime * 1000L )
+        {
+            return true;
+        }
+        if ( getTimeToLiveSeconds( ) > 0 && now - position.storedTime > getTimeToLiveSeconds( ) * 1000L )
+        {
+            return true;
+        }
+        return getTimeToIdleSeconds( ) > 0 && now - position.accessTime > getTimeToIdleSeconds( ) * 1000L;
+    }
+
+    private byte[] serializeKey( V key )
+    {
+        try
+        {
+            return keySerializer.serialize( key );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( "Could not serialize the key " + key, e );
+        }
+    }
+
+    private byte[] serialize( V key, T value )
+    {
+        try
+        {
+            return serializer.serialize( value );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( "Could not serialize the value of " + key, e );
+        }
+    }
+
+    private T deserialize( V key, byte[] data )
+    {
+        try
+        {
+            return serializer.deserialize( data );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not deserialize the cached value of {}: {}", key, e.getMessage( ) );
+            return null;
+        }
+    }
+
+    /**
+     * @return true, if the cache is available, otherwise false
+     */
+    protected boolean isCacheAvailable( )
+    {
+        return this.getRefreshTime( ) >= 0;
+    }
+
+    public int getRefreshTime( )
+    {
+        return refreshTime;
+    }
+
+    public void setRefreshTime( int refreshTime )
+    {
+        this.refreshTime = refreshTime;
+    }
+
+    public File getDirectory( )
+    {
+        return directory;
+    }
+
+    /**
+     * @param directory the directory of the log and index files, <code>java.io.tmpdir/archiva-cache</code> by default
+     */
+    public void setDirectory( File directory )
+    {
+        this.directory = directory;
+    }
+
+    public String getName( )
+    {
+        return name;
+    }
+
+    /**
+     * @param name the prefix of the files of the cache, must be unique within the directory
+     */
+    public void setName( String name )
+    {
+        this.name = name;
+    }
+
+    public long getMaxBytes( )
+    {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes the maximum size of the log, 256 MB by default
+     */
+    public void setMaxBytes( long maxBytes )
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    public int getSegmentSize( )
+    {
+        return segmentSize;
+    }
+
+    /**
+     * @param segmentSize the size of a log file, limits the size of an entry, 16 MB by default
+     */
+    public void setSegmentSize( int segmentSize )
+    {
+        this.segmentSize = segmentSize;
+    }
+
+    public Serializer<V> getKeySerializer( )
+    {
+        return keySerializer;
+    }
+
+    public void setKeySerializer( Serializer<V> keySerializer )
+    {
+        this.keySerializer = keySerializer;
+    }
+
+    public Serializer<T> getSerializer( )
+    {
+        return serializer;
+    }
+
+    public void setSerializer( Serializer<T> serializer )
+    {
+        this.serializer = serializer;
+    }
+}
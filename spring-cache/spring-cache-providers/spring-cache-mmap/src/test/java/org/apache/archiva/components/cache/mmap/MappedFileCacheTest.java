@@ -0,0 +1,210 @@
+package org.apache.archiva.components.cache.mmap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.test.AbstractCacheTestCase;
+import org.apache.archiva.components.cache.test.examples.wine.Wine;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * MappedFileCacheTest
+ *
+ * @since 3.0
+ */
+public class MappedFileCacheTest
+    extends AbstractCacheTestCase
+{
+    /**
+     * The caches of the spring context are persistent, start without the entries of the previous run.
+     */
+    @BeforeClass
+    public static void deleteCacheFiles( )
+    {
+        deleteDirectory( new File( "target/mmap-cache" ) );
+    }
+
+    @Inject
+    @Named( value = "cache#mmap" )
+    Cache<String, Integer> cache;
+
+    @Inject
+    @Named( value = "cache#mmap-alwaysrefresh" )
+    Cache<String, Wine> cachealwaysrefresh;
+
+    @Inject
+    @Named( value = "cache#mmap-never" )
+    Cache<String, Wine> cachenever;
+
+    @Inject
+    @Named( value = "cache#mmap-onesecondrefresh" )
+    Cache<String, Wine> cacheonesecondrefresh;
+
+    @Inject
+    @Named( value = "cache#mmap-twosecondrefresh" )
+    Cache<String, Wine> cachetwosecondrefresh;
+
+    @Override
+    public Cache<String, Integer> getCache( )
+    {
+        return cache;
+    }
+
+    public Cache<String, Wine> getAlwaysRefresCache( )
+        throws Exception
+    {
+        return cachealwaysrefresh;
+    }
+
+    public Cache<String, Wine> getNeverRefresCache( )
+        throws Exception
+    {
+        return cachenever;
+    }
+
+    public Cache<String, Wine> getOneSecondRefresCache( )
+        throws Exception
+    {
+        return cacheonesecondrefresh;
+    }
+
+    public Cache<String, Wine> getTwoSecondRefresCache( )
+        throws Exception
+    {
+        return cachetwosecondrefresh;
+    }
+
+    public Class getCacheClass( )
+    {
+        return MappedFileCache.class;
+    }
+
+    @Test
+    public void testEntriesSurviveRestart( )
+        throws IOException
+    {
+        File directory = Files.createTempDirectory( "mmap-cache" ).toFile( );
+        try
+        {
+            MappedFileCache<String, Wine> wines = newCache( directory );
+            wines.put( "bordeaux", new Wine( "bordeaux", "west/south of France" ) );
+            wines.put( "chablis", new Wine( "chablis", "Burgundy" ) );
+            wines.put( "bourgueil", new Wine( "bourgueil", "Loire" ) );
+            wines.remove( "chablis" );
+            wines.dispose( );
+            assertTrue( new File( directory, "wines.idx" ).exists( ) );
+
+            MappedFileCache<String, Wine> restarted = newCache( directory );
+            assertEquals( 2, restarted.getStatistics( ).getSize( ) );
+            assertEquals( new Wine( "bordeaux", "west/south of France" ), restarted.get( "bordeaux" ) );
+            assertNull( restarted.get( "chablis" ) );
+            assertEquals( new Wine( "bourgueil", "Loire" ), restarted.get( "bourgueil" ) );
+            restarted.dispose( );
+        }
+        finally
+        {
+            deleteDirectory( directory );
+        }
+    }
+
+    @Test
+    public void testIndexIsRebuiltAfterCrash( )
+        throws IOException
+    {
+        File directory = Files.createTempDirectory( "mmap-cache" ).toFile( );
+        try
+        {
+            MappedFileCache<String, Wine> wines = newCache( directory );
+            wines.put( "bordeaux", new Wine( "bordeaux", "west/south of France" ) );
+            wines.put( "bordeaux", new Wine( "bordeaux", "Gironde" ) );
+            wines.put( "chablis", new Wine( "chablis", "Burgundy" ) );
+            wines.remove( "chablis" );
+            // no dispose: there is no index file
+
+            MappedFileCache<String, Wine> recovered = newCache( directory );
+            assertEquals( 1, recovered.getStatistics( ).getSize( ) );
+            assertEquals( new Wine( "bordeaux", "Gironde" ), recovered.get( "bordeaux" ) );
+            assertNull( recovered.get( "chablis" ) );
+            recovered.dispose( );
+        }
+        finally
+        {
+            deleteDirectory( directory );
+        }
+    }
+
+    @Test
+    public void testOldestSegmentIsDropped( )
+        throws IOException
+    {
+        File directory = Files.createTempDirectory( "mmap-cache" ).toFile( );
+        try
+        {
+            MappedFileCache<String, byte[]> values = new MappedFileCache<>( );
+            values.setDirectory( directory );
+            values.setName( "values" );
+            values.setSegmentSize( 64 * 1024 );
+            values.setMaxBytes( 4 * 64 * 1024 );
+            values.initialize( );
+            for ( int i = 0; i < 100; i++ )
+            {
+                values.put( "value" + i, new byte[10 * 1024] );
+            }
+            assertNull( values.get( "value0" ) );
+            assertNotNull( values.get( "value99" ) );
+            assertTrue( values.getStatistics( ).getInMemorySize( ) <= 4 * 64 * 1024 );
+            values.dispose( );
+        }
+        finally
+        {
+            deleteDirectory( directory );
+        }
+    }
+
+    private static MappedFileCache<String, Wine> newCache( File directory )
+    {
+        MappedFileCache<String, Wine> cache = new MappedFileCache<>( );
+        cache.setDirectory( directory );
+        cache.setName( "wines" );
+        cache.setSegmentSize( 64 * 1024 );
+        cache.initialize( );
+        return cache;
+    }
+
+    private static void deleteDirectory( File directory )
+    {
+        File[] files = directory.listFiles( );
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                file.delete( );
+            }
+        }
+        directory.delete( );
+    }
+}
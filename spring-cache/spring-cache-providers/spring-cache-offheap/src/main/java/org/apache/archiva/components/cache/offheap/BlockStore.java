@@ -0,0 +1,188 @@
+package org.apache.archiva.components.cache.offheap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage of byte arrays in direct memory.
+ * <p>
+ * The memory is allocated lazily in slabs of <code>slabSize</code> bytes, up to <code>maxBytes</code>. The slabs
+ * are divided into blocks of <code>blockSize</code> bytes; a stored array occupies as many blocks as it needs,
+ * which don't have to be contiguous. The blocks are recycled through a free list, so the memory never
+ * fragments and never has to be compacted. Only the block numbers of the arrays live on the java heap.
+ * </p>
+ * Not thread safe, callers have to synchronize.
+ *
+ * @since 3.0
+ */
+final class BlockStore
+{
+    private static final int[] NO_BLOCKS = new int[0];
+
+    private final int blockSize;
+
+    private final int blocksPerSlab;
+
+    private final int maxSlabs;
+
+    private final List<ByteBuffer> slabs = new ArrayList<>( );
+
+    /**
+     * Stack of the free block numbers.
+     */
+    private int[] freeBlocks = NO_BLOCKS;
+
+    private int freeCount;
+
+    BlockStore( long maxBytes, int slabSize, int blockSize )
+    {
+        if ( blockSize <= 0 || slabSize < blockSize )
+        {
+            throw new IllegalArgumentException(
+                "Invalid block size " + blockSize + " for the slab size " + slabSize );
+        }
+        this.blockSize = blockSize;
+        this.blocksPerSlab = slabSize / blockSize;
+        this.maxSlabs =
+            (int) Math.min( Integer.MAX_VALUE / blocksPerSlab, maxBytes / ( (long) blocksPerSlab * blockSize ) );
+    }
+
+    /**
+     * @return the numbers of the blocks reserved for the given number of bytes, or null if there are not
+     * enough free blocks left
+     */
+    int[] allocate( int length )
+    {
+        int count = ( length + blockSize - 1 ) / blockSize;
+        while ( freeCount < count && slabs.size( ) < maxSlabs )
+        {
+            addSlab( );
+        }
+        if ( freeCount < count )
+        {
+            return null;
+        }
+        int[] blocks = Arrays.copyOfRange( freeBlocks, freeCount - count, freeCount );
+        freeCount -= count;
+        return blocks;
+    }
+
+    void free( int[] blocks )
+    {
+        System.arraycopy( blocks, 0, freeBlocks, freeCount, blocks.length );
+        freeCount += blocks.length;
+    }
+
+    void write( int[] blocks, byte[] data )
+    {
+        int offset = 0;
+        for ( int block : blocks )
+        {
+            int length = Math.min( blockSize, data.length - offset );
+            ByteBuffer slab = position( block );
+            slab.put( data, offset, length );
+            offset += length;
+        }
+    }
+
+    byte[] read( int[] blocks, int length )
+    {
+        byte[] data = new byte[length];
+        int offset = 0;
+        for ( int block : blocks )
+        {
+            int count = Math.min( blockSize, length - offset );
+            ByteBuffer slab = position( block );
+            slab.get( data, offset, count );
+            offset += count;
+        }
+        return data;
+    }
+
+    /**
+     * @return true, if the given number of bytes could be stored, when the store was empty
+     */
+    boolean fits( int length )
+    {
+        return ( length + blockSize - 1 ) / blockSize <= (long) maxSlabs * blocksPerSlab;
+    }
+
+    /**
+     * @return the number of bytes of the blocks in use
+     */
+    long getUsedBytes( )
+    {
+        return ( (long) slabs.size( ) * blocksPerSlab - freeCount ) * blockSize;
+    }
+
+    /**
+     * @return the number of bytes of direct memory allocated
+     */
+    long getAllocatedBytes( )
+    {
+        return (long) slabs.size( ) * blocksPerSlab * blockSize;
+    }
+
+    /**
+     * Frees all blocks, the slabs stay allocated.
+     */
+    void clear( )
+    {
+        freeCount = slabs.size( ) * blocksPerSlab;
+        for ( int i = 0; i < freeCount; i++ )
+        {
+            freeBlocks[i] = i;
+        }
+    }
+
+    /**
+     * Drops the slabs, their direct memory is given back when they are garbage collected.
+     */
+    void release( )
+    {
+        slabs.clear( );
+        freeBlocks = NO_BLOCKS;
+        freeCount = 0;
+    }
+
+    private ByteBuffer position( int block )
+    {
+        ByteBuffer slab = slabs.get( block / blocksPerSlab );
+        slab.clear( );
+        slab.position( ( block % blocksPerSlab ) * blockSize );
+        return slab;
+    }
+
+    private void addSlab( )
+    {
+        int first = slabs.size( ) * blocksPerSlab;
+        slabs.add( ByteBuffer.allocateDirect( blocksPerSlab * blockSize ) );
+        freeBlocks = Arrays.copyOf( freeBlocks, first + blocksPerSlab );
+        // push the blocks in reverse order, so that the first blocks of the slab are used first
+        for ( int block = first + blocksPerSlab - 1; block >= first; block-- )
+        {
+            freeBlocks[freeCount++] = block;
+        }
+    }
+}
@@ -0,0 +1,549 @@
+package org.apache.archiva.components.cache.offheap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.AbstractCache;
+import org.apache.archiva.components.cache.AbstractCacheStatistics;
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheStatistics;
+import org.apache.archiva.components.cache.serializer.JavaSerializer;
+import org.apache.archiva.components.cache.serializer.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * OffHeapCache - cache storing the serialized values in direct memory, outside of the java heap, so that
+ * large caches don't put pressure on the garbage collector.
+ * <p>
+ * The values are converted by the {@link Serializer} (java serialization by default) and stored into the
+ * blocks of direct memory slabs (see {@link BlockStore}). Only the keys and the block numbers of the values
+ * are kept in an index on the heap. The direct memory is allocated on demand in slabs of <code>slabSize</code>
+ * bytes up to <code>maxBytes</code>; when it is full, the least recently used entries are evicted.
+ * A value which does not fit into <code>maxBytes</code> is not cached.
+ * </p>
+ * <p>
+ * Each lookup deserializes the value, so the callers get their own copy of the cached object.
+ * </p>
+ * <p>
+ * Configure the refreshTime in seconds value configure a ttl of object life in cache, like for the hashmap
+ * cache: &lt; 0 disables the cache, 0 is an infinite life. <code>timeToLiveSeconds</code> and
+ * <code>timeToIdleSeconds</code> are honoured as well.
+ * </p>
+ *
+ * @since 3.0
+ */
+@Service( "cache#offheap" )
+public class OffHeapCache<V, T>
+    extends AbstractCache<V, T>
+    implements Cache<V, T>
+{
+    private Logger log = LoggerFactory.getLogger( getClass( ) );
+
+    class Stats
+        extends AbstractCacheStatistics
+        implements CacheStatistics
+    {
+
+        public Stats( )
+        {
+            super( );
+        }
+
+        public long getSize( )
+        {
+            synchronized (index)
+            {
+                return index.size( );
+            }
+        }
+
+        /**
+         * @return the bytes of direct memory used by the values
+         */
+        @Override
+        public long getInMemorySize( )
+        {
+            synchronized (index)
+            {
+                return store.getUsedBytes( );
+            }
+        }
+    }
+
+    /**
+     * Position of a serialized value in the block store.
+     */
+    static final class Entry
+    {
+        final int[] blocks;
+
+        final int length;
+
+        final long storedTime;
+
+        long accessTime;
+
+        Entry( int[] blocks, int length, long storedTime )
+        {
+            this.blocks = blocks;
+            this.length = length;
+            this.storedTime = storedTime;
+            this.accessTime = storedTime;
+        }
+    }
+
+    /**
+     * The entries in access order, the eldest entry is the least recently used one.
+     */
+    private final LinkedHashMap<V, Entry> index = new LinkedHashMap<>( 16, 0.75f, true );
+
+    private BlockStore store;
+
+    /**
+     *
+     */
+    private long maxBytes = 64L * 1024 * 1024;
+
+    /**
+     *
+     */
+    private int slabSize = 4 * 1024 * 1024;
+
+    /**
+     *
+     */
+    private int blockSize = 256;
+
+    /**
+     *
+     */
+    private int cacheMaxSize = 0;
+
+    /**
+     *
+     */
+    private int refreshTime;
+
+    private Serializer<T> serializer = new JavaSerializer<>( );
+
+    private Stats stats;
+
+    public OffHeapCache( )
+    {
+        // noop
+    }
+
+    @PostConstruct
+    public void initialize( )
+    {
+        stats = new Stats( );
+        synchronized (index)
+        {
+            store = new BlockStore( maxBytes, slabSize, blockSize );
+        }
+        if ( maxBytes < slabSize )
+        {
+            log.warn( "maxBytes {} is lower than the slabSize {}, no value can be cached", maxBytes, slabSize );
+        }
+    }
+
+    /**
+     * Gives the direct memory back.
+     */
+    @PreDestroy
+    public void dispose( )
+    {
+        synchronized (index)
+        {
+            index.clear( );
+            store.release( );
+        }
+    }
+
+    public boolean hasKey( V key )
+    {
+        if ( !isCacheAvailable( ) )
+        {
+            return false;
+        }
+        synchronized (index)
+        {
+            Entry entry = index.get( key );
+            if ( entry == null || isExpired( entry, System.currentTimeMillis( ) ) )
+            {
+                stats.miss( );
+                return false;
+            }
+            stats.hit( );
+            return true;
+        }
+    }
+
+    public T get( V key )
+    {
+        if ( !isCacheAvailable( ) )
+        {
+            return null;
+        }
+        long start = stats.getStarted( );
+        byte[] data;
+        synchronized (index)
+        {
+            data = readLocked( key );
+        }
+        if ( data == null )
+        {
+            stats.getCompleted( start );
+            return null;
+        }
+        try
+        {
+            return serializer.deserialize( data );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not deserialize the cached value of {}, removing it: {}", key, e.getMessage( ) );
+            invalidate( key );
+            return null;
+        }
+        finally
+        {
+            stats.getCompleted( start );
+        }
+    }
+
+    @Override
+    protected T peek( V key )
+    {
+        byte[] data;
+        synchronized (index)
+        {
+            data = readPrevious( key );
+        }
+        return data == null ? null : deserializePrevious( key, data );
+    }
+
+    /**
+     * @return the serialized value of the key, or null if it is not cached. Must be called with the index lock.
+     */
+    private byte[] readLocked( V key )
+    {
+        Entry entry = index.get( key );
+        if ( entry == null )
+        {
+            stats.miss( );
+            return null;
+        }
+        long now = System.currentTimeMillis( );
+        if ( isExpired( entry, now ) )
+        {
+            removeLocked( key );
+            stats.evicted( 1 );
+            stats.miss( );
+            return null;
+        }
+        entry.accessTime = now;
+        stats.hit( );
+        return store.read( entry.blocks, entry.length );
+    }
+
+    public T put( V key, T value )
+    {
+        byte[] data = serialize( key, value );
+        byte[] previous;
+        synchronized (index)
+        {
+            previous = readPrevious( key );
+            storeLocked( key, data );
+        }
+        return previous == null ? null : deserializePrevious( key, previous );
+    }
+
+    /**
+     * Unlike {@link #put(Object, Object)} the previous value is not deserialized.
+     */
+    public void register( V key, T value )
+    {
+        byte[] data = serialize( key, value );
+        synchronized (index)
+        {
+            storeLocked( key, data );
+        }
+    }
+
+    public T putIfAbsent( V key, T value )
+    {
+        byte[] data = serialize( key, value );
+        byte[] existing;
+        synchronized (index)
+        {
+            existing = readPrevious( key );
+            if ( existing == null )
+            {
+                storeLocked( key, data );
+                return null;
+            }
+        }
+        return deserializePrevious( key, existing );
+    }
+
+    public T replace( V key, T value )
+    {
+        byte[] data = serialize( key, value );
+        byte[] previous;
+        synchronized (index)
+        {
+            previous = readPrevious( key );
+            if ( previous == null )
+            {
+                return null;
+            }
+            storeLocked( key, data );
+        }
+        return deserializePrevious( key, previous );
+    }
+
+    public T remove( V key )
+    {
+        byte[] previous;
+        synchronized (index)
+        {
+            previous = readPrevious( key );
+            removeLocked( key );
+        }
+        return previous == null ? null : deserializePrevious( key, previous );
+    }
+
+    public void invalidate( V key )
+    {
+        synchronized (index)
+        {
+            removeLocked( key );
+        }
+    }
+
+    public void clear( )
+    {
+        synchronized (index)
+        {
+            stats.clear( );
+            index.clear( );
+            store.clear( );
+        }
+    }
+
+    public CacheStatistics getStatistics( )
+    {
+        return stats;
+    }
+
+    /**
+     * @return the up to date serialized value of the key without recording an access, or null.
+     * Must be called with the index lock.
+     */
+    private byte[] readPrevious( V key )
+    {
+        Entry entry = index.get( key );
+        if ( entry == null || isExpired( entry, System.currentTimeMillis( ) ) )
+        {
+            return null;
+        }
+        return store.read( entry.blocks, entry.length );
+    }
+
+    /**
+     * Must be called with the index lock.
+     */
+    private void storeLocked( V key, byte[] data )
+    {
+        removeLocked( key );
+        if ( !store.fits( data.length ) )
+        {
+            log.debug( "The value of {} with {} bytes is too large for the cache", key, data.length );
+            return;
+        }
+        int[] blocks = store.allocate( data.length );
+        Iterator<Map.Entry<V, Entry>> eldest = index.entrySet( ).iterator( );
+        while ( blocks == null && eldest.hasNext( ) )
+        {
+            // evict the least recently used entries until the value fits
+            store.free( eldest.next( ).getValue( ).blocks );
+            eldest.remove( );
+            stats.evicted( 1 );
+            blocks = store.allocate( data.length );
+        }
+        if ( blocks == null )
+        {
+            return;
+        }
+        store.write( blocks, data );
+        index.put( key, new Entry( blocks, data.length, System.currentTimeMillis( ) ) );
+
+        if ( cacheMaxSize > 0 )
+        {
+            eldest = index.entrySet( ).iterator( );
+            while ( index.size( ) > cacheMaxSize )
+            {
+                store.free( eldest.next( ).getValue( ).blocks );
+                eldest.remove( );
+                stats.evicted( 1 );
+            }
+        }
+    }
+
+    /**
+     * Must be called with the index lock.
+     */
+    private void removeLocked( V key )
+    {
+        Entry entry = index.remove( key );
+        if ( entry != null )
+        {
+            store.free( entry.blocks );
+        }
+    }
+
+    private boolean isExpired( Entry entry, long now )
+    {
+        if ( refreshTime > 0 && now - entry.storedTime > refreshTime * 1000L )
+        {
+            return true;
+        }
+        if ( getTimeToLiveSeconds( ) > 0 && now - entry.storedTime > getTimeToLiveSeconds( ) * 1000L )
+        {
+            return true;
+        }
+        return getTimeToIdleSeconds( ) > 0 && now - entry.accessTime > getTimeToIdleSeconds( ) * 1000L;
+    }
+
+    private byte[] serialize( V key, T value )
+    {
+        try
+        {
+            return serializer.serialize( value );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( "Could not serialize the value of " + key, e );
+        }
+    }
+
+    private T deserializePrevious( V key, byte[] data )
+    {
+        try
+        {
+            return serializer.deserialize( data );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not deserialize the previous value of {}: {}", key, e.getMessage( ) );
+            return null;
+        }
+    }
+
+    /**
+     * @return true, if the cache is available, otherwise false
+     */
+    protected boolean isCacheAvailable( )
+    {
+        return this.getRefreshTime( ) >= 0;
+    }
+
+    public int getRefreshTime( )
+    {
+        return refreshTime;
+    }
+
+    public void setRefreshTime( int refreshTime )
+    {
+        this.refreshTime = refreshTime;
+    }
+
+    public long getMaxBytes( )
+    {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes the maximum direct memory used by the values, 64 MB by default
+     */
+    public void setMaxBytes( long maxBytes )
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    public int getSlabSize( )
+    {
+        return slabSize;
+    }
+
+    /**
+     * @param slabSize the size of the direct memory buffers allocated on demand, 4 MB by default
+     */
+    public void setSlabSize( int slabSize )
+    {
+        this.slabSize = slabSize;
+    }
+
+    public int getBlockSize( )
+    {
+        return blockSize;
+    }
+
+    /**
+     * @param blockSize the allocation unit of the values in bytes, 256 by default
+     */
+    public void setBlockSize( int blockSize )
+    {
+        this.blockSize = blockSize;
+    }
+
+    public int getCacheMaxSize( )
+    {
+        return cacheMaxSize;
+    }
+
+    /**
+     * @param cacheMaxSize the maximum number of entries, 0 for no limit besides maxBytes
+     */
+    public void setCacheMaxSize( int cacheMaxSize )
+    {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public Serializer<T> getSerializer( )
+    {
+        return serializer;
+    }
+
+    public void setSerializer( Serializer<T> serializer )
+    {
+        this.serializer = serializer;
+    }
+}
@@ -0,0 +1,66 @@
+package org.apache.archiva.components.cache.offheap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheException;
+import org.apache.archiva.components.cache.CacheHints;
+import org.apache.archiva.components.cache.factory.CacheCreator;
+import org.apache.archiva.components.cache.serializer.JavaSerializer;
+import org.apache.archiva.components.cache.serializer.Serializer;
+
+/**
+ * OffHeapCacheCreator
+ *
+ * @since 3.0
+ */
+public class OffHeapCacheCreator<K, V>
+    implements CacheCreator<K, V>
+{
+    public Cache createCache( CacheHints cacheHint, Class<K> keyType, Class<V> valueType )
+        throws CacheException
+    {
+        OffHeapCache<K, V> cache = new OffHeapCache<>( );
+
+        cache.setCacheMaxSize( cacheHint.getMaxElements( ) );
+        cache.setTimeToIdleSeconds( cacheHint.getIdleExpirationSeconds( ) );
+        cache.setTimeToLiveSeconds( cacheHint.getMaxSecondsInCache( ) );
+        if ( cacheHint.getValueSerializer( ) != null )
+        {
+            cache.setSerializer( (Serializer<V>) cacheHint.getValueSerializer( ) );
+        }
+        else if ( valueType != null )
+        {
+            cache.setSerializer( new JavaSerializer<>( valueType.getClassLoader( ) ) );
+        }
+
+        cache.initialize( );
+
+        return cache;
+    }
+
+    public void disposeCache( Cache<K, V> cache )
+    {
+        if ( cache instanceof OffHeapCache )
+        {
+            ( (OffHeapCache<K, V>) cache ).dispose( );
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.apache.archiva.components.cache.offheap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.serializer.BinarySerializer;
+import org.apache.archiva.components.cache.serializer.DeflateSerializer;
+import org.apache.archiva.components.cache.test.AbstractCacheTestCase;
+import org.apache.archiva.components.cache.test.examples.wine.Wine;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * OffHeapCacheTest
+ *
+ * @since 3.0
+ */
+public class OffHeapCacheTest
+    extends AbstractCacheTestCase
+{
+    @Inject
+    @Named( value = "cache#offheap" )
+    Cache<String, Integer> cache;
+
+    @Inject
+    @Named( value = "cache#offheap-alwaysrefresh" )
+    Cache<String, Wine> cachealwaysrefresh;
+
+    @Inject
+    @Named( value = "cache#offheap-never" )
+    Cache<String, Wine> cachenever;
+
+    @Inject
+    @Named( value = "cache#offheap-onesecondrefresh" )
+    Cache<String, Wine> cacheonesecondrefresh;
+
+    @Inject
+    @Named( value = "cache#offheap-twosecondrefresh" )
+    Cache<String, Wine> cachetwosecondrefresh;
+
+    @Override
+    public Cache<String, Integer> getCache( )
+    {
+        return cache;
+    }
+
+    public Cache<String, Wine> getAlwaysRefresCache( )
+        throws Exception
+    {
+        return cachealwaysrefresh;
+    }
+
+    public Cache<String, Wine> getNeverRefresCache( )
+        throws Exception
+    {
+        return cachenever;
+    }
+
+    public Cache<String, Wine> getOneSecondRefresCache( )
+        throws Exception
+    {
+        return cacheonesecondrefresh;
+    }
+
+    public Cache<String, Wine> getTwoSecondRefresCache( )
+        throws Exception
+    {
+        return cachetwosecondrefresh;
+    }
+
+    public Class getCacheClass( )
+    {
+        return OffHeapCache.class;
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvictedWhenMemoryIsFull( )
+    {
+        OffHeapCache<String, byte[]> small = new OffHeapCache<>( );
+        small.setMaxBytes( 64 * 1024 );
+        small.setSlabSize( 16 * 1024 );
+        small.setBlockSize( 512 );
+        small.initialize( );
+        try
+        {
+            for ( int i = 0; i < 8; i++ )
+            {
+                small.put( "value" + i, new byte[10 * 1024] );
+            }
+            assertNull( small.get( "value0" ) );
+            assertNotNull( small.get( "value7" ) );
+            assertTrue( small.getStatistics( ).getInMemorySize( ) <= 64 * 1024 );
+
+            // larger than the whole cache, not cached
+            small.put( "huge", new byte[128 * 1024] );
+            assertNull( small.get( "huge" ) );
+            assertNotNull( small.get( "value7" ) );
+
+            small.remove( "value7" );
+            small.clear( );
+            assertEquals( 0, small.getStatistics( ).getInMemorySize( ) );
+        }
+        finally
+        {
+            small.dispose( );
+        }
+    }
+
+    @Test
+    public void testValuesAreCopies( )
+    {
+        Cache<String, Wine> wines = cachenever;
+        Wine wine = new Wine( "bordeaux", "west/south of France" );
+        wines.put( "bordeaux", wine );
+
+        Wine cached = wines.get( "bordeaux" );
+        assertEquals( wine, cached );
+        assertNotSame( wine, cached );
+    }
+
+    @Test
+    public void testCompressedValuesUseLessMemory( )
+    {
+        StringBuilder metadata = new StringBuilder( );
+        for ( int i = 0; i < 500; i++ )
+        {
+            metadata.append( "<version>1.0." ).append( i ).append( "</version>\n" );
+        }
+
+        OffHeapCache<String, Object> plain = new OffHeapCache<>( );
+        plain.setSerializer( new BinarySerializer<>( ) );
+        plain.initialize( );
+        OffHeapCache<String, Object> compressed = new OffHeapCache<>( );
+        compressed.setSerializer( new DeflateSerializer<>( new BinarySerializer<>( ) ) );
+        compressed.initialize( );
+        try
+        {
+            for ( Object value : new Object[]{ metadata.toString( ), 42, "small", new Wine( "bordeaux", "south" ) } )
+            {
+                plain.put( "key", value );
+                compressed.put( "key", value );
+                assertEquals( value, plain.get( "key" ) );
+                assertEquals( value, compressed.get( "key" ) );
+                if ( value instanceof String && ( (String) value ).length( ) > 1000 )
+                {
+                    assertTrue( compressed.getStatistics( ).getInMemorySize( ) * 4
+                        < plain.getStatistics( ).getInMemorySize( ) );
+                }
+            }
+        }
+        finally
+        {
+            plain.dispose( );
+            compressed.dispose( );
+        }
+    }
+}
@@ -34,8 +34,17 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * AbstractCacheTestCase
@@ -154,6 +163,160 @@ public abstract class AbstractCacheTestCase
          */
     }
 
+    @Test
+    public void testGetOrLoadCoalescesConcurrentMisses( )
+        throws Exception
+    {
+        final AtomicInteger loads = new AtomicInteger( );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<Integer>> results = new ArrayList<>( );
+            for ( int i = 0; i < 8; i++ )
+            {
+                results.add( executor.submit( ( ) -> {
+                    start.await( );
+                    return cache.getOrLoad( "coalesced", key -> {
+                        loads.incrementAndGet( );
+                        try
+                        {
+                            // keep the load in flight while the other threads miss the key
+                            Thread.sleep( 500 );
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.currentThread( ).interrupt( );
+                        }
+                        return 42;
+                    } );
+                } ) );
+            }
+            start.countDown( );
+            for ( Future<Integer> result : results )
+            {
+                assertEquals( Integer.valueOf( 42 ), result.get( ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow( );
+        }
+        assertEquals( 1, loads.get( ) );
+        assertEquals( Integer.valueOf( 42 ), cache.get( "coalesced" ) );
+    }
+
+    @Test
+    public void testGetOrLoadAsync( )
+        throws Exception
+    {
+        final AtomicInteger loads = new AtomicInteger( );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newSingleThreadExecutor( );
+        try
+        {
+            CompletableFuture<Integer> first = cache.getOrLoadAsync( "async", key -> {
+                loads.incrementAndGet( );
+                try
+                {
+                    release.await( );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread( ).interrupt( );
+                }
+                return 4711;
+            }, executor );
+            CompletableFuture<Integer> second = cache.getOrLoadAsync( "async", key -> {
+                loads.incrementAndGet( );
+                return -1;
+            }, executor );
+            release.countDown( );
+
+            assertEquals( Integer.valueOf( 4711 ), first.get( ) );
+            assertEquals( Integer.valueOf( 4711 ), second.get( ) );
+            assertEquals( 1, loads.get( ) );
+        }
+        finally
+        {
+            executor.shutdownNow( );
+        }
+    }
+
+    @Test
+    public void testBulkOperations( )
+    {
+        Map<String, Integer> entries = new HashMap<>( );
+        for ( int i = 0; i < 10; i++ )
+        {
+            entries.put( "bulk-" + i, i );
+        }
+        cache.putAll( entries );
+
+        Map<String, Integer> values = cache.getAll( Arrays.asList( "bulk-1", "bulk-5", "bulk-missing" ) );
+        assertEquals( 2, values.size( ) );
+        assertEquals( Integer.valueOf( 1 ), values.get( "bulk-1" ) );
+        assertEquals( Integer.valueOf( 5 ), values.get( "bulk-5" ) );
+        assertFalse( values.containsKey( "bulk-missing" ) );
+
+        cache.removeAll( Arrays.asList( "bulk-1", "bulk-2", "bulk-missing" ) );
+        assertNull( cache.get( "bulk-1" ) );
+        assertNull( cache.get( "bulk-2" ) );
+        assertEquals( Integer.valueOf( 3 ), cache.get( "bulk-3" ) );
+        assertEquals( 8, cache.getAll( entries.keySet( ) ).size( ) );
+    }
+
+    @Test
+    public void testPutIfAbsentReplaceAndInvalidate( )
+    {
+        assertNull( cache.replace( "atomic", 1 ) );
+        assertNull( cache.get( "atomic" ) );
+
+        assertNull( cache.putIfAbsent( "atomic", 2 ) );
+        assertEquals( Integer.valueOf( 2 ), cache.putIfAbsent( "atomic", 3 ) );
+        assertEquals( Integer.valueOf( 2 ), cache.get( "atomic" ) );
+
+        assertEquals( Integer.valueOf( 2 ), cache.replace( "atomic", 4 ) );
+        assertEquals( Integer.valueOf( 4 ), cache.get( "atomic" ) );
+
+        cache.invalidate( "atomic" );
+        assertNull( cache.get( "atomic" ) );
+        cache.invalidate( "atomic" );
+    }
+
+    @Test
+    public void testLoadStatistics( )
+    {
+        CacheStatistics stats = cache.getStatistics( );
+        long successes = stats.getLoadSuccessCount( );
+        long failures = stats.getLoadFailureCount( );
+        long misses = stats.getCacheMiss( );
+        long loads = stats.getLoadTimeHistogram( ).getCount( );
+
+        assertEquals( Integer.valueOf( 7 ), cache.getOrLoad( "load-stats", key -> 7 ) );
+        // served from the cache, not loaded
+        assertEquals( Integer.valueOf( 7 ), cache.getOrLoad( "load-stats", key -> 8 ) );
+        // no value is not a failure
+        assertNull( cache.getOrLoad( "load-stats-absent", key -> null ) );
+        try
+        {
+            cache.getOrLoad( "load-stats-failure", key -> {
+                throw new IllegalStateException( "unavailable" );
+            } );
+            fail( "the loader failure must be thrown" );
+        }
+        catch ( IllegalStateException e )
+        {
+            // expected
+        }
+
+        assertEquals( successes + 2, stats.getLoadSuccessCount( ) );
+        assertEquals( failures + 1, stats.getLoadFailureCount( ) );
+        // one miss per load, the lookup before the loader is called is not counted
+        assertEquals( misses + 3, stats.getCacheMiss( ) );
+        assertEquals( loads + 3, stats.getLoadTimeHistogram( ).getCount( ) );
+    }
+
     public abstract Cache<String, Wine> getAlwaysRefresCache( )
         throws Exception;
 
@@ -40,13 +40,8 @@ public class DefaultWineService
 
     public Wine getWine( String name )
     {
-        Wine wine = cacheBuilder.getCache( Wine.class ).get( name );
-        if ( wine == null )
-        {
-            wine = wineDao.getWine( name );
-            cacheBuilder.getCache( Wine.class ).put( name, wine );
-        }
-        return wine;
+        // concurrent misses on the same wine share a single dao call
+        return cacheBuilder.getCache( Wine.class ).getOrLoad( name, wineDao::getWine );
     }
 
 }
@@ -0,0 +1,189 @@
+package org.apache.archiva.components.metrics;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheStatistics;
+import org.apache.archiva.components.cache.factory.CacheFactory;
+import org.apache.archiva.components.cache.factory.CacheFactoryListener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * @since 3.0
+ */
+final class CacheMetrics
+    implements CacheMetricsMXBean
+{
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+    private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos( 1 );
+
+    private final Cache<?, ?> cache;
+
+    CacheMetrics( Cache<?, ?> cache )
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * @return the metrics of the bean, or null if the bean is no cache
+     */
+    static CacheMetricsMXBean of( Object bean )
+    {
+        return bean instanceof Cache ? new CacheMetrics( (Cache<?, ?>) bean ) : null;
+    }
+
+    /**
+     * Publishes the metrics of the caches created by the {@link CacheFactory}.
+     *
+     * @param publisher called with the id and the metrics of each cache
+     * @param withdrawer called with the id of each destroyed cache
+     * @return the registered listener, to pass to {@link #removeCacheFactoryListener(Object)}
+     */
+    static Object addCacheFactoryListener( BiConsumer<String, CacheMetricsMXBean> publisher,
+                                           Consumer<String> withdrawer )
+    {
+        CacheFactoryListener listener = new CacheFactoryListener( )
+        {
+            @Override
+            public void cacheCreated( String id, Cache<?, ?> cache )
+            {
+                publisher.accept( id, new CacheMetrics( cache ) );
+            }
+
+            @Override
+            public void cacheDestroyed( String id, Cache<?, ?> cache )
+            {
+                withdrawer.accept( id );
+            }
+        };
+        CacheFactory.getInstance( ).addCacheFactoryListener( listener );
+        return listener;
+    }
+
+    static void removeCacheFactoryListener( Object listener )
+    {
+        CacheFactory.getInstance( ).removeCacheFactoryListener( (CacheFactoryListener) listener );
+    }
+
+    private CacheStatistics statistics( )
+    {
+        return cache.getStatistics( );
+    }
+
+    @Override
+    public long getSize( )
+    {
+        return statistics( ).getSize( );
+    }
+
+    @Override
+    public long getTargetSize( )
+    {
+        return statistics( ).getTargetSize( );
+    }
+
+    @Override
+    public long getInMemorySize( )
+    {
+        return statistics( ).getInMemorySize( );
+    }
+
+    @Override
+    public long getHits( )
+    {
+        return statistics( ).getCacheHits( );
+    }
+
+    @Override
+    public long getMisses( )
+    {
+        return statistics( ).getCacheMiss( );
+    }
+
+    @Override
+    public double getHitRate( )
+    {
+        return statistics( ).getCacheHitRate( );
+    }
+
+    @Override
+    public long getNegativeHits( )
+    {
+        return statistics( ).getNegativeHitCount( );
+    }
+
+    @Override
+    public long getEvictions( )
+    {
+        return statistics( ).getEvictionCount( );
+    }
+
+    @Override
+    public long getCollected( )
+    {
+        return statistics( ).getCollectedCount( );
+    }
+
+    @Override
+    public long getLoadSuccesses( )
+    {
+        return statistics( ).getLoadSuccessCount( );
+    }
+
+    @Override
+    public long getLoadFailures( )
+    {
+        return statistics( ).getLoadFailureCount( );
+    }
+
+    @Override
+    public double getMeanLoadTime( )
+    {
+        return statistics( ).getLoadTimeHistogram( ).getMean( ) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLoadTime99thPercentile( )
+    {
+        return statistics( ).getLoadTimeHistogram( ).getValueAtPercentile( 99 ) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMeanGetLatency( )
+    {
+        return statistics( ).getGetLatencyHistogram( ).getMean( ) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getGetLatency99thPercentile( )
+    {
+        return statistics( ).getGetLatencyHistogram( ).getValueAtPercentile( 99 ) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public void resetStatistics( )
+    {
+        statistics( ).clear( );
+    }
+}
@@ -0,0 +1,61 @@
+package org.apache.archiva.components.metrics;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Management interface of a cache, published by the {@link JmxMetricsExporter}.
+ * Load times are in milliseconds, get latencies in microseconds.
+ *
+ * @since 3.0
+ */
+public interface CacheMetricsMXBean
+{
+    long getSize( );
+
+    long getTargetSize( );
+
+    long getInMemorySize( );
+
+    long getHits( );
+
+    long getMisses( );
+
+    double getHitRate( );
+
+    long getNegativeHits( );
+
+    long getEvictions( );
+
+    long getCollected( );
+
+    long getLoadSuccesses( );
+
+    long getLoadFailures( );
+
+    double getMeanLoadTime( );
+
+    double getLoadTime99thPercentile( );
+
+    double getMeanGetLatency( );
+
+    double getGetLatency99thPercentile( );
+
+    void resetStatistics( );
+}
@@ -0,0 +1,229 @@
+package org.apache.archiva.components.metrics;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.DestructionAwareBeanPostProcessor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JmxMetricsExporter - publishes the statistics of the components as MXBeans in the platform MBean server,
+ * from where JMX clients and exporters (like the JMX registries of the metrics libraries) can collect them.
+ * <p>
+ * Every {@link org.apache.archiva.components.cache.Cache} bean, including the ones returned by the
+ * {@link org.apache.archiva.components.cache.builder.CacheBuilder}, and every cache created by the
+ * {@link org.apache.archiva.components.cache.factory.CacheFactory} is published as
+ * <code>org.apache.archiva.components:type=Cache,name=&lt;bean name or cache id&gt;</code>, every
+ * {@link org.apache.archiva.components.taskqueue.execution.TaskQueueExecutor} bean as
+ * <code>type=TaskQueueExecutor</code> and every {@link org.apache.archiva.components.scheduler.Scheduler} bean
+ * as <code>type=Scheduler</code>. Components whose module is not on the classpath are skipped.
+ * </p>
+ *
+ * @since 3.0
+ */
+@Service( "metricsExporter#jmx" )
+public class JmxMetricsExporter
+    implements DestructionAwareBeanPostProcessor
+{
+    public static final String DOMAIN = "org.apache.archiva.components";
+
+    private static final ClassLoader CLASS_LOADER = JmxMetricsExporter.class.getClassLoader( );
+
+    private static final boolean CACHE_PRESENT =
+        ClassUtils.isPresent( "org.apache.archiva.components.cache.Cache", CLASS_LOADER );
+
+    private static final boolean TASKQUEUE_PRESENT =
+        ClassUtils.isPresent( "org.apache.archiva.components.taskqueue.execution.TaskQueueExecutor", CLASS_LOADER );
+
+    private static final boolean SCHEDULER_PRESENT =
+        ClassUtils.isPresent( "org.apache.archiva.components.scheduler.Scheduler", CLASS_LOADER );
+
+    private Logger log = LoggerFactory.getLogger( getClass( ) );
+
+    private MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer( );
+
+    /**
+     * the published MBeans by bean name
+     */
+    private final Map<String, ObjectName> beanMBeans = new ConcurrentHashMap<>( );
+
+    /**
+     * the published MBeans of the caches created by the cache factory, by cache id
+     */
+    private final Map<String, ObjectName> factoryMBeans = new ConcurrentHashMap<>( );
+
+    private Object cacheFactoryListener;
+
+    @PostConstruct
+    public void initialize( )
+    {
+        if ( CACHE_PRESENT )
+        {
+            try
+            {
+                cacheFactoryListener = CacheMetrics.addCacheFactoryListener(
+                    ( id, metrics ) -> publish( factoryMBeans, id, "Cache", metrics ),
+                    id -> withdraw( factoryMBeans, id ) );
+            }
+            catch ( LinkageError e )
+            {
+                log.warn( "Could not listen to the cache factory, its caches are not published: {}", e.getMessage( ) );
+            }
+        }
+    }
+
+    @PreDestroy
+    public void dispose( )
+    {
+        if ( cacheFactoryListener != null )
+        {
+            CacheMetrics.removeCacheFactoryListener( cacheFactoryListener );
+            cacheFactoryListener = null;
+        }
+        for ( ObjectName name : beanMBeans.values( ) )
+        {
+            unregister( name );
+        }
+        beanMBeans.clear( );
+        for ( ObjectName name : factoryMBeans.values( ) )
+        {
+            unregister( name );
+        }
+        factoryMBeans.clear( );
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization( Object bean, String beanName )
+        throws BeansException
+    {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization( Object bean, String beanName )
+        throws BeansException
+    {
+        if ( CACHE_PRESENT )
+        {
+            publish( beanMBeans, beanName, "Cache", CacheMetrics.of( bean ) );
+        }
+        if ( TASKQUEUE_PRESENT )
+        {
+            publish( beanMBeans, beanName, "TaskQueueExecutor", TaskQueueExecutorMetrics.of( bean ) );
+        }
+        if ( SCHEDULER_PRESENT )
+        {
+            publish( beanMBeans, beanName, "Scheduler", SchedulerMetrics.of( bean ) );
+        }
+        return bean;
+    }
+
+    @Override
+    public void postProcessBeforeDestruction( Object bean, String beanName )
+        throws BeansException
+    {
+        withdraw( beanMBeans, beanName );
+    }
+
+    @Override
+    public boolean requiresDestruction( Object bean )
+    {
+        return true;
+    }
+
+    /**
+     * @return the name under which the metrics of the given component are published
+     */
+    public static ObjectName getObjectName( String type, String name )
+        throws MalformedObjectNameException
+    {
+        // only quote names which need it, quoted names are cumbersome to use in the JMX clients
+        String value = name.matches( "[^,=:*?\"\\\\\n]+" ) ? name : ObjectName.quote( name );
+        return new ObjectName( DOMAIN + ":type=" + type + ",name=" + value );
+    }
+
+    private void publish( Map<String, ObjectName> published, String name, String type, Object metrics )
+    {
+        if ( metrics == null || name == null )
+        {
+            return;
+        }
+        try
+        {
+            ObjectName objectName = getObjectName( type, name );
+            if ( mBeanServer.isRegistered( objectName ) )
+            {
+                // a component with the same name of a previous application context
+                unregister( objectName );
+            }
+            mBeanServer.registerMBean( metrics, objectName );
+            published.put( name, objectName );
+            log.debug( "Published metrics {}", objectName );
+        }
+        catch ( JMException e )
+        {
+            log.warn( "Could not publish the metrics of {} '{}': {}", type, name, e.getMessage( ) );
+        }
+    }
+
+    private void withdraw( Map<String, ObjectName> published, String name )
+    {
+        ObjectName objectName = published.remove( name );
+        if ( objectName != null )
+        {
+            unregister( objectName );
+        }
+    }
+
+    private void unregister( ObjectName name )
+    {
+        try
+        {
+            mBeanServer.unregisterMBean( name );
+        }
+        catch ( JMException e )
+        {
+            log.debug( "Could not unregister {}: {}", name, e.getMessage( ) );
+        }
+    }
+
+    public MBeanServer getMBeanServer( )
+    {
+        return mBeanServer;
+    }
+
+    public void setMBeanServer( MBeanServer mBeanServer )
+    {
+        this.mBeanServer = mBeanServer;
+    }
+}
@@ -0,0 +1,98 @@
+package org.apache.archiva.components.metrics;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.scheduler.Scheduler;
+
+/**
+ * @since 3.0
+ */
+final class SchedulerMetrics
+    implements SchedulerMetricsMXBean
+{
+    private final Scheduler scheduler;
+
+    SchedulerMetrics( Scheduler scheduler )
+    {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the metrics of the bean, or null if the bean is no scheduler
+     */
+    static SchedulerMetricsMXBean of( Object bean )
+    {
+        return bean instanceof Scheduler ? new SchedulerMetrics( (Scheduler) bean ) : null;
+    }
+
+    @Override
+    public long getExecutedJobCount( )
+    {
+        return scheduler.getStatistics( ).getExecutedJobCount( );
+    }
+
+    @Override
+    public long getFailedJobCount( )
+    {
+        return scheduler.getStatistics( ).getFailedJobCount( );
+    }
+
+    @Override
+    public long getVetoedJobCount( )
+    {
+        return scheduler.getStatistics( ).getVetoedJobCount( );
+    }
+
+    @Override
+    public long getMisfiredTriggerCount( )
+    {
+        return scheduler.getStatistics( ).getMisfiredTriggerCount( );
+    }
+
+    @Override
+    public double getMeanFireLatency( )
+    {
+        return scheduler.getStatistics( ).getMeanFireLatency( );
+    }
+
+    @Override
+    public long getMaxFireLatency( )
+    {
+        return scheduler.getStatistics( ).getMaxFireLatency( );
+    }
+
+    @Override
+    public double getMeanRunTime( )
+    {
+        return scheduler.getStatistics( ).getMeanRunTime( );
+    }
+
+    @Override
+    public long getMaxRunTime( )
+    {
+        return scheduler.getStatistics( ).getMaxRunTime( );
+    }
+
+    @Override
+    public void resetStatistics( )
+    {
+        scheduler.getStatistics( ).clear( );
+    }
+}
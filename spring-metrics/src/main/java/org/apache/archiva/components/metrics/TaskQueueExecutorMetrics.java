@@ -0,0 +1,94 @@
+package org.apache.archiva.components.metrics;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.components.taskqueue.TaskQueue;
+import org.apache.archiva.components.taskqueue.execution.TaskQueueExecutor;
+
+/**
+ * @since 3.0
+ */
+final class TaskQueueExecutorMetrics
+    implements TaskQueueExecutorMetricsMXBean
+{
+    private final TaskQueueExecutor<?> executor;
+
+    TaskQueueExecutorMetrics( TaskQueueExecutor<?> executor )
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the metrics of the bean, or null if the bean is no task queue executor
+     */
+    static TaskQueueExecutorMetricsMXBean of( Object bean )
+    {
+        return bean instanceof TaskQueueExecutor ? new TaskQueueExecutorMetrics( (TaskQueueExecutor<?>) bean ) : null;
+    }
+
+    @Override
+    public int getQueueSize( )
+    {
+        TaskQueue<?> queue = executor.getQueue( );
+        return queue == null ? 0 : queue.size( );
+    }
+
+    @Override
+    public boolean isTaskRunning( )
+    {
+        return executor.hasRunningTask( );
+    }
+
+    @Override
+    public long getExecutedTaskCount( )
+    {
+        return executor.getStatistics( ).getExecutedTaskCount( );
+    }
+
+    @Override
+    public long getFailedTaskCount( )
+    {
+        return executor.getStatistics( ).getFailedTaskCount( );
+    }
+
+    @Override
+    public double getMeanExecutionTime( )
+    {
+        return executor.getStatistics( ).getMeanExecutionTime( );
+    }
+
+    @Override
+    public long getMaxExecutionTime( )
+    {
+        return executor.getStatistics( ).getMaxExecutionTime( );
+    }
+
+    @Override
+    public long getLastExecutionTime( )
+    {
+        return executor.getStatistics( ).getLastExecutionTime( );
+    }
+
+    @Override
+    public void resetStatistics( )
+    {
+        executor.getStatistics( ).clear( );
+    }
+}
@@ -0,0 +1,146 @@
+package org.apache.archiva.components.metrics;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.components.cache.Cache;
+import org.apache.archiva.components.cache.CacheHints;
+import org.apache.archiva.components.cache.factory.CacheFactory;
+import org.apache.archiva.components.taskqueue.Task;
+import org.apache.archiva.components.taskqueue.TaskQueue;
+import org.apache.archiva.components.taskqueue.execution.TaskExecutionException;
+import org.apache.archiva.components.taskqueue.execution.TaskExecutor;
+import org.apache.archiva.components.taskqueue.execution.TaskQueueExecutor;
+import org.awaitility.Awaitility;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @since 3.0
+ */
+@RunWith( SpringJUnit4ClassRunner.class )
+@ContextConfiguration( locations = { "classpath*:/META-INF/spring-context.xml", "classpath:/spring-context.xml" } )
+public class JmxMetricsExporterTest
+    extends TestCase
+{
+    @Inject
+    private JmxMetricsExporter exporter;
+
+    @Inject
+    @Named( value = "cache#metrics" )
+    private Cache<String, Integer> cache;
+
+    @Inject
+    @Named( value = "queueExecutor#metrics" )
+    private TaskQueueExecutor<Task> taskQueueExecutor;
+
+    @Test
+    public void testCacheBeanIsPublished( )
+        throws Exception
+    {
+        MBeanServer mBeanServer = exporter.getMBeanServer( );
+        ObjectName name = JmxMetricsExporter.getObjectName( "Cache", "cache#metrics" );
+        assertTrue( mBeanServer.isRegistered( name ) );
+
+        cache.put( "one", 1 );
+        cache.get( "one" );
+        cache.get( "two" );
+
+        assertEquals( 1L, mBeanServer.getAttribute( name, "Size" ) );
+        assertEquals( 1L, mBeanServer.getAttribute( name, "Hits" ) );
+        assertEquals( 1L, mBeanServer.getAttribute( name, "Misses" ) );
+        assertEquals( 0.5, (Double) mBeanServer.getAttribute( name, "HitRate" ), 0.001 );
+
+        mBeanServer.invoke( name, "resetStatistics", new Object[0], new String[0] );
+        assertEquals( 0L, mBeanServer.getAttribute( name, "Hits" ) );
+    }
+
+    @Test
+    public void testCacheFactoryCacheIsPublished( )
+        throws Exception
+    {
+        CacheHints hints = new CacheHints( );
+        hints.setName( "metrics-factory" );
+        CacheFactory.getInstance( ).getCache( "metrics-factory", String.class, String.class, hints );
+
+        ObjectName name = JmxMetricsExporter.getObjectName( "Cache", "metrics-factory" );
+        assertTrue( exporter.getMBeanServer( ).isRegistered( name ) );
+
+        assertTrue( CacheFactory.getInstance( ).destroyCache( "metrics-factory" ) );
+        assertFalse( exporter.getMBeanServer( ).isRegistered( name ) );
+    }
+
+    @Test
+    public void testTaskQueueExecutorIsPublished( )
+        throws Exception
+    {
+        MBeanServer mBeanServer = exporter.getMBeanServer( );
+        ObjectName name = JmxMetricsExporter.getObjectName( "TaskQueueExecutor", "queueExecutor#metrics" );
+        assertTrue( mBeanServer.isRegistered( name ) );
+
+        TaskQueue<Task> queue = taskQueueExecutor.getQueue( );
+        queue.put( new TestTask( false ) );
+        queue.put( new TestTask( true ) );
+
+        Awaitility.await( ).atMost( 10, TimeUnit.SECONDS ).until(
+            ( ) -> (Long) mBeanServer.getAttribute( name, "ExecutedTaskCount" ) == 2L );
+        assertEquals( 1L, mBeanServer.getAttribute( name, "FailedTaskCount" ) );
+        assertEquals( 0, mBeanServer.getAttribute( name, "QueueSize" ) );
+    }
+
+    static class TestTask
+        implements Task
+    {
+        private final boolean failing;
+
+        TestTask( boolean failing )
+        {
+            this.failing = failing;
+        }
+
+        @Override
+        public long getMaxExecutionTime( )
+        {
+            return 0;
+        }
+    }
+
+    public static class FailingTaskExecutor
+        implements TaskExecutor<TestTask>
+    {
+        @Override
+        public void executeTask( TestTask task )
+            throws TaskExecutionException
+        {
+            if ( task.failing )
+            {
+                throw new TaskExecutionException( "failing task" );
+            }
+        }
+    }
+}
@@ -47,6 +47,8 @@ public class DefaultScheduler
 
     private StdScheduler scheduler;
 
+    private final JobExecutionStatistics statistics = new JobExecutionStatistics( );
+
     public void scheduleJob( JobDetail jobDetail, Trigger trigger )
         throws SchedulerException
     {
@@ -107,6 +109,10 @@ public class DefaultScheduler
 
         scheduler = (StdScheduler) factory.getScheduler();
 
+        addGlobalJobListener( statistics );
+
+        addGlobalTriggerListener( statistics );
+
         scheduler.start();
 
     }
@@ -175,6 +181,12 @@ public class DefaultScheduler
         return scheduler;
     }
 
+    @Override
+    public JobExecutionStatistics getStatistics()
+    {
+        return statistics;
+    }
+
     public void setProperties( Properties properties )
     {
         this.properties = properties;
@@ -0,0 +1,176 @@
+package org.apache.archiva.components.scheduler;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobListener;
+import org.quartz.Trigger;
+import org.quartz.TriggerListener;
+
+import java.util.Date;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the job executions of a {@link Scheduler}: the fire latency, which is the delay between
+ * the scheduled fire time of a trigger and the start of the job, the job run times, failures and
+ * misfires. All times are in milliseconds.
+ * <p>
+ * {@link DefaultScheduler} registers an instance as global job and trigger listener.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class JobExecutionStatistics
+    implements JobListener, TriggerListener
+{
+    private final LongAdder executedJobs = new LongAdder();
+
+    private final LongAdder failedJobs = new LongAdder();
+
+    private final LongAdder vetoedJobs = new LongAdder();
+
+    private final LongAdder misfiredTriggers = new LongAdder();
+
+    private final LongAdder firedJobs = new LongAdder();
+
+    private final LongAdder totalFireLatency = new LongAdder();
+
+    private final LongAccumulator maxFireLatency = new LongAccumulator( Math::max, 0 );
+
+    private final LongAdder totalRunTime = new LongAdder();
+
+    private final LongAccumulator maxRunTime = new LongAccumulator( Math::max, 0 );
+
+    public String getName()
+    {
+        return "JobExecutionStatistics";
+    }
+
+    public void jobToBeExecuted( JobExecutionContext context )
+    {
+        Date scheduledFireTime = context.getScheduledFireTime();
+        if ( scheduledFireTime != null )
+        {
+            long latency = Math.max( 0, System.currentTimeMillis() - scheduledFireTime.getTime() );
+            firedJobs.increment();
+            totalFireLatency.add( latency );
+            maxFireLatency.accumulate( latency );
+        }
+    }
+
+    public void jobExecutionVetoed( JobExecutionContext context )
+    {
+        vetoedJobs.increment();
+    }
+
+    public void jobWasExecuted( JobExecutionContext context, JobExecutionException jobException )
+    {
+        executedJobs.increment();
+        if ( jobException != null )
+        {
+            failedJobs.increment();
+        }
+        long runTime = Math.max( 0, context.getJobRunTime() );
+        totalRunTime.add( runTime );
+        maxRunTime.accumulate( runTime );
+    }
+
+    public void triggerFired( Trigger trigger, JobExecutionContext context )
+    {
+    }
+
+    public boolean vetoJobExecution( Trigger trigger, JobExecutionContext context )
+    {
+        return false;
+    }
+
+    public void triggerMisfired( Trigger trigger )
+    {
+        misfiredTriggers.increment();
+    }
+
+    public void triggerComplete( Trigger trigger, JobExecutionContext context,
+                                 Trigger.CompletedExecutionInstruction triggerInstructionCode )
+    {
+    }
+
+    /**
+     * @return the number of executed jobs, including the failed ones
+     */
+    public long getExecutedJobCount()
+    {
+        return executedJobs.sum();
+    }
+
+    public long getFailedJobCount()
+    {
+        return failedJobs.sum();
+    }
+
+    public long getVetoedJobCount()
+    {
+        return vetoedJobs.sum();
+    }
+
+    public long getMisfiredTriggerCount()
+    {
+        return misfiredTriggers.sum();
+    }
+
+    /**
+     * @return the mean delay between the scheduled fire time and the start of the jobs
+     */
+    public double getMeanFireLatency()
+    {
+        long count = firedJobs.sum();
+        return count == 0 ? 0 : totalFireLatency.sum() / (double) count;
+    }
+
+    public long getMaxFireLatency()
+    {
+        return maxFireLatency.get();
+    }
+
+    public double getMeanRunTime()
+    {
+        long count = executedJobs.sum();
+        return count == 0 ? 0 : totalRunTime.sum() / (double) count;
+    }
+
+    public long getMaxRunTime()
+    {
+        return maxRunTime.get();
+    }
+
+    public void clear()
+    {
+        executedJobs.reset();
+        failedJobs.reset();
+        vetoedJobs.reset();
+        misfiredTriggers.reset();
+        firedJobs.reset();
+        totalFireLatency.reset();
+        maxFireLatency.reset();
+        totalRunTime.reset();
+        maxRunTime.reset();
+    }
+}
@@ -61,4 +61,15 @@ public interface Scheduler
 
     void shutdown( boolean waitForJobsToComplete );
 
+    /**
+     * Returns the job execution statistics of this scheduler.
+     *
+     * @return the statistics, empty if the scheduler doesn't record them
+     * @since 3.0
+     */
+    default JobExecutionStatistics getStatistics()
+    {
+        return new JobExecutionStatistics();
+    }
+
 }
@@ -174,6 +174,12 @@ public class DefaultTaskQueue
         return Collections.unmodifiableList( new ArrayList( queue ) );
     }
 
+    @Override
+    public int size( )
+    {
+        return queue.size( );
+    }
+
     // ----------------------------------------------------------------------
     // Queue Management
     // ----------------------------------------------------------------------
@@ -58,6 +58,24 @@ public interface TaskQueue<T extends Task>
     List<T> getQueueSnapshot( )
         throws TaskQueueException;
 
+    /**
+     * Returns the number of tasks waiting in the queue, without copying them like {@link #getQueueSnapshot()}.
+     *
+     * @return the number of queued tasks
+     * @since 3.0
+     */
+    default int size( )
+    {
+        try
+        {
+            return getQueueSnapshot( ).size( );
+        }
+        catch ( TaskQueueException e )
+        {
+            return 0;
+        }
+    }
+
     /**
      * Retrieves and removes the head of the queue, waiting at most timeout timeUnit when no element is available.
      *
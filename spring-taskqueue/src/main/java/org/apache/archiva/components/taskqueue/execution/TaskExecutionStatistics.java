@@ -0,0 +1,108 @@
+package org.apache.archiva.components.taskqueue.execution;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution statistics of a {@link TaskQueueExecutor}: number of executed and failed tasks and their
+ * execution times. Thread safe, the counters are updated without locking.
+ *
+ * @since 3.0
+ */
+public class TaskExecutionStatistics
+{
+    private final LongAdder executedTasks = new LongAdder( );
+
+    private final LongAdder failedTasks = new LongAdder( );
+
+    private final LongAdder totalExecutionTime = new LongAdder( );
+
+    private final LongAccumulator maxExecutionTime = new LongAccumulator( Math::max, 0 );
+
+    private volatile long lastExecutionTime;
+
+    /**
+     * Records the execution of a task.
+     *
+     * @param nanos  the execution time in nanoseconds
+     * @param failed true, if the task failed
+     */
+    public void executed( long nanos, boolean failed )
+    {
+        executedTasks.increment( );
+        if ( failed )
+        {
+            failedTasks.increment( );
+        }
+        totalExecutionTime.add( nanos );
+        maxExecutionTime.accumulate( nanos );
+        lastExecutionTime = nanos;
+    }
+
+    /**
+     * @return the number of executed tasks, including the failed ones
+     */
+    public long getExecutedTaskCount( )
+    {
+        return executedTasks.sum( );
+    }
+
+    public long getFailedTaskCount( )
+    {
+        return failedTasks.sum( );
+    }
+
+    /**
+     * @return the mean execution time in milliseconds, 0 if no task was executed yet
+     */
+    public double getMeanExecutionTime( )
+    {
+        long count = executedTasks.sum( );
+        return count == 0 ? 0 : totalExecutionTime.sum( ) / (double) count / TimeUnit.MILLISECONDS.toNanos( 1 );
+    }
+
+    /**
+     * @return the longest execution time in milliseconds
+     */
+    public long getMaxExecutionTime( )
+    {
+        return TimeUnit.NANOSECONDS.toMillis( maxExecutionTime.get( ) );
+    }
+
+    /**
+     * @return the execution time of the last executed task in milliseconds
+     */
+    public long getLastExecutionTime( )
+    {
+        return TimeUnit.NANOSECONDS.toMillis( lastExecutionTime );
+    }
+
+    public void clear( )
+    {
+        executedTasks.reset( );
+        failedTasks.reset( );
+        totalExecutionTime.reset( );
+        maxExecutionTime.reset( );
+        lastExecutionTime = 0;
+    }
+}
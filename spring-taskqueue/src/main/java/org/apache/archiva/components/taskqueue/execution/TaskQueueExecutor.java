@@ -52,4 +52,15 @@ public interface TaskQueueExecutor<T extends Task>
     String getName( );
 
     boolean hasRunningTask();
+
+    /**
+     * Returns the execution statistics of this executor.
+     *
+     * @return the statistics, empty if the executor doesn't record them
+     * @since 3.0
+     */
+    default TaskExecutionStatistics getStatistics( )
+    {
+        return new TaskExecutionStatistics( );
+    }
 }
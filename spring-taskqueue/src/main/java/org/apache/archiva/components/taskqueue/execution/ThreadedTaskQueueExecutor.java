@@ -76,6 +76,8 @@ public class ThreadedTaskQueueExecutor<T extends Task>
 
     private final AtomicReference<T> currentTask = new AtomicReference<>(  );
 
+    private final TaskExecutionStatistics statistics = new TaskExecutionStatistics( );
+
     private class ExecutorRunnable
         extends Thread
     {
@@ -120,14 +122,21 @@ public class ThreadedTaskQueueExecutor<T extends Task>
                                 @Override
                                 public void run( )
                                 {
+                                    long start = System.nanoTime( );
+                                    boolean failed = true;
                                     try
                                     {
                                         executor.executeTask( task );
+                                        failed = false;
                                     }
                                     catch ( TaskExecutionException e )
                                     {
                                         logger.error( "Error executing task: {}", e.getMessage( ), e );
                                     }
+                                    finally
+                                    {
+                                        statistics.executed( System.nanoTime( ) - start, failed );
+                                    }
                                 }
                             } );
 
@@ -406,4 +415,10 @@ public class ThreadedTaskQueueExecutor<T extends Task>
     {
         return this.currentTask.get( ) != null;
     }
+
+    @Override
+    public TaskExecutionStatistics getStatistics( )
+    {
+        return statistics;
+    }
 }